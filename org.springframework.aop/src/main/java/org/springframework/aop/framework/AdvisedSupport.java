@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -22,6 +22,7 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -84,6 +85,12 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
 	/** Cache with Method as key and advisor chain List as value */
 	private transient Map<MethodCacheKey, List<Object>> methodCache;
 
+	/**
+	 * Copy-on-write cache with Method identity as key, used for frozen configurations:
+	 * allows for looking up an advisor chain without any allocation or locking.
+	 */
+	private transient volatile Map<Method, List<Object>> frozenMethodCache;
+
 	/**
 	 * Interfaces to be implemented by the proxy. Held in List to keep the order
 	 * of registration, to create JDK proxy with specified order of interfaces.
@@ -124,6 +131,7 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
 	 */
 	private void initMethodCache() {
 		this.methodCache = new ConcurrentHashMap<MethodCacheKey, List<Object>>(32);
+		this.frozenMethodCache = new IdentityHashMap<Method, List<Object>>(0);
 	}
 
 
@@ -471,11 +479,26 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
 	/**
 	 * Determine a list of {@link org.aopalliance.intercept.MethodInterceptor} objects
 	 * for the given method, based on this configuration.
+	 * <p>If this configuration is {@link #isFrozen() frozen}, the chain will be
+	 * precomputed once per method and served from an identity-based cache.
 	 * @param method the proxied method
 	 * @param targetClass the target class
 	 * @return List of MethodInterceptors (may also include InterceptorAndDynamicMethodMatchers)
 	 */
 	public List<Object> getInterceptorsAndDynamicInterceptionAdvice(Method method, Class targetClass) {
+		if (isFrozen()) {
+			List<Object> cached = this.frozenMethodCache.get(method);
+			if (cached == null) {
+				cached = this.advisorChainFactory.getInterceptorsAndDynamicInterceptionAdvice(
+						this, method, targetClass);
+				synchronized (this.methodCache) {
+					Map<Method, List<Object>> newCache = new IdentityHashMap<Method, List<Object>>(this.frozenMethodCache);
+					newCache.put(method, cached);
+					this.frozenMethodCache = newCache;
+				}
+			}
+			return cached;
+		}
 		MethodCacheKey cacheKey = new MethodCacheKey(method);
 		List<Object> cached = this.methodCache.get(cacheKey);
 		if (cached == null) {
@@ -491,6 +514,7 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
 	 */
 	protected void adviceChanged() {
 		this.methodCache.clear();
+		this.frozenMethodCache = new IdentityHashMap<Method, List<Object>>(0);
 	}
 
 	/**
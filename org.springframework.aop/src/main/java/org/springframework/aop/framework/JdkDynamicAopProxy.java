@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,10 +18,15 @@ package org.springframework.aop.framework;
 
 import java.io.Serializable;
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
+import net.sf.cglib.reflect.FastClass;
 import org.aopalliance.intercept.MethodInvocation;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -50,6 +55,11 @@ import org.springframework.util.ClassUtils;
  * <p>Proxies are serializable so long as all Advisors (including Advices
  * and Pointcuts) and the TargetSource are serializable.
  *
+ * <p>For a {@link ProxyConfig#isFrozen() frozen} configuration with a static
+ * TargetSource, the target will be invoked through a generated CGLIB
+ * {@link FastClass} instead of through reflection, provided that CGLIB
+ * is available on the classpath and the target class is public.
+ *
  * @author Rod Johnson
  * @author Juergen Hoeller
  * @author Rob Harrop
@@ -75,6 +85,10 @@ final class JdkDynamicAopProxy implements AopProxy, InvocationHandler, Serializa
 	/** We use a static Log to avoid serialization issues */
 	private static Log logger = LogFactory.getLog(JdkDynamicAopProxy.class);
 
+	/** Whether CGLIB is available for generating direct target invokers */
+	private static final boolean fastClassAvailable =
+			ClassUtils.isPresent("net.sf.cglib.reflect.FastClass", JdkDynamicAopProxy.class.getClassLoader());
+
 	/** Config used to configure this proxy */
 	private final AdvisedSupport advised;
 
@@ -88,6 +102,11 @@ final class JdkDynamicAopProxy implements AopProxy, InvocationHandler, Serializa
 	 */
 	private boolean hashCodeDefined;
 
+	/**
+	 * Direct invoker for the target class, if applicable.
+	 */
+	private transient FastClassTargetInvoker targetInvoker;
+
 
 	/**
 	 * Construct a new JdkDynamicAopProxy for the given AOP configuration.
@@ -114,6 +133,7 @@ final class JdkDynamicAopProxy implements AopProxy, InvocationHandler, Serializa
 		}
 		Class[] proxiedInterfaces = AopProxyUtils.completeProxiedInterfaces(this.advised);
 		findDefinedEqualsAndHashCodeMethods(proxiedInterfaces);
+		this.targetInvoker = createTargetInvoker();
 		return Proxy.newProxyInstance(classLoader, proxiedInterfaces, this);
 	}
 
@@ -139,6 +159,29 @@ final class JdkDynamicAopProxy implements AopProxy, InvocationHandler, Serializa
 		}
 	}
 
+	/**
+	 * Create a direct invoker for the target class, provided that the configuration
+	 * is frozen and the TargetSource is static, i.e. always returns the same target.
+	 * @return the target invoker, or <code>null</code> if not applicable
+	 */
+	private FastClassTargetInvoker createTargetInvoker() {
+		if (!fastClassAvailable || !this.advised.isFrozen() || !this.advised.targetSource.isStatic()) {
+			return null;
+		}
+		Class targetClass = this.advised.getTargetClass();
+		if (targetClass == null || !Modifier.isPublic(targetClass.getModifiers()) || Proxy.isProxyClass(targetClass)) {
+			return null;
+		}
+		try {
+			return new FastClassTargetInvoker(targetClass);
+		}
+		catch (Throwable ex) {
+			logger.debug("Could not generate FastClass for target class [" + targetClass.getName() +
+					"] - falling back to reflective invocation", ex);
+			return null;
+		}
+	}
+
 
 	/**
 	 * Implementation of <code>InvocationHandler.invoke</code>.
@@ -187,17 +230,26 @@ final class JdkDynamicAopProxy implements AopProxy, InvocationHandler, Serializa
 			// Get the interception chain for this method.
 			List<Object> chain = this.advised.getInterceptorsAndDynamicInterceptionAdvice(method, targetClass);
 
+			// Use the direct invoker only if it has been generated for this very target class.
+			FastClassTargetInvoker targetInvoker = this.targetInvoker;
+			if (targetInvoker != null && targetInvoker.targetClass != targetClass) {
+				targetInvoker = null;
+			}
+
 			// Check whether we have any advice. If we don't, we can fallback on direct
 			// reflective invocation of the target, and avoid creating a MethodInvocation.
 			if (chain.isEmpty()) {
 				// We can skip creating a MethodInvocation: just invoke the target directly
 				// Note that the final invoker must be an InvokerInterceptor so we know it does
 				// nothing but a reflective operation on the target, and no hot swapping or fancy proxying.
-				retVal = AopUtils.invokeJoinpointUsingReflection(target, method, args);
+				retVal = (targetInvoker != null ? targetInvoker.invoke(target, method, args) :
+						AopUtils.invokeJoinpointUsingReflection(target, method, args));
 			}
 			else {
 				// We need to create a method invocation...
-				invocation = new ReflectiveMethodInvocation(proxy, target, method, args, targetClass, chain);
+				invocation = (targetInvoker != null ?
+						new FastClassMethodInvocation(proxy, target, method, args, targetClass, chain, targetInvoker) :
+						new ReflectiveMethodInvocation(proxy, target, method, args, targetClass, chain));
 				// Proceed to the joinpoint through the interceptor chain.
 				retVal = invocation.proceed();
 			}
@@ -267,4 +319,79 @@ final class JdkDynamicAopProxy implements AopProxy, InvocationHandler, Serializa
 		return JdkDynamicAopProxy.class.hashCode() * 13 + this.advised.getTargetSource().hashCode();
 	}
 
+
+	/**
+	 * Invokes target methods through a CGLIB FastClass, i.e. through generated
+	 * bytecode that calls the target method directly. Method indexes are
+	 * resolved once per proxied method and cached by Method identity.
+	 */
+	private static class FastClassTargetInvoker {
+
+		private final Class targetClass;
+
+		private final FastClass fastClass;
+
+		private volatile Map<Method, Integer> methodIndexes = new IdentityHashMap<Method, Integer>(0);
+
+		public FastClassTargetInvoker(Class targetClass) {
+			this.targetClass = targetClass;
+			this.fastClass = FastClass.create(targetClass);
+		}
+
+		public Object invoke(Object target, Method method, Object[] args) throws Throwable {
+			int index = getMethodIndex(method);
+			if (index < 0) {
+				// Not a public method of the target class, e.g. an introduced method.
+				return AopUtils.invokeJoinpointUsingReflection(target, method, args);
+			}
+			try {
+				return this.fastClass.invoke(index, target, args);
+			}
+			catch (InvocationTargetException ex) {
+				// Invoked method threw a checked exception.
+				// We must rethrow it. The client won't see the interceptor.
+				throw ex.getTargetException();
+			}
+		}
+
+		private int getMethodIndex(Method method) {
+			Integer index = this.methodIndexes.get(method);
+			if (index == null) {
+				index = this.fastClass.getIndex(method.getName(), method.getParameterTypes());
+				synchronized (this) {
+					Map<Method, Integer> newIndexes = new IdentityHashMap<Method, Integer>(this.methodIndexes);
+					newIndexes.put(method, index);
+					this.methodIndexes = newIndexes;
+				}
+			}
+			return index;
+		}
+	}
+
+
+	/**
+	 * Implementation of AOP Alliance MethodInvocation used by this AOP proxy
+	 * when a direct target invoker is available.
+	 */
+	private static class FastClassMethodInvocation extends ReflectiveMethodInvocation {
+
+		private final FastClassTargetInvoker targetInvoker;
+
+		public FastClassMethodInvocation(Object proxy, Object target, Method method, Object[] arguments,
+				Class targetClass, List<Object> interceptorsAndDynamicMethodMatchers,
+				FastClassTargetInvoker targetInvoker) {
+
+			super(proxy, target, method, arguments, targetClass, interceptorsAndDynamicMethodMatchers);
+			this.targetInvoker = targetInvoker;
+		}
+
+		/**
+		 * Invokes the joinpoint through the generated FastClass.
+		 */
+		@Override
+		protected Object invokeJoinpoint() throws Throwable {
+			return this.targetInvoker.invoke(this.target, this.method, this.arguments);
+		}
+	}
+
 }
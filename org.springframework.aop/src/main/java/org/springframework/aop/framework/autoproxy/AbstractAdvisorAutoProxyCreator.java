@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2009 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,6 +17,7 @@
 package org.springframework.aop.framework.autoproxy;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.springframework.aop.Advisor;
 import org.springframework.aop.TargetSource;
@@ -40,6 +41,11 @@ import org.springframework.core.OrderComparator;
  * Ordered interface will be considered as unordered; they will appear
  * at the end of the advisor chain in undefined order.
  *
+ * <p>Candidate Advisors are pre-filtered per bean class through an index of
+ * conditions derived from their pointcut expressions, avoiding full pointcut
+ * matching for Advisors that cannot apply (see {@link #setPreFilterAdvisors}).
+ * The time spent on advisor matching is logged at debug level.
+ *
  * @author Rod Johnson
  * @author Juergen Hoeller
  * @see #findCandidateAdvisors
@@ -48,6 +54,40 @@ public abstract class AbstractAdvisorAutoProxyCreator extends AbstractAutoProxyC
 
 	private BeanFactoryAdvisorRetrievalHelper advisorRetrievalHelper;
 
+	private boolean preFilterAdvisors = true;
+
+	private final CandidateAdvisorIndex candidateAdvisorIndex = new CandidateAdvisorIndex();
+
+	private final AtomicLong advisorMatchingTime = new AtomicLong();
+
+
+	/**
+	 * Specify whether to pre-filter candidate Advisors per bean class, based on
+	 * conditions derived from their pointcut expressions: annotation types required
+	 * on the class or its methods (<code>@within</code>, <code>@annotation</code>)
+	 * and package prefixes (<code>within</code>).
+	 * <p>Default is "true". Switch this flag to "false" in order to evaluate
+	 * all candidate Advisors through full pointcut matching for every bean.
+	 */
+	public void setPreFilterAdvisors(boolean preFilterAdvisors) {
+		this.preFilterAdvisors = preFilterAdvisors;
+	}
+
+	/**
+	 * Return whether to pre-filter candidate Advisors per bean class.
+	 */
+	public boolean isPreFilterAdvisors() {
+		return this.preFilterAdvisors;
+	}
+
+	/**
+	 * Return the total time spent on matching candidate Advisors
+	 * against beans so far, in milliseconds.
+	 */
+	public long getAdvisorMatchingTime() {
+		return this.advisorMatchingTime.get() / 1000000;
+	}
+
 
 	@Override
 	public void setBeanFactory(BeanFactory beanFactory) {
@@ -112,13 +152,26 @@ public abstract class AbstractAdvisorAutoProxyCreator extends AbstractAutoProxyC
 	protected List<Advisor> findAdvisorsThatCanApply(
 			List<Advisor> candidateAdvisors, Class beanClass, String beanName) {
 
+		long startTime = System.nanoTime();
+		List<Advisor> plausibleAdvisors = (this.preFilterAdvisors ?
+				this.candidateAdvisorIndex.findPlausibleAdvisors(candidateAdvisors, beanClass) : candidateAdvisors);
+		List<Advisor> eligibleAdvisors;
 		ProxyCreationContext.setCurrentProxiedBeanName(beanName);
 		try {
-			return AopUtils.findAdvisorsThatCanApply(candidateAdvisors, beanClass);
+			eligibleAdvisors = AopUtils.findAdvisorsThatCanApply(plausibleAdvisors, beanClass);
 		}
 		finally {
 			ProxyCreationContext.setCurrentProxiedBeanName(null);
 		}
+		long time = System.nanoTime() - startTime;
+		long totalTime = this.advisorMatchingTime.addAndGet(time);
+		if (logger.isDebugEnabled() && !candidateAdvisors.isEmpty()) {
+			logger.debug("Matched " + candidateAdvisors.size() + " candidate Advisors against bean '" + beanName +
+					"' in " + (time / 1000) + " microseconds (" + (candidateAdvisors.size() - plausibleAdvisors.size()) +
+					" skipped through index, " + eligibleAdvisors.size() + " eligible); total advisor matching time: " +
+					(totalTime / 1000000) + " ms");
+		}
+		return eligibleAdvisors;
 	}
 
 	/**
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.framework.autoproxy;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.aop.Advisor;
+import org.springframework.aop.Pointcut;
+import org.springframework.aop.PointcutAdvisor;
+import org.springframework.aop.support.ExpressionPointcut;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Index over candidate Advisors that pre-filters them for a given bean class,
+ * so that only plausible Advisors get evaluated through full pointcut matching.
+ *
+ * <p>Derives necessary conditions from AspectJ-style pointcut expressions that
+ * consist of <code>@annotation</code>, <code>@within</code> and <code>within</code>
+ * designators with fully qualified type names or package patterns, possibly
+ * combined through "&&" with further designators. Those conditions get checked
+ * against the annotation types present on the bean class hierarchy and on its
+ * methods, and against the names of the types in the hierarchy - all of which
+ * are introspected once per bean class, independent of the number of Advisors.
+ *
+ * <p>Advisors without derivable conditions are always considered plausible,
+ * as are all Advisors for pointcut expressions containing a disjunction
+ * or a negation.
+ *
+ * @since 3.1
+ * @see AbstractAdvisorAutoProxyCreator#setPreFilterAdvisors
+ */
+class CandidateAdvisorIndex {
+
+	private static final Condition[] NO_CONDITIONS = new Condition[0];
+
+	private static final Pattern UNSUPPORTED_OPERATOR_PATTERN = Pattern.compile("\\|\\||!|\\sor\\s|(^|\\s)not\\s");
+
+	private static final Pattern CONJUNCTION_PATTERN = Pattern.compile("&&|\\sand\\s");
+
+	private static final Pattern ANNOTATION_PATTERN =
+			Pattern.compile("(@annotation|@within)\\(\\s*([\\w$]+(?:\\.[\\w$]+)+)\\s*\\)");
+
+	private static final Pattern WITHIN_PATTERN =
+			Pattern.compile("within\\(\\s*([\\w$]+(?:\\.[\\w$]+)*)\\.\\.?\\*\\s*\\)");
+
+
+	/**
+	 * Cache of derived conditions, with the pointcut expression as key: stable across
+	 * Advisor instances, which may get recreated for non-singleton aspects
+	 */
+	private final Map<String, Condition[]> conditionCache = new ConcurrentHashMap<String, Condition[]>();
+
+
+	/**
+	 * Determine the plausible Advisors for the given bean class.
+	 * @param candidateAdvisors the candidate Advisors
+	 * @param beanClass the bean class to check
+	 * @return the sublist of plausible Advisors, in their original order
+	 * (may be the incoming List as-is)
+	 */
+	public List<Advisor> findPlausibleAdvisors(List<Advisor> candidateAdvisors, Class<?> beanClass) {
+		List<Advisor> plausibleAdvisors = null;
+		ClassProfile profile = null;
+		int index = 0;
+		for (Advisor candidate : candidateAdvisors) {
+			Condition[] conditions = getConditions(candidate);
+			boolean plausible = true;
+			if (conditions.length > 0) {
+				if (profile == null) {
+					profile = new ClassProfile(beanClass);
+				}
+				for (Condition condition : conditions) {
+					if (!condition.isSatisfiedBy(profile)) {
+						plausible = false;
+						break;
+					}
+				}
+			}
+			if (!plausible && plausibleAdvisors == null) {
+				plausibleAdvisors = new ArrayList<Advisor>(candidateAdvisors.subList(0, index));
+			}
+			else if (plausible && plausibleAdvisors != null) {
+				plausibleAdvisors.add(candidate);
+			}
+			index++;
+		}
+		return (plausibleAdvisors != null ? plausibleAdvisors : candidateAdvisors);
+	}
+
+	/**
+	 * Obtain the necessary conditions for the given Advisor from its pointcut expression,
+	 * if any, deriving them on first access to the expression.
+	 */
+	private Condition[] getConditions(Advisor advisor) {
+		if (!(advisor instanceof PointcutAdvisor)) {
+			return NO_CONDITIONS;
+		}
+		Pointcut pointcut = ((PointcutAdvisor) advisor).getPointcut();
+		if (!(pointcut instanceof ExpressionPointcut)) {
+			return NO_CONDITIONS;
+		}
+		String expression = ((ExpressionPointcut) pointcut).getExpression();
+		if (expression == null) {
+			return NO_CONDITIONS;
+		}
+		Condition[] conditions = this.conditionCache.get(expression);
+		if (conditions == null) {
+			conditions = deriveConditions(expression);
+			this.conditionCache.put(expression, conditions);
+		}
+		return conditions;
+	}
+
+	/**
+	 * Derive the necessary conditions from the given pointcut expression.
+	 */
+	private Condition[] deriveConditions(String expression) {
+		if (UNSUPPORTED_OPERATOR_PATTERN.matcher(expression).find()) {
+			return NO_CONDITIONS;
+		}
+		List<Condition> conditions = new ArrayList<Condition>();
+		for (String term : CONJUNCTION_PATTERN.split(expression)) {
+			term = term.trim();
+			Matcher matcher = ANNOTATION_PATTERN.matcher(term);
+			if (matcher.matches()) {
+				conditions.add(new Condition(
+						"@annotation".equals(matcher.group(1)) ? ConditionType.METHOD_ANNOTATION : ConditionType.CLASS_ANNOTATION,
+						matcher.group(2)));
+				continue;
+			}
+			matcher = WITHIN_PATTERN.matcher(term);
+			if (matcher.matches()) {
+				conditions.add(new Condition(ConditionType.TYPE_NAME_PREFIX, matcher.group(1) + "."));
+			}
+		}
+		return conditions.toArray(new Condition[conditions.size()]);
+	}
+
+
+	/**
+	 * Types of conditions that may be derived from a pointcut expression.
+	 */
+	private enum ConditionType {
+
+		CLASS_ANNOTATION, METHOD_ANNOTATION, TYPE_NAME_PREFIX
+	}
+
+
+	/**
+	 * A necessary condition for an Advisor to apply to a bean class.
+	 * Type names are compared in their canonical form, also accepting names
+	 * which have been specified relative to an enclosing type or package.
+	 */
+	private static class Condition {
+
+		private final ConditionType type;
+
+		private final String name;
+
+		private final String relativeName;
+
+		public Condition(ConditionType type, String name) {
+			this.type = type;
+			this.name = name.replace('$', '.');
+			this.relativeName = "." + this.name;
+		}
+
+		public boolean isSatisfiedBy(ClassProfile profile) {
+			switch (this.type) {
+				case CLASS_ANNOTATION:
+					return containsName(profile.classAnnotationNames);
+				case METHOD_ANNOTATION:
+					return containsName(profile.getMethodAnnotationNames());
+				default:
+					for (String typeName : profile.typeNames) {
+						if (typeName.startsWith(this.name) || typeName.contains(this.relativeName)) {
+							return true;
+						}
+					}
+					return false;
+			}
+		}
+
+		private boolean containsName(Set<String> names) {
+			if (names.contains(this.name)) {
+				return true;
+			}
+			for (String candidate : names) {
+				if (candidate.endsWith(this.relativeName)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+
+	/**
+	 * Introspection results for a bean class: the names of all types in its
+	 * hierarchy, the annotation types on those types (including meta-annotations),
+	 * and - lazily - the annotation types on their declared methods.
+	 */
+	private static class ClassProfile {
+
+		private final Set<Class> types = new LinkedHashSet<Class>();
+
+		private final Set<String> typeNames = new HashSet<String>();
+
+		private final Set<String> classAnnotationNames = new HashSet<String>();
+
+		private Set<String> methodAnnotationNames;
+
+		public ClassProfile(Class<?> beanClass) {
+			Class<?> clazz = beanClass;
+			while (clazz != null && clazz != Object.class) {
+				this.types.add(clazz);
+				clazz = clazz.getSuperclass();
+			}
+			this.types.addAll(ClassUtils.getAllInterfacesForClassAsSet(beanClass));
+			for (Class<?> type : this.types) {
+				this.typeNames.add(canonicalName(type));
+				for (Annotation ann : type.getAnnotations()) {
+					this.classAnnotationNames.add(canonicalName(ann.annotationType()));
+					for (Annotation metaAnn : ann.annotationType().getAnnotations()) {
+						this.classAnnotationNames.add(canonicalName(metaAnn.annotationType()));
+					}
+				}
+			}
+		}
+
+		public Set<String> getMethodAnnotationNames() {
+			if (this.methodAnnotationNames == null) {
+				this.methodAnnotationNames = new HashSet<String>();
+				for (Class<?> type : this.types) {
+					for (Method method : type.getDeclaredMethods()) {
+						for (Annotation ann : method.getAnnotations()) {
+							this.methodAnnotationNames.add(canonicalName(ann.annotationType()));
+						}
+					}
+				}
+			}
+			return this.methodAnnotationNames;
+		}
+
+		private static String canonicalName(Class<?> type) {
+			return type.getName().replace('$', '.');
+		}
+	}
+
+}
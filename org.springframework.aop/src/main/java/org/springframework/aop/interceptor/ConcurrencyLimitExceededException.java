@@ -0,0 +1,39 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.interceptor;
+
+/**
+ * Exception thrown when an invocation gets rejected by a concurrency throttle,
+ * since no invocation slot became available within the configured timeout.
+ *
+ * <p>Callers may catch this exception in order to shed load, e.g. responding
+ * with a "service unavailable" status instead of queuing up further requests.
+ *
+ * @since 3.1
+ * @see SemaphoreConcurrencyThrottleInterceptor#setAcquireTimeout
+ */
+public class ConcurrencyLimitExceededException extends IllegalStateException {
+
+	/**
+	 * Create a new <code>ConcurrencyLimitExceededException</code>.
+	 * @param msg the detail message
+	 */
+	public ConcurrencyLimitExceededException(String msg) {
+		super(msg);
+	}
+
+}
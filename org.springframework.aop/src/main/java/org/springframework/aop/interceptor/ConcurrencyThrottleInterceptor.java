@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2005 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -35,9 +35,14 @@ import org.springframework.util.ConcurrencyThrottleSupport;
  * <p>The default concurrency limit of this interceptor is 1.
  * Specify the "concurrencyLimit" bean property to change this value.
  *
+ * <p>For fair queuing, acquire timeouts with rejection of invocations,
+ * or a concurrency limit that adapts to observed latency, consider
+ * {@link SemaphoreConcurrencyThrottleInterceptor} instead.
+ *
  * @author Juergen Hoeller
  * @since 11.02.2004
  * @see #setConcurrencyLimit
+ * @see SemaphoreConcurrencyThrottleInterceptor
  */
 public class ConcurrencyThrottleInterceptor extends ConcurrencyThrottleSupport
 		implements MethodInterceptor, Serializable {
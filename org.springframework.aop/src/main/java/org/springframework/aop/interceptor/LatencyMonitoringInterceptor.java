@@ -0,0 +1,360 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.interceptor;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+import org.springframework.util.Assert;
+import org.springframework.util.LatencyHistogram;
+
+/**
+ * Monitoring interceptor that records the latency of each invoked method into
+ * a {@link LatencyHistogram}, along with invocation and error counts, for
+ * reporting percentiles in production environments.
+ *
+ * <p>In contrast to {@link PerformanceMonitorInterceptor}, no log output is
+ * produced per invocation; and in contrast to {@link JamonPerformanceMonitorInterceptor},
+ * no third-party library is required. The recording path does not allocate any
+ * objects once a method has been invoked for the first time: statistics are looked
+ * up by {@link Method} identity, and recording is a matter of atomic increments.
+ *
+ * <p>Latencies are kept per time window of configurable length, rolling over to
+ * a fresh histogram when a window ends. Percentiles are reported for the last
+ * completed window, which gives stable values to polling monitoring tools.
+ * Invocation and error counts are reported both for the last completed window
+ * and as totals since startup (or the last {@link #reset()}).
+ *
+ * <p>This interceptor can be exported through Spring's
+ * {@link org.springframework.jmx.export.MBeanExporter} as-is: its public getters
+ * become JMX attributes, and the lookup methods taking a method name become
+ * JMX operations. Methods are identified through their declaring class name and
+ * method name, e.g. "com.mycompany.MyService.myMethod"; overloaded methods share
+ * the same statistics.
+ *
+ * @since 3.1
+ * @see #setWindowMillis
+ * @see org.springframework.util.LatencyHistogram
+ */
+public class LatencyMonitoringInterceptor implements MethodInterceptor {
+
+	private long windowNanos = TimeUnit.MINUTES.toNanos(1);
+
+	/** Statistics per invoked Method, for fast lookup on the recording path */
+	private final Map<Method, MethodStatistics> statisticsByMethod =
+			new ConcurrentHashMap<Method, MethodStatistics>(64);
+
+	/** Statistics per method name, shared between overloaded methods */
+	private final Map<String, MethodStatistics> statisticsByName =
+			new ConcurrentHashMap<String, MethodStatistics>(64);
+
+
+	/**
+	 * Set the length of the time windows that latencies are reported for,
+	 * in milliseconds. Default is 60000 (one minute).
+	 */
+	public void setWindowMillis(long windowMillis) {
+		Assert.isTrue(windowMillis > 0, "'windowMillis' must be greater than 0");
+		this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+	}
+
+	/**
+	 * Return the length of the time windows, in milliseconds.
+	 */
+	public long getWindowMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(this.windowNanos);
+	}
+
+
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		MethodStatistics statistics = getStatistics(invocation.getMethod());
+		long startNanos = currentTimeNanos();
+		boolean failed = true;
+		try {
+			Object result = invocation.proceed();
+			failed = false;
+			return result;
+		}
+		finally {
+			long endNanos = currentTimeNanos();
+			statistics.record(getWindowIndex(endNanos), endNanos - startNanos, failed);
+		}
+	}
+
+	/**
+	 * Obtain the statistics for the given method, creating them on first invocation.
+	 */
+	private MethodStatistics getStatistics(Method method) {
+		MethodStatistics statistics = this.statisticsByMethod.get(method);
+		if (statistics == null) {
+			String name = getMethodName(method);
+			synchronized (this.statisticsByName) {
+				statistics = this.statisticsByName.get(name);
+				if (statistics == null) {
+					statistics = new MethodStatistics(getWindowIndex(currentTimeNanos()));
+					this.statisticsByName.put(name, statistics);
+				}
+			}
+			this.statisticsByMethod.put(method, statistics);
+		}
+		return statistics;
+	}
+
+	/**
+	 * Determine the name to report statistics for the given method under.
+	 * <p>The default implementation returns the declaring class name
+	 * followed by the method name.
+	 * @param method the invoked method
+	 * @return the name to use as statistics key
+	 */
+	protected String getMethodName(Method method) {
+		return method.getDeclaringClass().getName() + "." + method.getName();
+	}
+
+	/**
+	 * Return the current value of the time source used for measuring latencies
+	 * and for determining time windows, in nanoseconds.
+	 * <p>The default implementation delegates to <code>System.nanoTime()</code>.
+	 */
+	protected long currentTimeNanos() {
+		return System.nanoTime();
+	}
+
+	private long getWindowIndex(long nanos) {
+		// Floor division, since System.nanoTime() values may be negative
+		return (nanos >= 0 ? nanos / this.windowNanos : (nanos + 1) / this.windowNanos - 1);
+	}
+
+
+	/**
+	 * Return the names of all methods that have been invoked, in alphabetical order.
+	 */
+	public String[] getMonitoredMethods() {
+		return new TreeMap<String, MethodStatistics>(this.statisticsByName).keySet().toArray(new String[0]);
+	}
+
+	/**
+	 * Return a summary of the last completed window for each method that has
+	 * been invoked, in alphabetical order of method names.
+	 */
+	public String[] getWindowSummaries() {
+		Map<String, MethodStatistics> sorted = new TreeMap<String, MethodStatistics>(this.statisticsByName);
+		String[] summaries = new String[sorted.size()];
+		long windowIndex = getWindowIndex(currentTimeNanos());
+		int i = 0;
+		for (Map.Entry<String, MethodStatistics> entry : sorted.entrySet()) {
+			Window window = entry.getValue().getCompletedWindow(windowIndex);
+			LatencyHistogram histogram = window.histogram;
+			summaries[i++] = entry.getKey() + ": count=" + histogram.getCount() + ", errors=" +
+					window.errorCount.get() + ", p50=" + toMillis(histogram.getPercentile(50)) + "ms, p99=" +
+					toMillis(histogram.getPercentile(99)) + "ms, max=" + toMillis(histogram.getMaxTime()) + "ms";
+		}
+		return summaries;
+	}
+
+	/**
+	 * Return the total number of invocations of the given method.
+	 * @param methodName the method name, as returned by {@link #getMonitoredMethods()}
+	 */
+	public long getInvocationCount(String methodName) {
+		MethodStatistics statistics = this.statisticsByName.get(methodName);
+		return (statistics != null ? statistics.invocationCount.get() : 0);
+	}
+
+	/**
+	 * Return the total number of invocations of the given method
+	 * that terminated with an exception.
+	 * @param methodName the method name, as returned by {@link #getMonitoredMethods()}
+	 */
+	public long getErrorCount(String methodName) {
+		MethodStatistics statistics = this.statisticsByName.get(methodName);
+		return (statistics != null ? statistics.errorCount.get() : 0);
+	}
+
+	/**
+	 * Return the number of invocations of the given method in the last completed window.
+	 * @param methodName the method name, as returned by {@link #getMonitoredMethods()}
+	 */
+	public long getWindowInvocationCount(String methodName) {
+		LatencyHistogram histogram = getWindowHistogram(methodName);
+		return (histogram != null ? histogram.getCount() : 0);
+	}
+
+	/**
+	 * Return the number of invocations of the given method in the last completed
+	 * window that terminated with an exception.
+	 * @param methodName the method name, as returned by {@link #getMonitoredMethods()}
+	 */
+	public long getWindowErrorCount(String methodName) {
+		MethodStatistics statistics = this.statisticsByName.get(methodName);
+		return (statistics != null ?
+				statistics.getCompletedWindow(getWindowIndex(currentTimeNanos())).errorCount.get() : 0);
+	}
+
+	/**
+	 * Return the given percentile of the latency of the given method in the
+	 * last completed window, in milliseconds.
+	 * @param methodName the method name, as returned by {@link #getMonitoredMethods()}
+	 * @param percentile the percentile to compute (between 0.0 and 100.0)
+	 */
+	public double getPercentile(String methodName, double percentile) {
+		LatencyHistogram histogram = getWindowHistogram(methodName);
+		return (histogram != null ? toMillis(histogram.getPercentile(percentile)) : 0);
+	}
+
+	/**
+	 * Return the maximum latency of the given method in the last completed window,
+	 * in milliseconds.
+	 * @param methodName the method name, as returned by {@link #getMonitoredMethods()}
+	 */
+	public double getMaxTime(String methodName) {
+		LatencyHistogram histogram = getWindowHistogram(methodName);
+		return (histogram != null ? toMillis(histogram.getMaxTime()) : 0);
+	}
+
+	/**
+	 * Return the latency histogram of the given method for the last completed window.
+	 * <p>The returned histogram will be recycled for recording when subsequent
+	 * windows roll over; it is only meant for immediate inspection.
+	 * @param methodName the method name, as returned by {@link #getMonitoredMethods()}
+	 * @return the histogram, or <code>null</code> if the method has not been invoked
+	 */
+	public LatencyHistogram getWindowHistogram(String methodName) {
+		MethodStatistics statistics = this.statisticsByName.get(methodName);
+		return (statistics != null ? statistics.getCompletedWindow(getWindowIndex(currentTimeNanos())).histogram : null);
+	}
+
+	/**
+	 * Clear all statistics gathered so far.
+	 */
+	public void reset() {
+		synchronized (this.statisticsByName) {
+			this.statisticsByMethod.clear();
+			this.statisticsByName.clear();
+		}
+	}
+
+	private static double toMillis(long nanos) {
+		return nanos / 1000000.0;
+	}
+
+
+	/**
+	 * Statistics for a method: total counters plus the current and the
+	 * previous time window, which get recycled on rollover.
+	 */
+	private static class MethodStatistics {
+
+		private final AtomicLong invocationCount = new AtomicLong();
+
+		private final AtomicLong errorCount = new AtomicLong();
+
+		private volatile Window currentWindow;
+
+		private volatile Window previousWindow;
+
+		public MethodStatistics(long windowIndex) {
+			this.currentWindow = new Window(windowIndex);
+			this.previousWindow = new Window(windowIndex - 1);
+		}
+
+		public void record(long windowIndex, long nanos, boolean failed) {
+			this.invocationCount.incrementAndGet();
+			if (failed) {
+				this.errorCount.incrementAndGet();
+			}
+			Window window = this.currentWindow;
+			if (window.index < windowIndex) {
+				window = rollOver(windowIndex);
+			}
+			window.histogram.record(nanos);
+			if (failed) {
+				window.errorCount.incrementAndGet();
+			}
+		}
+
+		/**
+		 * Roll over to the given window, recycling the previous window's histogram.
+		 * Values recorded concurrently with a rollover may get attributed to the
+		 * adjacent window.
+		 */
+		private synchronized Window rollOver(long windowIndex) {
+			Window window = this.currentWindow;
+			if (window.index < windowIndex) {
+				Window recycled = this.previousWindow;
+				if (window.index < windowIndex - 1) {
+					// No invocations in the last completed window.
+					window.reset(windowIndex - 1);
+				}
+				recycled.reset(windowIndex);
+				this.previousWindow = window;
+				this.currentWindow = recycled;
+				window = recycled;
+			}
+			return window;
+		}
+
+		/**
+		 * Return the window preceding the given window index; an empty
+		 * window if there have been no invocations in that window.
+		 */
+		public Window getCompletedWindow(long windowIndex) {
+			Window window = this.currentWindow;
+			if (window.index == windowIndex - 1) {
+				return window;
+			}
+			window = this.previousWindow;
+			if (window.index == windowIndex - 1) {
+				return window;
+			}
+			return Window.EMPTY;
+		}
+	}
+
+
+	/**
+	 * A time window: latency histogram and error count.
+	 */
+	private static class Window {
+
+		private static final Window EMPTY = new Window(-1);
+
+		private final LatencyHistogram histogram = new LatencyHistogram();
+
+		private final AtomicLong errorCount = new AtomicLong();
+
+		private volatile long index;
+
+		public Window(long index) {
+			this.index = index;
+		}
+
+		public void reset(long index) {
+			this.histogram.reset();
+			this.errorCount.set(0);
+			this.index = index;
+		}
+	}
+
+}
@@ -0,0 +1,484 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.interceptor;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.util.Assert;
+
+/**
+ * Interceptor that throttles concurrent access through a
+ * {@link java.util.concurrent.Semaphore}, as an alternative to the
+ * monitor-based {@link ConcurrencyThrottleInterceptor}.
+ *
+ * <p>Supports fair as well as unfair (barging) acquisition of invocation slots,
+ * and an {@link #setAcquireTimeout "acquireTimeout"} after which invocations get
+ * rejected with a {@link ConcurrencyLimitExceededException} instead of queuing
+ * up indefinitely.
+ *
+ * <p>In {@link #setAdaptive "adaptive"} mode, the concurrency limit gets adjusted
+ * from observed invocation latency, in an AIMD fashion: For every window of
+ * {@link #setSampleWindowSize "sampleWindowSize"} invocations, the average latency
+ * gets compared to the lowest average latency seen so far. If it exceeds that
+ * baseline by the {@link #setLatencyTolerance "latencyTolerance"} factor, the limit
+ * gets decreased multiplicatively, shedding load from an overloaded downstream
+ * resource; if not, and the limit has been fully used within the window, it gets
+ * increased by one. The baseline slowly drifts upwards, so that the limit is able
+ * to recover once a higher latency turns out to be the new normal.
+ *
+ * <p>The default concurrency limit of this interceptor is 1.
+ * Specify the "concurrencyLimit" bean property to change this value.
+ *
+ * @since 3.1
+ * @see #setConcurrencyLimit
+ * @see #setFair
+ * @see #setAcquireTimeout
+ * @see #setAdaptive
+ */
+public class SemaphoreConcurrencyThrottleInterceptor implements MethodInterceptor, Serializable {
+
+	/**
+	 * Wait indefinitely for an invocation slot to become available.
+	 */
+	public static final long WAIT_INDEFINITELY = -1;
+
+	private static final double DECREASE_FACTOR = 0.9;
+
+	private static final double BASELINE_DRIFT = 1.02;
+
+
+	/** Transient to optimize serialization */
+	protected transient Log logger = LogFactory.getLog(getClass());
+
+	private int concurrencyLimit = 1;
+
+	private boolean fair = false;
+
+	private long acquireTimeout = WAIT_INDEFINITELY;
+
+	private boolean adaptive = false;
+
+	private int minConcurrencyLimit = 1;
+
+	private int maxConcurrencyLimit = Integer.MAX_VALUE;
+
+	private double latencyTolerance = 2.0;
+
+	private int sampleWindowSize = 100;
+
+	private transient volatile ThrottleState state;
+
+
+	/**
+	 * Set the maximum number of concurrent invocations allowed.
+	 * <p>Can be changed at runtime. In adaptive mode, this
+	 * is the initial limit to adapt from.
+	 */
+	public void setConcurrencyLimit(int concurrencyLimit) {
+		Assert.isTrue(concurrencyLimit > 0, "'concurrencyLimit' must be at least 1");
+		synchronized (this) {
+			if (this.state != null) {
+				this.state.adjustLimit(concurrencyLimit);
+			}
+			this.concurrencyLimit = concurrencyLimit;
+		}
+	}
+
+	/**
+	 * Return the maximum number of concurrent invocations allowed,
+	 * reflecting the current limit in adaptive mode.
+	 */
+	public int getConcurrencyLimit() {
+		ThrottleState state = this.state;
+		return (state != null ? state.limit : this.concurrencyLimit);
+	}
+
+	/**
+	 * Specify whether to grant invocation slots in first-in-first-out order.
+	 * <p>Default is "false", allowing incoming invocations to barge ahead of
+	 * waiting ones - which provides higher throughput. Needs to be set
+	 * before the first invocation.
+	 * @see java.util.concurrent.Semaphore#Semaphore(int, boolean)
+	 */
+	public void setFair(boolean fair) {
+		this.fair = fair;
+	}
+
+	/**
+	 * Return whether invocation slots get granted in first-in-first-out order.
+	 */
+	public boolean isFair() {
+		return this.fair;
+	}
+
+	/**
+	 * Set the maximum time to wait for an invocation slot, in milliseconds,
+	 * before rejecting the invocation with a {@link ConcurrencyLimitExceededException}.
+	 * <p>Default is {@link #WAIT_INDEFINITELY}. Specify 0 in order to reject
+	 * invocations right away once the concurrency limit has been reached.
+	 */
+	public void setAcquireTimeout(long acquireTimeout) {
+		this.acquireTimeout = acquireTimeout;
+	}
+
+	/**
+	 * Return the maximum time to wait for an invocation slot, in milliseconds.
+	 */
+	public long getAcquireTimeout() {
+		return this.acquireTimeout;
+	}
+
+	/**
+	 * Specify whether to adapt the concurrency limit from observed latency.
+	 * <p>Default is "false", applying a fixed concurrency limit.
+	 * @see #setMinConcurrencyLimit
+	 * @see #setMaxConcurrencyLimit
+	 * @see #setLatencyTolerance
+	 * @see #setSampleWindowSize
+	 */
+	public void setAdaptive(boolean adaptive) {
+		this.adaptive = adaptive;
+	}
+
+	/**
+	 * Return whether to adapt the concurrency limit from observed latency.
+	 */
+	public boolean isAdaptive() {
+		return this.adaptive;
+	}
+
+	/**
+	 * Set the lower bound for the concurrency limit in adaptive mode. Default is 1.
+	 */
+	public void setMinConcurrencyLimit(int minConcurrencyLimit) {
+		Assert.isTrue(minConcurrencyLimit > 0, "'minConcurrencyLimit' must be at least 1");
+		this.minConcurrencyLimit = minConcurrencyLimit;
+	}
+
+	/**
+	 * Return the lower bound for the concurrency limit in adaptive mode.
+	 */
+	public int getMinConcurrencyLimit() {
+		return this.minConcurrencyLimit;
+	}
+
+	/**
+	 * Set the upper bound for the concurrency limit in adaptive mode.
+	 * Default is unbounded.
+	 */
+	public void setMaxConcurrencyLimit(int maxConcurrencyLimit) {
+		Assert.isTrue(maxConcurrencyLimit > 0, "'maxConcurrencyLimit' must be at least 1");
+		this.maxConcurrencyLimit = maxConcurrencyLimit;
+	}
+
+	/**
+	 * Return the upper bound for the concurrency limit in adaptive mode.
+	 */
+	public int getMaxConcurrencyLimit() {
+		return this.maxConcurrencyLimit;
+	}
+
+	/**
+	 * Set the factor by which the average latency of a sample window may exceed
+	 * the baseline latency before the concurrency limit gets decreased.
+	 * Default is 2.0.
+	 */
+	public void setLatencyTolerance(double latencyTolerance) {
+		Assert.isTrue(latencyTolerance >= 1.0, "'latencyTolerance' must be at least 1.0");
+		this.latencyTolerance = latencyTolerance;
+	}
+
+	/**
+	 * Return the factor by which the average latency may exceed the baseline latency.
+	 */
+	public double getLatencyTolerance() {
+		return this.latencyTolerance;
+	}
+
+	/**
+	 * Set the number of invocations to average latency over before
+	 * reconsidering the concurrency limit in adaptive mode. Default is 100.
+	 */
+	public void setSampleWindowSize(int sampleWindowSize) {
+		Assert.isTrue(sampleWindowSize > 0, "'sampleWindowSize' must be at least 1");
+		this.sampleWindowSize = sampleWindowSize;
+	}
+
+	/**
+	 * Return the number of invocations to average latency over.
+	 */
+	public int getSampleWindowSize() {
+		return this.sampleWindowSize;
+	}
+
+
+	public Object invoke(MethodInvocation methodInvocation) throws Throwable {
+		ThrottleState state = getThrottleState();
+		beforeAccess(state);
+		long startTime = System.nanoTime();
+		try {
+			return methodInvocation.proceed();
+		}
+		finally {
+			afterAccess(state, System.nanoTime() - startTime);
+		}
+	}
+
+	/**
+	 * Obtain the throttle state, lazily initializing it on first access.
+	 */
+	private ThrottleState getThrottleState() {
+		ThrottleState state = this.state;
+		if (state == null) {
+			synchronized (this) {
+				state = this.state;
+				if (state == null) {
+					state = new ThrottleState(this.concurrencyLimit, this.fair);
+					this.state = state;
+				}
+			}
+		}
+		return state;
+	}
+
+	/**
+	 * Acquire an invocation slot, waiting up to the acquire timeout.
+	 * @throws ConcurrencyLimitExceededException if no slot became available in time
+	 */
+	private void beforeAccess(ThrottleState state) {
+		long startTime = System.nanoTime();
+		boolean acquired;
+		try {
+			if (this.acquireTimeout < 0) {
+				state.semaphore.acquire();
+				acquired = true;
+			}
+			else {
+				acquired = state.semaphore.tryAcquire(this.acquireTimeout, TimeUnit.MILLISECONDS);
+			}
+		}
+		catch (InterruptedException ex) {
+			// Re-interrupt current thread, to allow other threads to react.
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Thread was interrupted while waiting for invocation access");
+		}
+		finally {
+			state.waitTime.addAndGet(System.nanoTime() - startTime);
+		}
+		if (!acquired) {
+			state.rejectedCount.incrementAndGet();
+			if (logger.isDebugEnabled()) {
+				logger.debug("Rejecting invocation: concurrency limit " + state.limit + " reached");
+			}
+			throw new ConcurrencyLimitExceededException("Concurrency limit " + state.limit +
+					" reached and no invocation slot available within " + this.acquireTimeout + " ms");
+		}
+		state.invocationCount.incrementAndGet();
+		int inFlight = state.inFlightCount.incrementAndGet();
+		if (this.adaptive) {
+			int peak = state.peakInFlightCount.get();
+			while (inFlight > peak && !state.peakInFlightCount.compareAndSet(peak, inFlight)) {
+				peak = state.peakInFlightCount.get();
+			}
+		}
+	}
+
+	/**
+	 * Release the invocation slot, recording the latency in adaptive mode.
+	 */
+	private void afterAccess(ThrottleState state, long latency) {
+		state.inFlightCount.decrementAndGet();
+		state.semaphore.release();
+		if (this.adaptive) {
+			state.windowLatency.addAndGet(latency);
+			if (state.windowSampleCount.incrementAndGet() == this.sampleWindowSize) {
+				long averageLatency = state.windowLatency.getAndSet(0) / this.sampleWindowSize;
+				int peakInFlight = state.peakInFlightCount.getAndSet(state.inFlightCount.get());
+				state.windowSampleCount.set(0);
+				adaptConcurrencyLimit(state, averageLatency, peakInFlight);
+			}
+		}
+	}
+
+	/**
+	 * Adapt the concurrency limit after a sample window has been completed.
+	 * @param averageLatency the average latency within the window, in nanoseconds
+	 * @param peakInFlight the peak number of concurrent invocations within the window
+	 */
+	private void adaptConcurrencyLimit(ThrottleState state, long averageLatency, int peakInFlight) {
+		synchronized (this) {
+			long baseline = state.baselineLatency;
+			state.baselineLatency = Math.max(baseline > 0 ?
+					Math.min(averageLatency, (long) (baseline * BASELINE_DRIFT) + 1) : averageLatency, 1);
+			int limit = state.limit;
+			int newLimit = limit;
+			if (baseline > 0 && averageLatency > baseline * this.latencyTolerance) {
+				newLimit = Math.min((int) (limit * DECREASE_FACTOR), limit - 1);
+			}
+			else if (peakInFlight >= limit) {
+				newLimit = limit + 1;
+			}
+			newLimit = Math.max(Math.min(newLimit, this.maxConcurrencyLimit), this.minConcurrencyLimit);
+			if (newLimit != limit) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Adapting concurrency limit from " + limit + " to " + newLimit +
+							" at average latency of " + averageLatency / 1000 + " microseconds (baseline " +
+							baseline / 1000 + " microseconds)");
+				}
+				state.adjustLimit(newLimit);
+			}
+		}
+	}
+
+
+	/**
+	 * Return the number of invocations currently in progress.
+	 */
+	public int getInFlightCount() {
+		ThrottleState state = this.state;
+		return (state != null ? state.inFlightCount.get() : 0);
+	}
+
+	/**
+	 * Return the number of invocations that have been admitted so far.
+	 */
+	public long getInvocationCount() {
+		ThrottleState state = this.state;
+		return (state != null ? state.invocationCount.get() : 0);
+	}
+
+	/**
+	 * Return the number of invocations that have been rejected so far.
+	 * @see #setAcquireTimeout
+	 */
+	public long getRejectedCount() {
+		ThrottleState state = this.state;
+		return (state != null ? state.rejectedCount.get() : 0);
+	}
+
+	/**
+	 * Return the total time spent waiting for invocation slots so far, in milliseconds.
+	 */
+	public long getTotalWaitTime() {
+		ThrottleState state = this.state;
+		return (state != null ? state.waitTime.get() / 1000000 : 0);
+	}
+
+	/**
+	 * Return the average time spent waiting for an invocation slot, in milliseconds,
+	 * across admitted as well as rejected invocations.
+	 */
+	public double getAverageWaitTime() {
+		ThrottleState state = this.state;
+		if (state == null) {
+			return 0;
+		}
+		long attempts = state.invocationCount.get() + state.rejectedCount.get();
+		return (attempts > 0 ? state.waitTime.get() / 1000000.0 / attempts : 0);
+	}
+
+
+	//---------------------------------------------------------------------
+	// Serialization support
+	//---------------------------------------------------------------------
+
+	private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+		// Rely on default serialization, just initialize state after deserialization.
+		ois.defaultReadObject();
+
+		// Initialize transient fields.
+		this.logger = LogFactory.getLog(getClass());
+	}
+
+
+	/**
+	 * Runtime state of the throttle: the semaphore along with the current
+	 * limit, the adaptive sample window and the metrics.
+	 */
+	private static class ThrottleState {
+
+		private final AdjustableSemaphore semaphore;
+
+		private volatile int limit;
+
+		private long baselineLatency;
+
+		private final AtomicInteger inFlightCount = new AtomicInteger();
+
+		private final AtomicInteger peakInFlightCount = new AtomicInteger();
+
+		private final AtomicLong invocationCount = new AtomicLong();
+
+		private final AtomicLong rejectedCount = new AtomicLong();
+
+		private final AtomicLong waitTime = new AtomicLong();
+
+		private final AtomicLong windowLatency = new AtomicLong();
+
+		private final AtomicInteger windowSampleCount = new AtomicInteger();
+
+		public ThrottleState(int limit, boolean fair) {
+			this.semaphore = new AdjustableSemaphore(limit, fair);
+			this.limit = limit;
+		}
+
+		/**
+		 * Adjust the number of permits to the given limit. Reducing the limit
+		 * takes effect as invocations in progress release their permits.
+		 * To be called with the interceptor's monitor held.
+		 */
+		public void adjustLimit(int newLimit) {
+			int delta = newLimit - this.limit;
+			if (delta > 0) {
+				this.semaphore.release(delta);
+			}
+			else if (delta < 0) {
+				this.semaphore.reducePermits(-delta);
+			}
+			this.limit = newLimit;
+		}
+	}
+
+
+	/**
+	 * Semaphore subclass which exposes the ability to reduce the number of permits.
+	 */
+	@SuppressWarnings("serial")
+	private static class AdjustableSemaphore extends Semaphore {
+
+		public AdjustableSemaphore(int permits, boolean fair) {
+			super(permits, fair);
+		}
+
+		@Override
+		public void reducePermits(int reduction) {
+			super.reducePermits(reduction);
+		}
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,6 +19,7 @@ package org.springframework.aop.support;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -199,6 +200,19 @@ public abstract class AopUtils {
 	 * @return whether the pointcut can apply on any method
 	 */
 	public static boolean canApply(Pointcut pc, Class<?> targetClass, boolean hasIntroductions) {
+		return canApply(pc, targetClass, hasIntroductions, null);
+	}
+
+	/**
+	 * Can the given pointcut apply at all on the given class,
+	 * checking the given candidate methods of the class?
+	 * @param candidateMethods the methods of the class and its interfaces,
+	 * as returned by {@link #getCandidateMethods}, or <code>null</code>
+	 * to retrieve them on demand
+	 */
+	private static boolean canApply(
+			Pointcut pc, Class<?> targetClass, boolean hasIntroductions, List<Method> candidateMethods) {
+
 		if (!pc.getClassFilter().matches(targetClass)) {
 			return false;
 		}
@@ -209,20 +223,36 @@ public abstract class AopUtils {
 			introductionAwareMethodMatcher = (IntroductionAwareMethodMatcher) methodMatcher;
 		}
 
+		if (candidateMethods == null) {
+			candidateMethods = getCandidateMethods(targetClass);
+		}
+		for (Method method : candidateMethods) {
+			if ((introductionAwareMethodMatcher != null &&
+					introductionAwareMethodMatcher.matches(method, targetClass, hasIntroductions)) ||
+					methodMatcher.matches(method, targetClass)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Retrieve the methods to check pointcuts against for the given class:
+	 * the public methods of the class itself and of all of its interfaces.
+	 * @param targetClass the class to introspect
+	 * @return the List of candidate methods
+	 */
+	private static List<Method> getCandidateMethods(Class<?> targetClass) {
 		Set<Class> classes = new HashSet<Class>(ClassUtils.getAllInterfacesForClassAsSet(targetClass));
 		classes.add(targetClass);
+		List<Method> candidateMethods = new ArrayList<Method>();
 		for (Class<?> clazz : classes) {
-			Method[] methods = clazz.getMethods();
-			for (Method method : methods) {
-				if ((introductionAwareMethodMatcher != null &&
-						introductionAwareMethodMatcher.matches(method, targetClass, hasIntroductions)) ||
-						methodMatcher.matches(method, targetClass)) {
-					return true;
-				}
+			for (Method method : clazz.getMethods()) {
+				candidateMethods.add(method);
 			}
 		}
-
-		return false;
+		return candidateMethods;
 	}
 
 	/**
@@ -248,12 +278,18 @@ public abstract class AopUtils {
 	 * @return whether the pointcut can apply on any method
 	 */
 	public static boolean canApply(Advisor advisor, Class<?> targetClass, boolean hasIntroductions) {
+		return canApply(advisor, targetClass, hasIntroductions, null);
+	}
+
+	private static boolean canApply(
+			Advisor advisor, Class<?> targetClass, boolean hasIntroductions, List<Method> candidateMethods) {
+
 		if (advisor instanceof IntroductionAdvisor) {
 			return ((IntroductionAdvisor) advisor).getClassFilter().matches(targetClass);
 		}
 		else if (advisor instanceof PointcutAdvisor) {
 			PointcutAdvisor pca = (PointcutAdvisor) advisor;
-			return canApply(pca.getPointcut(), targetClass, hasIntroductions);
+			return canApply(pca.getPointcut(), targetClass, hasIntroductions, candidateMethods);
 		}
 		else {
 			// It doesn't have a pointcut so we assume it applies.
@@ -264,6 +300,8 @@ public abstract class AopUtils {
 	/**
 	 * Determine the sublist of the <code>candidateAdvisors</code> list
 	 * that is applicable to the given class.
+	 * <p>The methods of the class are introspected once and shared
+	 * across the evaluation of all candidate Advisors.
 	 * @param candidateAdvisors the Advisors to evaluate
 	 * @param clazz the target class
 	 * @return sublist of Advisors that can apply to an object of the given class
@@ -280,12 +318,16 @@ public abstract class AopUtils {
 			}
 		}
 		boolean hasIntroductions = !eligibleAdvisors.isEmpty();
+		List<Method> candidateMethods = null;
 		for (Advisor candidate : candidateAdvisors) {
 			if (candidate instanceof IntroductionAdvisor) {
 				// already processed
 				continue;
 			}
-			if (canApply(candidate, clazz, hasIntroductions)) {
+			if (candidateMethods == null && candidate instanceof PointcutAdvisor) {
+				candidateMethods = getCandidateMethods(clazz);
+			}
+			if (canApply(candidate, clazz, hasIntroductions, candidateMethods)) {
 				eligibleAdvisors.add(candidate);
 			}
 		}
@@ -0,0 +1,422 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.target;
+
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TargetSource implementation that holds objects in a built-in pool,
+ * without any dependency on an external pooling library.
+ *
+ * <p>Idle objects are held in a lock-free {@link ConcurrentLinkedQueue},
+ * so that borrowing and returning objects does not involve any locking.
+ * If a {@link #setMaxSize "maxSize"} has been specified, the number of active
+ * objects is bounded through a non-fair {@link Semaphore}, with callers waiting
+ * up to {@link #setMaxWait "maxWait"} milliseconds for an object to be returned
+ * once the pool is exhausted.
+ *
+ * <p>Objects are handed out in first-in-first-out order, so the head of the
+ * idle queue is always the object that has been idle for the longest time.
+ * A background eviction run - if a {@link #setTimeBetweenEvictionRunsMillis
+ * "timeBetweenEvictionRunsMillis"} value has been specified - destroys idle
+ * objects that have been idle for longer than {@link #setMinEvictableIdleTimeMillis
+ * "minEvictableIdleTimeMillis"}, while keeping at least {@link #setMinIdle "minIdle"}
+ * objects ready for use.
+ *
+ * <p>Statistics are available through the {@link PoolingConfig} interface,
+ * optionally exposed on the proxy through {@link #getPoolingConfigMixin()},
+ * as well as through additional counters on this class.
+ *
+ * @since 3.1
+ * @see #setMaxSize
+ * @see #setMaxIdle
+ * @see #setMinIdle
+ * @see #setMaxWait
+ * @see #setTimeBetweenEvictionRunsMillis
+ * @see #setMinEvictableIdleTimeMillis
+ */
+public class ConcurrentPoolTargetSource extends AbstractPoolingTargetSource {
+
+	private int maxIdle = -1;
+
+	private int minIdle = 0;
+
+	private long maxWait = -1;
+
+	private long timeBetweenEvictionRunsMillis = -1;
+
+	private long minEvictableIdleTimeMillis = 1800000;
+
+	private final Queue<IdleObject> idleObjects = new ConcurrentLinkedQueue<IdleObject>();
+
+	private final AtomicInteger idleCount = new AtomicInteger();
+
+	private final AtomicInteger activeCount = new AtomicInteger();
+
+	private final AtomicLong borrowCount = new AtomicLong();
+
+	private final AtomicLong createdCount = new AtomicLong();
+
+	private final AtomicLong destroyedCount = new AtomicLong();
+
+	private final AtomicLong timeoutCount = new AtomicLong();
+
+	private Semaphore activePermits;
+
+	private Timer evictionTimer;
+
+	private volatile boolean closed;
+
+
+	/**
+	 * Create a ConcurrentPoolTargetSource with default settings.
+	 * Default maximum size of the pool is 8.
+	 * @see #setMaxSize
+	 */
+	public ConcurrentPoolTargetSource() {
+		setMaxSize(8);
+	}
+
+	/**
+	 * Set the maximum number of idle objects in the pool; objects returned
+	 * beyond this number get destroyed right away.
+	 * Default is -1, keeping up to the maximum size of the pool idle.
+	 */
+	public void setMaxIdle(int maxIdle) {
+		this.maxIdle = maxIdle;
+	}
+
+	/**
+	 * Return the maximum number of idle objects in the pool.
+	 */
+	public int getMaxIdle() {
+		return this.maxIdle;
+	}
+
+	/**
+	 * Set the minimum number of idle objects in the pool, created on
+	 * pool initialization and replenished during eviction runs.
+	 * Default is 0.
+	 */
+	public void setMinIdle(int minIdle) {
+		this.minIdle = minIdle;
+	}
+
+	/**
+	 * Return the minimum number of idle objects in the pool.
+	 */
+	public int getMinIdle() {
+		return this.minIdle;
+	}
+
+	/**
+	 * Set the maximum waiting time for fetching an object from an exhausted pool,
+	 * in milliseconds. Default is -1, waiting forever.
+	 * <p>If no object has been returned to the pool in time, a
+	 * {@link java.util.NoSuchElementException} will be thrown.
+	 */
+	public void setMaxWait(long maxWait) {
+		this.maxWait = maxWait;
+	}
+
+	/**
+	 * Return the maximum waiting time for fetching an object from the pool.
+	 */
+	public long getMaxWait() {
+		return this.maxWait;
+	}
+
+	/**
+	 * Set the time between eviction runs that check idle objects whether
+	 * they have been idle for too long. Default is -1, not performing any eviction.
+	 */
+	public void setTimeBetweenEvictionRunsMillis(long timeBetweenEvictionRunsMillis) {
+		this.timeBetweenEvictionRunsMillis = timeBetweenEvictionRunsMillis;
+	}
+
+	/**
+	 * Return the time between eviction runs that check idle objects.
+	 */
+	public long getTimeBetweenEvictionRunsMillis() {
+		return this.timeBetweenEvictionRunsMillis;
+	}
+
+	/**
+	 * Set the minimum time that an idle object can sit in the pool before
+	 * it becomes subject to eviction. Default is 1800000 (30 minutes).
+	 * <p>Note that eviction runs need to be performed to take this
+	 * setting into effect.
+	 * @see #setTimeBetweenEvictionRunsMillis
+	 */
+	public void setMinEvictableIdleTimeMillis(long minEvictableIdleTimeMillis) {
+		this.minEvictableIdleTimeMillis = minEvictableIdleTimeMillis;
+	}
+
+	/**
+	 * Return the minimum time that an idle object can sit in the pool.
+	 */
+	public long getMinEvictableIdleTimeMillis() {
+		return this.minEvictableIdleTimeMillis;
+	}
+
+
+	/**
+	 * Sets up the pool, creating the minimum number of idle objects
+	 * and starting the eviction timer, if necessary.
+	 */
+	@Override
+	protected final void createPool() {
+		logger.debug("Creating concurrent object pool");
+		if (getMaxSize() > 0) {
+			this.activePermits = new Semaphore(getMaxSize());
+		}
+		ensureMinIdle();
+		if (this.timeBetweenEvictionRunsMillis > 0) {
+			this.evictionTimer = new Timer("Pool evictor for bean '" + getTargetBeanName() + "'", true);
+			this.evictionTimer.schedule(new TimerTask() {
+				@Override
+				public void run() {
+					evict();
+				}
+			}, this.timeBetweenEvictionRunsMillis, this.timeBetweenEvictionRunsMillis);
+		}
+	}
+
+	/**
+	 * Borrow an object from the pool: an idle object if available,
+	 * or otherwise a newly created one.
+	 * @throws NoSuchElementException if the pool is exhausted
+	 * and no object has been returned within the maximum waiting time
+	 */
+	@Override
+	public Object getTarget() throws Exception {
+		if (this.closed) {
+			throw new IllegalStateException("Pool has been closed");
+		}
+		acquirePermit();
+		try {
+			IdleObject idleObject = this.idleObjects.poll();
+			Object target;
+			if (idleObject != null) {
+				this.idleCount.decrementAndGet();
+				target = idleObject.target;
+			}
+			else {
+				target = newPrototypeInstance();
+				this.createdCount.incrementAndGet();
+			}
+			this.activeCount.incrementAndGet();
+			this.borrowCount.incrementAndGet();
+			return target;
+		}
+		catch (RuntimeException ex) {
+			releasePermit();
+			throw ex;
+		}
+		catch (Error err) {
+			releasePermit();
+			throw err;
+		}
+	}
+
+	/**
+	 * Return the given object to the pool, or destroy it if the
+	 * maximum number of idle objects has been reached already.
+	 */
+	@Override
+	public void releaseTarget(Object target) throws Exception {
+		this.activeCount.decrementAndGet();
+		if (!this.closed && reserveIdleSlot()) {
+			this.idleObjects.offer(new IdleObject(target));
+		}
+		else {
+			destroyObject(target);
+		}
+		// Release the permit after offering the object, for the next borrower to find it.
+		releasePermit();
+	}
+
+	/**
+	 * Increment the number of idle objects unless the maximum has been reached,
+	 * atomically with respect to concurrent returns.
+	 * @return whether a slot for another idle object has been reserved
+	 */
+	private boolean reserveIdleSlot() {
+		while (true) {
+			int idle = this.idleCount.get();
+			if (this.maxIdle >= 0 && idle >= this.maxIdle) {
+				return false;
+			}
+			if (this.idleCount.compareAndSet(idle, idle + 1)) {
+				return true;
+			}
+		}
+	}
+
+	private void acquirePermit() throws InterruptedException {
+		if (this.activePermits == null) {
+			return;
+		}
+		if (this.maxWait < 0) {
+			this.activePermits.acquire();
+		}
+		else if (!this.activePermits.tryAcquire(this.maxWait, TimeUnit.MILLISECONDS)) {
+			this.timeoutCount.incrementAndGet();
+			throw new NoSuchElementException("Pool exhausted: no object returned to the pool of bean '" +
+					getTargetBeanName() + "' within " + this.maxWait + " ms");
+		}
+	}
+
+	private void releasePermit() {
+		if (this.activePermits != null) {
+			this.activePermits.release();
+		}
+	}
+
+	/**
+	 * Destroy idle objects that have been idle for too long, keeping
+	 * at least the minimum number of idle objects around.
+	 * <p>Only ever removes the current head of the idle queue, so that
+	 * the order of the remaining idle objects is preserved.
+	 */
+	protected void evict() {
+		long threshold = System.currentTimeMillis() - this.minEvictableIdleTimeMillis;
+		IdleObject head;
+		while ((head = this.idleObjects.peek()) != null && head.idleSince <= threshold) {
+			int idle = this.idleCount.get();
+			if (idle <= this.minIdle) {
+				break;
+			}
+			if (!this.idleCount.compareAndSet(idle, idle - 1)) {
+				// Concurrent borrow or return - check again.
+				continue;
+			}
+			if (this.idleObjects.remove(head)) {
+				destroyObject(head.target);
+			}
+			else {
+				// Borrowed in the meantime - the borrower has decremented the count itself.
+				this.idleCount.incrementAndGet();
+			}
+		}
+		ensureMinIdle();
+	}
+
+	/**
+	 * Create idle objects until the minimum number of idle objects has been reached.
+	 */
+	private void ensureMinIdle() {
+		while (!this.closed && this.idleCount.get() < this.minIdle &&
+				(getMaxSize() < 0 || this.idleCount.get() + this.activeCount.get() < getMaxSize())) {
+			try {
+				Object target = newPrototypeInstance();
+				this.createdCount.incrementAndGet();
+				this.idleCount.incrementAndGet();
+				this.idleObjects.offer(new IdleObject(target));
+			}
+			catch (RuntimeException ex) {
+				logger.warn("Could not create idle object for pool of bean '" + getTargetBeanName() + "'", ex);
+				break;
+			}
+		}
+	}
+
+	private void destroyObject(Object target) {
+		this.destroyedCount.incrementAndGet();
+		destroyPrototypeInstance(target);
+	}
+
+
+	public int getActiveCount() throws UnsupportedOperationException {
+		return this.activeCount.get();
+	}
+
+	public int getIdleCount() throws UnsupportedOperationException {
+		return this.idleCount.get();
+	}
+
+	/**
+	 * Return the number of times an object has been borrowed from the pool.
+	 */
+	public long getBorrowCount() {
+		return this.borrowCount.get();
+	}
+
+	/**
+	 * Return the number of objects created for the pool.
+	 */
+	public long getCreatedCount() {
+		return this.createdCount.get();
+	}
+
+	/**
+	 * Return the number of objects destroyed by the pool.
+	 */
+	public long getDestroyedCount() {
+		return this.destroyedCount.get();
+	}
+
+	/**
+	 * Return the number of attempts to borrow an object from
+	 * the exhausted pool that have timed out.
+	 */
+	public long getTimeoutCount() {
+		return this.timeoutCount.get();
+	}
+
+
+	/**
+	 * Stops the eviction timer and destroys all idle objects when destroying
+	 * this object. Active objects get destroyed when being returned.
+	 */
+	public void destroy() {
+		logger.debug("Closing concurrent object pool");
+		this.closed = true;
+		if (this.evictionTimer != null) {
+			this.evictionTimer.cancel();
+		}
+		IdleObject idleObject;
+		while ((idleObject = this.idleObjects.poll()) != null) {
+			this.idleCount.decrementAndGet();
+			destroyObject(idleObject.target);
+		}
+	}
+
+
+	/**
+	 * Holder for an idle object, along with the time it has been returned to the pool.
+	 */
+	private static class IdleObject {
+
+		private final Object target;
+
+		private final long idleSince = System.currentTimeMillis();
+
+		public IdleObject(Object target) {
+			this.target = target;
+		}
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,6 +16,7 @@
 
 package org.springframework.aop.framework;
 
+import java.io.IOException;
 import javax.accessibility.Accessible;
 import javax.swing.*;
 
@@ -322,6 +323,86 @@ public final class ProxyFactoryTests {
 		assertEquals(TestBean.class, AopProxyUtils.ultimateTargetClass(proxy2));
 	}
 
+	@Test
+	public void testFrozenJdkProxyInvokesTargetDirectly() {
+		TestBean target = new TestBean();
+		ProxyFactory pf = new ProxyFactory(target);
+		final NopInterceptor nop = new NopInterceptor();
+		pf.addAdvice(new MethodInterceptor() {
+			public Object invoke(MethodInvocation invocation) throws Throwable {
+				assertNotSame(ReflectiveMethodInvocation.class, invocation.getClass());
+				return nop.invoke(invocation);
+			}
+		});
+		pf.setFrozen(true);
+		ITestBean proxy = (ITestBean) pf.getProxy();
+		assertTrue(AopUtils.isJdkDynamicProxy(proxy));
+		proxy.setAge(26);
+		assertEquals(26, proxy.getAge());
+		assertEquals(26, proxy.haveBirthday());
+		assertEquals(27, target.getAge());
+		assertSame(proxy, proxy.returnsThis());
+		assertEquals(4, nop.getCount());
+	}
+
+	@Test
+	public void testFrozenJdkProxyPropagatesExceptions() throws Throwable {
+		ProxyFactory pf = new ProxyFactory(new TestBean());
+		pf.setFrozen(true);
+		ITestBean proxy = (ITestBean) pf.getProxy();
+		IOException ex = new IOException();
+		try {
+			proxy.exceptional(ex);
+			fail("Should have thrown IOException");
+		}
+		catch (IOException actual) {
+			assertSame(ex, actual);
+		}
+		pf = new ProxyFactory(new TestBean());
+		pf.addAdvice(new NopInterceptor());
+		pf.setFrozen(true);
+		proxy = (ITestBean) pf.getProxy();
+		try {
+			proxy.exceptional(ex);
+			fail("Should have thrown IOException");
+		}
+		catch (IOException actual) {
+			assertSame(ex, actual);
+		}
+	}
+
+	@Test
+	public void testFrozenJdkProxyWithModifiedArguments() {
+		TestBean target = new TestBean();
+		ProxyFactory pf = new ProxyFactory(target);
+		pf.addAdvice(new MethodInterceptor() {
+			public Object invoke(MethodInvocation invocation) throws Throwable {
+				if (invocation.getMethod().getName().equals("setName")) {
+					((ReflectiveMethodInvocation) invocation).setArguments(new Object[] {"modified"});
+				}
+				return invocation.proceed();
+			}
+		});
+		pf.setFrozen(true);
+		ITestBean proxy = (ITestBean) pf.getProxy();
+		proxy.setName("original");
+		assertEquals("modified", target.getName());
+	}
+
+	@Test
+	public void testFrozenProxyChainIsRecomputedAfterUnfreezing() {
+		ProxyFactory pf = new ProxyFactory(new TestBean());
+		NopInterceptor nop = new NopInterceptor();
+		pf.setFrozen(true);
+		ITestBean proxy = (ITestBean) pf.getProxy();
+		proxy.getAge();
+		pf.setFrozen(false);
+		pf.addAdvice(nop);
+		pf.setFrozen(true);
+		proxy.getAge();
+		assertEquals(1, nop.getCount());
+	}
+
 	@Test
 	@Ignore("Not implemented yet, see http://jira.springframework.org/browse/SPR-5708")
 	public void testExclusionOfNonPublicInterfaces() {
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.framework;
+
+import org.junit.Test;
+import test.aop.NopInterceptor;
+import test.beans.ITestBean;
+import test.beans.TestBean;
+
+import org.springframework.util.StopWatch;
+
+/**
+ * Benchmarks for advised invocations through JDK and CGLIB proxies,
+ * comparing regular configurations with frozen ones.
+ *
+ * NOTE: No assertions!
+ *
+ * @since 3.1
+ */
+public final class ProxyInvocationBenchmarkTests {
+
+	/** Increase this if you want meaningful results! */
+	private static final int INVOCATIONS = 100000;
+
+	/** Typical number of interceptors on a service bean */
+	private static final int INTERCEPTORS = 4;
+
+
+	@Test
+	public void timeAdvisedInvocations() {
+		StopWatch sw = new StopWatch();
+		TestBean target = new TestBean();
+
+		timeInvocations(sw, "JDK proxy", createProxy(target, false, false));
+		timeInvocations(sw, "frozen JDK proxy", createProxy(target, false, true));
+		timeInvocations(sw, "CGLIB proxy", createProxy(target, true, false));
+		timeInvocations(sw, "frozen CGLIB proxy", createProxy(target, true, true));
+		timeInvocations(sw, "target", target);
+
+		System.out.println(sw.prettyPrint());
+	}
+
+	private ITestBean createProxy(TestBean target, boolean proxyTargetClass, boolean frozen) {
+		ProxyFactory pf = new ProxyFactory(target);
+		pf.setProxyTargetClass(proxyTargetClass);
+		for (int i = 0; i < INTERCEPTORS; i++) {
+			pf.addAdvice(new NopInterceptor());
+		}
+		pf.setFrozen(frozen);
+		return (ITestBean) pf.getProxy();
+	}
+
+	private void timeInvocations(StopWatch sw, String description, ITestBean bean) {
+		// Warm up before measuring.
+		for (int i = 0; i < INVOCATIONS; i++) {
+			bean.setAge(i);
+		}
+		sw.start(INVOCATIONS + " invocations on " + description);
+		for (int i = 0; i < INVOCATIONS; i++) {
+			bean.setAge(bean.getAge() + 1);
+		}
+		sw.stop();
+	}
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.framework.autoproxy;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import test.aop.NopInterceptor;
+
+import org.springframework.aop.Advisor;
+import org.springframework.aop.aspectj.AspectJExpressionPointcutAdvisor;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.beans.DirectFieldAccessor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link CandidateAdvisorIndex}, also verifying that the index
+ * never filters out an Advisor that would apply according to full matching.
+ */
+public class CandidateAdvisorIndexTests {
+
+	private static final String PREFIX = "org.springframework.aop.framework.autoproxy.CandidateAdvisorIndexTests";
+
+
+	private final CandidateAdvisorIndex index = new CandidateAdvisorIndex();
+
+
+	@Test
+	public void methodAnnotation() {
+		Advisor advisor = createAdvisor("@annotation(" + PREFIX + ".MethodMarker)");
+		assertPlausible(advisor, AnnotatedMethodBean.class, true);
+		assertPlausible(advisor, InheritingAnnotatedMethodBean.class, true);
+		assertPlausible(advisor, PlainBean.class, false);
+	}
+
+	@Test
+	public void classAnnotation() {
+		Advisor advisor = createAdvisor("@within(" + PREFIX + ".ClassMarker)");
+		assertPlausible(advisor, AnnotatedClassBean.class, true);
+		assertPlausible(advisor, InheritingAnnotatedClassBean.class, true);
+		assertPlausible(advisor, PlainBean.class, false);
+	}
+
+	@Test
+	public void packagePrefix() {
+		assertPlausible(createAdvisor("within(org.springframework.aop..*)"), PlainBean.class, true);
+		assertPlausible(createAdvisor("within(test.beans.*)"), PlainBean.class, false);
+		assertPlausible(createAdvisor("within(java.lang..*)"), PlainBean.class, false);
+	}
+
+	@Test
+	public void conjunction() {
+		Advisor advisor = createAdvisor(
+				"execution(* *(..)) && @annotation(" + PREFIX + ".MethodMarker) and within(org.springframework..*)");
+		assertPlausible(advisor, AnnotatedMethodBean.class, true);
+		assertPlausible(advisor, PlainBean.class, false);
+	}
+
+	@Test
+	public void unsupportedExpressionsAreAlwaysPlausible() {
+		assertPlausible(createAdvisor("@annotation(" + PREFIX + ".MethodMarker) || execution(* get*(..))"),
+				PlainBean.class, true);
+		assertPlausible(createAdvisor("execution(* *(..)) && !@annotation(" + PREFIX + ".MethodMarker)"),
+				PlainBean.class, true);
+		assertPlausible(createAdvisor("execution(* get*(..))"), PlainBean.class, true);
+		assertPlausible(new DefaultPointcutAdvisor(new NopInterceptor()), PlainBean.class, true);
+	}
+
+	@Test
+	public void orderIsPreserved() {
+		Advisor first = new DefaultPointcutAdvisor(new NopInterceptor());
+		Advisor filtered = createAdvisor("within(java.lang..*)");
+		Advisor last = createAdvisor("within(org.springframework..*)");
+		List<Advisor> candidates = Arrays.asList(first, filtered, last);
+		assertEquals(Arrays.asList(first, last), this.index.findPlausibleAdvisors(candidates, PlainBean.class));
+		candidates = Arrays.asList(first, last);
+		assertSame(candidates, this.index.findPlausibleAdvisors(candidates, PlainBean.class));
+	}
+
+	@Test
+	public void recreatedAdvisorsShareCacheEntry() {
+		for (int i = 0; i < 10; i++) {
+			assertPlausible(createAdvisor("within(java.lang..*)"), PlainBean.class, false);
+			assertPlausible(new DefaultPointcutAdvisor(new NopInterceptor()), PlainBean.class, true);
+		}
+		Map<?, ?> cache = (Map<?, ?>) new DirectFieldAccessor(this.index).getPropertyValue("conditionCache");
+		assertEquals(1, cache.size());
+	}
+
+
+	private AspectJExpressionPointcutAdvisor createAdvisor(String expression) {
+		AspectJExpressionPointcutAdvisor advisor = new AspectJExpressionPointcutAdvisor();
+		advisor.setExpression(expression);
+		advisor.setAdvice(new NopInterceptor());
+		return advisor;
+	}
+
+	private void assertPlausible(Advisor advisor, Class<?> beanClass, boolean expected) {
+		List<Advisor> candidates = new ArrayList<Advisor>();
+		candidates.add(advisor);
+		boolean plausible = !this.index.findPlausibleAdvisors(candidates, beanClass).isEmpty();
+		assertEquals(expected, plausible);
+		if (!plausible) {
+			assertFalse("Index must not filter out applicable Advisor", AopUtils.canApply(advisor, beanClass));
+		}
+	}
+
+
+	@Retention(RetentionPolicy.RUNTIME)
+	@Target(ElementType.METHOD)
+	public @interface MethodMarker {
+	}
+
+
+	@Retention(RetentionPolicy.RUNTIME)
+	@Target(ElementType.TYPE)
+	@Inherited
+	public @interface ClassMarker {
+	}
+
+
+	public static class PlainBean {
+
+		public void doSomething() {
+		}
+	}
+
+
+	public static class AnnotatedMethodBean {
+
+		@MethodMarker
+		public void doSomething() {
+		}
+	}
+
+
+	public static class InheritingAnnotatedMethodBean extends AnnotatedMethodBean {
+
+		public void doSomethingElse() {
+		}
+	}
+
+
+	@ClassMarker
+	public static class AnnotatedClassBean {
+
+		public void doSomething() {
+		}
+	}
+
+
+	public static class InheritingAnnotatedClassBean extends AnnotatedClassBean {
+	}
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.interceptor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.aop.framework.ProxyFactory;
+
+import test.beans.ITestBean;
+import test.beans.TestBean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link LatencyMonitoringInterceptor}.
+ */
+public class LatencyMonitoringInterceptorTests {
+
+	private static final String GET_AGE = ITestBean.class.getName() + ".getAge";
+
+	private static final String EXCEPTIONAL = ITestBean.class.getName() + ".exceptional";
+
+	private final AtomicLong clock = new AtomicLong(TimeUnit.SECONDS.toNanos(100));
+
+	private final AtomicLong invocationTime = new AtomicLong();
+
+	private LatencyMonitoringInterceptor interceptor;
+
+	private ITestBean proxy;
+
+
+	@Before
+	public void setUp() {
+		this.interceptor = new LatencyMonitoringInterceptor() {
+			@Override
+			protected long currentTimeNanos() {
+				return clock.get();
+			}
+		};
+		this.interceptor.setWindowMillis(1000);
+		ProxyFactory pf = new ProxyFactory(new TestBean());
+		pf.addAdvice(this.interceptor);
+		pf.addAdvice(new MethodInterceptor() {
+			public Object invoke(MethodInvocation invocation) throws Throwable {
+				clock.addAndGet(invocationTime.get());
+				return invocation.proceed();
+			}
+		});
+		this.proxy = (ITestBean) pf.getProxy();
+	}
+
+	private void invokeGetAge(long millis, int times) {
+		this.invocationTime.set(TimeUnit.MILLISECONDS.toNanos(millis));
+		for (int i = 0; i < times; i++) {
+			this.proxy.getAge();
+		}
+	}
+
+	private void advanceClock(long millis) {
+		this.clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+	}
+
+
+	@Test
+	public void percentilesReportedForCompletedWindow() {
+		invokeGetAge(1, 98);
+		invokeGetAge(100, 2);
+		assertArrayEquals(new String[] {GET_AGE}, this.interceptor.getMonitoredMethods());
+		assertEquals(100, this.interceptor.getInvocationCount(GET_AGE));
+		// Current window not completed yet
+		assertEquals(0, this.interceptor.getWindowInvocationCount(GET_AGE));
+
+		advanceClock(1000);
+		assertEquals(100, this.interceptor.getWindowInvocationCount(GET_AGE));
+		assertEquals(1.0, this.interceptor.getPercentile(GET_AGE, 50), 0.07);
+		assertEquals(100.0, this.interceptor.getPercentile(GET_AGE, 99), 7);
+		assertEquals(100.0, this.interceptor.getMaxTime(GET_AGE), 0.0);
+		assertEquals(1, this.interceptor.getWindowSummaries().length);
+		assertTrue(this.interceptor.getWindowSummaries()[0].startsWith(GET_AGE + ": count=100, errors=0"));
+	}
+
+	@Test
+	public void windowsRollOver() {
+		invokeGetAge(10, 5);
+		advanceClock(1000);
+		invokeGetAge(20, 3);
+		assertEquals(5, this.interceptor.getWindowInvocationCount(GET_AGE));
+		assertEquals(10.0, this.interceptor.getMaxTime(GET_AGE), 0.0);
+
+		advanceClock(1000);
+		assertEquals(3, this.interceptor.getWindowInvocationCount(GET_AGE));
+		assertEquals(20.0, this.interceptor.getMaxTime(GET_AGE), 0.0);
+
+		advanceClock(1000);
+		assertEquals(0, this.interceptor.getWindowInvocationCount(GET_AGE));
+		assertEquals(8, this.interceptor.getInvocationCount(GET_AGE));
+
+		// Idle for several windows, then invoked again
+		advanceClock(5000);
+		invokeGetAge(30, 1);
+		advanceClock(1000);
+		assertEquals(1, this.interceptor.getWindowInvocationCount(GET_AGE));
+		assertEquals(30.0, this.interceptor.getMaxTime(GET_AGE), 0.0);
+	}
+
+	@Test
+	public void errorsCounted() {
+		invokeGetAge(1, 2);
+		for (int i = 0; i < 3; i++) {
+			try {
+				this.proxy.exceptional(new IllegalStateException());
+				fail("Should have thrown IllegalStateException");
+			}
+			catch (Throwable ex) {
+				assertTrue(ex instanceof IllegalStateException);
+			}
+		}
+		advanceClock(1000);
+		assertEquals(0, this.interceptor.getErrorCount(GET_AGE));
+		assertEquals(3, this.interceptor.getErrorCount(EXCEPTIONAL));
+		assertEquals(3, this.interceptor.getWindowErrorCount(EXCEPTIONAL));
+		assertEquals(3, this.interceptor.getWindowInvocationCount(EXCEPTIONAL));
+		assertArrayEquals(new String[] {EXCEPTIONAL, GET_AGE}, this.interceptor.getMonitoredMethods());
+	}
+
+	@Test
+	public void unknownMethodAndReset() {
+		assertEquals(0, this.interceptor.getInvocationCount("unknown"));
+		assertEquals(0.0, this.interceptor.getPercentile("unknown", 99), 0.0);
+		assertNull(this.interceptor.getWindowHistogram("unknown"));
+
+		invokeGetAge(1, 1);
+		this.interceptor.reset();
+		assertEquals(0, this.interceptor.getMonitoredMethods().length);
+		invokeGetAge(1, 1);
+		assertEquals(1, this.interceptor.getInvocationCount(GET_AGE));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidWindow() {
+		new LatencyMonitoringInterceptor().setWindowMillis(0);
+	}
+
+}
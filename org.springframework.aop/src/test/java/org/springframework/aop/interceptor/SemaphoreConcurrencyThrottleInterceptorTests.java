@@ -0,0 +1,223 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.interceptor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import test.beans.DerivedTestBean;
+import test.beans.ITestBean;
+import test.beans.TestBean;
+import test.util.SerializationTestUtils;
+
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.framework.ProxyFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link SemaphoreConcurrencyThrottleInterceptor}.
+ */
+public class SemaphoreConcurrencyThrottleInterceptorTests {
+
+	@Test
+	public void concurrencyLimitIsEnforced() throws InterruptedException {
+		final AtomicInteger concurrency = new AtomicInteger();
+		final AtomicInteger maxConcurrency = new AtomicInteger();
+		SemaphoreConcurrencyThrottleInterceptor interceptor = new SemaphoreConcurrencyThrottleInterceptor();
+		interceptor.setConcurrencyLimit(3);
+		final ITestBean proxy = createProxy(interceptor, new TestBean() {
+			@Override
+			public String getName() {
+				int current = concurrency.incrementAndGet();
+				synchronized (maxConcurrency) {
+					maxConcurrency.set(Math.max(current, maxConcurrency.get()));
+				}
+				sleep(2);
+				concurrency.decrementAndGet();
+				return null;
+			}
+		});
+		Thread[] threads = new Thread[10];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 10; j++) {
+						proxy.getName();
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertTrue(maxConcurrency.get() <= 3);
+		assertEquals(100, interceptor.getInvocationCount());
+		assertEquals(0, interceptor.getRejectedCount());
+		assertEquals(0, interceptor.getInFlightCount());
+	}
+
+	@Test
+	public void invocationIsRejectedAfterTimeout() throws InterruptedException {
+		SemaphoreConcurrencyThrottleInterceptor interceptor = new SemaphoreConcurrencyThrottleInterceptor();
+		interceptor.setAcquireTimeout(10);
+		final CountDownLatch entered = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final ITestBean proxy = createProxy(interceptor, new TestBean() {
+			@Override
+			public String getName() {
+				entered.countDown();
+				try {
+					release.await();
+				}
+				catch (InterruptedException ex) {
+					throw new IllegalStateException(ex);
+				}
+				return "blocked";
+			}
+		});
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				proxy.getName();
+			}
+		};
+		thread.start();
+		assertTrue(entered.await(5, TimeUnit.SECONDS));
+		try {
+			proxy.getAge();
+			fail("Should have thrown ConcurrencyLimitExceededException");
+		}
+		catch (ConcurrencyLimitExceededException ex) {
+			// expected
+		}
+		assertEquals(1, interceptor.getInFlightCount());
+		assertEquals(1, interceptor.getRejectedCount());
+		assertTrue(interceptor.getTotalWaitTime() >= 9);
+		release.countDown();
+		thread.join();
+		proxy.getAge();
+		assertEquals(2, interceptor.getInvocationCount());
+	}
+
+	@Test
+	public void adaptiveLimitDecreasesOnLatencyIncrease() {
+		SemaphoreConcurrencyThrottleInterceptor interceptor = new SemaphoreConcurrencyThrottleInterceptor();
+		interceptor.setConcurrencyLimit(10);
+		interceptor.setAdaptive(true);
+		interceptor.setSampleWindowSize(5);
+		final AtomicInteger delay = new AtomicInteger();
+		ITestBean proxy = createProxy(interceptor, new TestBean() {
+			@Override
+			public String getName() {
+				sleep(delay.get());
+				return null;
+			}
+		});
+		for (int i = 0; i < 5; i++) {
+			proxy.getName();
+		}
+		assertEquals(10, interceptor.getConcurrencyLimit());
+		delay.set(20);
+		for (int i = 0; i < 5; i++) {
+			proxy.getName();
+		}
+		assertEquals(9, interceptor.getConcurrencyLimit());
+	}
+
+	@Test
+	public void adaptiveLimitIncreasesWhenSaturated() {
+		SemaphoreConcurrencyThrottleInterceptor interceptor = new SemaphoreConcurrencyThrottleInterceptor();
+		interceptor.setAdaptive(true);
+		interceptor.setSampleWindowSize(5);
+		interceptor.setLatencyTolerance(1000);
+		interceptor.setMaxConcurrencyLimit(2);
+		ITestBean proxy = createProxy(interceptor, new TestBean());
+		for (int i = 0; i < 5; i++) {
+			proxy.getName();
+		}
+		assertEquals(2, interceptor.getConcurrencyLimit());
+		for (int i = 0; i < 5; i++) {
+			proxy.getName();
+		}
+		assertEquals(2, interceptor.getConcurrencyLimit());
+	}
+
+	@Test
+	public void concurrencyLimitCanBeChangedAtRuntime() {
+		SemaphoreConcurrencyThrottleInterceptor interceptor = new SemaphoreConcurrencyThrottleInterceptor();
+		interceptor.setAcquireTimeout(0);
+		final ITestBean[] proxy = new ITestBean[1];
+		final AtomicInteger nested = new AtomicInteger();
+		proxy[0] = createProxy(interceptor, new TestBean() {
+			@Override
+			public String getName() {
+				return (nested.incrementAndGet() < 3 ? proxy[0].getName() : null);
+			}
+		});
+		try {
+			proxy[0].getName();
+			fail("Should have thrown ConcurrencyLimitExceededException");
+		}
+		catch (ConcurrencyLimitExceededException ex) {
+			// expected
+		}
+		interceptor.setConcurrencyLimit(3);
+		nested.set(0);
+		proxy[0].getName();
+		assertEquals(3, nested.get());
+	}
+
+	@Test
+	public void serializable() throws Exception {
+		SemaphoreConcurrencyThrottleInterceptor interceptor = new SemaphoreConcurrencyThrottleInterceptor();
+		interceptor.setConcurrencyLimit(5);
+		ITestBean proxy = createProxy(interceptor, new DerivedTestBean());
+		proxy.getAge();
+
+		ITestBean serializedProxy = (ITestBean) SerializationTestUtils.serializeAndDeserialize(proxy);
+		SemaphoreConcurrencyThrottleInterceptor serializedInterceptor =
+				(SemaphoreConcurrencyThrottleInterceptor) ((Advised) serializedProxy).getAdvisors()[0].getAdvice();
+		assertEquals(5, serializedInterceptor.getConcurrencyLimit());
+		assertEquals(0, serializedInterceptor.getInvocationCount());
+		serializedProxy.getAge();
+		assertEquals(1, serializedInterceptor.getInvocationCount());
+	}
+
+
+	private static ITestBean createProxy(SemaphoreConcurrencyThrottleInterceptor interceptor, TestBean target) {
+		ProxyFactory proxyFactory = new ProxyFactory();
+		proxyFactory.setInterfaces(new Class[] {ITestBean.class});
+		proxyFactory.addAdvice(interceptor);
+		proxyFactory.setTarget(target);
+		return (ITestBean) proxyFactory.getProxy();
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+}
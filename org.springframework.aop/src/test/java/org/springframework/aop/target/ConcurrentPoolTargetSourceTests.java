@@ -0,0 +1,286 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.target;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+
+import test.beans.DerivedTestBean;
+import test.beans.ITestBean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link ConcurrentPoolTargetSource}.
+ */
+public class ConcurrentPoolTargetSourceTests {
+
+	private DefaultListableBeanFactory beanFactory;
+
+
+	@Before
+	public void setUp() {
+		this.beanFactory = new DefaultListableBeanFactory();
+		RootBeanDefinition bd = new RootBeanDefinition(DerivedTestBean.class);
+		bd.setScope(RootBeanDefinition.SCOPE_PROTOTYPE);
+		this.beanFactory.registerBeanDefinition("target", bd);
+	}
+
+	private ConcurrentPoolTargetSource createTargetSource(int maxSize) {
+		ConcurrentPoolTargetSource targetSource = new ConcurrentPoolTargetSource();
+		targetSource.setTargetBeanName("target");
+		targetSource.setMaxSize(maxSize);
+		return targetSource;
+	}
+
+
+	@Test
+	public void reuseOfReleasedObjects() throws Exception {
+		ConcurrentPoolTargetSource targetSource = createTargetSource(8);
+		targetSource.setBeanFactory(this.beanFactory);
+
+		Object first = targetSource.getTarget();
+		assertEquals(1, targetSource.getActiveCount());
+		targetSource.releaseTarget(first);
+		assertEquals(0, targetSource.getActiveCount());
+		assertEquals(1, targetSource.getIdleCount());
+
+		Object second = targetSource.getTarget();
+		assertSame(first, second);
+		Object third = targetSource.getTarget();
+		assertNotSame(second, third);
+		targetSource.releaseTarget(second);
+		targetSource.releaseTarget(third);
+
+		assertEquals(3, targetSource.getBorrowCount());
+		assertEquals(2, targetSource.getCreatedCount());
+		assertEquals(2, targetSource.getIdleCount());
+		targetSource.destroy();
+	}
+
+	@Test
+	public void exhaustedPoolTimesOut() throws Exception {
+		ConcurrentPoolTargetSource targetSource = createTargetSource(2);
+		targetSource.setMaxWait(50);
+		targetSource.setBeanFactory(this.beanFactory);
+
+		Object first = targetSource.getTarget();
+		targetSource.getTarget();
+		try {
+			targetSource.getTarget();
+			fail("Should have thrown NoSuchElementException");
+		}
+		catch (NoSuchElementException ex) {
+			// expected
+		}
+		assertEquals(1, targetSource.getTimeoutCount());
+		assertEquals(2, targetSource.getActiveCount());
+
+		targetSource.releaseTarget(first);
+		assertSame(first, targetSource.getTarget());
+		targetSource.destroy();
+	}
+
+	@Test
+	public void maxIdleDestroysSurplusObjects() throws Exception {
+		ConcurrentPoolTargetSource targetSource = createTargetSource(4);
+		targetSource.setMaxIdle(1);
+		targetSource.setBeanFactory(this.beanFactory);
+
+		DerivedTestBean first = (DerivedTestBean) targetSource.getTarget();
+		DerivedTestBean second = (DerivedTestBean) targetSource.getTarget();
+		targetSource.releaseTarget(first);
+		targetSource.releaseTarget(second);
+		assertFalse(first.wasDestroyed());
+		assertTrue(second.wasDestroyed());
+		assertEquals(1, targetSource.getIdleCount());
+		assertEquals(1, targetSource.getDestroyedCount());
+
+		targetSource.destroy();
+		assertTrue(first.wasDestroyed());
+		assertEquals(0, targetSource.getIdleCount());
+	}
+
+	@Test
+	public void minIdlePrefillAndEviction() throws Exception {
+		ConcurrentPoolTargetSource targetSource = createTargetSource(8);
+		targetSource.setMinIdle(2);
+		targetSource.setMinEvictableIdleTimeMillis(0);
+		targetSource.setBeanFactory(this.beanFactory);
+		assertEquals(2, targetSource.getIdleCount());
+		assertEquals(2, targetSource.getCreatedCount());
+
+		List<Object> targets = new ArrayList<Object>();
+		for (int i = 0; i < 5; i++) {
+			targets.add(targetSource.getTarget());
+		}
+		for (Object target : targets) {
+			targetSource.releaseTarget(target);
+		}
+		assertEquals(5, targetSource.getIdleCount());
+
+		targetSource.evict();
+		assertEquals(2, targetSource.getIdleCount());
+		assertEquals(3, targetSource.getDestroyedCount());
+		targetSource.destroy();
+	}
+
+	@Test
+	public void evictionPreservesOrderOfRemainingObjects() throws Exception {
+		ConcurrentPoolTargetSource targetSource = createTargetSource(8);
+		targetSource.setMinIdle(2);
+		targetSource.setMinEvictableIdleTimeMillis(0);
+		targetSource.setBeanFactory(this.beanFactory);
+
+		List<DerivedTestBean> targets = new ArrayList<DerivedTestBean>();
+		for (int i = 0; i < 5; i++) {
+			targets.add((DerivedTestBean) targetSource.getTarget());
+		}
+		for (Object target : targets) {
+			targetSource.releaseTarget(target);
+		}
+		targetSource.evict();
+		for (int i = 0; i < 3; i++) {
+			assertTrue(targets.get(i).wasDestroyed());
+		}
+		assertSame(targets.get(3), targetSource.getTarget());
+		assertSame(targets.get(4), targetSource.getTarget());
+		targetSource.destroy();
+	}
+
+	@Test
+	public void concurrentReturnsRespectMaxIdle() throws Exception {
+		ConcurrentPoolTargetSource targetSource = createTargetSource(16);
+		targetSource.setMaxIdle(2);
+		targetSource.setBeanFactory(this.beanFactory);
+
+		final List<Object> targets = new ArrayList<Object>();
+		for (int i = 0; i < 16; i++) {
+			targets.add(targetSource.getTarget());
+		}
+		final ConcurrentPoolTargetSource ts = targetSource;
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (final Object target : targets) {
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					try {
+						startLatch.await();
+						ts.releaseTarget(target);
+					}
+					catch (Exception ex) {
+						throw new IllegalStateException(ex);
+					}
+				}
+			};
+			thread.start();
+			threads.add(thread);
+		}
+		startLatch.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(2, targetSource.getIdleCount());
+		assertEquals(14, targetSource.getDestroyedCount());
+		targetSource.destroy();
+	}
+
+	@Test
+	public void backgroundEviction() throws Exception {
+		ConcurrentPoolTargetSource targetSource = createTargetSource(8);
+		targetSource.setTimeBetweenEvictionRunsMillis(10);
+		targetSource.setMinEvictableIdleTimeMillis(0);
+		targetSource.setBeanFactory(this.beanFactory);
+
+		DerivedTestBean target = (DerivedTestBean) targetSource.getTarget();
+		targetSource.releaseTarget(target);
+		for (int i = 0; i < 100 && !target.wasDestroyed(); i++) {
+			Thread.sleep(10);
+		}
+		assertTrue(target.wasDestroyed());
+		assertEquals(0, targetSource.getIdleCount());
+		targetSource.destroy();
+	}
+
+	@Test
+	public void concurrentInvocationsThroughProxy() throws Exception {
+		final ConcurrentPoolTargetSource targetSource = createTargetSource(4);
+		targetSource.setBeanFactory(this.beanFactory);
+		ProxyFactory pf = new ProxyFactory();
+		pf.setInterfaces(new Class[] {ITestBean.class});
+		pf.setTargetSource(targetSource);
+		final ITestBean proxy = (ITestBean) pf.getProxy();
+
+		final AtomicInteger failures = new AtomicInteger();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 8; i++) {
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int j = 0; j < 1000; j++) {
+							proxy.getAge();
+						}
+					}
+					catch (Throwable ex) {
+						failures.incrementAndGet();
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(0, failures.get());
+		assertEquals(8000, targetSource.getBorrowCount());
+		assertEquals(0, targetSource.getActiveCount());
+		assertTrue(targetSource.getCreatedCount() <= 4);
+		assertEquals(targetSource.getCreatedCount(), targetSource.getIdleCount());
+		targetSource.destroy();
+	}
+
+	@Test
+	public void closedPoolRejectsBorrowing() throws Exception {
+		ConcurrentPoolTargetSource targetSource = createTargetSource(8);
+		targetSource.setBeanFactory(this.beanFactory);
+		DerivedTestBean target = (DerivedTestBean) targetSource.getTarget();
+		targetSource.destroy();
+		try {
+			targetSource.getTarget();
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			// expected
+		}
+		targetSource.releaseTarget(target);
+		assertTrue(target.wasDestroyed());
+	}
+
+}
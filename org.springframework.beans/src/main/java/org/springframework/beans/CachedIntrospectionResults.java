@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,19 +16,26 @@
 
 package org.springframework.beans;
 
+import java.beans.BeanDescriptor;
 import java.beans.BeanInfo;
 import java.beans.IntrospectionException;
 import java.beans.Introspector;
 import java.beans.PropertyDescriptor;
+import java.beans.SimpleBeanInfo;
 import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
-import java.util.WeakHashMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -48,6 +55,14 @@ import org.springframework.util.StringUtils;
  * objects of this class for every JavaBean we manipulate. Hence, this class
  * implements the factory design pattern, using a private constructor and
  * a static {@link #forClass(Class)} factory method to obtain instances.
+ * The cache is keyed by weakly referenced classes and can be read concurrently
+ * without locking.
+ *
+ * <p>For common JavaBeans - no custom BeanInfo class, no indexed accessors,
+ * no non-void setters, no JDK superclass - property descriptors are derived
+ * straight from the class's public accessor methods, avoiding the expensive
+ * {@link java.beans.Introspector} run. All other classes go through the
+ * Introspector as usual.
  *
  * @author Rod Johnson
  * @author Juergen Hoeller
@@ -67,11 +82,11 @@ public class CachedIntrospectionResults {
 	static final Set<ClassLoader> acceptedClassLoaders = Collections.synchronizedSet(new HashSet<ClassLoader>());
 
 	/**
-	 * Map keyed by class containing CachedIntrospectionResults.
-	 * Needs to be a WeakHashMap with WeakReferences as values to allow
-	 * for proper garbage collection in case of multiple class loaders.
+	 * Cache keyed by class containing CachedIntrospectionResults.
+	 * Needs to have weak keys and WeakReferences as values (for non-cache-safe
+	 * classes) to allow for proper garbage collection in case of multiple class loaders.
 	 */
-	static final Map<Class, Object> classCache = Collections.synchronizedMap(new WeakHashMap<Class, Object>());
+	static final ClassCache classCache = new ClassCache();
 
 
 	/**
@@ -103,14 +118,7 @@ public class CachedIntrospectionResults {
 		if (classLoader == null) {
 			return;
 		}
-		synchronized (classCache) {
-			for (Iterator<Class> it = classCache.keySet().iterator(); it.hasNext();) {
-				Class beanClass = it.next();
-				if (isUnderneathClassLoader(beanClass.getClassLoader(), classLoader)) {
-					it.remove();
-				}
-			}
-		}
+		classCache.removeUnderneath(classLoader);
 		synchronized (acceptedClassLoaders) {
 			for (Iterator<ClassLoader> it = acceptedClassLoaders.iterator(); it.hasNext();) {
 				ClassLoader registeredLoader = it.next();
@@ -204,6 +212,104 @@ public class CachedIntrospectionResults {
 	}
 
 
+	/**
+	 * Derive PropertyDescriptors for the given class from its public accessor
+	 * methods, following the JavaBeans naming conventions.
+	 * @param beanClass the bean class to analyze
+	 * @return the PropertyDescriptors sorted by name, or <code>null</code> if the
+	 * class needs to be processed by the Introspector (custom BeanInfo, indexed
+	 * or non-void setter methods, ambiguous accessors, JDK, abstract or interface types)
+	 */
+	static PropertyDescriptor[] buildPropertyDescriptors(Class beanClass) throws IntrospectionException {
+		if (beanClass.isInterface() || beanClass.isArray() || beanClass.isPrimitive() ||
+				Modifier.isAbstract(beanClass.getModifiers())) {
+			return null;
+		}
+		for (Class clazz = beanClass; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+			String className = clazz.getName();
+			if (className.startsWith("java.") || className.startsWith("javax.") ||
+					ClassUtils.isPresent(className + "BeanInfo", clazz.getClassLoader())) {
+				return null;
+			}
+		}
+		Map<String, Method> readMethods = new HashMap<String, Method>();
+		Map<String, Method> writeMethods = new HashMap<String, Method>();
+		Set<String> names = new HashSet<String>();
+		for (Method method : beanClass.getMethods()) {
+			String methodName = method.getName();
+			Class[] paramTypes = method.getParameterTypes();
+			if (Modifier.isStatic(method.getModifiers())) {
+				if (methodName.startsWith("set") && paramTypes.length == 1) {
+					// ExtendedBeanInfo exposes static setters as well
+					return null;
+				}
+				continue;
+			}
+			String propertyName;
+			if (methodName.startsWith("get") && methodName.length() > 3) {
+				if (paramTypes.length > 0) {
+					if (paramTypes.length == 1 && paramTypes[0] == int.class) {
+						return null;
+					}
+					continue;
+				}
+				if (method.getReturnType() == void.class) {
+					continue;
+				}
+				propertyName = Introspector.decapitalize(methodName.substring(3));
+				if (readMethods.put(propertyName, method) != null) {
+					return null;
+				}
+			}
+			else if (methodName.startsWith("is") && methodName.length() > 2) {
+				if (paramTypes.length > 0 || method.getReturnType() != boolean.class) {
+					continue;
+				}
+				propertyName = Introspector.decapitalize(methodName.substring(2));
+				if (readMethods.put(propertyName, method) != null) {
+					return null;
+				}
+			}
+			else if (methodName.startsWith("set") && methodName.length() > 3) {
+				if (paramTypes.length == 2 && paramTypes[0] == int.class) {
+					return null;
+				}
+				if (paramTypes.length != 1) {
+					continue;
+				}
+				if (method.getReturnType() != void.class) {
+					return null;
+				}
+				propertyName = Introspector.decapitalize(methodName.substring(3));
+				if (writeMethods.put(propertyName, method) != null) {
+					return null;
+				}
+			}
+			else {
+				continue;
+			}
+			Class declaringClass = method.getDeclaringClass();
+			if (method.isBridge() || declaringClass.isInterface() || !Modifier.isPublic(declaringClass.getModifiers())) {
+				// Introspector resolves bridge methods, interface methods and accessors on
+				// non-public classes specifically
+				return null;
+			}
+			names.add(propertyName);
+		}
+		Map<String, PropertyDescriptor> pds = new TreeMap<String, PropertyDescriptor>();
+		for (String name : names) {
+			Method readMethod = readMethods.get(name);
+			Method writeMethod = writeMethods.get(name);
+			if (readMethod != null && writeMethod != null &&
+					!readMethod.getReturnType().equals(writeMethod.getParameterTypes()[0])) {
+				return null;
+			}
+			pds.put(name, new PropertyDescriptor(name, readMethod, writeMethod));
+		}
+		return pds.values().toArray(new PropertyDescriptor[pds.size()]);
+	}
+
+
 	/** The BeanInfo object for the introspected bean class */
 	private final BeanInfo beanInfo;
 
@@ -221,18 +327,24 @@ public class CachedIntrospectionResults {
 			if (logger.isTraceEnabled()) {
 				logger.trace("Getting BeanInfo for class [" + beanClass.getName() + "]");
 			}
-			this.beanInfo = new ExtendedBeanInfo(Introspector.getBeanInfo(beanClass));
-
-			// Immediately remove class from Introspector cache, to allow for proper
-			// garbage collection on class loader shutdown - we cache it here anyway,
-			// in a GC-friendly manner. In contrast to CachedIntrospectionResults,
-			// Introspector does not use WeakReferences as values of its WeakHashMap!
-			Class classToFlush = beanClass;
-			do {
-				Introspector.flushFromCaches(classToFlush);
-				classToFlush = classToFlush.getSuperclass();
+			PropertyDescriptor[] simplePds = buildPropertyDescriptors(beanClass);
+			if (simplePds != null) {
+				this.beanInfo = new SimplePropertyBeanInfo(beanClass, simplePds);
+			}
+			else {
+				this.beanInfo = new ExtendedBeanInfo(Introspector.getBeanInfo(beanClass));
+
+				// Immediately remove class from Introspector cache, to allow for proper
+				// garbage collection on class loader shutdown - we cache it here anyway,
+				// in a GC-friendly manner. In contrast to CachedIntrospectionResults,
+				// Introspector does not use WeakReferences as values of its WeakHashMap!
+				Class classToFlush = beanClass;
+				do {
+					Introspector.flushFromCaches(classToFlush);
+					classToFlush = classToFlush.getSuperclass();
+				}
+				while (classToFlush != null);
 			}
-			while (classToFlush != null);
 
 			if (logger.isTraceEnabled()) {
 				logger.trace("Caching PropertyDescriptors for class [" + beanClass.getName() + "]");
@@ -305,4 +417,130 @@ public class CachedIntrospectionResults {
 		}
 	}
 
+
+	/**
+	 * BeanInfo holding the PropertyDescriptors derived by
+	 * {@link CachedIntrospectionResults#buildPropertyDescriptors}.
+	 */
+	private static class SimplePropertyBeanInfo extends SimpleBeanInfo {
+
+		private final BeanDescriptor beanDescriptor;
+
+		private final PropertyDescriptor[] propertyDescriptors;
+
+		public SimplePropertyBeanInfo(Class beanClass, PropertyDescriptor[] propertyDescriptors) {
+			this.beanDescriptor = new BeanDescriptor(beanClass);
+			this.propertyDescriptors = propertyDescriptors;
+		}
+
+		@Override
+		public BeanDescriptor getBeanDescriptor() {
+			return this.beanDescriptor;
+		}
+
+		@Override
+		public PropertyDescriptor[] getPropertyDescriptors() {
+			return this.propertyDescriptors;
+		}
+	}
+
+
+	/**
+	 * Concurrent cache with weakly referenced Class keys, allowing for lock-free
+	 * reads. Entries for garbage-collected classes are purged on write.
+	 */
+	static class ClassCache {
+
+		private final Map<Object, Object> entries = new ConcurrentHashMap<Object, Object>(64);
+
+		private final ReferenceQueue<Class> queue = new ReferenceQueue<Class>();
+
+		public Object get(Class clazz) {
+			return this.entries.get(new LookupKey(clazz));
+		}
+
+		public boolean containsKey(Class clazz) {
+			return this.entries.containsKey(new LookupKey(clazz));
+		}
+
+		public void put(Class clazz, Object value) {
+			purgeStaleEntries();
+			this.entries.put(new WeakClassKey(clazz, this.queue), value);
+		}
+
+		public void removeUnderneath(ClassLoader classLoader) {
+			for (Iterator<Object> it = this.entries.keySet().iterator(); it.hasNext();) {
+				Class clazz = ((WeakClassKey) it.next()).get();
+				if (clazz == null || isUnderneathClassLoader(clazz.getClassLoader(), classLoader)) {
+					it.remove();
+				}
+			}
+		}
+
+		private void purgeStaleEntries() {
+			Reference<? extends Class> ref;
+			while ((ref = this.queue.poll()) != null) {
+				this.entries.remove(ref);
+			}
+		}
+	}
+
+
+	/**
+	 * Weakly referenced map key, comparing classes by identity.
+	 */
+	private static class WeakClassKey extends WeakReference<Class> {
+
+		private final int hash;
+
+		public WeakClassKey(Class clazz, ReferenceQueue<Class> queue) {
+			super(clazz, queue);
+			this.hash = System.identityHashCode(clazz);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			Class clazz = get();
+			if (clazz == null) {
+				return false;
+			}
+			if (other instanceof WeakClassKey) {
+				return (((WeakClassKey) other).get() == clazz);
+			}
+			return (other instanceof LookupKey && ((LookupKey) other).clazz == clazz);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+	}
+
+
+	/**
+	 * Short-lived key for cache lookups, matching a {@link WeakClassKey}
+	 * for the same class.
+	 */
+	private static class LookupKey {
+
+		private final Class clazz;
+
+		public LookupKey(Class clazz) {
+			this.clazz = clazz;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return (other instanceof WeakClassKey && ((WeakClassKey) other).get() == this.clazz);
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(this.clazz);
+		}
+	}
+
 }
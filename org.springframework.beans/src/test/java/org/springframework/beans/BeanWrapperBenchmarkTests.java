@@ -0,0 +1,106 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.beans;
+
+import java.beans.Introspector;
+
+import org.junit.Test;
+
+import org.springframework.util.StopWatch;
+
+import test.beans.TestBean;
+
+/**
+ * Benchmarks for BeanWrapper property access on nested property paths,
+ * single-threaded and concurrent, as well as for introspection.
+ *
+ * NOTE: No assertions!
+ *
+ * @since 3.1
+ */
+public final class BeanWrapperBenchmarkTests {
+
+	/** Increase this if you want meaningful results! */
+	private static final int ITERATIONS = 20000;
+
+	private static final int THREADS = 4;
+
+
+	@Test
+	public void timeNestedPropertyAccess() throws Exception {
+		StopWatch sw = new StopWatch();
+		sw.start(ITERATIONS + " nested property accesses, 1 thread");
+		new PropertyAccessRun(ITERATIONS).run();
+		sw.stop();
+
+		Thread[] threads = new Thread[THREADS];
+		for (int i = 0; i < THREADS; i++) {
+			threads[i] = new Thread(new PropertyAccessRun(ITERATIONS));
+		}
+		sw.start(ITERATIONS * THREADS + " nested property accesses, " + THREADS + " threads");
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		sw.stop();
+		System.out.println(sw.prettyPrint());
+	}
+
+	@Test
+	public void timeIntrospection() throws Exception {
+		StopWatch sw = new StopWatch();
+		sw.start(ITERATIONS / 100 + " Introspector runs");
+		for (int i = 0; i < ITERATIONS / 100; i++) {
+			new ExtendedBeanInfo(Introspector.getBeanInfo(TestBean.class)).getPropertyDescriptors();
+			Introspector.flushFromCaches(TestBean.class);
+		}
+		sw.stop();
+		sw.start(ITERATIONS / 100 + " simple property descriptor builds");
+		for (int i = 0; i < ITERATIONS / 100; i++) {
+			CachedIntrospectionResults.buildPropertyDescriptors(TestBean.class);
+		}
+		sw.stop();
+		System.out.println(sw.prettyPrint());
+	}
+
+
+	private static class PropertyAccessRun implements Runnable {
+
+		private final int iterations;
+
+		public PropertyAccessRun(int iterations) {
+			this.iterations = iterations;
+		}
+
+		public void run() {
+			TestBean tb = new TestBean();
+			TestBean spouse = new TestBean();
+			spouse.setSpouse(new TestBean());
+			tb.setSpouse(spouse);
+			for (int i = 0; i < this.iterations; i++) {
+				BeanWrapper bw = new BeanWrapperImpl(tb);
+				bw.setPropertyValue("spouse.name", "name" + i);
+				bw.setPropertyValue("spouse.spouse.age", i);
+				bw.getPropertyValue("spouse.spouse.age");
+				bw.getPropertyValue("spouse.name");
+			}
+		}
+	}
+
+}
@@ -18,6 +18,9 @@ package org.springframework.beans;
 
 import static org.junit.Assert.*;
 
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+
 import org.junit.Test;
 import org.springframework.core.OverridingClassLoader;
 
@@ -50,4 +53,63 @@ public final class CachedIntrospectionResultsTests {
 		assertTrue(CachedIntrospectionResults.classCache.containsKey(TestBean.class));
 	}
 
+	@Test
+	public void testSimplePropertyDescriptorsMatchIntrospector() throws Exception {
+		PropertyDescriptor[] pds = CachedIntrospectionResults.buildPropertyDescriptors(TestBean.class);
+		assertNotNull(pds);
+		PropertyDescriptor[] expected = new ExtendedBeanInfo(Introspector.getBeanInfo(TestBean.class)).getPropertyDescriptors();
+		assertEquals(expected.length, pds.length);
+		for (int i = 0; i < pds.length; i++) {
+			assertEquals(expected[i].getName(), pds[i].getName());
+			assertEquals(expected[i].getReadMethod(), pds[i].getReadMethod());
+			assertEquals(expected[i].getWriteMethod(), pds[i].getWriteMethod());
+			assertEquals(expected[i].getPropertyType(), pds[i].getPropertyType());
+		}
+	}
+
+	@Test
+	public void testIntrospectorFallback() throws Exception {
+		// indexed accessors
+		assertNull(CachedIntrospectionResults.buildPropertyDescriptors(IndexedBean.class));
+		// non-void setter
+		assertNull(CachedIntrospectionResults.buildPropertyDescriptors(FluentBean.class));
+		// JDK class
+		assertNull(CachedIntrospectionResults.buildPropertyDescriptors(java.util.Date.class));
+		// interface
+		assertNull(CachedIntrospectionResults.buildPropertyDescriptors(Runnable.class));
+
+		BeanWrapper bw = new BeanWrapperImpl(new FluentBean());
+		bw.setPropertyValue("name", "fluent");
+		assertEquals("fluent", bw.getPropertyValue("name"));
+	}
+
+
+	public static class IndexedBean {
+
+		private final String[] values = new String[2];
+
+		public String getValue(int index) {
+			return this.values[index];
+		}
+
+		public void setValue(int index, String value) {
+			this.values[index] = value;
+		}
+	}
+
+
+	public static class FluentBean {
+
+		private String name;
+
+		public String getName() {
+			return this.name;
+		}
+
+		public FluentBean setName(String name) {
+			this.name = name;
+			return this;
+		}
+	}
+
 }
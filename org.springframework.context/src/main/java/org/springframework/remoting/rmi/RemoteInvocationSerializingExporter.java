@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2008 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -23,7 +23,10 @@ import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.rmi.RemoteException;
 
+import org.springframework.beans.factory.BeanClassLoaderAware;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.serializer.Deserializer;
+import org.springframework.core.serializer.Serializer;
 import org.springframework.remoting.support.RemoteInvocation;
 import org.springframework.remoting.support.RemoteInvocationBasedExporter;
 import org.springframework.remoting.support.RemoteInvocationResult;
@@ -37,7 +40,10 @@ import org.springframework.util.ClassUtils;
  * for example Spring's HTTP invoker.
  *
  * <p>Provides template methods for <code>ObjectInputStream</code> and
- * <code>ObjectOutputStream</code> handling.
+ * <code>ObjectOutputStream</code> handling. Alternatively, a custom
+ * {@link org.springframework.core.serializer.Serializer} and
+ * {@link org.springframework.core.serializer.Deserializer} may be
+ * specified for a wire format other than Java serialization.
  *
  * @author Juergen Hoeller
  * @since 2.5.1
@@ -45,6 +51,8 @@ import org.springframework.util.ClassUtils;
  * @see java.io.ObjectOutputStream
  * @see #doReadRemoteInvocation
  * @see #doWriteRemoteInvocationResult
+ * @see #setSerializer
+ * @see #setDeserializer
  */
 public abstract class RemoteInvocationSerializingExporter extends RemoteInvocationBasedExporter
 		implements InitializingBean {
@@ -57,6 +65,10 @@ public abstract class RemoteInvocationSerializingExporter extends RemoteInvocati
 
 	private String contentType = CONTENT_TYPE_SERIALIZED_OBJECT;
 
+	private Serializer<Object> serializer;
+
+	private Deserializer<Object> deserializer;
+
 	private Object proxy;
 
 
@@ -77,6 +89,46 @@ public abstract class RemoteInvocationSerializingExporter extends RemoteInvocati
 	}
 
 
+	/**
+	 * Specify a custom Serializer to use for writing remote invocation results,
+	 * for example a {@link org.springframework.remoting.support.CompactRemoteInvocationSerializer}.
+	 * <p>Default is none, writing results through standard Java serialization
+	 * (see {@link #createObjectOutputStream} and {@link #doWriteRemoteInvocationResult}).
+	 * Note that the client side needs to use a corresponding Deserializer.
+	 */
+	public void setSerializer(Serializer<Object> serializer) {
+		this.serializer = serializer;
+	}
+
+	/**
+	 * Return the custom Serializer to use for writing remote invocation results,
+	 * if any.
+	 */
+	public Serializer<Object> getSerializer() {
+		return this.serializer;
+	}
+
+	/**
+	 * Specify a custom Deserializer to use for reading remote invocations,
+	 * for example a {@link org.springframework.remoting.support.CompactRemoteInvocationSerializer}.
+	 * <p>Default is none, reading invocations through standard Java serialization
+	 * (see {@link #createObjectInputStream} and {@link #doReadRemoteInvocation}).
+	 * A Deserializer that implements {@link BeanClassLoaderAware} will receive
+	 * this exporter's bean ClassLoader on initialization.
+	 */
+	public void setDeserializer(Deserializer<Object> deserializer) {
+		this.deserializer = deserializer;
+	}
+
+	/**
+	 * Return the custom Deserializer to use for reading remote invocations,
+	 * if any.
+	 */
+	public Deserializer<Object> getDeserializer() {
+		return this.deserializer;
+	}
+
+
 	public void afterPropertiesSet() {
 		prepare();
 	}
@@ -85,6 +137,9 @@ public abstract class RemoteInvocationSerializingExporter extends RemoteInvocati
 	 * Initialize this service exporter.
 	 */
 	public void prepare() {
+		if (this.deserializer instanceof BeanClassLoaderAware) {
+			((BeanClassLoaderAware) this.deserializer).setBeanClassLoader(getBeanClassLoader());
+		}
 		this.proxy = getProxyForService();
 	}
 
@@ -158,4 +213,38 @@ public abstract class RemoteInvocationSerializingExporter extends RemoteInvocati
 		oos.writeObject(result);
 	}
 
+
+	/**
+	 * Read a RemoteInvocation from the given InputStream,
+	 * using the configured {@link #setDeserializer Deserializer}.
+	 * @param is the InputStream to read from
+	 * @return the RemoteInvocation object
+	 * @throws java.io.IOException in case of I/O failure
+	 * @see #getDeserializer()
+	 */
+	protected RemoteInvocation deserializeRemoteInvocation(InputStream is) throws IOException {
+		Assert.state(this.deserializer != null, "No Deserializer specified");
+		Object obj = this.deserializer.deserialize(is);
+		if (!(obj instanceof RemoteInvocation)) {
+			throw new RemoteException("Deserialized object needs to be assignable to type [" +
+					RemoteInvocation.class.getName() + "]: " + obj);
+		}
+		return (RemoteInvocation) obj;
+	}
+
+	/**
+	 * Write the given RemoteInvocationResult to the given OutputStream,
+	 * using the configured {@link #setSerializer Serializer}.
+	 * @param result the RemoteInvocationResult object
+	 * @param os the OutputStream to write to
+	 * @throws java.io.IOException in case of I/O failure
+	 * @see #getSerializer()
+	 */
+	protected void serializeRemoteInvocationResult(RemoteInvocationResult result, OutputStream os)
+			throws IOException {
+
+		Assert.state(this.serializer != null, "No Serializer specified");
+		this.serializer.serialize(result, os);
+	}
+
 }
@@ -0,0 +1,804 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.remoting.support;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.BeanClassLoaderAware;
+import org.springframework.core.ConfigurableObjectInputStream;
+import org.springframework.core.NestedIOException;
+import org.springframework.core.serializer.Deserializer;
+import org.springframework.core.serializer.Serializer;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Compact binary {@link Serializer} and {@link Deserializer} for
+ * {@link RemoteInvocation} and {@link RemoteInvocationResult} objects,
+ * as an alternative to standard Java serialization for remoting
+ * protocols such as Spring's HTTP invoker.
+ *
+ * <p>Writes method names, parameter types and common argument types
+ * (primitive wrappers, Strings, Dates, enums, arrays, ArrayLists,
+ * HashMaps and LinkedHashMaps) in a tagged binary format, with each
+ * class name transferred only once per message. Resolved classes are
+ * cached across messages, avoiding repeated class loading on the
+ * receiving side. Any other argument, return value or exception is
+ * transferred as an embedded Java serialization block. Custom
+ * RemoteInvocation and RemoteInvocationResult subclasses are
+ * transferred through Java serialization as a whole.
+ *
+ * <p>Object identity is preserved for all mutable values written by this
+ * codec, including self-referencing arrays and collections. However, each
+ * embedded Java serialization block is self-contained: an object reachable
+ * both from within such a block and from elsewhere in the message will
+ * arrive as separate copies. Use standard Java serialization for object
+ * graphs that depend on identity across such values.
+ *
+ * <p>The number of elements per array, collection and map accepted by the
+ * deserializer is limited through {@link #setMaxCollectionSize}, protecting
+ * the receiving side against excessive allocation for corrupt messages.
+ *
+ * <p>Both sides of a remoting connection need to use this codec:
+ * its format is not compatible with Java serialization streams.
+ * Note that this deserializer buffers the given InputStream and may
+ * therefore read beyond the end of the current message.
+ *
+ * @since 3.1
+ * @see org.springframework.remoting.rmi.RemoteInvocationSerializingExporter#setSerializer
+ * @see org.springframework.remoting.rmi.RemoteInvocationSerializingExporter#setDeserializer
+ */
+public class CompactRemoteInvocationSerializer
+		implements Serializer<Object>, Deserializer<Object>, BeanClassLoaderAware {
+
+	/**
+	 * Content type for messages written by this codec:
+	 * "application/x-spring-remote-invocation"
+	 */
+	public static final String CONTENT_TYPE_COMPACT_REMOTE_INVOCATION = "application/x-spring-remote-invocation";
+
+
+	private static final int MAGIC = 0x5352;
+
+	private static final int VERSION = 1;
+
+	private static final int KIND_INVOCATION = 1;
+
+	private static final int KIND_RESULT = 2;
+
+	private static final int KIND_SERIALIZED = 3;
+
+	private static final int CLASS_NEW = 0;
+
+	private static final int CLASS_REF = 1;
+
+	private static final int TAG_NULL = 0;
+
+	private static final int TAG_TRUE = 1;
+
+	private static final int TAG_FALSE = 2;
+
+	private static final int TAG_BYTE = 3;
+
+	private static final int TAG_SHORT = 4;
+
+	private static final int TAG_CHAR = 5;
+
+	private static final int TAG_INT = 6;
+
+	private static final int TAG_LONG = 7;
+
+	private static final int TAG_FLOAT = 8;
+
+	private static final int TAG_DOUBLE = 9;
+
+	private static final int TAG_STRING = 10;
+
+	private static final int TAG_BYTE_ARRAY = 11;
+
+	private static final int TAG_PRIMITIVE_ARRAY = 12;
+
+	private static final int TAG_OBJECT_ARRAY = 13;
+
+	private static final int TAG_ARRAY_LIST = 14;
+
+	private static final int TAG_HASH_MAP = 15;
+
+	private static final int TAG_LINKED_HASH_MAP = 16;
+
+	private static final int TAG_DATE = 17;
+
+	private static final int TAG_ENUM = 18;
+
+	private static final int TAG_SERIALIZED = 19;
+
+	private static final int TAG_REF = 20;
+
+	private static final int BUFFER_SIZE = 4096;
+
+	private static final String UTF8 = "UTF-8";
+
+
+	private volatile ClassLoader beanClassLoader = ClassUtils.getDefaultClassLoader();
+
+	private int maxCollectionSize = 1024 * 1024;
+
+	private final Map<String, Class<?>> classCache = new ConcurrentHashMap<String, Class<?>>();
+
+
+	public void setBeanClassLoader(ClassLoader classLoader) {
+		this.beanClassLoader = classLoader;
+		this.classCache.clear();
+	}
+
+	/**
+	 * Set the maximum number of elements per array, collection or map
+	 * to accept when deserializing. Default is 1048576.
+	 * <p>Messages exceeding this limit will be rejected with an IOException.
+	 * Byte arrays and Strings are not subject to this limit: their content
+	 * is read in chunks, allocating memory only for data actually received.
+	 */
+	public void setMaxCollectionSize(int maxCollectionSize) {
+		this.maxCollectionSize = maxCollectionSize;
+	}
+
+	/**
+	 * Return the maximum number of elements per array, collection or map
+	 * to accept when deserializing.
+	 */
+	public int getMaxCollectionSize() {
+		return this.maxCollectionSize;
+	}
+
+
+	/**
+	 * Write the given RemoteInvocation or RemoteInvocationResult to the
+	 * given OutputStream. Any other object gets written through Java
+	 * serialization.
+	 */
+	public void serialize(Object object, OutputStream outputStream) throws IOException {
+		DataOutputStream out = new DataOutputStream(outputStream);
+		out.writeShort(MAGIC);
+		out.writeByte(VERSION);
+		WriteContext context = new WriteContext(out);
+		if (object != null && object.getClass() == RemoteInvocation.class) {
+			out.writeByte(KIND_INVOCATION);
+			writeRemoteInvocation((RemoteInvocation) object, context);
+		}
+		else if (object != null && object.getClass() == RemoteInvocationResult.class) {
+			out.writeByte(KIND_RESULT);
+			writeRemoteInvocationResult((RemoteInvocationResult) object, context);
+		}
+		else {
+			out.writeByte(KIND_SERIALIZED);
+			writeSerialized(object, context);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Read a RemoteInvocation or RemoteInvocationResult from the given
+	 * InputStream, as written by {@link #serialize}.
+	 */
+	public Object deserialize(InputStream inputStream) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+		if (in.readUnsignedShort() != MAGIC) {
+			throw new IOException("Stream does not contain a compact remote invocation message");
+		}
+		int version = in.readUnsignedByte();
+		if (version != VERSION) {
+			throw new IOException("Unsupported compact remote invocation message version: " + version);
+		}
+		ReadContext context = new ReadContext(in);
+		int kind = in.readUnsignedByte();
+		try {
+			switch (kind) {
+				case KIND_INVOCATION:
+					return readRemoteInvocation(context);
+				case KIND_RESULT:
+					return readRemoteInvocationResult(context);
+				case KIND_SERIALIZED:
+					return readSerialized(context);
+				default:
+					throw new IOException("Unknown compact remote invocation message kind: " + kind);
+			}
+		}
+		catch (ClassNotFoundException ex) {
+			throw new NestedIOException("Failed to deserialize object type", ex);
+		}
+	}
+
+
+	private void writeRemoteInvocation(RemoteInvocation invocation, WriteContext context) throws IOException {
+		writeString(invocation.getMethodName(), context.out);
+		Class[] parameterTypes = invocation.getParameterTypes();
+		writeLength(parameterTypes, context.out);
+		if (parameterTypes != null) {
+			for (Class parameterType : parameterTypes) {
+				writeClass(parameterType, context);
+			}
+		}
+		Object[] arguments = invocation.getArguments();
+		writeLength(arguments, context.out);
+		if (arguments != null) {
+			for (Object argument : arguments) {
+				writeValue(argument, context);
+			}
+		}
+		Map<String, Serializable> attributes = invocation.getAttributes();
+		if (attributes == null) {
+			writeVarInt(-1, context.out);
+		}
+		else {
+			writeVarInt(attributes.size(), context.out);
+			for (Map.Entry<String, Serializable> entry : attributes.entrySet()) {
+				writeString(entry.getKey(), context.out);
+				writeValue(entry.getValue(), context);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private RemoteInvocation readRemoteInvocation(ReadContext context) throws IOException, ClassNotFoundException {
+		RemoteInvocation invocation = new RemoteInvocation();
+		invocation.setMethodName(readString(context.in));
+		int parameterCount = readCollectionSize(context, true);
+		if (parameterCount >= 0) {
+			Class[] parameterTypes = new Class[parameterCount];
+			for (int i = 0; i < parameterCount; i++) {
+				parameterTypes[i] = readClass(context);
+			}
+			invocation.setParameterTypes(parameterTypes);
+		}
+		int argumentCount = readCollectionSize(context, true);
+		if (argumentCount >= 0) {
+			Object[] arguments = new Object[argumentCount];
+			for (int i = 0; i < argumentCount; i++) {
+				arguments[i] = readValue(context);
+			}
+			invocation.setArguments(arguments);
+		}
+		int attributeCount = readCollectionSize(context, true);
+		if (attributeCount >= 0) {
+			Map<String, Serializable> attributes = new HashMap<String, Serializable>(attributeCount * 2);
+			for (int i = 0; i < attributeCount; i++) {
+				attributes.put(readString(context.in), (Serializable) readValue(context));
+			}
+			invocation.setAttributes(attributes);
+		}
+		return invocation;
+	}
+
+	private void writeRemoteInvocationResult(RemoteInvocationResult result, WriteContext context) throws IOException {
+		if (result.hasException()) {
+			context.out.writeBoolean(true);
+			writeSerialized(result.getException(), context);
+		}
+		else {
+			context.out.writeBoolean(false);
+			writeValue(result.getValue(), context);
+		}
+	}
+
+	private RemoteInvocationResult readRemoteInvocationResult(ReadContext context)
+			throws IOException, ClassNotFoundException {
+
+		if (context.in.readBoolean()) {
+			return new RemoteInvocationResult((Throwable) readSerialized(context));
+		}
+		else {
+			return new RemoteInvocationResult(readValue(context));
+		}
+	}
+
+
+	private void writeValue(Object value, WriteContext context) throws IOException {
+		DataOutputStream out = context.out;
+		if (value == null) {
+			out.writeByte(TAG_NULL);
+			return;
+		}
+		Class<?> type = value.getClass();
+		if (type != String.class && !ClassUtils.isPrimitiveWrapper(type) && !(value instanceof Enum)) {
+			// Mutable value: write a back-reference if already written within this message.
+			Integer handle = context.handles.get(value);
+			if (handle != null) {
+				out.writeByte(TAG_REF);
+				writeVarInt(handle, out);
+				return;
+			}
+			context.handles.put(value, context.handles.size());
+		}
+		if (type == String.class) {
+			out.writeByte(TAG_STRING);
+			writeString((String) value, out);
+		}
+		else if (type == Integer.class) {
+			out.writeByte(TAG_INT);
+			writeVarInt((Integer) value, out);
+		}
+		else if (type == Long.class) {
+			out.writeByte(TAG_LONG);
+			writeVarLong((Long) value, out);
+		}
+		else if (type == Boolean.class) {
+			out.writeByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+		}
+		else if (type == Double.class) {
+			out.writeByte(TAG_DOUBLE);
+			out.writeDouble((Double) value);
+		}
+		else if (type == Float.class) {
+			out.writeByte(TAG_FLOAT);
+			out.writeFloat((Float) value);
+		}
+		else if (type == Short.class) {
+			out.writeByte(TAG_SHORT);
+			out.writeShort((Short) value);
+		}
+		else if (type == Byte.class) {
+			out.writeByte(TAG_BYTE);
+			out.writeByte((Byte) value);
+		}
+		else if (type == Character.class) {
+			out.writeByte(TAG_CHAR);
+			out.writeChar((Character) value);
+		}
+		else if (type == Date.class) {
+			out.writeByte(TAG_DATE);
+			out.writeLong(((Date) value).getTime());
+		}
+		else if (type == byte[].class) {
+			byte[] bytes = (byte[]) value;
+			out.writeByte(TAG_BYTE_ARRAY);
+			writeVarInt(bytes.length, out);
+			out.write(bytes);
+		}
+		else if (type.isArray()) {
+			Class<?> componentType = type.getComponentType();
+			int length = Array.getLength(value);
+			if (componentType.isPrimitive()) {
+				out.writeByte(TAG_PRIMITIVE_ARRAY);
+				writeClass(componentType, context);
+				writeVarInt(length, out);
+				for (int i = 0; i < length; i++) {
+					writePrimitive(componentType, Array.get(value, i), out);
+				}
+			}
+			else {
+				out.writeByte(TAG_OBJECT_ARRAY);
+				writeClass(componentType, context);
+				writeVarInt(length, out);
+				Object[] array = (Object[]) value;
+				for (Object element : array) {
+					writeValue(element, context);
+				}
+			}
+		}
+		else if (type == ArrayList.class) {
+			List<?> list = (List<?>) value;
+			out.writeByte(TAG_ARRAY_LIST);
+			writeVarInt(list.size(), out);
+			for (Object element : list) {
+				writeValue(element, context);
+			}
+		}
+		else if (type == HashMap.class || type == LinkedHashMap.class) {
+			Map<?, ?> map = (Map<?, ?>) value;
+			out.writeByte(type == HashMap.class ? TAG_HASH_MAP : TAG_LINKED_HASH_MAP);
+			writeVarInt(map.size(), out);
+			for (Map.Entry<?, ?> entry : map.entrySet()) {
+				writeValue(entry.getKey(), context);
+				writeValue(entry.getValue(), context);
+			}
+		}
+		else if (value instanceof Enum) {
+			out.writeByte(TAG_ENUM);
+			writeClass(((Enum<?>) value).getDeclaringClass(), context);
+			writeString(((Enum<?>) value).name(), out);
+		}
+		else {
+			out.writeByte(TAG_SERIALIZED);
+			writeSerialized(value, context);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Object readValue(ReadContext context) throws IOException, ClassNotFoundException {
+		DataInputStream in = context.in;
+		int tag = in.readUnsignedByte();
+		switch (tag) {
+			case TAG_NULL:
+				return null;
+			case TAG_TRUE:
+				return Boolean.TRUE;
+			case TAG_FALSE:
+				return Boolean.FALSE;
+			case TAG_BYTE:
+				return in.readByte();
+			case TAG_SHORT:
+				return in.readShort();
+			case TAG_CHAR:
+				return in.readChar();
+			case TAG_INT:
+				return readVarInt(in);
+			case TAG_LONG:
+				return readVarLong(in);
+			case TAG_FLOAT:
+				return in.readFloat();
+			case TAG_DOUBLE:
+				return in.readDouble();
+			case TAG_STRING:
+				return readString(in);
+			case TAG_DATE:
+				return registerHandle(new Date(in.readLong()), context);
+			case TAG_BYTE_ARRAY:
+				return registerHandle(readBytes(readLength(in), in), context);
+			case TAG_PRIMITIVE_ARRAY: {
+				Class<?> componentType = readClass(context);
+				int length = readCollectionSize(context, false);
+				Object array = registerHandle(Array.newInstance(componentType, length), context);
+				for (int i = 0; i < length; i++) {
+					Array.set(array, i, readPrimitive(componentType, in));
+				}
+				return array;
+			}
+			case TAG_OBJECT_ARRAY: {
+				Class<?> componentType = readClass(context);
+				int length = readCollectionSize(context, false);
+				Object[] array = (Object[]) registerHandle(Array.newInstance(componentType, length), context);
+				for (int i = 0; i < length; i++) {
+					array[i] = readValue(context);
+				}
+				return array;
+			}
+			case TAG_ARRAY_LIST: {
+				int size = readCollectionSize(context, false);
+				List<Object> list = (List<Object>) registerHandle(new ArrayList<Object>(size), context);
+				for (int i = 0; i < size; i++) {
+					list.add(readValue(context));
+				}
+				return list;
+			}
+			case TAG_HASH_MAP:
+			case TAG_LINKED_HASH_MAP: {
+				int size = readCollectionSize(context, false);
+				Map<Object, Object> map = (Map<Object, Object>) registerHandle(tag == TAG_HASH_MAP ?
+						new HashMap<Object, Object>(size * 2) : new LinkedHashMap<Object, Object>(size * 2), context);
+				for (int i = 0; i < size; i++) {
+					map.put(readValue(context), readValue(context));
+				}
+				return map;
+			}
+			case TAG_ENUM: {
+				Class enumType = readClass(context);
+				if (!enumType.isEnum()) {
+					throw new IOException("Invalid enum type in compact remote invocation message: " +
+							enumType.getName());
+				}
+				String name = readString(in);
+				try {
+					return Enum.valueOf(enumType, name);
+				}
+				catch (IllegalArgumentException ex) {
+					throw new NestedIOException("Unknown enum constant in compact remote invocation message: " +
+							enumType.getName() + "." + name, ex);
+				}
+			}
+			case TAG_SERIALIZED:
+				return registerHandle(readSerialized(context), context);
+			case TAG_REF: {
+				int handle = readVarInt(in);
+				if (handle < 0 || handle >= context.handles.size()) {
+					throw new IOException("Invalid object reference in compact remote invocation message: " + handle);
+				}
+				return context.handles.get(handle);
+			}
+			default:
+				throw new IOException("Unknown value tag in compact remote invocation message: " + tag);
+		}
+	}
+
+	private void writePrimitive(Class<?> type, Object value, DataOutputStream out) throws IOException {
+		if (type == int.class) {
+			writeVarInt((Integer) value, out);
+		}
+		else if (type == long.class) {
+			writeVarLong((Long) value, out);
+		}
+		else if (type == double.class) {
+			out.writeDouble((Double) value);
+		}
+		else if (type == float.class) {
+			out.writeFloat((Float) value);
+		}
+		else if (type == boolean.class) {
+			out.writeBoolean((Boolean) value);
+		}
+		else if (type == short.class) {
+			out.writeShort((Short) value);
+		}
+		else if (type == char.class) {
+			out.writeChar((Character) value);
+		}
+		else {
+			out.writeByte((Byte) value);
+		}
+	}
+
+	private Object readPrimitive(Class<?> type, DataInputStream in) throws IOException {
+		if (type == int.class) {
+			return readVarInt(in);
+		}
+		else if (type == long.class) {
+			return readVarLong(in);
+		}
+		else if (type == double.class) {
+			return in.readDouble();
+		}
+		else if (type == float.class) {
+			return in.readFloat();
+		}
+		else if (type == boolean.class) {
+			return in.readBoolean();
+		}
+		else if (type == short.class) {
+			return in.readShort();
+		}
+		else if (type == char.class) {
+			return in.readChar();
+		}
+		else {
+			return in.readByte();
+		}
+	}
+
+	private void writeSerialized(Object value, WriteContext context) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+		ObjectOutputStream oos = new ObjectOutputStream(baos);
+		oos.writeObject(value);
+		oos.flush();
+		writeVarInt(baos.size(), context.out);
+		baos.writeTo(context.out);
+	}
+
+	private Object readSerialized(ReadContext context) throws IOException, ClassNotFoundException {
+		byte[] bytes = readBytes(readLength(context.in), context.in);
+		ObjectInputStream ois = new ConfigurableObjectInputStream(new ByteArrayInputStream(bytes), this.beanClassLoader);
+		try {
+			return ois.readObject();
+		}
+		finally {
+			ois.close();
+		}
+	}
+
+
+	private void writeClass(Class<?> clazz, WriteContext context) throws IOException {
+		Integer index = context.classIndexes.get(clazz);
+		if (index != null) {
+			context.out.writeByte(CLASS_REF);
+			writeVarInt(index, context.out);
+		}
+		else {
+			context.classIndexes.put(clazz, context.classIndexes.size());
+			context.out.writeByte(CLASS_NEW);
+			writeString(clazz.getName(), context.out);
+		}
+	}
+
+	/**
+	 * Register the given value for back-references from subsequent values.
+	 * Arrays and collections are registered before their elements are read,
+	 * in the same order in which {@link #writeValue} assigned the handles.
+	 */
+	private Object registerHandle(Object value, ReadContext context) {
+		context.handles.add(value);
+		return value;
+	}
+
+	/**
+	 * Read an element count, enforcing the "maxCollectionSize" limit.
+	 * @param nullable whether -1 is allowed, indicating a <code>null</code> array
+	 */
+	private int readCollectionSize(ReadContext context, boolean nullable) throws IOException {
+		int size = readVarInt(context.in);
+		if (size < (nullable ? -1 : 0) || size > this.maxCollectionSize) {
+			throw new IOException("Invalid element count in compact remote invocation message: " + size +
+					" (maxCollectionSize is " + this.maxCollectionSize + ")");
+		}
+		return size;
+	}
+
+	private Class<?> readClass(ReadContext context) throws IOException, ClassNotFoundException {
+		int marker = context.in.readUnsignedByte();
+		if (marker == CLASS_REF) {
+			int index = readVarInt(context.in);
+			if (index < 0 || index >= context.classes.size()) {
+				throw new IOException("Invalid class reference in compact remote invocation message: " + index);
+			}
+			return context.classes.get(index);
+		}
+		Class<?> clazz = resolveClass(readString(context.in));
+		context.classes.add(clazz);
+		return clazz;
+	}
+
+	/**
+	 * Resolve the given class name against the bean ClassLoader,
+	 * caching the result for subsequent messages.
+	 */
+	private Class<?> resolveClass(String className) throws ClassNotFoundException {
+		Class<?> clazz = this.classCache.get(className);
+		if (clazz == null) {
+			clazz = ClassUtils.forName(className, this.beanClassLoader);
+			this.classCache.put(className, clazz);
+		}
+		return clazz;
+	}
+
+
+	private static void writeLength(Object[] array, DataOutputStream out) throws IOException {
+		writeVarInt(array != null ? array.length : -1, out);
+	}
+
+	private static void writeString(String value, DataOutputStream out) throws IOException {
+		if (value == null) {
+			writeVarInt(-1, out);
+			return;
+		}
+		byte[] bytes = value.getBytes(UTF8);
+		writeVarInt(bytes.length, out);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = readVarInt(in);
+		if (length < 0) {
+			return null;
+		}
+		return new String(readBytes(length, in), UTF8);
+	}
+
+	private static int readLength(DataInputStream in) throws IOException {
+		int length = readVarInt(in);
+		if (length < 0) {
+			throw new IOException("Invalid length in compact remote invocation message: " + length);
+		}
+		return length;
+	}
+
+	/**
+	 * Read the given number of bytes, allocating a larger array only
+	 * once the corresponding content has actually been received.
+	 */
+	private static byte[] readBytes(int length, DataInputStream in) throws IOException {
+		if (length <= BUFFER_SIZE) {
+			byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			return bytes;
+		}
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(BUFFER_SIZE);
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int remaining = length;
+		while (remaining > 0) {
+			int count = Math.min(remaining, BUFFER_SIZE);
+			in.readFully(buffer, 0, count);
+			baos.write(buffer, 0, count);
+			remaining -= count;
+		}
+		return baos.toByteArray();
+	}
+
+	private static void writeVarInt(int value, DataOutputStream out) throws IOException {
+		int zigZag = (value << 1) ^ (value >> 31);
+		while ((zigZag & ~0x7F) != 0) {
+			out.writeByte((zigZag & 0x7F) | 0x80);
+			zigZag >>>= 7;
+		}
+		out.writeByte(zigZag);
+	}
+
+	private static int readVarInt(DataInputStream in) throws IOException {
+		int result = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = in.readUnsignedByte();
+			result |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return (result >>> 1) ^ -(result & 1);
+			}
+		}
+		throw new IOException("Malformed variable-length int in compact remote invocation message");
+	}
+
+	private static void writeVarLong(long value, DataOutputStream out) throws IOException {
+		long zigZag = (value << 1) ^ (value >> 63);
+		while ((zigZag & ~0x7FL) != 0) {
+			out.writeByte((int) ((zigZag & 0x7F) | 0x80));
+			zigZag >>>= 7;
+		}
+		out.writeByte((int) zigZag);
+	}
+
+	private static long readVarLong(DataInputStream in) throws IOException {
+		long result = 0;
+		for (int shift = 0; shift < 70; shift += 7) {
+			int b = in.readUnsignedByte();
+			result |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return (result >>> 1) ^ -(result & 1);
+			}
+		}
+		throw new IOException("Malformed variable-length long in compact remote invocation message");
+	}
+
+
+	/**
+	 * Per-message state on the writing side: the class descriptors and
+	 * mutable values written so far, for back-references to repeated ones.
+	 */
+	private static class WriteContext {
+
+		public final DataOutputStream out;
+
+		public final Map<Class<?>, Integer> classIndexes = new IdentityHashMap<Class<?>, Integer>(8);
+
+		public final Map<Object, Integer> handles = new IdentityHashMap<Object, Integer>(16);
+
+		public WriteContext(DataOutputStream out) {
+			this.out = out;
+		}
+	}
+
+
+	/**
+	 * Per-message state on the reading side: the classes resolved and
+	 * mutable values read so far, in the order of their occurrence
+	 * within the message.
+	 */
+	private static class ReadContext {
+
+		public final DataInputStream in;
+
+		public final List<Class<?>> classes = new ArrayList<Class<?>>(8);
+
+		public final List<Object> handles = new ArrayList<Object>(16);
+
+		public ReadContext(DataInputStream in) {
+			this.in = in;
+		}
+	}
+
+}
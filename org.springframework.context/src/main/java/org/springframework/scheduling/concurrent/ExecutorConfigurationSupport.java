@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2009 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,7 +16,12 @@
 
 package org.springframework.scheduling.concurrent;
 
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -34,6 +39,14 @@ import org.springframework.beans.factory.InitializingBean;
  * (typically a {@link java.util.concurrent.ThreadPoolExecutor}).
  * Defines common configuration settings and common lifecycle handling.
  *
+ * <p>Also provides optional runtime statistics for the tasks passing through
+ * the executor, see {@link #setStatisticsEnabled}. Subclasses are expected to
+ * apply {@link #decorateTask(Runnable)} / {@link #decorateTask(Callable)} to
+ * incoming tasks (or to hand them over through {@link #submitTask}) and to
+ * report rejections via {@link #taskRejected()}. Subclasses which are not able
+ * to instrument all tasks passing through their executor should reject the
+ * "statisticsEnabled" flag in {@link #initializeExecutor}.
+ *
  * @author Juergen Hoeller
  * @since 3.0
  * @see java.util.concurrent.ExecutorService
@@ -53,10 +66,16 @@ public abstract class ExecutorConfigurationSupport extends CustomizableThreadFac
 
 	private boolean waitForTasksToCompleteOnShutdown = false;
 
+	private boolean statisticsEnabled = false;
+
+	private long slowTaskThreshold = 0;
+
 	private String beanName;
 
 	private ExecutorService executor;
 
+	private TaskExecutionStatistics statistics;
+
 
 	/**
 	 * Set the ThreadFactory to use for the ThreadPoolExecutor's thread pool.
@@ -94,6 +113,30 @@ public abstract class ExecutorConfigurationSupport extends CustomizableThreadFac
 		this.waitForTasksToCompleteOnShutdown = waitForJobsToCompleteOnShutdown;
 	}
 
+	/**
+	 * Set whether to collect runtime statistics for the tasks passing through
+	 * this executor: counters for submitted, rejected and completed tasks as well
+	 * as histograms for queue wait time and execution time.
+	 * <p>Default is "false", with no overhead for task execution. Statistics are
+	 * available through {@link #getStatistics()} after initialization, e.g. for
+	 * export through JMX.
+	 * @see TaskExecutionStatistics
+	 */
+	public void setStatisticsEnabled(boolean statisticsEnabled) {
+		this.statisticsEnabled = statisticsEnabled;
+	}
+
+	/**
+	 * Set the execution time in milliseconds above which a task is considered
+	 * slow, getting counted and logged at warn level. Only applicable if
+	 * statistics are enabled. Default is 0: no slow task detection.
+	 * @see #setStatisticsEnabled
+	 * @see TaskExecutionStatistics#setSlowTaskThreshold
+	 */
+	public void setSlowTaskThreshold(long slowTaskThreshold) {
+		this.slowTaskThreshold = slowTaskThreshold;
+	}
+
 	public void setBeanName(String name) {
 		this.beanName = name;
 	}
@@ -117,7 +160,13 @@ public abstract class ExecutorConfigurationSupport extends CustomizableThreadFac
 		if (!this.threadNamePrefixSet && this.beanName != null) {
 			setThreadNamePrefix(this.beanName + "-");
 		}
-		this.executor = initializeExecutor(this.threadFactory, this.rejectedExecutionHandler);
+		RejectedExecutionHandler rejectedExecutionHandler = this.rejectedExecutionHandler;
+		if (this.statisticsEnabled) {
+			this.statistics = new TaskExecutionStatistics();
+			this.statistics.setSlowTaskThreshold(this.slowTaskThreshold);
+			rejectedExecutionHandler = new StatisticsRejectedExecutionHandler(rejectedExecutionHandler, this.statistics);
+		}
+		this.executor = initializeExecutor(this.threadFactory, rejectedExecutionHandler);
 	}
 
 	/**
@@ -132,6 +181,92 @@ public abstract class ExecutorConfigurationSupport extends CustomizableThreadFac
 			ThreadFactory threadFactory, RejectedExecutionHandler rejectedExecutionHandler);
 
 
+	/**
+	 * Return the runtime statistics for this executor.
+	 * @return the statistics, or <code>null</code> if not enabled
+	 * (or if the executor hasn't been initialized yet)
+	 * @see #setStatisticsEnabled
+	 */
+	public TaskExecutionStatistics getStatistics() {
+		return this.statistics;
+	}
+
+	/**
+	 * Decorate the given task for collecting statistics, if enabled.
+	 * @param task the task to be handed to the target executor
+	 * @return the task to actually submit
+	 */
+	protected Runnable decorateTask(Runnable task) {
+		return (this.statistics != null ? this.statistics.decorate(task) : task);
+	}
+
+	/**
+	 * Decorate the given task for collecting statistics, if enabled.
+	 * @param task the task to be handed to the target executor
+	 * @return the task to actually submit
+	 */
+	protected <T> Callable<T> decorateTask(Callable<T> task) {
+		return (this.statistics != null ? this.statistics.decorate(task) : task);
+	}
+
+	/**
+	 * Decorate the given scheduled task for collecting statistics on each
+	 * of its executions, if enabled.
+	 * @param task the task to be handed to the target scheduler
+	 * @return the task to actually schedule
+	 */
+	protected Runnable decorateScheduledTask(Runnable task) {
+		return (this.statistics != null ? this.statistics.decorateScheduled(task) : task);
+	}
+
+	/**
+	 * Submit the given task to the given executor, decorated for collecting
+	 * statistics if enabled. In the latter case, cancelling the returned Future
+	 * before the task started withdraws the task from the queue size.
+	 * @param executor the target executor
+	 * @param task the task to submit
+	 * @return the Future representing the pending completion of the task
+	 * @throws java.util.concurrent.RejectedExecutionException if the executor
+	 * did not accept the task (to be reported through {@link #taskRejected()})
+	 */
+	protected Future<?> submitTask(ExecutorService executor, Runnable task) {
+		if (this.statistics == null) {
+			return executor.submit(task);
+		}
+		FutureTask<Object> future = this.statistics.decorateFuture(Executors.callable(task));
+		executor.execute(future);
+		return future;
+	}
+
+	/**
+	 * Submit the given task to the given executor, decorated for collecting
+	 * statistics if enabled. In the latter case, cancelling the returned Future
+	 * before the task started withdraws the task from the queue size.
+	 * @param executor the target executor
+	 * @param task the task to submit
+	 * @return the Future representing the pending completion of the task
+	 * @throws java.util.concurrent.RejectedExecutionException if the executor
+	 * did not accept the task (to be reported through {@link #taskRejected()})
+	 */
+	protected <T> Future<T> submitTask(ExecutorService executor, Callable<T> task) {
+		if (this.statistics == null) {
+			return executor.submit(task);
+		}
+		FutureTask<T> future = this.statistics.decorateFuture(task);
+		executor.execute(future);
+		return future;
+	}
+
+	/**
+	 * Report that the target executor did not accept a decorated task.
+	 */
+	protected void taskRejected() {
+		if (this.statistics != null) {
+			this.statistics.taskRejected();
+		}
+	}
+
+
 	/**
 	 * Calls <code>shutdown</code> when the BeanFactory destroys
 	 * the task executor instance.
@@ -153,7 +288,49 @@ public abstract class ExecutorConfigurationSupport extends CustomizableThreadFac
 			this.executor.shutdown();
 		}
 		else {
-			this.executor.shutdownNow();
+			List<Runnable> droppedTasks = this.executor.shutdownNow();
+			if (this.statistics != null) {
+				for (Runnable task : droppedTasks) {
+					this.statistics.taskDiscarded(task);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * RejectedExecutionHandler decorator which reports tasks that the target
+	 * handler dropped silently (e.g. a DiscardPolicy) as discarded tasks.
+	 */
+	private static class StatisticsRejectedExecutionHandler implements RejectedExecutionHandler {
+
+		private final RejectedExecutionHandler targetHandler;
+
+		private final TaskExecutionStatistics statistics;
+
+		public StatisticsRejectedExecutionHandler(RejectedExecutionHandler targetHandler,
+				TaskExecutionStatistics statistics) {
+
+			this.targetHandler = targetHandler;
+			this.statistics = statistics;
+		}
+
+		public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+			Runnable oldestTask = executor.getQueue().peek();
+			this.targetHandler.rejectedExecution(task, executor);
+			// Returned normally: the task has been run by the caller, queued after
+			// dropping the oldest task, or discarded. Tasks that have started
+			// already are not affected by taskDiscarded.
+			reportIfDropped(task, executor);
+			if (oldestTask != null && oldestTask != task) {
+				reportIfDropped(oldestTask, executor);
+			}
+		}
+
+		private void reportIfDropped(Runnable task, ThreadPoolExecutor executor) {
+			if (!executor.getQueue().contains(task)) {
+				this.statistics.taskDiscarded(task);
+			}
 		}
 	}
 
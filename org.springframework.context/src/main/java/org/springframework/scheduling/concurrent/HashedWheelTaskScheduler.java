@@ -0,0 +1,570 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.scheduling.concurrent;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.SchedulingTaskExecutor;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.support.PeriodicTrigger;
+import org.springframework.scheduling.support.SimpleTriggerContext;
+import org.springframework.scheduling.support.TaskUtils;
+import org.springframework.util.Assert;
+import org.springframework.util.ErrorHandler;
+
+/**
+ * Implementation of Spring's {@link TaskScheduler} interface based on a
+ * hashed timer wheel, designed for very large numbers of scheduled tasks
+ * (for example, tens of thousands of {@link org.springframework.scheduling.support.CronTrigger}
+ * based jobs).
+ *
+ * <p>In contrast to {@link ThreadPoolTaskScheduler}, scheduling and rescheduling
+ * a task is a constant-time operation: tasks are handed to a single timer thread
+ * through a non-blocking queue and sorted into the slots of a wheel that the timer
+ * thread advances once per {@link #setTickDuration tick}. Expired tasks get executed
+ * on a separate pool of worker threads. The trade-off is precision: tasks will
+ * execute up to one tick duration after their scheduled execution time, never before.
+ *
+ * <p>Ticks are measured against {@link System#nanoTime()}, so changes of the system
+ * clock do not stall the timer thread. The wall clock only serves for converting
+ * execution times into delays at the point of scheduling a task; a task scheduled
+ * for a given {@link Date} therefore executes after the delay computed at that point,
+ * even if the system clock gets adjusted in the meantime.
+ *
+ * <p>Fixed-rate and fixed-delay tasks are driven by a {@link PeriodicTrigger},
+ * so all repeating tasks follow {@link Trigger} semantics.
+ *
+ * <p>Runtime statistics for tasks submitted for immediate execution as well as
+ * for every execution of a scheduled task can be collected through the
+ * "statisticsEnabled" flag; see {@link #getStatistics()}.
+ *
+ * @since 3.1
+ * @see #setTickDuration
+ * @see #setTicksPerWheel
+ * @see #setPoolSize
+ * @see ThreadPoolTaskScheduler
+ */
+public class HashedWheelTaskScheduler extends ExecutorConfigurationSupport
+		implements TaskScheduler, SchedulingTaskExecutor {
+
+	private volatile long tickDuration = 100;
+
+	private volatile int ticksPerWheel = 512;
+
+	private volatile int poolSize = 1;
+
+	private volatile ErrorHandler errorHandler;
+
+	private volatile ExecutorService workerExecutor;
+
+	private volatile TimerWheel timerWheel;
+
+
+	/**
+	 * Set the duration of a single tick of the timer wheel, in milliseconds.
+	 * Default is 100.
+	 * <p>This defines the precision of the scheduler: tasks will execute up
+	 * to one tick duration after their scheduled time.
+	 */
+	public void setTickDuration(long tickDuration) {
+		Assert.isTrue(tickDuration > 0, "'tickDuration' must be positive");
+		this.tickDuration = tickDuration;
+	}
+
+	/**
+	 * Set the number of slots in the timer wheel. Will be rounded up to
+	 * the next power of two. Default is 512.
+	 * <p>A wheel should cover a typical scheduling horizon with as few
+	 * rounds as possible: tasks further ahead than ticks per wheel times
+	 * tick duration will be visited once per wheel revolution.
+	 */
+	public void setTicksPerWheel(int ticksPerWheel) {
+		Assert.isTrue(ticksPerWheel > 0 && ticksPerWheel <= (1 << 30), "'ticksPerWheel' must be between 1 and 2^30");
+		this.ticksPerWheel = ticksPerWheel;
+	}
+
+	/**
+	 * Set the number of worker threads that execute expired tasks.
+	 * Default is 1.
+	 */
+	public void setPoolSize(int poolSize) {
+		Assert.isTrue(poolSize > 0, "'poolSize' must be 1 or higher");
+		this.poolSize = poolSize;
+	}
+
+	/**
+	 * Provide an {@link ErrorHandler} strategy.
+	 */
+	public void setErrorHandler(ErrorHandler errorHandler) {
+		Assert.notNull(errorHandler, "'errorHandler' must not be null");
+		this.errorHandler = errorHandler;
+	}
+
+	protected ExecutorService initializeExecutor(
+			ThreadFactory threadFactory, RejectedExecutionHandler rejectedExecutionHandler) {
+
+		this.workerExecutor = new ThreadPoolExecutor(this.poolSize, this.poolSize, 0, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(), threadFactory, rejectedExecutionHandler);
+		int wheelSize = 1;
+		while (wheelSize < this.ticksPerWheel) {
+			wheelSize <<= 1;
+		}
+		TimerWheel timerWheel = new TimerWheel(wheelSize, this.tickDuration, this.workerExecutor);
+		Thread timerThread = threadFactory.newThread(timerWheel);
+		timerWheel.setTimerThread(timerThread);
+		timerThread.start();
+		this.timerWheel = timerWheel;
+		return this.workerExecutor;
+	}
+
+	/**
+	 * Stop the timer thread, discarding all pending tasks,
+	 * and shut down the worker threads.
+	 */
+	@Override
+	public void shutdown() {
+		TimerWheel timerWheel = this.timerWheel;
+		if (timerWheel != null) {
+			timerWheel.stop();
+		}
+		super.shutdown();
+	}
+
+	/**
+	 * Return the number of tasks currently scheduled for future execution.
+	 * @throws IllegalStateException if the HashedWheelTaskScheduler hasn't been initialized yet
+	 */
+	public int getScheduledTaskCount() {
+		return getTimerWheel().getTaskCount();
+	}
+
+	private TimerWheel getTimerWheel() {
+		Assert.state(this.timerWheel != null, "HashedWheelTaskScheduler not initialized");
+		return this.timerWheel;
+	}
+
+	private ExecutorService getWorkerExecutor() {
+		Assert.state(this.workerExecutor != null, "HashedWheelTaskScheduler not initialized");
+		return this.workerExecutor;
+	}
+
+
+	// SchedulingTaskExecutor implementation
+
+	public void execute(Runnable task) {
+		ExecutorService executor = getWorkerExecutor();
+		try {
+			executor.execute(errorHandlingTask(decorateTask(task), false));
+		}
+		catch (RejectedExecutionException ex) {
+			taskRejected();
+			throw new TaskRejectedException("Executor [" + executor + "] did not accept task: " + task, ex);
+		}
+	}
+
+	public void execute(Runnable task, long startTimeout) {
+		execute(task);
+	}
+
+	public Future<?> submit(Runnable task) {
+		ExecutorService executor = getWorkerExecutor();
+		try {
+			return submitTask(executor, errorHandlingTask(task, false));
+		}
+		catch (RejectedExecutionException ex) {
+			taskRejected();
+			throw new TaskRejectedException("Executor [" + executor + "] did not accept task: " + task, ex);
+		}
+	}
+
+	public <T> Future<T> submit(Callable<T> task) {
+		ExecutorService executor = getWorkerExecutor();
+		try {
+			Callable<T> taskToUse = task;
+			if (this.errorHandler != null) {
+				taskToUse = new ThreadPoolTaskScheduler.DelegatingErrorHandlingCallable<T>(taskToUse, this.errorHandler);
+			}
+			return submitTask(executor, taskToUse);
+		}
+		catch (RejectedExecutionException ex) {
+			taskRejected();
+			throw new TaskRejectedException("Executor [" + executor + "] did not accept task: " + task, ex);
+		}
+	}
+
+	public boolean prefersShortLivedTasks() {
+		return true;
+	}
+
+
+	// TaskScheduler implementation
+
+	public ScheduledFuture schedule(Runnable task, Trigger trigger) {
+		TimerWheel timerWheel = getTimerWheel();
+		WheelTask wheelTask = new WheelTask(errorHandlingTask(decorateScheduledTask(task), true), trigger, timerWheel);
+		return (wheelTask.scheduleNext() ? wheelTask : null);
+	}
+
+	public ScheduledFuture schedule(Runnable task, Date startTime) {
+		TimerWheel timerWheel = getTimerWheel();
+		WheelTask wheelTask = new WheelTask(errorHandlingTask(decorateScheduledTask(task), false), null, timerWheel);
+		wheelTask.scheduleAt(startTime);
+		return wheelTask;
+	}
+
+	public ScheduledFuture scheduleAtFixedRate(Runnable task, Date startTime, long period) {
+		return schedule(task, periodicTrigger(startTime.getTime() - System.currentTimeMillis(), period, true));
+	}
+
+	public ScheduledFuture scheduleAtFixedRate(Runnable task, long period) {
+		return schedule(task, periodicTrigger(0, period, true));
+	}
+
+	public ScheduledFuture scheduleWithFixedDelay(Runnable task, Date startTime, long delay) {
+		return schedule(task, periodicTrigger(startTime.getTime() - System.currentTimeMillis(), delay, false));
+	}
+
+	public ScheduledFuture scheduleWithFixedDelay(Runnable task, long delay) {
+		return schedule(task, periodicTrigger(0, delay, false));
+	}
+
+	private Trigger periodicTrigger(long initialDelay, long period, boolean fixedRate) {
+		PeriodicTrigger trigger = new PeriodicTrigger(period);
+		trigger.setInitialDelay(Math.max(initialDelay, 0));
+		trigger.setFixedRate(fixedRate);
+		return trigger;
+	}
+
+	private Runnable errorHandlingTask(Runnable task, boolean isRepeatingTask) {
+		return TaskUtils.decorateTaskWithErrorHandler(task, this.errorHandler, isRepeatingTask);
+	}
+
+
+	/**
+	 * The timer wheel, advanced by a single timer thread. Only the timer
+	 * thread accesses the wheel slots; other threads hand over tasks
+	 * through a non-blocking queue. All times are in nanoseconds,
+	 * relative to {@link System#nanoTime()}.
+	 */
+	private static class TimerWheel implements Runnable {
+
+		private final List<WheelTask>[] wheel;
+
+		private final int mask;
+
+		private final long tickDuration;
+
+		private final Queue<WheelTask> pendingTasks = new ConcurrentLinkedQueue<WheelTask>();
+
+		private final ExecutorService workerExecutor;
+
+		private final long startTime = System.nanoTime();
+
+		private volatile int taskCount;
+
+		private volatile boolean running = true;
+
+		private Thread timerThread;
+
+		private long tick;
+
+		@SuppressWarnings("unchecked")
+		public TimerWheel(int wheelSize, long tickDuration, ExecutorService workerExecutor) {
+			this.wheel = new List[wheelSize];
+			for (int i = 0; i < wheelSize; i++) {
+				this.wheel[i] = new ArrayList<WheelTask>();
+			}
+			this.mask = wheelSize - 1;
+			this.tickDuration = TimeUnit.MILLISECONDS.toNanos(tickDuration);
+			this.workerExecutor = workerExecutor;
+		}
+
+		public void setTimerThread(Thread timerThread) {
+			this.timerThread = timerThread;
+		}
+
+		public void add(WheelTask task) {
+			if (!this.running) {
+				throw new TaskRejectedException("Timer wheel has been shut down - cannot accept task: " + task);
+			}
+			this.pendingTasks.add(task);
+		}
+
+		public int getTaskCount() {
+			return this.taskCount + this.pendingTasks.size();
+		}
+
+		public void stop() {
+			this.running = false;
+			this.timerThread.interrupt();
+		}
+
+		public void run() {
+			while (this.running) {
+				if (!waitForNextTick()) {
+					break;
+				}
+				transferPendingTasks();
+				expireTasks();
+				this.tick++;
+			}
+			this.pendingTasks.clear();
+		}
+
+		private boolean waitForNextTick() {
+			long deadline = this.startTime + (this.tick + 1) * this.tickDuration;
+			long sleepTime = deadline - System.nanoTime();
+			while (sleepTime > 0) {
+				try {
+					// Round up to full milliseconds, never waking up before the deadline.
+					Thread.sleep((sleepTime + 999999) / 1000000);
+				}
+				catch (InterruptedException ex) {
+					if (!this.running) {
+						return false;
+					}
+				}
+				sleepTime = deadline - System.nanoTime();
+			}
+			return true;
+		}
+
+		private void transferPendingTasks() {
+			int count = this.taskCount;
+			WheelTask task;
+			while ((task = this.pendingTasks.poll()) != null) {
+				if (task.isCancelled()) {
+					continue;
+				}
+				long targetTick = Math.max((task.deadline - this.startTime) / this.tickDuration, this.tick);
+				task.remainingRounds = (targetTick - this.tick) / this.wheel.length;
+				this.wheel[(int) (targetTick & this.mask)].add(task);
+				count++;
+			}
+			this.taskCount = count;
+		}
+
+		private void expireTasks() {
+			List<WheelTask> slot = this.wheel[(int) (this.tick & this.mask)];
+			int size = slot.size();
+			int retained = 0;
+			for (int i = 0; i < size; i++) {
+				WheelTask task = slot.get(i);
+				if (task.remainingRounds > 0 && !task.isCancelled()) {
+					task.remainingRounds--;
+					slot.set(retained++, task);
+					continue;
+				}
+				// Not scheduled anymore: update the count before the task may run.
+				this.taskCount--;
+				if (task.isCancelled()) {
+					continue;
+				}
+				try {
+					this.workerExecutor.execute(task);
+				}
+				catch (RejectedExecutionException ex) {
+					task.fail(ex);
+				}
+			}
+			for (int i = size - 1; i >= retained; i--) {
+				slot.remove(i);
+			}
+		}
+	}
+
+
+	/**
+	 * A task within the timer wheel, serving as its own ScheduledFuture.
+	 * Repeating tasks get rescheduled according to their Trigger.
+	 */
+	private static class WheelTask implements ScheduledFuture<Object>, Runnable {
+
+		private static final long MAX_DELAY_NANOS = Long.MAX_VALUE >> 1;
+
+		private final Runnable delegate;
+
+		private final Trigger trigger;
+
+		private final TimerWheel timerWheel;
+
+		private final SimpleTriggerContext triggerContext = new SimpleTriggerContext();
+
+		private final CountDownLatch completionLatch = new CountDownLatch(1);
+
+		private volatile Date scheduledExecutionTime;
+
+		/** In nanoseconds, relative to System.nanoTime() */
+		private volatile long deadline;
+
+		private volatile boolean cancelled;
+
+		private volatile Throwable failure;
+
+		private volatile Thread runner;
+
+		/** Only accessed by the timer thread */
+		private long remainingRounds;
+
+		public WheelTask(Runnable delegate, Trigger trigger, TimerWheel timerWheel) {
+			this.delegate = delegate;
+			this.trigger = trigger;
+			this.timerWheel = timerWheel;
+		}
+
+		public void scheduleAt(Date executionTime) {
+			this.scheduledExecutionTime = executionTime;
+			long delay = executionTime.getTime() - System.currentTimeMillis();
+			// Cap far-future delays to avoid overflow of the nanosecond deadline.
+			this.deadline = System.nanoTime() + Math.min(TimeUnit.MILLISECONDS.toNanos(delay), MAX_DELAY_NANOS);
+			this.timerWheel.add(this);
+		}
+
+		public boolean scheduleNext() {
+			Date nextExecutionTime;
+			synchronized (this.triggerContext) {
+				nextExecutionTime = this.trigger.nextExecutionTime(this.triggerContext);
+			}
+			if (nextExecutionTime == null) {
+				this.completionLatch.countDown();
+				return false;
+			}
+			scheduleAt(nextExecutionTime);
+			return true;
+		}
+
+		public void run() {
+			if (this.cancelled) {
+				return;
+			}
+			Date actualExecutionTime = new Date();
+			this.runner = Thread.currentThread();
+			try {
+				this.delegate.run();
+			}
+			catch (Throwable ex) {
+				fail(ex);
+				return;
+			}
+			finally {
+				this.runner = null;
+			}
+			if (this.trigger == null) {
+				this.completionLatch.countDown();
+				return;
+			}
+			synchronized (this.triggerContext) {
+				this.triggerContext.update(this.scheduledExecutionTime, actualExecutionTime, new Date());
+			}
+			if (!this.cancelled) {
+				try {
+					scheduleNext();
+				}
+				catch (Throwable ex) {
+					fail(ex);
+				}
+			}
+		}
+
+		public void fail(Throwable ex) {
+			this.failure = ex;
+			this.completionLatch.countDown();
+		}
+
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			if (isDone()) {
+				return false;
+			}
+			this.cancelled = true;
+			Thread runner = this.runner;
+			if (mayInterruptIfRunning && runner != null) {
+				runner.interrupt();
+			}
+			this.completionLatch.countDown();
+			return true;
+		}
+
+		public boolean isCancelled() {
+			return this.cancelled;
+		}
+
+		public boolean isDone() {
+			return (this.completionLatch.getCount() == 0);
+		}
+
+		public Object get() throws InterruptedException, ExecutionException {
+			this.completionLatch.await();
+			return getResult();
+		}
+
+		public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			if (!this.completionLatch.await(timeout, unit)) {
+				throw new TimeoutException();
+			}
+			return getResult();
+		}
+
+		private Object getResult() throws ExecutionException {
+			if (this.cancelled) {
+				throw new CancellationException();
+			}
+			if (this.failure != null) {
+				throw new ExecutionException(this.failure);
+			}
+			return null;
+		}
+
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(this.deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+
+		public int compareTo(Delayed other) {
+			if (this == other) {
+				return 0;
+			}
+			long diff = getDelay(TimeUnit.MILLISECONDS) - other.getDelay(TimeUnit.MILLISECONDS);
+			return (diff == 0 ? 0 : ((diff < 0)? -1 : 1));
+		}
+
+		@Override
+		public String toString() {
+			return "WheelTask for [" + this.delegate + "]";
+		}
+	}
+
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.scheduling.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.SchedulingTaskExecutor;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * {@link org.springframework.core.task.AsyncTaskExecutor} implementation for
+ * blocking, IO-heavy tasks such as <code>@Async</code> methods performing
+ * remote calls: each task gets a thread of its own, without an upper bound
+ * and without queueing.
+ *
+ * <p>Where the runtime supports lightweight (virtual) threads, a new virtual
+ * thread is started per task, detected at runtime through
+ * <code>Thread.ofVirtual()</code>. Otherwise, this executor falls back to
+ * an unbounded cached pool of platform threads which are reused across tasks
+ * and retired after the configured keep-alive time - avoiding the thread
+ * creation cost that {@link org.springframework.core.task.SimpleAsyncTaskExecutor}
+ * pays for every single task.
+ *
+ * <p>Runtime statistics - queue size, active count, completed tasks and
+ * latency histograms - are enabled by default for this executor and available
+ * through {@link #getStatistics()}.
+ *
+ * @since 3.1
+ * @see org.springframework.core.task.SimpleAsyncTaskExecutor
+ * @see WorkStealingTaskExecutor
+ * @see TaskExecutionStatistics
+ */
+public class LightweightThreadTaskExecutor extends ExecutorConfigurationSupport implements SchedulingTaskExecutor {
+
+	private static final Method ofVirtualMethod = ReflectionUtils.findMethod(Thread.class, "ofVirtual");
+
+
+	private boolean preferVirtualThreads = true;
+
+	private int keepAliveSeconds = 60;
+
+	private ExecutorService executorService;
+
+	private boolean virtualThreads;
+
+
+	/**
+	 * Create a new LightweightThreadTaskExecutor with statistics enabled.
+	 * @see #setStatisticsEnabled
+	 */
+	public LightweightThreadTaskExecutor() {
+		setStatisticsEnabled(true);
+	}
+
+	/**
+	 * Specify whether to use virtual threads when supported by the runtime.
+	 * <p>Default is "true". Switch this to "false" to always use the pool
+	 * of platform threads.
+	 */
+	public void setPreferVirtualThreads(boolean preferVirtualThreads) {
+		this.preferVirtualThreads = preferVirtualThreads;
+	}
+
+	/**
+	 * Set the keep-alive seconds for idle platform threads.
+	 * Default is 60. Not applicable to virtual threads.
+	 */
+	public void setKeepAliveSeconds(int keepAliveSeconds) {
+		this.keepAliveSeconds = keepAliveSeconds;
+	}
+
+
+	protected ExecutorService initializeExecutor(
+			ThreadFactory threadFactory, RejectedExecutionHandler rejectedExecutionHandler) {
+
+		if (this.preferVirtualThreads && ofVirtualMethod != null) {
+			this.executorService = createVirtualThreadExecutor(createVirtualThreadFactory());
+			this.virtualThreads = true;
+		}
+		else {
+			this.executorService = new ThreadPoolExecutor(0, Integer.MAX_VALUE, this.keepAliveSeconds, TimeUnit.SECONDS,
+					new SynchronousQueue<Runnable>(), threadFactory, rejectedExecutionHandler);
+			this.virtualThreads = false;
+		}
+		return this.executorService;
+	}
+
+	/**
+	 * Create a ThreadFactory for virtual threads, named according to this
+	 * executor's thread name prefix.
+	 */
+	protected ThreadFactory createVirtualThreadFactory() {
+		try {
+			Class<?> builderClass = ClassUtils.forName("java.lang.Thread$Builder", getClass().getClassLoader());
+			Object builder = ReflectionUtils.invokeMethod(ofVirtualMethod, null);
+			Method nameMethod = builderClass.getMethod("name", String.class, long.class);
+			builder = ReflectionUtils.invokeMethod(nameMethod, builder, getThreadNamePrefix(), 1L);
+			return (ThreadFactory) ReflectionUtils.invokeMethod(builderClass.getMethod("factory"), builder);
+		}
+		catch (ClassNotFoundException ex) {
+			throw new IllegalStateException("Thread.Builder class not loadable: " + ex);
+		}
+		catch (NoSuchMethodException ex) {
+			throw new IllegalStateException("Unexpected Thread.Builder method signature: " + ex);
+		}
+	}
+
+	/**
+	 * Create an ExecutorService which starts a new virtual thread per task.
+	 * @param virtualThreadFactory the ThreadFactory for virtual threads
+	 */
+	protected ExecutorService createVirtualThreadExecutor(ThreadFactory virtualThreadFactory) {
+		Method method = ReflectionUtils.findMethod(Executors.class, "newThreadPerTaskExecutor", ThreadFactory.class);
+		Assert.state(method != null, "Executors.newThreadPerTaskExecutor not available");
+		return (ExecutorService) ReflectionUtils.invokeMethod(method, null, virtualThreadFactory);
+	}
+
+	/**
+	 * Return the underlying ExecutorService for native access.
+	 * @return the underlying ExecutorService (never <code>null</code>)
+	 * @throws IllegalStateException if the LightweightThreadTaskExecutor hasn't been initialized yet
+	 */
+	public ExecutorService getExecutorService() throws IllegalStateException {
+		Assert.state(this.executorService != null, "LightweightThreadTaskExecutor not initialized");
+		return this.executorService;
+	}
+
+	/**
+	 * Return whether this executor runs its tasks on virtual threads,
+	 * as opposed to a pool of platform threads.
+	 */
+	public boolean isVirtualThreads() {
+		getExecutorService();
+		return this.virtualThreads;
+	}
+
+	/**
+	 * Return the number of tasks that have been submitted but not started yet.
+	 */
+	public long getQueueSize() {
+		return obtainStatistics().getQueueSize();
+	}
+
+	/**
+	 * Return the number of tasks currently executing.
+	 */
+	public int getActiveCount() {
+		return obtainStatistics().getActiveCount();
+	}
+
+	/**
+	 * Return the number of tasks that completed normally.
+	 */
+	public long getCompletedTaskCount() {
+		return obtainStatistics().getCompletedTaskCount();
+	}
+
+	private TaskExecutionStatistics obtainStatistics() {
+		TaskExecutionStatistics statistics = getStatistics();
+		Assert.state(statistics != null, "LightweightThreadTaskExecutor not initialized or statistics not enabled");
+		return statistics;
+	}
+
+
+	public void execute(Runnable task) {
+		ExecutorService executor = getExecutorService();
+		try {
+			executor.execute(decorateTask(task));
+		}
+		catch (RejectedExecutionException ex) {
+			taskRejected();
+			throw new TaskRejectedException("Executor [" + executor + "] did not accept task: " + task, ex);
+		}
+	}
+
+	public void execute(Runnable task, long startTimeout) {
+		execute(task);
+	}
+
+	public Future<?> submit(Runnable task) {
+		ExecutorService executor = getExecutorService();
+		try {
+			return submitTask(executor, task);
+		}
+		catch (RejectedExecutionException ex) {
+			taskRejected();
+			throw new TaskRejectedException("Executor [" + executor + "] did not accept task: " + task, ex);
+		}
+	}
+
+	public <T> Future<T> submit(Callable<T> task) {
+		ExecutorService executor = getExecutorService();
+		try {
+			return submitTask(executor, task);
+		}
+		catch (RejectedExecutionException ex) {
+			taskRejected();
+			throw new TaskRejectedException("Executor [" + executor + "] did not accept task: " + task, ex);
+		}
+	}
+
+	/**
+	 * This task executor is suitable for long-running, blocking tasks.
+	 */
+	public boolean prefersShortLivedTasks() {
+		return false;
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2009 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -52,6 +52,10 @@ import org.springframework.util.ObjectUtils;
  * {@link #setContinueScheduledExecutionAfterException "continueScheduledExecutionAfterException"}
  * property to "true".
  *
+ * <p>Runtime statistics are not supported by this FactoryBean, since tasks
+ * scheduled through the native {@link ScheduledExecutorService} cannot be
+ * instrumented: use {@link ThreadPoolTaskScheduler} instead.
+ *
  * @author Juergen Hoeller
  * @since 2.0
  * @see #setPoolSize
@@ -124,6 +128,10 @@ public class ScheduledExecutorFactoryBean extends ExecutorConfigurationSupport
 	protected ExecutorService initializeExecutor(
 			ThreadFactory threadFactory, RejectedExecutionHandler rejectedExecutionHandler) {
 
+		if (getStatistics() != null) {
+			throw new IllegalArgumentException("Property 'statisticsEnabled' is not supported by " +
+					"ScheduledExecutorFactoryBean - consider ThreadPoolTaskScheduler instead");
+		}
 		ScheduledExecutorService executor =
 				createExecutor(this.poolSize, threadFactory, rejectedExecutionHandler);
 
@@ -0,0 +1,479 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.scheduling.concurrent;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+import org.springframework.util.LatencyHistogram;
+
+/**
+ * Collects runtime statistics for tasks passing through an executor:
+ * the number of queued, active, completed and failed tasks as well as
+ * histograms for the time spent waiting in the queue and the time spent
+ * executing.
+ *
+ * <p>Tasks are instrumented through the {@link #decorate(Runnable)} and
+ * {@link #decorate(Callable)} methods before being handed to the target
+ * executor. An executor which fails to accept a decorated task is expected
+ * to report this through {@link #taskRejected()}, and a decorated task that
+ * got accepted but will never run (e.g. dropped by a discarding
+ * RejectedExecutionHandler or on <code>shutdownNow</code>) through
+ * {@link #taskDiscarded}. Tasks submitted for a Future are to be decorated
+ * through {@link #decorateFuture}, withdrawing them from the queue size
+ * when cancelled before they started.
+ *
+ * <p>Tasks running longer than the configured
+ * {@link #setSlowTaskThreshold "slowTaskThreshold"} are counted and logged
+ * at warn level.
+ *
+ * <p>Instances carry JMX metadata for export through
+ * {@link org.springframework.jmx.export.annotation.AnnotationMBeanExporter},
+ * e.g. by registering an executor's {@link ExecutorConfigurationSupport#getStatistics()
+ * statistics} object under an ObjectName of choice.
+ *
+ * @since 3.1
+ * @see ExecutorConfigurationSupport#setStatisticsEnabled
+ */
+@ManagedResource(description = "Task execution statistics")
+public class TaskExecutionStatistics {
+
+	private static final Log logger = LogFactory.getLog(TaskExecutionStatistics.class);
+
+	private volatile long slowTaskThresholdNanos = 0;
+
+	private final AtomicLong submittedTaskCount = new AtomicLong();
+
+	private final AtomicLong startedTaskCount = new AtomicLong();
+
+	private final AtomicLong rejectedTaskCount = new AtomicLong();
+
+	private final AtomicLong discardedTaskCount = new AtomicLong();
+
+	private final AtomicLong completedTaskCount = new AtomicLong();
+
+	private final AtomicLong failedTaskCount = new AtomicLong();
+
+	private final AtomicLong slowTaskCount = new AtomicLong();
+
+	private final AtomicInteger activeCount = new AtomicInteger();
+
+	private final LatencyHistogram queueTimeHistogram = new LatencyHistogram();
+
+	private final LatencyHistogram executionTimeHistogram = new LatencyHistogram();
+
+
+	/**
+	 * Set the execution time in milliseconds above which a task is considered
+	 * slow, getting counted and logged at warn level. Default is 0: no detection.
+	 */
+	public void setSlowTaskThreshold(long slowTaskThreshold) {
+		this.slowTaskThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowTaskThreshold);
+	}
+
+	/**
+	 * Return the execution time in milliseconds above which a task is considered slow.
+	 */
+	public long getSlowTaskThreshold() {
+		return TimeUnit.NANOSECONDS.toMillis(this.slowTaskThresholdNanos);
+	}
+
+	/**
+	 * Decorate the given Runnable for collecting statistics on its execution.
+	 * @param task the task to decorate
+	 * @return the decorated task, to be submitted to the target executor
+	 */
+	public Runnable decorate(Runnable task) {
+		return new TrackedRunnable(task);
+	}
+
+	/**
+	 * Decorate the given Runnable for collecting statistics on each of its
+	 * executions, for tasks which are triggered by a scheduler rather than
+	 * queued for immediate execution. Every run counts as a submitted task,
+	 * without recording a queue time.
+	 * @param task the task to decorate
+	 * @return the decorated task, to be scheduled with the target executor
+	 */
+	public Runnable decorateScheduled(final Runnable task) {
+		return new Runnable() {
+			public void run() {
+				long startTime = taskStarted(taskSubmitted(), false);
+				boolean success = false;
+				try {
+					task.run();
+					success = true;
+				}
+				finally {
+					taskFinished(task, startTime, success);
+				}
+			}
+			@Override
+			public String toString() {
+				return task.toString();
+			}
+		};
+	}
+
+	/**
+	 * Decorate the given Callable for collecting statistics on its execution.
+	 * @param task the task to decorate
+	 * @return the decorated task, to be submitted to the target executor
+	 */
+	public <T> Callable<T> decorate(Callable<T> task) {
+		return new TrackedCallable<T>(task);
+	}
+
+	/**
+	 * Decorate the given Callable for collecting statistics on its execution,
+	 * returning a FutureTask to be handed to the target executor's
+	 * <code>execute</code> method. Cancelling the FutureTask before the
+	 * task started withdraws the task from the queue size.
+	 * @param task the task to decorate
+	 * @return the decorated task, to be executed by the target executor
+	 * and to be returned to the submitter
+	 */
+	public <T> FutureTask<T> decorateFuture(Callable<T> task) {
+		return new TrackedFutureTask<T>(new TrackedCallable<T>(task));
+	}
+
+	/**
+	 * Notify this statistics holder that a decorated task has been rejected
+	 * by the target executor and will therefore never start.
+	 */
+	public void taskRejected() {
+		this.rejectedTaskCount.incrementAndGet();
+	}
+
+	/**
+	 * Notify this statistics holder that the given task, previously accepted
+	 * by the target executor, has been dropped and will therefore never start.
+	 * <p>Has no effect for tasks that have not been decorated by this statistics
+	 * holder or that have started already. A task that happens to start after
+	 * all will be counted as started rather than discarded.
+	 * @param task the task as handed to the target executor
+	 * (as returned by <code>decorate</code> or <code>decorateFuture</code>)
+	 */
+	public void taskDiscarded(Runnable task) {
+		if (task instanceof TrackedFutureTask) {
+			((TrackedFutureTask) task).trackedTask.discard();
+		}
+		else if (task instanceof TrackedRunnable) {
+			((TrackedRunnable) task).discard();
+		}
+	}
+
+	private long taskSubmitted() {
+		this.submittedTaskCount.incrementAndGet();
+		return System.nanoTime();
+	}
+
+	private long taskStarted(long submitTime, boolean recordQueueTime) {
+		this.startedTaskCount.incrementAndGet();
+		this.activeCount.incrementAndGet();
+		long startTime = System.nanoTime();
+		if (recordQueueTime) {
+			this.queueTimeHistogram.record(startTime - submitTime);
+		}
+		return startTime;
+	}
+
+	private void taskFinished(Object task, long startTime, boolean success) {
+		long executionTime = System.nanoTime() - startTime;
+		this.executionTimeHistogram.record(executionTime);
+		this.activeCount.decrementAndGet();
+		long threshold = this.slowTaskThresholdNanos;
+		if (threshold > 0 && executionTime > threshold) {
+			this.slowTaskCount.incrementAndGet();
+			if (logger.isWarnEnabled()) {
+				logger.warn("Slow task [" + task + "] took " +
+						TimeUnit.NANOSECONDS.toMillis(executionTime) + " ms to execute");
+			}
+		}
+		if (success) {
+			this.completedTaskCount.incrementAndGet();
+		}
+		else {
+			this.failedTaskCount.incrementAndGet();
+		}
+	}
+
+
+	/**
+	 * Return the number of tasks accepted by the executor so far.
+	 */
+	@ManagedMetric(metricType = MetricType.COUNTER, description = "Number of tasks accepted")
+	public long getSubmittedTaskCount() {
+		return this.submittedTaskCount.get() - this.rejectedTaskCount.get();
+	}
+
+	/**
+	 * Return the number of tasks that have been accepted but not started yet,
+	 * excluding tasks that have been cancelled or discarded.
+	 */
+	@ManagedMetric(description = "Number of tasks waiting for execution")
+	public long getQueueSize() {
+		return Math.max(0, getSubmittedTaskCount() - this.startedTaskCount.get() - this.discardedTaskCount.get());
+	}
+
+	/**
+	 * Return the number of tasks currently executing.
+	 */
+	@ManagedMetric(description = "Number of tasks currently executing")
+	public int getActiveCount() {
+		return this.activeCount.get();
+	}
+
+	/**
+	 * Return the number of tasks that completed normally.
+	 */
+	@ManagedMetric(metricType = MetricType.COUNTER, description = "Number of tasks completed normally")
+	public long getCompletedTaskCount() {
+		return this.completedTaskCount.get();
+	}
+
+	/**
+	 * Return the number of tasks that terminated with an exception.
+	 */
+	@ManagedMetric(metricType = MetricType.COUNTER, description = "Number of tasks terminated with an exception")
+	public long getFailedTaskCount() {
+		return this.failedTaskCount.get();
+	}
+
+	/**
+	 * Return the number of tasks rejected by the executor.
+	 */
+	@ManagedMetric(metricType = MetricType.COUNTER, description = "Number of tasks rejected")
+	public long getRejectedTaskCount() {
+		return this.rejectedTaskCount.get();
+	}
+
+	/**
+	 * Return the number of accepted tasks that have been cancelled
+	 * or discarded before they started.
+	 */
+	@ManagedMetric(metricType = MetricType.COUNTER, description = "Number of tasks cancelled or discarded")
+	public long getDiscardedTaskCount() {
+		return this.discardedTaskCount.get();
+	}
+
+	/**
+	 * Return the number of tasks which exceeded the slow task threshold.
+	 */
+	@ManagedMetric(metricType = MetricType.COUNTER, description = "Number of tasks exceeding the slow task threshold")
+	public long getSlowTaskCount() {
+		return this.slowTaskCount.get();
+	}
+
+	/**
+	 * Return the mean time in milliseconds that tasks spent waiting for execution.
+	 */
+	@ManagedMetric(unit = "ms", description = "Mean queue wait time")
+	public double getMeanQueueTime() {
+		return this.queueTimeHistogram.getMeanTime() / 1000000;
+	}
+
+	/**
+	 * Return the 99th percentile of the time in milliseconds that tasks spent
+	 * waiting for execution.
+	 */
+	@ManagedMetric(unit = "ms", description = "99th percentile of queue wait time")
+	public long getQueueTime99thPercentile() {
+		return this.queueTimeHistogram.getPercentile(99, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Return the mean task execution time in milliseconds.
+	 */
+	@ManagedMetric(unit = "ms", description = "Mean execution time")
+	public double getMeanExecutionTime() {
+		return this.executionTimeHistogram.getMeanTime() / 1000000;
+	}
+
+	/**
+	 * Return the 99th percentile of the task execution time in milliseconds.
+	 */
+	@ManagedMetric(unit = "ms", description = "99th percentile of execution time")
+	public long getExecutionTime99thPercentile() {
+		return this.executionTimeHistogram.getPercentile(99, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Return the maximum task execution time in milliseconds.
+	 */
+	@ManagedMetric(unit = "ms", description = "Maximum execution time")
+	public long getMaxExecutionTime() {
+		return TimeUnit.NANOSECONDS.toMillis(this.executionTimeHistogram.getMaxTime());
+	}
+
+	/**
+	 * Return the histogram of times that tasks spent waiting for execution.
+	 */
+	public LatencyHistogram getQueueTimeHistogram() {
+		return this.queueTimeHistogram;
+	}
+
+	/**
+	 * Return the histogram of task execution times.
+	 */
+	public LatencyHistogram getExecutionTimeHistogram() {
+		return this.executionTimeHistogram;
+	}
+
+	/**
+	 * Clear the queue time and execution time histograms.
+	 * Task counters are not affected.
+	 */
+	@ManagedOperation(description = "Clear the latency histograms")
+	public void resetHistograms() {
+		this.queueTimeHistogram.reset();
+		this.executionTimeHistogram.reset();
+	}
+
+
+	@Override
+	public String toString() {
+		return "TaskExecutionStatistics: queued=" + getQueueSize() + ", active=" + getActiveCount() +
+				", completed=" + getCompletedTaskCount() + ", failed=" + getFailedTaskCount() +
+				", rejected=" + getRejectedTaskCount() + ", discarded=" + getDiscardedTaskCount() +
+				", slow=" + getSlowTaskCount();
+	}
+
+
+	/**
+	 * Base class for decorated tasks, tracking whether the task has started
+	 * or has been discarded.
+	 */
+	private abstract class TrackedTask {
+
+		private static final int QUEUED = 0;
+
+		private static final int STARTED = 1;
+
+		private static final int DISCARDED = 2;
+
+		private final AtomicInteger state = new AtomicInteger(QUEUED);
+
+		private final long submitTime = taskSubmitted();
+
+		protected long start() {
+			if (!this.state.compareAndSet(QUEUED, STARTED) && this.state.compareAndSet(DISCARDED, STARTED)) {
+				// Reported as discarded but started after all.
+				discardedTaskCount.decrementAndGet();
+			}
+			return taskStarted(this.submitTime, true);
+		}
+
+		public void discard() {
+			if (this.state.compareAndSet(QUEUED, DISCARDED)) {
+				discardedTaskCount.incrementAndGet();
+			}
+		}
+	}
+
+
+	private class TrackedRunnable extends TrackedTask implements Runnable {
+
+		private final Runnable task;
+
+		public TrackedRunnable(Runnable task) {
+			this.task = task;
+		}
+
+		public void run() {
+			long startTime = start();
+			boolean success = false;
+			try {
+				this.task.run();
+				success = true;
+			}
+			finally {
+				taskFinished(this.task, startTime, success);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return this.task.toString();
+		}
+	}
+
+
+	private class TrackedCallable<T> extends TrackedTask implements Callable<T> {
+
+		private final Callable<T> task;
+
+		public TrackedCallable(Callable<T> task) {
+			this.task = task;
+		}
+
+		public T call() throws Exception {
+			long startTime = start();
+			boolean success = false;
+			try {
+				T result = this.task.call();
+				success = true;
+				return result;
+			}
+			finally {
+				taskFinished(this.task, startTime, success);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return this.task.toString();
+		}
+	}
+
+
+	/**
+	 * FutureTask that reports a cancellation before the task started as discarded task.
+	 */
+	private static class TrackedFutureTask<T> extends FutureTask<T> {
+
+		private final TrackedCallable<T> trackedTask;
+
+		public TrackedFutureTask(TrackedCallable<T> trackedTask) {
+			super(trackedTask);
+			this.trackedTask = trackedTask;
+		}
+
+		@Override
+		protected void done() {
+			if (isCancelled()) {
+				this.trackedTask.discard();
+			}
+		}
+
+		@Override
+		public String toString() {
+			return this.trackedTask.toString();
+		}
+	}
+
+}
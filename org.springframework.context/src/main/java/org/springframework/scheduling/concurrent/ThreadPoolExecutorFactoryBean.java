@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2009 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -20,6 +20,7 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
@@ -40,6 +41,10 @@ import org.springframework.beans.factory.InitializingBean;
  * constructor injection, or use a factory method definition that points to the JDK 1.5
  * {@link java.util.concurrent.Executors} class.
  *
+ * <p>If the "statisticsEnabled" flag is set, all tasks passing through the exposed
+ * ExecutorService get instrumented, including tasks handed in through its
+ * <code>submit</code> and <code>invoke</code> methods; see {@link #getStatistics()}.
+ *
  * <p><b>If you need a timing-based {@link java.util.concurrent.ScheduledExecutorService}
  * instead, consider {@link ScheduledExecutorFactoryBean}.</b>
 
@@ -136,9 +141,11 @@ public class ThreadPoolExecutorFactoryBean extends ExecutorConfigurationSupport
 			ThreadFactory threadFactory, RejectedExecutionHandler rejectedExecutionHandler) {
 
 		BlockingQueue<Runnable> queue = createQueue(this.queueCapacity);
-		ThreadPoolExecutor executor  = new ThreadPoolExecutor(
-				this.corePoolSize, this.maxPoolSize, this.keepAliveSeconds, TimeUnit.SECONDS,
-				queue, threadFactory, rejectedExecutionHandler);
+		ThreadPoolExecutor executor = (getStatistics() != null ?
+				new StatisticsThreadPoolExecutor(this.corePoolSize, this.maxPoolSize, this.keepAliveSeconds,
+						queue, threadFactory, rejectedExecutionHandler) :
+				new ThreadPoolExecutor(this.corePoolSize, this.maxPoolSize, this.keepAliveSeconds, TimeUnit.SECONDS,
+						queue, threadFactory, rejectedExecutionHandler));
 		if (this.allowCoreThreadTimeOut) {
 			executor.allowCoreThreadTimeOut(true);
 		}
@@ -181,4 +188,30 @@ public class ThreadPoolExecutorFactoryBean extends ExecutorConfigurationSupport
 		return true;
 	}
 
+
+	/**
+	 * ThreadPoolExecutor that decorates every incoming task for collecting
+	 * statistics. Since the <code>submit</code> and <code>invoke</code> methods
+	 * delegate to <code>execute</code>, this covers all tasks.
+	 */
+	private class StatisticsThreadPoolExecutor extends ThreadPoolExecutor {
+
+		public StatisticsThreadPoolExecutor(int corePoolSize, int maxPoolSize, int keepAliveSeconds,
+				BlockingQueue<Runnable> queue, ThreadFactory threadFactory, RejectedExecutionHandler handler) {
+
+			super(corePoolSize, maxPoolSize, keepAliveSeconds, TimeUnit.SECONDS, queue, threadFactory, handler);
+		}
+
+		@Override
+		public void execute(Runnable task) {
+			try {
+				super.execute(decorateTask(task));
+			}
+			catch (RejectedExecutionException ex) {
+				taskRejected();
+				throw ex;
+			}
+		}
+	}
+
 }
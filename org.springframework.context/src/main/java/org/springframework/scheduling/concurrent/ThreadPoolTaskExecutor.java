@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2009 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -40,6 +40,8 @@ import org.springframework.util.Assert;
  * This class is also well suited for management and monitoring (e.g. through JMX),
  * providing several useful attributes: "corePoolSize", "maxPoolSize", "keepAliveSeconds"
  * (all supporting updates at runtime); "poolSize", "activeCount" (for introspection only).
+ * Further runtime statistics such as queue wait and execution time histograms can be
+ * collected through the "statisticsEnabled" flag; see {@link #getStatistics()}.
  *
  * <p>For an alternative, you may set up a ThreadPoolExecutor instance directly using
  * constructor injection, or use a factory method definition that points to the JDK 1.5
@@ -238,9 +240,10 @@ public class ThreadPoolTaskExecutor extends ExecutorConfigurationSupport impleme
 	public void execute(Runnable task) {
 		Executor executor = getThreadPoolExecutor();
 		try {
-			executor.execute(task);
+			executor.execute(decorateTask(task));
 		}
 		catch (RejectedExecutionException ex) {
+			taskRejected();
 			throw new TaskRejectedException("Executor [" + executor + "] did not accept task: " + task, ex);
 		}
 	}
@@ -252,9 +255,10 @@ public class ThreadPoolTaskExecutor extends ExecutorConfigurationSupport impleme
 	public Future<?> submit(Runnable task) {
 		ExecutorService executor = getThreadPoolExecutor();
 		try {
-			return executor.submit(task);
+			return submitTask(executor, task);
 		}
 		catch (RejectedExecutionException ex) {
+			taskRejected();
 			throw new TaskRejectedException("Executor [" + executor + "] did not accept task: " + task, ex);
 		}
 	}
@@ -262,9 +266,10 @@ public class ThreadPoolTaskExecutor extends ExecutorConfigurationSupport impleme
 	public <T> Future<T> submit(Callable<T> task) {
 		ExecutorService executor = getThreadPoolExecutor();
 		try {
-			return executor.submit(task);
+			return submitTask(executor, task);
 		}
 		catch (RejectedExecutionException ex) {
+			taskRejected();
 			throw new TaskRejectedException("Executor [" + executor + "] did not accept task: " + task, ex);
 		}
 	}
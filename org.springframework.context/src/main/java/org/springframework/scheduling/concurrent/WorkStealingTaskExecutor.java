@@ -0,0 +1,244 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.scheduling.concurrent;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.SchedulingTaskExecutor;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * {@link org.springframework.core.task.AsyncTaskExecutor} implementation backed
+ * by a work-stealing pool with a fixed level of parallelism: by default, the
+ * JDK 7 <code>java.util.concurrent.ForkJoinPool</code>, where each worker
+ * thread keeps its own task queue and idle workers steal from busy ones.
+ * This avoids the contention on a single shared queue that a
+ * {@link ThreadPoolTaskExecutor} exhibits for large numbers of short tasks.
+ *
+ * <p>The ForkJoinPool is detected at runtime. On JDK 5 and 6, this executor
+ * falls back to a fixed-size {@link java.util.concurrent.ThreadPoolExecutor}
+ * with the same parallelism, keeping the configuration portable.
+ *
+ * <p>Note that a ForkJoinPool creates its own worker threads: the "threadFactory",
+ * "threadNamePrefix" and "rejectedExecutionHandler" settings only apply to the
+ * JDK 5/6 fallback.
+ *
+ * <p>Runtime statistics - queue size, active count, completed tasks and
+ * latency histograms - are enabled by default for this executor and available
+ * through {@link #getStatistics()}.
+ *
+ * @since 3.1
+ * @see ThreadPoolTaskExecutor
+ * @see TaskExecutionStatistics
+ */
+public class WorkStealingTaskExecutor extends ExecutorConfigurationSupport implements SchedulingTaskExecutor {
+
+	private static final String FORK_JOIN_POOL_CLASS_NAME = "java.util.concurrent.ForkJoinPool";
+
+	private static final boolean forkJoinPoolAvailable =
+			ClassUtils.isPresent(FORK_JOIN_POOL_CLASS_NAME, WorkStealingTaskExecutor.class.getClassLoader());
+
+
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	private boolean asyncMode = true;
+
+	private ExecutorService executorService;
+
+
+	/**
+	 * Create a new WorkStealingTaskExecutor with statistics enabled.
+	 * @see #setStatisticsEnabled
+	 */
+	public WorkStealingTaskExecutor() {
+		setStatisticsEnabled(true);
+	}
+
+	/**
+	 * Set the parallelism level, i.e. the number of worker threads.
+	 * Default is the number of available processors.
+	 */
+	public void setParallelism(int parallelism) {
+		Assert.isTrue(parallelism > 0, "'parallelism' must be 1 or higher");
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Return the parallelism level, i.e. the number of worker threads.
+	 */
+	public int getParallelism() {
+		return this.parallelism;
+	}
+
+	/**
+	 * Set whether the ForkJoinPool should use local FIFO scheduling for tasks
+	 * that are never joined, as is the case for tasks submitted via this executor.
+	 * <p>Default is "true". Switch this to "false" for LIFO processing of
+	 * forked subtasks, as is appropriate for divide-and-conquer algorithms.
+	 */
+	public void setAsyncMode(boolean asyncMode) {
+		this.asyncMode = asyncMode;
+	}
+
+
+	protected ExecutorService initializeExecutor(
+			ThreadFactory threadFactory, RejectedExecutionHandler rejectedExecutionHandler) {
+
+		if (forkJoinPoolAvailable) {
+			this.executorService = createForkJoinPool(this.parallelism, this.asyncMode);
+		}
+		else {
+			if (logger.isDebugEnabled()) {
+				logger.debug("ForkJoinPool not available - falling back to fixed-size ThreadPoolExecutor");
+			}
+			this.executorService = new ThreadPoolExecutor(this.parallelism, this.parallelism, 0, TimeUnit.MILLISECONDS,
+					new LinkedBlockingQueue<Runnable>(), threadFactory, rejectedExecutionHandler);
+		}
+		return this.executorService;
+	}
+
+	/**
+	 * Create a JDK 7 ForkJoinPool via reflection, using the default worker thread factory.
+	 * @param parallelism the parallelism level
+	 * @param asyncMode whether to use local FIFO scheduling
+	 * @return the ForkJoinPool instance
+	 */
+	protected ExecutorService createForkJoinPool(int parallelism, boolean asyncMode) {
+		try {
+			Class<?> poolClass = ClassUtils.forName(FORK_JOIN_POOL_CLASS_NAME, getClass().getClassLoader());
+			Field factoryField = poolClass.getField("defaultForkJoinWorkerThreadFactory");
+			Constructor<?> ctor = poolClass.getConstructor(
+					int.class, factoryField.getType(), Thread.UncaughtExceptionHandler.class, boolean.class);
+			Object factory = ReflectionUtils.getField(factoryField, null);
+			return (ExecutorService) BeanUtils.instantiateClass(ctor, parallelism, factory, null, asyncMode);
+		}
+		catch (ClassNotFoundException ex) {
+			throw new IllegalStateException("ForkJoinPool class not loadable: " + ex);
+		}
+		catch (NoSuchMethodException ex) {
+			throw new IllegalStateException("Unexpected ForkJoinPool constructor signature: " + ex);
+		}
+		catch (NoSuchFieldException ex) {
+			throw new IllegalStateException("Unexpected ForkJoinPool factory field: " + ex);
+		}
+	}
+
+	/**
+	 * Return the underlying ExecutorService for native access.
+	 * @return the underlying ExecutorService (never <code>null</code>)
+	 * @throws IllegalStateException if the WorkStealingTaskExecutor hasn't been initialized yet
+	 */
+	public ExecutorService getExecutorService() throws IllegalStateException {
+		Assert.state(this.executorService != null, "WorkStealingTaskExecutor not initialized");
+		return this.executorService;
+	}
+
+	/**
+	 * Return whether this executor is backed by a work-stealing ForkJoinPool,
+	 * as opposed to the JDK 5/6 ThreadPoolExecutor fallback.
+	 */
+	public boolean isWorkStealing() {
+		return !(getExecutorService() instanceof ThreadPoolExecutor);
+	}
+
+	/**
+	 * Return the number of tasks that have been submitted but not started yet.
+	 */
+	public long getQueueSize() {
+		return obtainStatistics().getQueueSize();
+	}
+
+	/**
+	 * Return the number of tasks currently executing.
+	 */
+	public int getActiveCount() {
+		return obtainStatistics().getActiveCount();
+	}
+
+	/**
+	 * Return the number of tasks that completed normally.
+	 */
+	public long getCompletedTaskCount() {
+		return obtainStatistics().getCompletedTaskCount();
+	}
+
+	private TaskExecutionStatistics obtainStatistics() {
+		TaskExecutionStatistics statistics = getStatistics();
+		Assert.state(statistics != null, "WorkStealingTaskExecutor not initialized or statistics not enabled");
+		return statistics;
+	}
+
+
+	public void execute(Runnable task) {
+		ExecutorService executor = getExecutorService();
+		try {
+			executor.execute(decorateTask(task));
+		}
+		catch (RejectedExecutionException ex) {
+			taskRejected();
+			throw new TaskRejectedException("Executor [" + executor + "] did not accept task: " + task, ex);
+		}
+	}
+
+	public void execute(Runnable task, long startTimeout) {
+		execute(task);
+	}
+
+	public Future<?> submit(Runnable task) {
+		ExecutorService executor = getExecutorService();
+		try {
+			return submitTask(executor, task);
+		}
+		catch (RejectedExecutionException ex) {
+			taskRejected();
+			throw new TaskRejectedException("Executor [" + executor + "] did not accept task: " + task, ex);
+		}
+	}
+
+	public <T> Future<T> submit(Callable<T> task) {
+		ExecutorService executor = getExecutorService();
+		try {
+			return submitTask(executor, task);
+		}
+		catch (RejectedExecutionException ex) {
+			taskRejected();
+			throw new TaskRejectedException("Executor [" + executor + "] did not accept task: " + task, ex);
+		}
+	}
+
+	/**
+	 * This task executor prefers short-lived work units.
+	 */
+	public boolean prefersShortLivedTasks() {
+		return true;
+	}
+
+}
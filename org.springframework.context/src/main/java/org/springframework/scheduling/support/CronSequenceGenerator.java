@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,14 +16,8 @@
 
 package org.springframework.scheduling.support;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.BitSet;
-import java.util.Calendar;
-import java.util.Collections;
 import java.util.Date;
-import java.util.GregorianCalendar;
-import java.util.List;
 import java.util.TimeZone;
 
 import org.springframework.util.StringUtils;
@@ -46,6 +40,12 @@ import org.springframework.util.StringUtils;
  * <li>"0 0 0 25 12 ?" = every Christmas Day at midnight</li>
  * </ul>
  *
+ * <p>Local times skipped by a daylight saving transition do not match.
+ * Local times repeated by a daylight saving transition match at their
+ * first occurrence only, unless the pattern matches every hour: in the
+ * latter case, the repeated local times match again, so that e.g.
+ * "0 0/20 * * * *" keeps firing every twenty minutes across the transition.
+ *
  * @author Dave Syer
  * @author Juergen Hoeller
  * @since 3.0
@@ -53,6 +53,14 @@ import org.springframework.util.StringUtils;
  */
 public class CronSequenceGenerator {
 
+	private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+
+	private static final long MILLIS_PER_DAY = SECONDS_PER_DAY * 1000L;
+
+	/** Search limit for the next matching day: four years, as for leap days */
+	private static final int MAX_DAYS_TO_SEARCH = 4 * 366;
+
+
 	private final BitSet seconds = new BitSet(60);
 
 	private final BitSet minutes = new BitSet(60);
@@ -69,6 +77,9 @@ public class CronSequenceGenerator {
 
 	private final TimeZone timeZone;
 
+	/** Whether repeated local times match again at their second occurrence */
+	private final boolean matchRepeatedLocalTimes;
+
 	/**
 	 * Construct a {@link CronSequenceGenerator} from the pattern provided.
 	 * @param expression a space-separated list of time fields
@@ -79,6 +90,7 @@ public class CronSequenceGenerator {
 		this.expression = expression;
 		this.timeZone = timeZone;
 		parse(expression);
+		this.matchRepeatedLocalTimes = (this.hours.cardinality() == 24);
 	}
 
 	/**
@@ -92,134 +104,200 @@ public class CronSequenceGenerator {
 		/*
 		The plan:
 
-		1 Round up to the next whole second
+		1 Convert to local time in the target time zone, rounded up
+		  to the next whole second
 
-		2 If seconds match move on, otherwise find the next match:
-		2.1 If next match is in the next minute then roll forwards
+		2 Find the next day (starting with the current one) whose month,
+		  day of month and day of week match, skipping whole months
+		  that do not match
 
-		3 If minute matches move on, otherwise find the next match
-		3.1 If next match is in the next hour then roll forwards
-		3.2 Reset the seconds and go to 2
+		3 Within that day, find the next matching second of the day
+		  (starting at the current time on the first day, at midnight on
+		  later days); if there is none, move on to the next day and go to 2
 
-		4 If hour matches move on, otherwise find the next match
-		4.1 If next match is in the next day then roll forwards,
-		4.2 Reset the minutes and seconds and go to 2
-		
-		...
-		*/
-
-		Calendar calendar = new GregorianCalendar();
-		calendar.setTimeZone(this.timeZone);
-		calendar.setTime(date);
+		4 Convert the local time back to UTC; if it does not exist
+		  (daylight saving gap) or lies before the seed, continue after
+		  it and go to 2 - for a repeated local time, the first occurrence
+		  is used, and the second one only if the pattern matches every hour
 
-		// Truncate to the next whole second
-		calendar.add(Calendar.SECOND, 1);
-		calendar.set(Calendar.MILLISECOND, 0);
+		5 If local times are about to repeat (daylight saving overlap)
+		  and the pattern matches every hour, run the search once more from
+		  the local time at the later offset and use the earlier of both results
 
-		doNext(calendar, calendar.get(Calendar.YEAR));
+		All calculations are done on epoch days and seconds,
+		without any Calendar instances involved.
+		*/
 
-		return calendar.getTime();
+		long seed = date.getTime();
+		int offset = this.timeZone.getOffset(seed);
+		long result = doNext(seed, offset);
+		int laterOffset = this.timeZone.getOffset(seed + MILLIS_PER_DAY);
+		if (laterOffset < offset && this.matchRepeatedLocalTimes) {
+			// Local times are about to repeat (daylight saving overlap):
+			// also consider their second occurrence.
+			result = Math.min(result, doNext(seed, laterOffset));
+		}
+		return new Date(result);
 	}
 
-	private void doNext(Calendar calendar, int dot) {
-		List<Integer> resets = new ArrayList<Integer>();
-
-		int second = calendar.get(Calendar.SECOND);
-		List<Integer> emptyList = Collections.emptyList();
-		int updateSecond = findNext(this.seconds, second, calendar, Calendar.SECOND, Calendar.MINUTE, emptyList);
-		if (second == updateSecond) {
-			resets.add(Calendar.SECOND);
+	/**
+	 * Search for the next matching time after the given seed, starting
+	 * from the local time that corresponds to the seed at the given offset.
+	 * @param seed the UTC time to search after
+	 * @param offset the time zone offset to derive the local start time from
+	 * @return the next matching UTC time
+	 */
+	private long doNext(long seed, int offset) {
+		long localSeconds = floorDiv(seed + offset, 1000) + 1;
+		long day = floorDiv(localSeconds, SECONDS_PER_DAY);
+		int secondOfDay = (int) (localSeconds - day * SECONDS_PER_DAY);
+		long maxDay = day + MAX_DAYS_TO_SEARCH;
+
+		while (true) {
+			long matchingDay = findNextDay(day, maxDay);
+			if (matchingDay != day) {
+				day = matchingDay;
+				secondOfDay = 0;
+			}
+			int matchingSecond = findNextSecondOfDay(secondOfDay);
+			if (matchingSecond == -1) {
+				day++;
+				secondOfDay = 0;
+				continue;
+			}
+			long result = toUtcMillis((day * SECONDS_PER_DAY + matchingSecond) * 1000, seed);
+			if (result != Long.MIN_VALUE) {
+				return result;
+			}
+			// Local time does not exist or has passed already: try the next second.
+			secondOfDay = matchingSecond + 1;
+			if (secondOfDay == SECONDS_PER_DAY) {
+				day++;
+				secondOfDay = 0;
+			}
 		}
+	}
 
-		int minute = calendar.get(Calendar.MINUTE);
-		int updateMinute = findNext(this.minutes, minute, calendar, Calendar.MINUTE, Calendar.HOUR_OF_DAY, resets);
-		if (minute == updateMinute) {
-			resets.add(Calendar.MINUTE);
-		} else {
-			doNext(calendar, dot);
+	/**
+	 * Search for the next day (in epoch days) matching the month,
+	 * day of month and day of week fields, starting with the given day.
+	 * @param day the first candidate day
+	 * @param maxDay the last day to consider
+	 * @return the matching day
+	 * @throws IllegalStateException if no matching day could be found
+	 */
+	private long findNextDay(long day, long maxDay) {
+		while (day <= maxDay) {
+			// Civil date from epoch days, see http://howardhinnant.github.io/date_algorithms.html
+			long shifted = day + 719468;
+			long era = floorDiv(shifted, 146097);
+			int dayOfEra = (int) (shifted - era * 146097);
+			int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+			int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+			int shiftedMonth = (5 * dayOfYear + 2) / 153;
+			int dayOfMonth = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+			int month = (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+
+			if (!this.months.get(month - 1)) {
+				// Skip the remainder of this month
+				day += daysInMonth(yearOfEra + era * 400 + (month <= 2 ? 1 : 0), month) - dayOfMonth + 1;
+				continue;
+			}
+			// 1970-01-01 was a Thursday; in the cron pattern, Sunday is 0
+			int dayOfWeek = (int) floorMod(day + 4, 7);
+			if (this.daysOfMonth.get(dayOfMonth) && this.daysOfWeek.get(dayOfWeek)) {
+				return day;
+			}
+			day++;
 		}
+		throw new IllegalStateException("Invalid cron expression \"" + this.expression +
+				"\" led to runaway search for next trigger");
+	}
 
-		int hour = calendar.get(Calendar.HOUR_OF_DAY);
-		int updateHour = findNext(this.hours, hour, calendar, Calendar.HOUR_OF_DAY, Calendar.DAY_OF_WEEK, resets);
-		if (hour == updateHour) {
-			resets.add(Calendar.HOUR_OF_DAY);
-		} else {
-			doNext(calendar, dot);
+	/**
+	 * Search for the next second of the day matching the hour,
+	 * minute and second fields, starting with the given second.
+	 * @param secondOfDay the first candidate second of the day
+	 * @return the matching second of the day, or -1 if none
+	 * left within the current day
+	 */
+	private int findNextSecondOfDay(int secondOfDay) {
+		int currentHour = secondOfDay / 3600;
+		int currentMinute = (secondOfDay / 60) % 60;
+		int currentSecond = secondOfDay % 60;
+		for (int hour = this.hours.nextSetBit(currentHour); hour != -1; hour = this.hours.nextSetBit(hour + 1)) {
+			boolean currentHourMatched = (hour == currentHour);
+			int minute = this.minutes.nextSetBit(currentHourMatched ? currentMinute : 0);
+			for (; minute != -1; minute = this.minutes.nextSetBit(minute + 1)) {
+				boolean currentMinuteMatched = (currentHourMatched && minute == currentMinute);
+				int second = this.seconds.nextSetBit(currentMinuteMatched ? currentSecond : 0);
+				if (second != -1) {
+					return hour * 3600 + minute * 60 + second;
+				}
+			}
 		}
+		return -1;
+	}
 
-		int dayOfWeek = calendar.get(Calendar.DAY_OF_WEEK);
-		int dayOfMonth = calendar.get(Calendar.DAY_OF_MONTH);
-		int updateDayOfMonth = findNextDay(calendar, this.daysOfMonth, dayOfMonth, daysOfWeek, dayOfWeek, resets);
-		if (dayOfMonth == updateDayOfMonth) {
-			resets.add(Calendar.DAY_OF_MONTH);
-		} else {
-			doNext(calendar, dot);
+	/**
+	 * Convert the given local time to UTC, choosing the earliest
+	 * corresponding instant after the given seed in case of a local
+	 * time that occurs twice (daylight saving overlap). The second
+	 * occurrence is only considered if the pattern matches every hour;
+	 * otherwise, the local time has matched at its first occurrence already.
+	 * @param localMillis the local time, in milliseconds since the local epoch
+	 * @param seed the instant that the result needs to be after
+	 * @return the UTC time in milliseconds, or <code>Long.MIN_VALUE</code>
+	 * if the local time does not exist in this time zone (daylight saving gap)
+	 * or does not occur after the seed
+	 */
+	private long toUtcMillis(long localMillis, long seed) {
+		int offsetBefore = this.timeZone.getOffset(localMillis - MILLIS_PER_DAY);
+		int offsetAfter = this.timeZone.getOffset(localMillis + MILLIS_PER_DAY);
+		if (offsetBefore == offsetAfter) {
+			int offset = this.timeZone.getOffset(localMillis - offsetBefore);
+			if (offset == offsetBefore) {
+				long candidate = localMillis - offset;
+				return (candidate > seed ? candidate : Long.MIN_VALUE);
+			}
+			offsetAfter = offset;
 		}
-
-		int month = calendar.get(Calendar.MONTH);
-		int updateMonth = findNext(this.months, month, calendar, Calendar.MONTH, Calendar.YEAR, resets);
-		if (month != updateMonth) {
-			if (calendar.get(Calendar.YEAR) - dot > 4) {
-				throw new IllegalStateException("Invalid cron expression led to runaway search for next trigger");
+		// Offset transition nearby: try the larger offset first since it yields the earlier instant
+		int first = Math.max(offsetBefore, offsetAfter);
+		int second = Math.min(offsetBefore, offsetAfter);
+		long candidate = localMillis - first;
+		if (this.timeZone.getOffset(candidate) == first) {
+			if (candidate > seed) {
+				return candidate;
+			}
+			if (!this.matchRepeatedLocalTimes) {
+				return Long.MIN_VALUE;
 			}
-			doNext(calendar, dot);
 		}
-
+		candidate = localMillis - second;
+		if (this.timeZone.getOffset(candidate) == second && candidate > seed) {
+			return candidate;
+		}
+		return Long.MIN_VALUE;
 	}
 
-	private int findNextDay(Calendar calendar, BitSet daysOfMonth, int dayOfMonth, BitSet daysOfWeek, int dayOfWeek,
-			List<Integer> resets) {
-
-		int count = 0;
-		int max = 366;
-		// the DAY_OF_WEEK values in java.util.Calendar start with 1 (Sunday),
-		// but in the cron pattern, they start with 0, so we subtract 1 here
-		while ((!daysOfMonth.get(dayOfMonth) || !daysOfWeek.get(dayOfWeek - 1)) && count++ < max) {
-			calendar.add(Calendar.DAY_OF_MONTH, 1);
-			dayOfMonth = calendar.get(Calendar.DAY_OF_MONTH);
-			dayOfWeek = calendar.get(Calendar.DAY_OF_WEEK);
-			reset(calendar, resets);
+	private static int daysInMonth(long year, int month) {
+		if (month == 2) {
+			return ((year % 4 == 0 && year % 100 != 0) || year % 400 == 0 ? 29 : 28);
 		}
-		if (count >= max) {
-			throw new IllegalStateException("Overflow in day for expression=" + this.expression);
-		}
-		return dayOfMonth;
+		return (month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31);
 	}
 
-	/**
-	 * Search the bits provided for the next set bit after the value provided,
-	 * and reset the calendar.
-	 * @param bits a {@link BitSet} representing the allowed values of the field
-	 * @param value the current value of the field
-	 * @param calendar the calendar to increment as we move through the bits
-	 * @param field the field to increment in the calendar (@see
-	 * {@link Calendar} for the static constants defining valid fields)
-	 * @param lowerOrders the Calendar field ids that should be reset (i.e. the
-	 * ones of lower significance than the field of interest)
-	 * @return the value of the calendar field that is next in the sequence
-	 */
-	private int findNext(BitSet bits, int value, Calendar calendar, int field, int nextField, List<Integer> lowerOrders) {
-		int nextValue = bits.nextSetBit(value);
-		// roll over if needed
-		if (nextValue == -1) {
-			calendar.add(nextField, 1);
-			reset(calendar, Arrays.asList(field));
-			nextValue = bits.nextSetBit(0);
+	private static long floorDiv(long x, long y) {
+		long result = x / y;
+		if ((x % y != 0) && ((x ^ y) < 0)) {
+			result--;
 		}
-		if (nextValue != value) {
-			calendar.set(field, nextValue);
-			reset(calendar, lowerOrders);
-		}
-		return nextValue;
+		return result;
 	}
 
-	/**
-	 * Reset the calendar setting all the fields provided to zero.
-	 */
-	private void reset(Calendar calendar, List<Integer> fields) {
-		for (int field : fields) {
-			calendar.set(field, field == Calendar.DAY_OF_MONTH ? 1 : 0);
-		}
+	private static long floorMod(long x, long y) {
+		return x - floorDiv(x, y) * y;
 	}
 
 	// Parsing logic invoked by the constructor.
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.remoting.support;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import org.springframework.beans.SerializablePerson;
+import org.springframework.core.serializer.DefaultSerializer;
+
+/**
+ * @since 3.1
+ */
+public class CompactRemoteInvocationSerializerTests {
+
+	private final CompactRemoteInvocationSerializer serializer = new CompactRemoteInvocationSerializer();
+
+
+	@Test
+	public void remoteInvocationWithSimpleArguments() throws Exception {
+		RemoteInvocation invocation = new RemoteInvocation("doIt",
+				new Class[] {String.class, int.class, long.class, boolean.class, Date.class, Priority.class},
+				new Object[] {"value", -17, Long.MAX_VALUE, true, new Date(1000L), Priority.HIGH});
+		invocation.addAttribute("key", "attributeValue");
+
+		RemoteInvocation copy = (RemoteInvocation) roundTrip(invocation);
+		assertEquals("doIt", copy.getMethodName());
+		assertTrue(Arrays.equals(invocation.getParameterTypes(), copy.getParameterTypes()));
+		assertTrue(Arrays.equals(invocation.getArguments(), copy.getArguments()));
+		assertSame(Priority.HIGH, copy.getArguments()[5]);
+		assertEquals("attributeValue", copy.getAttribute("key"));
+	}
+
+	@Test
+	public void remoteInvocationWithNullsAndArrays() throws Exception {
+		RemoteInvocation invocation = new RemoteInvocation("doIt",
+				new Class[] {int[][].class, Integer[].class, byte[].class, String.class},
+				new Object[] {new int[][] {{1, 2}, {3}}, new Integer[] {4, null}, new byte[] {5, 6}, null});
+
+		RemoteInvocation copy = (RemoteInvocation) roundTrip(invocation);
+		Object[] arguments = copy.getArguments();
+		int[][] intArray = (int[][]) arguments[0];
+		assertTrue(Arrays.equals(new int[] {1, 2}, intArray[0]));
+		assertTrue(Arrays.equals(new int[] {3}, intArray[1]));
+		assertTrue(Arrays.equals(new Integer[] {4, null}, (Integer[]) arguments[1]));
+		assertTrue(Arrays.equals(new byte[] {5, 6}, (byte[]) arguments[2]));
+		assertNull(arguments[3]);
+		assertNull(copy.getAttributes());
+	}
+
+	@Test
+	public void remoteInvocationWithCollectionsAndSerializableFallback() throws Exception {
+		List<Object> list = new ArrayList<Object>();
+		list.add("a");
+		list.add(1.5d);
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("z", 'c');
+		map.put("a", (short) 3);
+		SerializablePerson person = new SerializablePerson();
+		person.setName("Juergen");
+		RemoteInvocation invocation = new RemoteInvocation("doIt",
+				new Class[] {List.class, Map.class, Object.class}, new Object[] {list, map, person});
+
+		RemoteInvocation copy = (RemoteInvocation) roundTrip(invocation);
+		assertEquals(list, copy.getArguments()[0]);
+		assertEquals(map, copy.getArguments()[1]);
+		assertEquals(Arrays.asList("z", "a"), new ArrayList<Object>(((Map<?, ?>) copy.getArguments()[1]).keySet()));
+		assertEquals(person, copy.getArguments()[2]);
+	}
+
+	@Test
+	public void remoteInvocationResultWithValue() throws Exception {
+		RemoteInvocationResult result = (RemoteInvocationResult) roundTrip(new RemoteInvocationResult("result"));
+		assertFalse(result.hasException());
+		assertEquals("result", result.getValue());
+	}
+
+	@Test
+	public void remoteInvocationResultWithException() throws Throwable {
+		RemoteInvocationResult result = (RemoteInvocationResult) roundTrip(
+				new RemoteInvocationResult(new InvocationTargetException(new IllegalStateException("ex"))));
+		assertTrue(result.hasInvocationTargetException());
+		try {
+			result.recreate();
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			assertEquals("ex", ex.getMessage());
+		}
+	}
+
+	@Test
+	public void arbitrarySerializableObject() throws Exception {
+		assertEquals(new Date(5L), roundTrip(new Date(5L)));
+	}
+
+	@Test
+	public void selfReferencingAndSharedValues() throws Exception {
+		List<Object> list = new ArrayList<Object>();
+		list.add("a");
+		list.add(list);
+		Object[] array = new Object[2];
+		array[0] = array;
+		Date date = new Date(1000L);
+		SerializablePerson person = new SerializablePerson();
+		RemoteInvocation invocation = new RemoteInvocation("doIt", new Class[] {List.class, Object[].class,
+				Date.class, Date.class, Object.class, Object.class, List.class},
+				new Object[] {list, array, date, date, person, person, list});
+
+		Object[] arguments = ((RemoteInvocation) roundTrip(invocation)).getArguments();
+		List<?> listCopy = (List<?>) arguments[0];
+		assertEquals("a", listCopy.get(0));
+		assertSame(listCopy, listCopy.get(1));
+		Object[] arrayCopy = (Object[]) arguments[1];
+		assertSame(arrayCopy, arrayCopy[0]);
+		assertNull(arrayCopy[1]);
+		assertEquals(date, arguments[2]);
+		assertSame(arguments[2], arguments[3]);
+		assertSame(arguments[4], arguments[5]);
+		assertSame(listCopy, arguments[6]);
+	}
+
+	@Test
+	public void largeByteArray() throws Exception {
+		byte[] bytes = new byte[100000];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) i;
+		}
+		RemoteInvocationResult result = (RemoteInvocationResult) roundTrip(new RemoteInvocationResult(bytes));
+		assertTrue(Arrays.equals(bytes, (byte[]) result.getValue()));
+	}
+
+	@Test
+	public void maxCollectionSizeEnforced() throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		this.serializer.serialize(new RemoteInvocationResult(new ArrayList<Object>(Arrays.asList(1, 2, 3))), os);
+		this.serializer.setMaxCollectionSize(2);
+		try {
+			this.serializer.deserialize(new ByteArrayInputStream(os.toByteArray()));
+			fail("Should have thrown IOException");
+		}
+		catch (IOException ex) {
+			assertTrue(ex.getMessage().contains("maxCollectionSize"));
+		}
+	}
+
+	@Test(expected = EOFException.class)
+	public void truncatedByteArrayRejectedBeforeAllocation() throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		this.serializer.serialize(new RemoteInvocationResult(new byte[] {1, 2, 3}), os);
+		byte[] message = os.toByteArray();
+		// Declare a length of Integer.MAX_VALUE for the byte array (zig-zag encoded var-int).
+		ByteArrayOutputStream corrupt = new ByteArrayOutputStream();
+		corrupt.write(message, 0, 6);
+		corrupt.write(new byte[] {(byte) 0xFE, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F});
+		corrupt.write(message, 7, message.length - 7);
+		this.serializer.deserialize(new ByteArrayInputStream(corrupt.toByteArray()));
+	}
+
+	@Test(expected = IOException.class)
+	public void unknownEnumConstantRejected() throws Exception {
+		this.serializer.deserialize(new ByteArrayInputStream(
+				replace(new RemoteInvocationResult(Priority.LOW), "LOW", "BAD")));
+	}
+
+	@Test(expected = IOException.class)
+	public void nonEnumTypeRejectedForEnumValue() throws Exception {
+		this.serializer.deserialize(new ByteArrayInputStream(
+				replace(new RemoteInvocationResult(Priority.LOW), "$Priority", "$Position")));
+	}
+
+	@Test(expected = IOException.class)
+	public void javaSerializationStreamRejected() throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		new DefaultSerializer().serialize(new RemoteInvocationResult("result"), os);
+		this.serializer.deserialize(new ByteArrayInputStream(os.toByteArray()));
+	}
+
+
+	private Object roundTrip(Object object) throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		this.serializer.serialize(object, os);
+		return this.serializer.deserialize(new ByteArrayInputStream(os.toByteArray()));
+	}
+
+	private byte[] replace(Object object, String original, String replacement) throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		this.serializer.serialize(object, os);
+		String message = new String(os.toByteArray(), "ISO-8859-1");
+		assertTrue(message.contains(original));
+		return message.replace(original, replacement).getBytes("ISO-8859-1");
+	}
+
+
+	private enum Priority {
+
+		LOW,
+
+		HIGH {
+			@Override
+			public String toString() {
+				return "high";
+			}
+		}
+	}
+
+
+	private static class Position {
+	}
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.remoting.support;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import org.springframework.core.serializer.DefaultDeserializer;
+import org.springframework.core.serializer.DefaultSerializer;
+import org.springframework.core.serializer.Deserializer;
+import org.springframework.core.serializer.Serializer;
+import org.springframework.util.StopWatch;
+
+/**
+ * Round-trip throughput and message size comparison between Java serialization
+ * and {@link CompactRemoteInvocationSerializer}.
+ *
+ * NOTE: Only asserts message sizes, not timings!
+ *
+ * @since 3.1
+ */
+public final class RemoteInvocationSerializationBenchmarkTests {
+
+	/** Increase this if you want meaningful results! */
+	private static final int ROUND_TRIPS = 10000;
+
+
+	@Test
+	public void compareRoundTrips() throws Exception {
+		List<String> names = new ArrayList<String>();
+		for (int i = 0; i < 10; i++) {
+			names.add("name" + i);
+		}
+		RemoteInvocation invocation = new RemoteInvocation("updateCustomer",
+				new Class[] {long.class, String.class, Date.class, List.class, int[].class},
+				new Object[] {42L, "Juergen", new Date(), names, new int[] {1, 2, 3, 4, 5}});
+		RemoteInvocationResult result = new RemoteInvocationResult(names);
+
+		StopWatch sw = new StopWatch();
+		int javaSize = roundTrip(new DefaultSerializer(), new DefaultDeserializer(), invocation, result, sw, "Java serialization");
+		CompactRemoteInvocationSerializer compact = new CompactRemoteInvocationSerializer();
+		int compactSize = roundTrip(compact, compact, invocation, result, sw, "Compact serialization");
+
+		System.out.println(sw.prettyPrint());
+		System.out.println("Message size: Java serialization " + javaSize + " bytes, compact " + compactSize + " bytes");
+		assertTrue("Compact message not smaller: " + compactSize, compactSize < javaSize);
+	}
+
+	private int roundTrip(Serializer<Object> serializer, Deserializer<Object> deserializer,
+			RemoteInvocation invocation, RemoteInvocationResult result, StopWatch sw, String name) throws Exception {
+
+		int size = 0;
+		sw.start(ROUND_TRIPS + " round trips with " + name);
+		for (int i = 0; i < ROUND_TRIPS; i++) {
+			ByteArrayOutputStream os = new ByteArrayOutputStream(1024);
+			serializer.serialize(invocation, os);
+			size = os.size();
+			deserializer.deserialize(new ByteArrayInputStream(os.toByteArray()));
+			os.reset();
+			serializer.serialize(result, os);
+			size += os.size();
+			deserializer.deserialize(new ByteArrayInputStream(os.toByteArray()));
+		}
+		sw.stop();
+		return size;
+	}
+
+}
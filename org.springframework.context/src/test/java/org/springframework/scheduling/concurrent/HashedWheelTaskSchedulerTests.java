@@ -0,0 +1,264 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.scheduling.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.TriggerContext;
+import org.springframework.util.ErrorHandler;
+
+/**
+ * @since 3.1
+ */
+public class HashedWheelTaskSchedulerTests {
+
+	private static final String THREAD_NAME_PREFIX = "test-";
+
+
+	private final HashedWheelTaskScheduler scheduler = new HashedWheelTaskScheduler();
+
+
+	@Before
+	public void initScheduler() {
+		scheduler.setThreadNamePrefix(THREAD_NAME_PREFIX);
+		scheduler.setTickDuration(10);
+		scheduler.setTicksPerWheel(64);
+		scheduler.afterPropertiesSet();
+	}
+
+	@After
+	public void shutdownScheduler() {
+		scheduler.destroy();
+	}
+
+
+	@Test
+	public void executeRunnable() {
+		TestTask task = new TestTask(1);
+		scheduler.execute(task);
+		await(task.latch);
+		assertThreadNamePrefix(task);
+	}
+
+	@Test
+	public void scheduleOneTimeTask() throws Exception {
+		TestTask task = new TestTask(1);
+		long start = System.currentTimeMillis();
+		Future<?> future = scheduler.schedule(task, new Date(start + 50));
+		Object result = future.get(1000, TimeUnit.MILLISECONDS);
+		assertNull(result);
+		assertTrue(future.isDone());
+		assertTrue("Task executed too early", task.lastRunTime >= start + 50);
+		assertThreadNamePrefix(task);
+	}
+
+	@Test(expected = ExecutionException.class)
+	public void scheduleOneTimeFailingTaskWithoutErrorHandler() throws Exception {
+		TestTask task = new TestTask(0);
+		Future<?> future = scheduler.schedule(task, new Date());
+		try {
+			future.get(1000, TimeUnit.MILLISECONDS);
+		}
+		catch (ExecutionException ex) {
+			assertTrue(future.isDone());
+			throw ex;
+		}
+	}
+
+	@Test
+	public void scheduleOneTimeFailingTaskWithErrorHandler() throws Exception {
+		TestTask task = new TestTask(0);
+		TestErrorHandler errorHandler = new TestErrorHandler(1);
+		scheduler.setErrorHandler(errorHandler);
+		Future<?> future = scheduler.schedule(task, new Date());
+		Object result = future.get(1000, TimeUnit.MILLISECONDS);
+		assertTrue(future.isDone());
+		assertNull(result);
+		assertNotNull(errorHandler.lastError);
+	}
+
+	@Test
+	public void scheduleTaskBeyondWheelRevolution() throws Exception {
+		TestTask task = new TestTask(1);
+		long start = System.currentTimeMillis();
+		// 64 ticks of 10 ms per revolution
+		Future<?> future = scheduler.schedule(task, new Date(start + 1500));
+		future.get(3000, TimeUnit.MILLISECONDS);
+		assertTrue("Task executed too early", task.lastRunTime >= start + 1500);
+	}
+
+	@Test
+	public void scheduleTriggerTask() throws Exception {
+		TestTask task = new TestTask(3);
+		Future<?> future = scheduler.schedule(task, new TestTrigger(3));
+		Object result = future.get(1000, TimeUnit.MILLISECONDS);
+		assertNull(result);
+		await(task.latch);
+		assertThreadNamePrefix(task);
+	}
+
+	@Test
+	public void scheduleTriggerTaskWithoutExecution() throws Exception {
+		assertNull(scheduler.schedule(new TestTask(0), new TestTrigger(0)));
+	}
+
+	@Test
+	public void scheduleAtFixedRateAndCancel() throws Exception {
+		TestTask task = new TestTask(Integer.MAX_VALUE);
+		ScheduledFuture<?> future = scheduler.scheduleAtFixedRate(task, 20);
+		Thread.sleep(200);
+		assertTrue(future.cancel(false));
+		assertTrue(future.isCancelled());
+		assertTrue(future.isDone());
+		int runCount = task.actualRunCount.get();
+		assertTrue("Expected several executions but got " + runCount, runCount > 2);
+		Thread.sleep(100);
+		assertTrue(task.actualRunCount.get() <= runCount + 1);
+	}
+
+	@Test
+	public void scheduleManyTasks() throws Exception {
+		CountDownLatch latch = new CountDownLatch(10000);
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < 10000; i++) {
+			scheduler.schedule(new CountDownTask(latch), new Date(start + (i % 500)));
+		}
+		assertTrue(latch.await(5000, TimeUnit.MILLISECONDS));
+		assertEquals(0, scheduler.getScheduledTaskCount());
+	}
+
+	@Test
+	public void cancelledTaskDoesNotExecute() throws Exception {
+		TestTask task = new TestTask(1);
+		ScheduledFuture<?> future = scheduler.schedule(task, new Date(System.currentTimeMillis() + 100));
+		assertTrue(future.cancel(false));
+		assertFalse(future.cancel(false));
+		Thread.sleep(200);
+		assertEquals(0, task.actualRunCount.get());
+	}
+
+
+	private void assertThreadNamePrefix(TestTask task) {
+		assertEquals(THREAD_NAME_PREFIX, task.lastThread.getName().substring(0, THREAD_NAME_PREFIX.length()));
+	}
+
+	private void await(CountDownLatch latch) {
+		try {
+			latch.await(1000, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException ex) {
+			throw new RuntimeException(ex);
+		}
+		assertEquals("latch did not count down,", 0, latch.getCount());
+	}
+
+
+	private static class TestTask implements Runnable {
+
+		private final int expectedRunCount;
+
+		private final AtomicInteger actualRunCount = new AtomicInteger();
+
+		private final CountDownLatch latch;
+
+		private volatile Thread lastThread;
+
+		private volatile long lastRunTime;
+
+		TestTask(int expectedRunCount) {
+			this.expectedRunCount = expectedRunCount;
+			this.latch = new CountDownLatch(Math.min(expectedRunCount, 100));
+		}
+
+		public void run() {
+			lastThread = Thread.currentThread();
+			lastRunTime = System.currentTimeMillis();
+			if (actualRunCount.incrementAndGet() > expectedRunCount) {
+				throw new RuntimeException("intentional test failure");
+			}
+			latch.countDown();
+		}
+	}
+
+
+	private static class CountDownTask implements Runnable {
+
+		private final CountDownLatch latch;
+
+		CountDownTask(CountDownLatch latch) {
+			this.latch = latch;
+		}
+
+		public void run() {
+			this.latch.countDown();
+		}
+	}
+
+
+	private static class TestErrorHandler implements ErrorHandler {
+
+		private final CountDownLatch latch;
+
+		private volatile Throwable lastError;
+
+		TestErrorHandler(int expectedErrorCount) {
+			this.latch = new CountDownLatch(expectedErrorCount);
+		}
+
+		public void handleError(Throwable t) {
+			this.lastError = t;
+			this.latch.countDown();
+		}
+	}
+
+
+	private static class TestTrigger implements Trigger {
+
+		private final int maxRunCount;
+
+		private final AtomicInteger actualRunCount = new AtomicInteger();
+
+		TestTrigger(int maxRunCount) {
+			this.maxRunCount = maxRunCount;
+		}
+
+		public Date nextExecutionTime(TriggerContext triggerContext) {
+			if (this.actualRunCount.incrementAndGet() > this.maxRunCount) {
+				return null;
+			}
+			return new Date();
+		}
+	}
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.scheduling.concurrent;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ */
+public class LightweightThreadTaskExecutorTests {
+
+	private final LightweightThreadTaskExecutor executor = new LightweightThreadTaskExecutor();
+
+
+	@After
+	public void shutdownExecutor() {
+		executor.destroy();
+	}
+
+
+	@Test
+	public void blockingTasksRunConcurrently() throws Exception {
+		executor.afterPropertiesSet();
+		final int taskCount = 20;
+		final CountDownLatch allStarted = new CountDownLatch(taskCount);
+		for (int i = 0; i < taskCount; i++) {
+			executor.execute(new Runnable() {
+				public void run() {
+					allStarted.countDown();
+					try {
+						allStarted.await();
+					}
+					catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+		}
+		assertTrue("Tasks did not run concurrently", allStarted.await(2, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void platformThreadsWithPrefix() throws Exception {
+		executor.setPreferVirtualThreads(false);
+		executor.setThreadNamePrefix("lightweight-");
+		executor.afterPropertiesSet();
+		assertFalse(executor.isVirtualThreads());
+		Future<String> future = executor.submit(new Callable<String>() {
+			public String call() {
+				return Thread.currentThread().getName();
+			}
+		});
+		assertTrue(future.get(1, TimeUnit.SECONDS).startsWith("lightweight-"));
+		assertEquals(1, executor.getCompletedTaskCount());
+		assertEquals(1, executor.getStatistics().getExecutionTimeHistogram().getCount());
+	}
+
+	@Test
+	public void virtualThreadsIfAvailable() throws Exception {
+		executor.afterPropertiesSet();
+		assertEquals(hasMethod(Thread.class, "ofVirtual"), executor.isVirtualThreads());
+		Future<Boolean> future = executor.submit(new Callable<Boolean>() {
+			public Boolean call() {
+				return true;
+			}
+		});
+		assertTrue(future.get(1, TimeUnit.SECONDS));
+	}
+
+	private static boolean hasMethod(Class<?> clazz, String name) {
+		try {
+			clazz.getMethod(name);
+			return true;
+		}
+		catch (NoSuchMethodException ex) {
+			return false;
+		}
+	}
+
+}
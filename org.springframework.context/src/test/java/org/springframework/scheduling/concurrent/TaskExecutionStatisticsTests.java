@@ -0,0 +1,333 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.scheduling.concurrent;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.jmx.export.annotation.AnnotationMBeanExporter;
+
+/**
+ */
+public class TaskExecutionStatisticsTests {
+
+	@Test
+	public void statisticsDisabledByDefault() {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.afterPropertiesSet();
+		try {
+			assertNull(executor.getStatistics());
+			Runnable task = new Runnable() {
+				public void run() {
+				}
+			};
+			assertSame(task, executor.decorateTask(task));
+		}
+		finally {
+			executor.destroy();
+		}
+	}
+
+	@Test
+	public void threadPoolTaskExecutorStatistics() throws Exception {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setStatisticsEnabled(true);
+		executor.afterPropertiesSet();
+		try {
+			for (int i = 0; i < 10; i++) {
+				executor.submit(new Callable<Object>() {
+					public Object call() {
+						return null;
+					}
+				}).get(1, TimeUnit.SECONDS);
+			}
+			Future<?> failed = executor.submit(new Runnable() {
+				public void run() {
+					throw new IllegalStateException();
+				}
+			});
+			while (!failed.isDone()) {
+				Thread.sleep(10);
+			}
+			TaskExecutionStatistics statistics = executor.getStatistics();
+			assertEquals(11, statistics.getSubmittedTaskCount());
+			assertEquals(10, statistics.getCompletedTaskCount());
+			awaitCount(statistics, 1);
+			assertEquals(0, statistics.getQueueSize());
+			assertEquals(11, statistics.getQueueTimeHistogram().getCount());
+		}
+		finally {
+			executor.destroy();
+		}
+	}
+
+	@Test
+	public void rejectedTasks() {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setStatisticsEnabled(true);
+		executor.afterPropertiesSet();
+		executor.shutdown();
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+				}
+			});
+			fail("Should have thrown TaskRejectedException");
+		}
+		catch (TaskRejectedException ex) {
+			assertEquals(1, executor.getStatistics().getRejectedTaskCount());
+			assertEquals(0, executor.getStatistics().getSubmittedTaskCount());
+		}
+	}
+
+	@Test
+	public void cancelledTaskNotQueued() throws Exception {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setStatisticsEnabled(true);
+		executor.afterPropertiesSet();
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			executor.execute(new BlockingTask(release));
+			awaitActive(executor.getStatistics());
+			Future<?> future = executor.submit(new Runnable() {
+				public void run() {
+				}
+			});
+			assertEquals(1, executor.getStatistics().getQueueSize());
+			assertTrue(future.cancel(false));
+			assertEquals(0, executor.getStatistics().getQueueSize());
+			assertEquals(1, executor.getStatistics().getDiscardedTaskCount());
+		}
+		finally {
+			release.countDown();
+			executor.destroy();
+		}
+	}
+
+	@Test
+	public void discardedTaskNotQueued() throws Exception {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setMaxPoolSize(1);
+		executor.setQueueCapacity(1);
+		executor.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
+		executor.setStatisticsEnabled(true);
+		executor.afterPropertiesSet();
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			executor.execute(new BlockingTask(release));
+			awaitActive(executor.getStatistics());
+			executor.execute(new BlockingTask(release));
+			executor.execute(new BlockingTask(release));
+			assertEquals(1, executor.getStatistics().getQueueSize());
+			assertEquals(1, executor.getStatistics().getDiscardedTaskCount());
+			assertEquals(0, executor.getStatistics().getRejectedTaskCount());
+		}
+		finally {
+			release.countDown();
+			executor.destroy();
+		}
+	}
+
+	@Test
+	public void slowTaskDetection() throws Exception {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setStatisticsEnabled(true);
+		executor.setSlowTaskThreshold(20);
+		executor.afterPropertiesSet();
+		try {
+			executor.submit(new Runnable() {
+				public void run() {
+				}
+			}).get(1, TimeUnit.SECONDS);
+			executor.submit(new Runnable() {
+				public void run() {
+					try {
+						Thread.sleep(50);
+					}
+					catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}).get(1, TimeUnit.SECONDS);
+			assertEquals(1, executor.getStatistics().getSlowTaskCount());
+			assertTrue(executor.getStatistics().getMaxExecutionTime() >= 20);
+		}
+		finally {
+			executor.destroy();
+		}
+	}
+
+	@Test
+	public void threadPoolTaskSchedulerStatistics() throws Exception {
+		ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+		scheduler.setStatisticsEnabled(true);
+		scheduler.afterPropertiesSet();
+		try {
+			final CountDownLatch latch = new CountDownLatch(3);
+			Future<?> future = scheduler.scheduleAtFixedRate(new Runnable() {
+				public void run() {
+					latch.countDown();
+				}
+			}, 10);
+			assertTrue(latch.await(1, TimeUnit.SECONDS));
+			future.cancel(false);
+			scheduler.submit(new Runnable() {
+				public void run() {
+				}
+			}).get(1, TimeUnit.SECONDS);
+			TaskExecutionStatistics statistics = scheduler.getStatistics();
+			assertTrue(statistics.getExecutionTimeHistogram().getCount() >= 4);
+			assertEquals(1, statistics.getQueueTimeHistogram().getCount());
+			assertEquals(0, statistics.getQueueSize());
+		}
+		finally {
+			scheduler.destroy();
+		}
+	}
+
+	@Test
+	public void hashedWheelTaskSchedulerStatistics() throws Exception {
+		HashedWheelTaskScheduler scheduler = new HashedWheelTaskScheduler();
+		scheduler.setTickDuration(10);
+		scheduler.setStatisticsEnabled(true);
+		scheduler.afterPropertiesSet();
+		try {
+			scheduler.submit(new Runnable() {
+				public void run() {
+				}
+			}).get(1, TimeUnit.SECONDS);
+			scheduler.schedule(new Runnable() {
+				public void run() {
+				}
+			}, new Date()).get(1, TimeUnit.SECONDS);
+			TaskExecutionStatistics statistics = scheduler.getStatistics();
+			assertEquals(2, statistics.getSubmittedTaskCount());
+			assertEquals(2, statistics.getExecutionTimeHistogram().getCount());
+			assertEquals(1, statistics.getQueueTimeHistogram().getCount());
+			assertEquals(0, statistics.getQueueSize());
+		}
+		finally {
+			scheduler.destroy();
+		}
+	}
+
+	@Test
+	public void threadPoolExecutorFactoryBeanStatistics() throws Exception {
+		ThreadPoolExecutorFactoryBean factory = new ThreadPoolExecutorFactoryBean();
+		factory.setStatisticsEnabled(true);
+		factory.afterPropertiesSet();
+		try {
+			ExecutorService executor = factory.getObject();
+			executor.submit(new Runnable() {
+				public void run() {
+				}
+			}).get(1, TimeUnit.SECONDS);
+			executor.invokeAll(Collections.singleton(new Callable<Object>() {
+				public Object call() {
+					return null;
+				}
+			}));
+			TaskExecutionStatistics statistics = factory.getStatistics();
+			assertEquals(2, statistics.getSubmittedTaskCount());
+			assertEquals(2, statistics.getCompletedTaskCount());
+			assertEquals(0, statistics.getQueueSize());
+		}
+		finally {
+			factory.destroy();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void scheduledExecutorFactoryBeanRejectsStatistics() {
+		ScheduledExecutorFactoryBean factory = new ScheduledExecutorFactoryBean();
+		factory.setStatisticsEnabled(true);
+		factory.afterPropertiesSet();
+	}
+
+	@Test
+	public void exportThroughJmx() throws Exception {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setStatisticsEnabled(true);
+		executor.afterPropertiesSet();
+		MBeanServer server = MBeanServerFactory.newMBeanServer();
+		AnnotationMBeanExporter exporter = new AnnotationMBeanExporter();
+		exporter.setServer(server);
+		try {
+			executor.submit(new Runnable() {
+				public void run() {
+				}
+			}).get(1, TimeUnit.SECONDS);
+			ObjectName name = ObjectName.getInstance("spring:type=TaskExecutionStatistics,name=executor");
+			exporter.registerManagedResource(executor.getStatistics(), name);
+			assertEquals(1L, server.getAttribute(name, "CompletedTaskCount"));
+			assertEquals(0L, server.getAttribute(name, "QueueSize"));
+			server.invoke(name, "resetHistograms", null, null);
+			assertEquals(0L, executor.getStatistics().getExecutionTimeHistogram().getCount());
+		}
+		finally {
+			exporter.destroy();
+			executor.destroy();
+		}
+	}
+
+	private void awaitActive(TaskExecutionStatistics statistics) throws InterruptedException {
+		for (int i = 0; i < 100 && statistics.getActiveCount() < 1; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(1, statistics.getActiveCount());
+	}
+
+	private void awaitCount(TaskExecutionStatistics statistics, long failed) throws InterruptedException {
+		for (int i = 0; i < 100 && statistics.getFailedTaskCount() < failed; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(failed, statistics.getFailedTaskCount());
+	}
+
+
+	private static class BlockingTask implements Runnable {
+
+		private final CountDownLatch release;
+
+		public BlockingTask(CountDownLatch release) {
+			this.release = release;
+		}
+
+		public void run() {
+			try {
+				this.release.await();
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+}
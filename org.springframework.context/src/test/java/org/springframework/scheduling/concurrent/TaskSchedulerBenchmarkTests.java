@@ -0,0 +1,107 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.scheduling.concurrent;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ScheduledFuture;
+
+import org.junit.Test;
+
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.support.CronSequenceGenerator;
+import org.springframework.scheduling.support.CronTrigger;
+import org.springframework.util.StopWatch;
+
+/**
+ * Benchmarks for cron evaluation and for scheduling large numbers of
+ * cron-triggered tasks.
+ *
+ * NOTE: No assertions!
+ *
+ * @since 3.1
+ */
+public final class TaskSchedulerBenchmarkTests {
+
+	/** Increase this if you want meaningful results! */
+	private static final int TRIGGERS = 20000;
+
+	private static final String[] EXPRESSIONS = {
+			"0 0 * * * *", "*/10 * * * * *", "0 0/30 8-10 * * *", "0 0 9-17 * * MON-FRI", "0 0 0 25 12 ?"};
+
+
+	@Test
+	public void timeCronEvaluation() {
+		List<CronSequenceGenerator> generators = new ArrayList<CronSequenceGenerator>(TRIGGERS);
+		for (int i = 0; i < TRIGGERS; i++) {
+			generators.add(new CronSequenceGenerator(EXPRESSIONS[i % EXPRESSIONS.length], TimeZone.getDefault()));
+		}
+		StopWatch sw = new StopWatch();
+		Date date = new Date();
+		sw.start(TRIGGERS + " next execution times");
+		for (CronSequenceGenerator generator : generators) {
+			generator.next(date);
+		}
+		sw.stop();
+		sw.start(TRIGGERS + " next execution times (warm)");
+		for (CronSequenceGenerator generator : generators) {
+			generator.next(date);
+		}
+		sw.stop();
+		System.out.println(sw.prettyPrint());
+	}
+
+	@Test
+	public void timeSchedulingCronTriggers() {
+		ThreadPoolTaskScheduler threadPoolScheduler = new ThreadPoolTaskScheduler();
+		threadPoolScheduler.afterPropertiesSet();
+		HashedWheelTaskScheduler wheelScheduler = new HashedWheelTaskScheduler();
+		wheelScheduler.afterPropertiesSet();
+
+		StopWatch sw = new StopWatch();
+		try {
+			scheduleAndCancel(threadPoolScheduler, sw, "ThreadPoolTaskScheduler");
+			scheduleAndCancel(wheelScheduler, sw, "HashedWheelTaskScheduler");
+		}
+		finally {
+			threadPoolScheduler.destroy();
+			wheelScheduler.destroy();
+		}
+		System.out.println(sw.prettyPrint());
+	}
+
+	private void scheduleAndCancel(TaskScheduler scheduler, StopWatch sw, String name) {
+		Runnable task = new Runnable() {
+			public void run() {
+			}
+		};
+		List<ScheduledFuture> futures = new ArrayList<ScheduledFuture>(TRIGGERS);
+		sw.start(TRIGGERS + " cron triggers scheduled on " + name);
+		for (int i = 0; i < TRIGGERS; i++) {
+			futures.add(scheduler.schedule(task, new CronTrigger(EXPRESSIONS[i % EXPRESSIONS.length])));
+		}
+		sw.stop();
+		sw.start(TRIGGERS + " cron triggers cancelled on " + name);
+		for (ScheduledFuture future : futures) {
+			future.cancel(false);
+		}
+		sw.stop();
+	}
+
+}
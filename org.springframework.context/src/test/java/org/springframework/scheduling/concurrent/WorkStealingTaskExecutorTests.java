@@ -0,0 +1,142 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.scheduling.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.core.task.TaskRejectedException;
+
+/**
+ */
+public class WorkStealingTaskExecutorTests {
+
+	private final WorkStealingTaskExecutor executor = new WorkStealingTaskExecutor();
+
+
+	@Before
+	public void initExecutor() {
+		executor.setParallelism(4);
+		executor.afterPropertiesSet();
+	}
+
+	@After
+	public void shutdownExecutor() {
+		executor.destroy();
+	}
+
+
+	@Test
+	public void submitCallables() throws Exception {
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		for (int i = 0; i < 100; i++) {
+			final int value = i;
+			futures.add(executor.submit(new Callable<Integer>() {
+				public Integer call() {
+					return value * 2;
+				}
+			}));
+		}
+		for (int i = 0; i < 100; i++) {
+			assertEquals(Integer.valueOf(i * 2), futures.get(i).get(1, TimeUnit.SECONDS));
+		}
+		assertEquals(100, executor.getCompletedTaskCount());
+		assertEquals(0, executor.getQueueSize());
+		assertEquals(100, executor.getStatistics().getExecutionTimeHistogram().getCount());
+		assertEquals(100, executor.getStatistics().getQueueTimeHistogram().getCount());
+	}
+
+	@Test
+	public void executeRunnables() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(50);
+		for (int i = 0; i < 50; i++) {
+			executor.execute(new Runnable() {
+				public void run() {
+					latch.countDown();
+				}
+			});
+		}
+		assertTrue(latch.await(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void activeCount() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Future<?> future = executor.submit(new Runnable() {
+			public void run() {
+				started.countDown();
+				try {
+					release.await();
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		assertTrue(started.await(1, TimeUnit.SECONDS));
+		assertEquals(1, executor.getActiveCount());
+		release.countDown();
+		future.get(1, TimeUnit.SECONDS);
+		assertEquals(0, executor.getActiveCount());
+	}
+
+	@Test
+	public void failedTask() throws Exception {
+		Future<Object> future = executor.submit(new Callable<Object>() {
+			public Object call() {
+				throw new IllegalStateException("failure");
+			}
+		});
+		try {
+			future.get(1, TimeUnit.SECONDS);
+			fail("Should have thrown ExecutionException");
+		}
+		catch (ExecutionException ex) {
+			assertTrue(ex.getCause() instanceof IllegalStateException);
+		}
+		assertEquals(1, executor.getStatistics().getFailedTaskCount());
+		assertEquals(0, executor.getCompletedTaskCount());
+	}
+
+	@Test
+	public void rejectedAfterShutdown() {
+		executor.shutdown();
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+				}
+			});
+			fail("Should have thrown TaskRejectedException");
+		}
+		catch (TaskRejectedException ex) {
+			assertEquals(1, executor.getStatistics().getRejectedTaskCount());
+			assertEquals(0, executor.getQueueSize());
+		}
+	}
+
+}
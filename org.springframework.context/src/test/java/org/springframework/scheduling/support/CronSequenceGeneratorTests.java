@@ -0,0 +1,135 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.scheduling.support;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * @since 3.1
+ */
+public class CronSequenceGeneratorTests {
+
+	private static final TimeZone NEW_YORK = TimeZone.getTimeZone("America/New_York");
+
+	private static final TimeZone BERLIN = TimeZone.getTimeZone("Europe/Berlin");
+
+
+	@Test
+	public void nextWithinSameDay() throws Exception {
+		CronSequenceGenerator generator = new CronSequenceGenerator("0 0/30 8-10 * * *", NEW_YORK);
+		assertEquals(date("2011-03-01 08:30:00"), generator.next(date("2011-03-01 08:00:00")));
+		assertEquals(date("2011-03-01 08:30:00"), generator.next(date("2011-03-01 08:29:59")));
+		assertEquals(date("2011-03-01 10:30:00"), generator.next(date("2011-03-01 10:00:00")));
+		assertEquals(date("2011-03-02 08:00:00"), generator.next(date("2011-03-01 10:30:00")));
+	}
+
+	@Test
+	public void nextRoundsUpToWholeSecond() throws Exception {
+		CronSequenceGenerator generator = new CronSequenceGenerator("* * * * * *", NEW_YORK);
+		Date date = new Date(date("2011-03-01 08:00:00").getTime() + 500);
+		assertEquals(date("2011-03-01 08:00:01"), generator.next(date));
+	}
+
+	@Test
+	public void nextSkipsNonMatchingMonthsAndWeekdays() throws Exception {
+		CronSequenceGenerator generator = new CronSequenceGenerator("0 0 9 * JUL MON", NEW_YORK);
+		assertEquals(date("2011-07-04 09:00:00"), generator.next(date("2011-01-15 12:00:00")));
+		assertEquals(date("2011-07-11 09:00:00"), generator.next(date("2011-07-04 09:00:00")));
+	}
+
+	@Test
+	public void nextLeapDay() throws Exception {
+		CronSequenceGenerator generator = new CronSequenceGenerator("0 0 0 29 2 *", NEW_YORK);
+		assertEquals(date("2012-02-29 00:00:00"), generator.next(date("2011-03-01 00:00:00")));
+		assertEquals(date("2016-02-29 00:00:00"), generator.next(date("2012-02-29 00:00:00")));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void nextWithNonExistentDate() throws Exception {
+		new CronSequenceGenerator("0 0 0 30 2 *", NEW_YORK).next(date("2011-03-01 00:00:00"));
+	}
+
+	@Test
+	public void nextSkipsLocalTimeInDaylightSavingGap() throws Exception {
+		// 2011-03-13 02:30 does not exist in New York
+		CronSequenceGenerator generator = new CronSequenceGenerator("0 30 2 * * *", NEW_YORK);
+		assertEquals(date("2011-03-14 02:30:00"), generator.next(date("2011-03-13 00:00:00")));
+	}
+
+	@Test
+	public void nextDuringDaylightSavingOverlap() throws Exception {
+		// 2011-11-06 01:00 to 02:00 occurs twice in New York
+		CronSequenceGenerator generator = new CronSequenceGenerator("0 0/20 * * * *", NEW_YORK);
+		Date date = generator.next(date("2011-11-06 00:50:00"));
+		assertEquals(date("2011-11-06 00:50:00").getTime() + 10 * 60 * 1000, date.getTime());
+		for (int i = 0; i < 8; i++) {
+			Date next = generator.next(date);
+			assertEquals(20 * 60 * 1000, next.getTime() - date.getTime());
+			date = next;
+		}
+	}
+
+	@Test
+	public void nextWithFixedHourAcrossSpringForward() throws Exception {
+		// 2011-03-27 02:15 does not exist in Berlin
+		CronSequenceGenerator generator = new CronSequenceGenerator("0 15 2 * * *", BERLIN);
+		Date date = generator.next(utc("2011-03-26 00:00:00"));
+		assertEquals(utc("2011-03-26 01:15:00"), date);
+		date = generator.next(date);
+		assertEquals(utc("2011-03-28 00:15:00"), date);
+		assertEquals(utc("2011-03-29 00:15:00"), generator.next(date));
+	}
+
+	@Test
+	public void nextWithFixedHourAcrossFallBack() throws Exception {
+		// 2011-10-30 02:00 to 03:00 occurs twice in Berlin
+		CronSequenceGenerator generator = new CronSequenceGenerator("0 15 2 * * *", BERLIN);
+		Date date = generator.next(utc("2011-10-29 00:00:00"));
+		assertEquals(utc("2011-10-29 00:15:00"), date);
+		date = generator.next(date);
+		assertEquals(utc("2011-10-30 00:15:00"), date);
+		date = generator.next(date);
+		assertEquals(utc("2011-10-31 01:15:00"), date);
+		// Seed within the second occurrence of the repeated hour
+		assertEquals(utc("2011-10-31 01:15:00"), generator.next(utc("2011-10-30 01:10:00")));
+	}
+
+	@Test
+	public void nextInUtc() throws Exception {
+		CronSequenceGenerator generator = new CronSequenceGenerator("59 59 23 31 12 *", TimeZone.getTimeZone("UTC"));
+		assertEquals(1325375999000L, generator.next(new Date(1293840000000L)).getTime());
+	}
+
+
+	private static Date date(String value) throws Exception {
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+		format.setTimeZone(NEW_YORK);
+		return format.parse(value);
+	}
+
+	private static Date utc(String value) throws Exception {
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		return format.parse(value);
+	}
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe histogram for recording latencies, e.g. task execution times
+ * or method invocation times, with constant memory footprint and lock-free
+ * recording.
+ *
+ * <p>Values are kept in logarithmic buckets with 16 linear sub-buckets per
+ * power of two, so that any reported percentile is accurate to within about
+ * 6% of the actual value. Recording a value is a matter of a few atomic
+ * increments, which makes this class suitable for use on hot paths.
+ *
+ * <p>Values are recorded in nanoseconds; accessors return nanoseconds as well,
+ * with {@link #getPercentile(double, TimeUnit)} allowing for conversion.
+ *
+ * <p>In contrast to {@link StopWatch}, this class is designed for concurrent
+ * use in production code.
+ *
+ * @since 3.1
+ * @see StopWatch
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong totalTime = new AtomicLong();
+
+	private final AtomicLong maxTime = new AtomicLong();
+
+
+	/**
+	 * Record the given latency.
+	 * @param nanos the latency in nanoseconds (negative values are treated as 0)
+	 */
+	public void record(long nanos) {
+		long value = (nanos > 0 ? nanos : 0);
+		this.buckets.incrementAndGet(bucketIndex(value));
+		this.count.incrementAndGet();
+		this.totalTime.addAndGet(value);
+		long max = this.maxTime.get();
+		while (value > max && !this.maxTime.compareAndSet(max, value)) {
+			max = this.maxTime.get();
+		}
+	}
+
+	/**
+	 * Record the latency elapsed since the given start time.
+	 * @param startNanos a start time as obtained from <code>System.nanoTime()</code>
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Return the number of recorded values.
+	 */
+	public long getCount() {
+		return this.count.get();
+	}
+
+	/**
+	 * Return the sum of all recorded values, in nanoseconds.
+	 */
+	public long getTotalTime() {
+		return this.totalTime.get();
+	}
+
+	/**
+	 * Return the largest recorded value, in nanoseconds.
+	 */
+	public long getMaxTime() {
+		return this.maxTime.get();
+	}
+
+	/**
+	 * Return the arithmetic mean of all recorded values, in nanoseconds.
+	 */
+	public double getMeanTime() {
+		long count = this.count.get();
+		return (count > 0 ? (double) this.totalTime.get() / count : 0);
+	}
+
+	/**
+	 * Return the value below which the given percentage of recorded values fall.
+	 * @param percentile the percentile to compute (between 0.0 and 100.0)
+	 * @return the percentile value in nanoseconds (the upper bound of the
+	 * corresponding bucket, capped at the maximum recorded value)
+	 */
+	public long getPercentile(double percentile) {
+		Assert.isTrue(percentile >= 0.0 && percentile <= 100.0, "Percentile must be between 0.0 and 100.0");
+		long total = 0;
+		long[] snapshot = new long[BUCKET_COUNT];
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			snapshot[i] = this.buckets.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long threshold = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += snapshot[i];
+			if (seen >= threshold) {
+				return Math.min(bucketUpperBound(i), this.maxTime.get());
+			}
+		}
+		return this.maxTime.get();
+	}
+
+	/**
+	 * Return the value below which the given percentage of recorded values fall,
+	 * converted to the given time unit.
+	 * @param percentile the percentile to compute (between 0.0 and 100.0)
+	 * @param unit the time unit to convert to
+	 * @see #getPercentile(double)
+	 */
+	public long getPercentile(double percentile, TimeUnit unit) {
+		return unit.convert(getPercentile(percentile), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Clear all recorded values.
+	 * <p>Note that values recorded concurrently with a reset may or may
+	 * not be retained.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			this.buckets.set(i, 0);
+		}
+		this.count.set(0);
+		this.totalTime.set(0);
+		this.maxTime.set(0);
+	}
+
+
+	@Override
+	public String toString() {
+		return "LatencyHistogram: count=" + getCount() + ", mean=" + (long) getMeanTime() + "ns, p50=" +
+				getPercentile(50) + "ns, p99=" + getPercentile(99) + "ns, max=" + getMaxTime() + "ns";
+	}
+
+
+	private static int bucketIndex(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		int subBucket = (int) (value >>> shift) & (SUB_BUCKET_COUNT - 1);
+		return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+	}
+
+	private static long bucketUpperBound(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int shift = index / SUB_BUCKET_COUNT - 1;
+		long subBucket = index % SUB_BUCKET_COUNT;
+		long lowerBound = (SUB_BUCKET_COUNT + subBucket) << shift;
+		return lowerBound + (1L << shift) - 1;
+	}
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.util;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ */
+public class LatencyHistogramTests {
+
+	@Test
+	public void emptyHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getPercentile(99));
+		assertEquals(0.0, histogram.getMeanTime(), 0.0);
+	}
+
+	@Test
+	public void smallValuesAreExact() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 10; i++) {
+			histogram.record(i);
+		}
+		assertEquals(10, histogram.getCount());
+		assertEquals(55, histogram.getTotalTime());
+		assertEquals(10, histogram.getMaxTime());
+		assertEquals(5.5, histogram.getMeanTime(), 0.0);
+		assertEquals(5, histogram.getPercentile(50));
+		assertEquals(10, histogram.getPercentile(100));
+		assertEquals(1, histogram.getPercentile(0));
+	}
+
+	@Test
+	public void percentilesWithinPrecision() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L);
+		}
+		assertWithinPrecision(500000, histogram.getPercentile(50));
+		assertWithinPrecision(990000, histogram.getPercentile(99));
+		assertEquals(1000000, histogram.getPercentile(100));
+		assertEquals(1, histogram.getPercentile(100, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void largeValues() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(Long.MAX_VALUE);
+		histogram.record(-5);
+		assertEquals(2, histogram.getCount());
+		assertEquals(0, histogram.getPercentile(50));
+		assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+	}
+
+	@Test
+	public void reset() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(100);
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMaxTime());
+		assertEquals(0, histogram.getPercentile(50));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidPercentile() {
+		new LatencyHistogram().getPercentile(101);
+	}
+
+	private void assertWithinPrecision(long expected, long actual) {
+		assertTrue("Expected about " + expected + " but was " + actual,
+				actual >= expected && actual <= expected + expected / 16);
+	}
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.core;
+
+/**
+ * Callback interface for monitoring chunked batch updates, receiving the
+ * update counts and the execution time of each chunk as soon as it has
+ * been executed.
+ *
+ * <p>Typically used for progress reporting and throughput statistics when
+ * writing large numbers of rows through
+ * {@link JdbcTemplate#batchUpdate(String, java.util.Iterator, int, ParameterizedPreparedStatementSetter, BatchChunkCallback)}.
+ *
+ * @since 3.1
+ * @see JdbcOperations#batchUpdate(String, java.util.Iterator, int, ParameterizedPreparedStatementSetter, BatchChunkCallback)
+ */
+public interface BatchChunkCallback {
+
+	/**
+	 * Called after each chunk of the batch has been executed.
+	 * @param chunkIndex the index of the chunk, starting from 0
+	 * @param updateCounts the numbers of rows affected by each statement in the chunk
+	 * (the length of the array corresponds to the number of statements in the chunk)
+	 * @param executionTime the time in nanoseconds spent on binding the parameters
+	 * and executing the chunk
+	 */
+	void chunkExecuted(int chunkIndex, int[] updateCounts, long executionTime);
+
+}
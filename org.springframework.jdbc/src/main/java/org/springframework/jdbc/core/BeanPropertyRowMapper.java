@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2009 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -62,7 +62,8 @@ import org.springframework.util.Assert;
  * will have been set to the primitive's default value instead of null.
  *
  * <p>Please note that this class is designed to provide convenience rather than high performance.
- * For best performance consider using a custom RowMapper.
+ * For best performance consider using a custom RowMapper, or {@link FastBeanPropertyRowMapper}
+ * which applies the same matching rules but resolves them once per result set shape.
  *
  * @author Thomas Risberg
  * @author Juergen Hoeller
@@ -240,7 +241,7 @@ public class BeanPropertyRowMapper<T> implements RowMapper<T> {
 
 		for (int index = 1; index <= columnCount; index++) {
 			String column = JdbcUtils.lookupColumnName(rsmd, index);
-			PropertyDescriptor pd = this.mappedFields.get(column.replaceAll(" ", "").toLowerCase());
+			PropertyDescriptor pd = getMappedProperty(column);
 			if (pd != null) {
 				try {
 					Object value = getColumnValue(rs, index, pd);
@@ -281,6 +282,24 @@ public class BeanPropertyRowMapper<T> implements RowMapper<T> {
 		return mappedObject;
 	}
 
+	/**
+	 * Determine the bean property that the given column maps to.
+	 * @param column the column name as obtained from result set metadata
+	 * @return the descriptor of the corresponding writable property,
+	 * or <code>null</code> if the column does not map to any property
+	 * @see org.springframework.jdbc.support.JdbcUtils#lookupColumnName
+	 */
+	protected PropertyDescriptor getMappedProperty(String column) {
+		return this.mappedFields.get(column.replaceAll(" ", "").toLowerCase());
+	}
+
+	/**
+	 * Return the names of all bean properties that this mapper provides mapping for.
+	 */
+	protected final Set<String> getMappedProperties() {
+		return this.mappedProperties;
+	}
+
 	/**
 	 * Initialize the given BeanWrapper to be used for row mapping.
 	 * To be called for each row.
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.core;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * Iterator over the mapped rows of a query result which is read from the
+ * database on demand, keeping the underlying JDBC Connection, Statement
+ * and ResultSet open until the iterator is exhausted or closed.
+ *
+ * <p>This allows for processing arbitrarily large results in constant memory,
+ * pulling one row at a time - in contrast to a RowMapper-based query method
+ * which materializes the entire result as a List.
+ *
+ * <p><b>Callers must always {@link #close()} the iterator</b>, typically in
+ * a finally block, unless it has been fully consumed. Iterating past the last
+ * row closes the iterator automatically.
+ *
+ * <pre class="code">CloseableRowIterator&lt;User&gt; users =
+ *     jdbcTemplate.queryForIterator("select * from user", new UserRowMapper());
+ * try {
+ *   while (users.hasNext()) {
+ *     writer.write(users.next());
+ *   }
+ * }
+ * finally {
+ *   users.close();
+ * }</pre>
+ *
+ * <p>SQLExceptions encountered while iterating are translated into Spring's
+ * DataAccessException hierarchy, with all resources released before.
+ * The {@link #remove()} operation is not supported.
+ *
+ * @since 3.1
+ * @see JdbcOperations#queryForIterator(String, RowMapper, Object...)
+ */
+public interface CloseableRowIterator<T> extends Iterator<T>, Closeable {
+
+	/**
+	 * Release the underlying JDBC resources: ResultSet, Statement and Connection
+	 * (with the latter returned to the pool or to the current transaction).
+	 * <p>Can be called multiple times; subsequent calls have no effect.
+	 */
+	void close();
+
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.core;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyDescriptor;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.MethodInvocationException;
+import org.springframework.beans.SimpleTypeConverter;
+import org.springframework.beans.TypeMismatchException;
+import org.springframework.core.MethodParameter;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Variant of {@link BeanPropertyRowMapper} designed for high throughput on large
+ * result sets, applying the same column-to-property matching rules.
+ *
+ * <p>Instead of resolving properties by column name and populating each row
+ * through a new {@link org.springframework.beans.BeanWrapper}, this mapper resolves
+ * a mapping plan once per result set shape - i.e. per distinct list of column
+ * names - and then simply invokes the cached setter methods for every row.
+ * The plan is kept across queries as long as the shape remains the same.
+ *
+ * <p>Column values are retrieved through {@link #getColumnValue}, that is, through
+ * the type-specific <code>ResultSet</code> accessors chosen by
+ * {@link JdbcUtils#getResultSetValue(java.sql.ResultSet, int, Class)}. Values which
+ * are not assignable to the property type are converted using the default
+ * PropertyEditors. Note that {@link #initBeanWrapper} will <i>not</i> be called by
+ * this mapper: Use BeanPropertyRowMapper itself for custom PropertyEditors.
+ *
+ * @since 3.1
+ * @see BeanPropertyRowMapper
+ */
+public class FastBeanPropertyRowMapper<T> extends BeanPropertyRowMapper<T> {
+
+	private Constructor<T> constructor;
+
+	private volatile MappingPlan mappingPlan;
+
+
+	/**
+	 * Create a new FastBeanPropertyRowMapper for bean-style configuration.
+	 * @see #setMappedClass
+	 * @see #setCheckFullyPopulated
+	 */
+	public FastBeanPropertyRowMapper() {
+	}
+
+	/**
+	 * Create a new FastBeanPropertyRowMapper, accepting unpopulated properties
+	 * in the target bean.
+	 * @param mappedClass the class that each row should be mapped to
+	 */
+	public FastBeanPropertyRowMapper(Class<T> mappedClass) {
+		super(mappedClass);
+	}
+
+	/**
+	 * Create a new FastBeanPropertyRowMapper.
+	 * @param mappedClass the class that each row should be mapped to
+	 * @param checkFullyPopulated whether we're strictly validating that
+	 * all bean properties have been mapped from corresponding database fields
+	 */
+	public FastBeanPropertyRowMapper(Class<T> mappedClass, boolean checkFullyPopulated) {
+		super(mappedClass, checkFullyPopulated);
+	}
+
+
+	@Override
+	protected void initialize(Class<T> mappedClass) {
+		super.initialize(mappedClass);
+		this.constructor = ClassUtils.getConstructorIfAvailable(mappedClass);
+		if (this.constructor != null) {
+			ReflectionUtils.makeAccessible(this.constructor);
+		}
+		this.mappingPlan = null;
+	}
+
+	/**
+	 * Extract the values for all columns in the current row,
+	 * using the mapping plan for the given ResultSet.
+	 */
+	@Override
+	public T mapRow(ResultSet rs, int rowNumber) throws SQLException {
+		Assert.state(getMappedClass() != null, "Mapped class was not specified");
+		MappingPlan plan = obtainMappingPlan(rs);
+		T mappedObject = (this.constructor != null ?
+				BeanUtils.instantiateClass(this.constructor) : BeanUtils.instantiate(getMappedClass()));
+
+		for (ColumnMapping mapping : plan.columnMappings) {
+			Object value = getColumnValue(rs, mapping.index, mapping.property);
+			setPropertyValue(mappedObject, mapping, value, rowNumber);
+		}
+
+		if (isCheckFullyPopulated() && !plan.fullyPopulated) {
+			throw new InvalidDataAccessApiUsageException("Given ResultSet does not contain all fields " +
+					"necessary to populate object of class [" + getMappedClass() + "]: " + getMappedProperties());
+		}
+
+		return mappedObject;
+	}
+
+	/**
+	 * Return the mapping plan for the given ResultSet, reusing the current plan
+	 * if the ResultSet is the same as before or has the same columns.
+	 */
+	private MappingPlan obtainMappingPlan(ResultSet rs) throws SQLException {
+		MappingPlan plan = this.mappingPlan;
+		if (plan != null && plan.resultSet.get() == rs) {
+			return plan;
+		}
+		ResultSetMetaData rsmd = rs.getMetaData();
+		int columnCount = rsmd.getColumnCount();
+		String[] columns = new String[columnCount];
+		for (int index = 1; index <= columnCount; index++) {
+			columns[index - 1] = JdbcUtils.lookupColumnName(rsmd, index);
+		}
+		if (plan != null && Arrays.equals(plan.columns, columns)) {
+			plan = new MappingPlan(rs, plan);
+		}
+		else {
+			plan = buildMappingPlan(rs, columns);
+		}
+		this.mappingPlan = plan;
+		return plan;
+	}
+
+	private MappingPlan buildMappingPlan(ResultSet rs, String[] columns) {
+		List<ColumnMapping> columnMappings = new ArrayList<ColumnMapping>(columns.length);
+		Set<String> populatedProperties = new HashSet<String>();
+		for (int index = 1; index <= columns.length; index++) {
+			String column = columns[index - 1];
+			PropertyDescriptor pd = getMappedProperty(column);
+			if (pd != null) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Mapping column '" + column + "' to property '" +
+							pd.getName() + "' of type " + pd.getPropertyType());
+				}
+				columnMappings.add(new ColumnMapping(index, column, pd));
+				populatedProperties.add(pd.getName());
+			}
+		}
+		return new MappingPlan(rs, columns, columnMappings.toArray(new ColumnMapping[columnMappings.size()]),
+				populatedProperties.equals(getMappedProperties()));
+	}
+
+	private void setPropertyValue(T mappedObject, ColumnMapping mapping, Object value, int rowNumber) {
+		Object valueToSet = value;
+		if (value == null) {
+			if (mapping.primitive) {
+				if (isPrimitivesDefaultedForNullValue()) {
+					if (logger.isDebugEnabled()) {
+						logger.debug("Skipping null value for row " + rowNumber + " and column '" + mapping.column +
+								"' when setting property '" + mapping.property.getName() + "' of type " +
+								mapping.property.getPropertyType() + " on object: " + mappedObject);
+					}
+					return;
+				}
+				throw new TypeMismatchException(createPropertyChangeEvent(mappedObject, mapping, value),
+						mapping.property.getPropertyType());
+			}
+		}
+		else if (!ClassUtils.isAssignableValue(mapping.property.getPropertyType(), value)) {
+			try {
+				valueToSet = new SimpleTypeConverter().convertIfNecessary(
+						value, mapping.property.getPropertyType(), mapping.methodParameter);
+			}
+			catch (IllegalArgumentException ex) {
+				throw new TypeMismatchException(createPropertyChangeEvent(mappedObject, mapping, value),
+						mapping.property.getPropertyType(), ex);
+			}
+		}
+		try {
+			mapping.writeMethod.invoke(mappedObject, valueToSet);
+		}
+		catch (InvocationTargetException ex) {
+			throw new MethodInvocationException(
+					createPropertyChangeEvent(mappedObject, mapping, value), ex.getTargetException());
+		}
+		catch (IllegalAccessException ex) {
+			throw new MethodInvocationException(createPropertyChangeEvent(mappedObject, mapping, value), ex);
+		}
+	}
+
+	private PropertyChangeEvent createPropertyChangeEvent(Object mappedObject, ColumnMapping mapping, Object value) {
+		return new PropertyChangeEvent(mappedObject, mapping.property.getName(), null, value);
+	}
+
+
+	/**
+	 * Static factory method to create a new FastBeanPropertyRowMapper
+	 * (with the mapped class specified only once).
+	 * @param mappedClass the class that each row should be mapped to
+	 */
+	public static <T> FastBeanPropertyRowMapper<T> newInstance(Class<T> mappedClass) {
+		FastBeanPropertyRowMapper<T> newInstance = new FastBeanPropertyRowMapper<T>();
+		newInstance.setMappedClass(mappedClass);
+		return newInstance;
+	}
+
+
+	/**
+	 * Column-to-property mappings for a specific list of columns, along with
+	 * the (weakly referenced) ResultSet that the plan has last been used for.
+	 */
+	private static class MappingPlan {
+
+		private final WeakReference<ResultSet> resultSet;
+
+		private final String[] columns;
+
+		private final ColumnMapping[] columnMappings;
+
+		private final boolean fullyPopulated;
+
+		public MappingPlan(ResultSet rs, String[] columns, ColumnMapping[] columnMappings, boolean fullyPopulated) {
+			this.resultSet = new WeakReference<ResultSet>(rs);
+			this.columns = columns;
+			this.columnMappings = columnMappings;
+			this.fullyPopulated = fullyPopulated;
+		}
+
+		public MappingPlan(ResultSet rs, MappingPlan original) {
+			this(rs, original.columns, original.columnMappings, original.fullyPopulated);
+		}
+	}
+
+
+	/**
+	 * Resolved mapping of a single column to a bean property.
+	 */
+	private static class ColumnMapping {
+
+		private final int index;
+
+		private final String column;
+
+		private final PropertyDescriptor property;
+
+		private final Method writeMethod;
+
+		private final MethodParameter methodParameter;
+
+		private final boolean primitive;
+
+		public ColumnMapping(int index, String column, PropertyDescriptor property) {
+			this.index = index;
+			this.column = column;
+			this.property = property;
+			this.writeMethod = property.getWriteMethod();
+			ReflectionUtils.makeAccessible(this.writeMethod);
+			this.methodParameter = new MethodParameter(this.writeMethod, 0);
+			this.primitive = property.getPropertyType().isPrimitive();
+		}
+	}
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.core;
+
+/**
+ * Callback interface for instrumenting the JDBC operations performed by a
+ * {@link JdbcTemplate}, e.g. for collecting execution statistics per SQL statement
+ * or for detecting slow queries.
+ *
+ * <p>All times are specified in nanoseconds, as measured by <code>System.nanoTime()</code>.
+ * SQL statements are passed in as specified for the JdbcTemplate operation, or as
+ * exposed by an {@link SqlProvider}; they may be <code>null</code> for custom callbacks
+ * which do not expose their SQL. Implementations need to be thread-safe, since
+ * a JdbcTemplate may be used by many threads concurrently.
+ *
+ * <p>Since {@link org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate}
+ * delegates to a JdbcTemplate, its operations get reported with the SQL statement that
+ * has been derived from the named parameter statement, i.e. with JDBC-style placeholders.
+ *
+ * @since 3.1
+ * @see JdbcTemplate#setOperationMonitor
+ * @see org.springframework.jdbc.core.support.SqlStatisticsCollector
+ */
+public interface JdbcOperationMonitor {
+
+	/**
+	 * Called when a JDBC Connection has been obtained for an operation.
+	 * @param waitTime the time it took to obtain the Connection
+	 * @see org.springframework.jdbc.datasource.DataSourceUtils#getConnection
+	 */
+	void connectionObtained(long waitTime);
+
+	/**
+	 * Called when a PreparedStatement or CallableStatement has been created.
+	 * @param sql the SQL statement (may be <code>null</code>)
+	 * @param prepareTime the time it took to create the statement
+	 */
+	void statementPrepared(String sql, long prepareTime);
+
+	/**
+	 * Called when a statement has been executed, including the processing of its results.
+	 * @param sql the SQL statement (may be <code>null</code>)
+	 * @param executionTime the time spent executing the statement and processing its results
+	 * @param success whether the statement completed successfully,
+	 * as opposed to throwing an exception
+	 */
+	void statementExecuted(String sql, long executionTime, boolean success);
+
+	/**
+	 * Called when the ResultSet of a query has been processed.
+	 * <p>Only reported when no {@link org.springframework.jdbc.support.nativejdbc.NativeJdbcExtractor}
+	 * is in use, since rows are counted through a proxy for the ResultSet.
+	 * @param sql the SQL statement (may be <code>null</code>)
+	 * @param rowCount the number of rows fetched from the ResultSet
+	 */
+	void rowsFetched(String sql, int rowCount);
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,6 +16,8 @@
 
 package org.springframework.jdbc.core;
 
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -907,6 +909,62 @@ public interface JdbcOperations {
 	 */
 	SqlRowSet queryForRowSet(String sql, Object... args) throws DataAccessException;
 
+	/**
+	 * Query using a prepared statement, mapping each row to a Java object
+	 * via a RowMapper, with the rows read on demand through the returned
+	 * iterator rather than materialized as a List.
+	 * <p>The JDBC Connection, Statement and ResultSet stay open until the
+	 * iterator has been exhausted or closed; the template's "fetchSize"
+	 * setting applies. Within a transaction, the transactional Connection is used.
+	 * @param psc object that can create a PreparedStatement given a Connection
+	 * @param rowMapper object that will map one object per row
+	 * @return the iterator over the mapped rows, to be closed by the caller
+	 * @throws DataAccessException if there is any problem executing the query
+	 * @see CloseableRowIterator
+	 */
+	<T> CloseableRowIterator<T> queryForIterator(PreparedStatementCreator psc, RowMapper<T> rowMapper)
+			throws DataAccessException;
+
+	/**
+	 * Query given SQL to create a prepared statement from SQL and a list of
+	 * arguments to bind to the query, mapping each row to a Java object via
+	 * a RowMapper, with the rows read on demand through the returned iterator.
+	 * <p>The JDBC Connection, Statement and ResultSet stay open until the
+	 * iterator has been exhausted or closed; the template's "fetchSize"
+	 * setting applies. Within a transaction, the transactional Connection is used.
+	 * @param sql SQL query to execute
+	 * @param args arguments to bind to the query
+	 * @param argTypes SQL types of the arguments
+	 * (constants from <code>java.sql.Types</code>)
+	 * @param rowMapper object that will map one object per row
+	 * @return the iterator over the mapped rows, to be closed by the caller
+	 * @throws DataAccessException if the query fails
+	 * @see CloseableRowIterator
+	 * @see java.sql.Types
+	 */
+	<T> CloseableRowIterator<T> queryForIterator(String sql, Object[] args, int[] argTypes, RowMapper<T> rowMapper)
+			throws DataAccessException;
+
+	/**
+	 * Query given SQL to create a prepared statement from SQL and a list of
+	 * arguments to bind to the query, mapping each row to a Java object via
+	 * a RowMapper, with the rows read on demand through the returned iterator.
+	 * <p>The JDBC Connection, Statement and ResultSet stay open until the
+	 * iterator has been exhausted or closed; the template's "fetchSize"
+	 * setting applies. Within a transaction, the transactional Connection is used.
+	 * @param sql SQL query to execute
+	 * @param rowMapper object that will map one object per row
+	 * @param args arguments to bind to the query
+	 * (leaving it to the PreparedStatement to guess the corresponding SQL type);
+	 * may also contain {@link SqlParameterValue} objects which indicate not
+	 * only the argument value but also the SQL type and optionally the scale
+	 * @return the iterator over the mapped rows, to be closed by the caller
+	 * @throws DataAccessException if the query fails
+	 * @see CloseableRowIterator
+	 */
+	<T> CloseableRowIterator<T> queryForIterator(String sql, RowMapper<T> rowMapper, Object... args)
+			throws DataAccessException;
+
 	/**
 	 * Issue a single SQL update operation (such as an insert, update or delete statement)
 	 * using a PreparedStatementCreator to provide SQL and any required parameters.
@@ -1004,6 +1062,40 @@ public interface JdbcOperations {
 	 * @return an array containing the numbers of rows affected by each update in the batch
 	 */
 	public int[] batchUpdate(String sql, List<Object[]> batchArgs, int[] argTypes);
+
+	/**
+	 * Execute multiple batches using the supplied SQL statement with the collection of
+	 * supplied arguments. The arguments' values will be set using the
+	 * ParameterizedPreparedStatementSetter. Each batch should be of size indicated in
+	 * 'batchSize'.
+	 * @param sql the SQL statement to execute.
+	 * @param batchArgs the Collection of arguments for the query
+	 * @param batchSize batch size
+	 * @param pss ParameterizedPreparedStatementSetter to use
+	 * @return an array containing for each batch another array containing the numbers of
+	 * rows affected by each update in the batch
+	 */
+	public <T> int[][] batchUpdate(String sql, Collection<T> batchArgs, int batchSize,
+			ParameterizedPreparedStatementSetter<T> pss) throws DataAccessException;
+
+	/**
+	 * Execute multiple batches using the supplied SQL statement, pulling the arguments
+	 * from the given Iterator chunk by chunk: only the current chunk of arguments
+	 * (and, with a {@link JdbcTemplate#setBatchPrefetchExecutor prefetch executor},
+	 * the next one) is held in memory at any point of time.
+	 * <p>The Iterator may be backed by a lazily evaluated source such as a file reader
+	 * or a {@link CloseableRowIterator} over another query.
+	 * @param sql the SQL statement to execute.
+	 * @param batchArgs the Iterator over the arguments for the query
+	 * @param batchSize the number of statements per chunk
+	 * @param pss ParameterizedPreparedStatementSetter to use
+	 * @param chunkCallback callback to notify after the execution of each chunk
+	 * (may be <code>null</code>)
+	 * @return an array containing for each chunk another array containing the numbers of
+	 * rows affected by each update in the chunk
+	 */
+	public <T> int[][] batchUpdate(String sql, Iterator<T> batchArgs, int batchSize,
+			ParameterizedPreparedStatementSetter<T> pss, BatchChunkCallback chunkCallback) throws DataAccessException;
 	
 
 	//-------------------------------------------------------------------------
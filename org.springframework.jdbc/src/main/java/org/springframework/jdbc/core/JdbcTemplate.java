@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -28,13 +28,20 @@ import java.sql.SQLException;
 import java.sql.SQLWarning;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import javax.sql.DataSource;
 
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.InvalidDataAccessApiUsageException;
 import org.springframework.dao.support.DataAccessUtils;
@@ -145,6 +152,15 @@ public class JdbcTemplate extends JdbcAccessor implements JdbcOperations {
 	 */
 	private boolean resultsMapCaseInsensitive = false;
 
+	/** Executor for reading the next chunk of a chunked batch update ahead of time */
+	private AsyncTaskExecutor batchPrefetchExecutor;
+
+	/** Monitor to notify of JDBC operations, if any */
+	private JdbcOperationMonitor operationMonitor;
+
+	/** Maximum number of PreparedStatements to keep open per transaction */
+	private int statementCacheLimit = 0;
+
 
 	/**
 	 * Construct a new JdbcTemplate for bean usage.
@@ -319,6 +335,69 @@ public class JdbcTemplate extends JdbcAccessor implements JdbcOperations {
 		return this.resultsMapCaseInsensitive;
 	}
 
+	/**
+	 * Set an executor for pipelining chunked batch updates: while one chunk is being
+	 * executed against the database, the arguments for the next chunk are pulled from
+	 * the argument Iterator on a thread of the given executor.
+	 * <p>Default is none, reading every chunk in the calling thread right before
+	 * executing it. Specify an executor if producing the arguments is expensive,
+	 * e.g. when reading them from a file or from another database query.
+	 * <p>Note that the argument Iterator will be accessed by different threads
+	 * then, albeit never concurrently.
+	 * @see #batchUpdate(String, java.util.Iterator, int, ParameterizedPreparedStatementSetter, BatchChunkCallback)
+	 */
+	public void setBatchPrefetchExecutor(AsyncTaskExecutor batchPrefetchExecutor) {
+		this.batchPrefetchExecutor = batchPrefetchExecutor;
+	}
+
+	/**
+	 * Return the executor for pipelining chunked batch updates, if any.
+	 */
+	public AsyncTaskExecutor getBatchPrefetchExecutor() {
+		return this.batchPrefetchExecutor;
+	}
+
+	/**
+	 * Set a monitor to notify of the JDBC operations performed by this template:
+	 * Connection wait times, statement preparation and execution times, and
+	 * the number of rows fetched by queries.
+	 * <p>Default is none. Without a monitor, no timing information is gathered at all.
+	 * @see org.springframework.jdbc.core.support.SqlStatisticsCollector
+	 */
+	public void setOperationMonitor(JdbcOperationMonitor operationMonitor) {
+		this.operationMonitor = operationMonitor;
+	}
+
+	/**
+	 * Return the monitor to notify of JDBC operations, if any.
+	 */
+	public JdbcOperationMonitor getOperationMonitor() {
+		return this.operationMonitor;
+	}
+
+	/**
+	 * Set the maximum number of PreparedStatements to keep open per transaction,
+	 * reusing them for subsequent operations with the same SQL within the same
+	 * transaction. Default is 0: no statement caching.
+	 * <p>Statements are cached on the transactional Connection bound for this
+	 * template's DataSource (e.g. by {@link org.springframework.jdbc.datasource.DataSourceTransactionManager})
+	 * and closed on transaction completion. Operations outside of a transaction
+	 * always prepare and close their statements individually. Consider this for
+	 * drivers without statement caching of their own, with transactions that
+	 * execute the same statement many times.
+	 * @see org.springframework.transaction.support.TransactionSynchronizationManager
+	 */
+	public void setStatementCacheLimit(int statementCacheLimit) {
+		this.statementCacheLimit = statementCacheLimit;
+	}
+
+	/**
+	 * Return the maximum number of PreparedStatements to keep open per transaction.
+	 */
+	public int getStatementCacheLimit() {
+		return this.statementCacheLimit;
+	}
+
 
 	//-------------------------------------------------------------------------
 	// Methods dealing with a plain java.sql.Connection
@@ -327,7 +406,7 @@ public class JdbcTemplate extends JdbcAccessor implements JdbcOperations {
 	public <T> T execute(ConnectionCallback<T> action) throws DataAccessException {
 		Assert.notNull(action, "Callback object must not be null");
 
-		Connection con = DataSourceUtils.getConnection(getDataSource());
+		Connection con = obtainConnection();
 		try {
 			Connection conToUse = con;
 			if (this.nativeJdbcExtractor != null) {
@@ -378,8 +457,11 @@ public class JdbcTemplate extends JdbcAccessor implements JdbcOperations {
 	public <T> T execute(StatementCallback<T> action) throws DataAccessException {
 		Assert.notNull(action, "Callback object must not be null");
 
-		Connection con = DataSourceUtils.getConnection(getDataSource());
+		JdbcOperationMonitor monitor = this.operationMonitor;
+		Connection con = obtainConnection();
 		Statement stmt = null;
+		long startTime = 0;
+		boolean success = false;
 		try {
 			Connection conToUse = con;
 			if (this.nativeJdbcExtractor != null &&
@@ -387,6 +469,9 @@ public class JdbcTemplate extends JdbcAccessor implements JdbcOperations {
 				conToUse = this.nativeJdbcExtractor.getNativeConnection(con);
 			}
 			stmt = conToUse.createStatement();
+			if (monitor != null) {
+				startTime = System.nanoTime();
+			}
 			applyStatementSettings(stmt);
 			Statement stmtToUse = stmt;
 			if (this.nativeJdbcExtractor != null) {
@@ -394,6 +479,7 @@ public class JdbcTemplate extends JdbcAccessor implements JdbcOperations {
 			}
 			T result = action.doInStatement(stmtToUse);
 			handleWarnings(stmt);
+			success = true;
 			return result;
 		}
 		catch (SQLException ex) {
@@ -406,6 +492,9 @@ public class JdbcTemplate extends JdbcAccessor implements JdbcOperations {
 			throw getExceptionTranslator().translate("StatementCallback", getSql(action), ex);
 		}
 		finally {
+			if (monitor != null && startTime != 0) {
+				monitor.statementExecuted(getSql(action), System.nanoTime() - startTime, success);
+			}
 			JdbcUtils.closeStatement(stmt);
 			DataSourceUtils.releaseConnection(con, getDataSource());
 		}
@@ -438,11 +527,7 @@ public class JdbcTemplate extends JdbcAccessor implements JdbcOperations {
 				ResultSet rs = null;
 				try {
 					rs = stmt.executeQuery(sql);
-					ResultSet rsToUse = rs;
-					if (nativeJdbcExtractor != null) {
-						rsToUse = nativeJdbcExtractor.getNativeResultSet(rs);
-					}
-					return rse.extractData(rsToUse);
+					return extractData(rs, rse, sql);
 				}
 				finally {
 					JdbcUtils.closeResultSet(rs);
@@ -569,15 +654,31 @@ public class JdbcTemplate extends JdbcAccessor implements JdbcOperations {
 			logger.debug("Executing prepared SQL statement" + (sql != null ? " [" + sql + "]" : ""));
 		}
 
-		Connection con = DataSourceUtils.getConnection(getDataSource());
+		JdbcOperationMonitor monitor = this.operationMonitor;
+		String monitoredSql = (monitor != null ? getSql(psc) : null);
+		Connection con = obtainConnection();
+		PreparedStatementCache statementCache = null;
 		PreparedStatement ps = null;
+		long startTime = 0;
+		boolean success = false;
 		try {
 			Connection conToUse = con;
 			if (this.nativeJdbcExtractor != null &&
 					this.nativeJdbcExtractor.isNativeConnectionNecessaryForNativePreparedStatements()) {
 				conToUse = this.nativeJdbcExtractor.getNativeConnection(con);
 			}
-			ps = psc.createPreparedStatement(conToUse);
+			if (this.statementCacheLimit > 0) {
+				statementCache = PreparedStatementCache.getTransactionalCache(getDataSource(), conToUse);
+			}
+			if (monitor != null) {
+				long prepareStartTime = System.nanoTime();
+				ps = createPreparedStatement(psc, conToUse, statementCache);
+				startTime = System.nanoTime();
+				monitor.statementPrepared(monitoredSql, startTime - prepareStartTime);
+			}
+			else {
+				ps = createPreparedStatement(psc, conToUse, statementCache);
+			}
 			applyStatementSettings(ps);
 			PreparedStatement psToUse = ps;
 			if (this.nativeJdbcExtractor != null) {
@@ -585,6 +686,7 @@ public class JdbcTemplate extends JdbcAccessor implements JdbcOperations {
 			}
 			T result = action.doInPreparedStatement(psToUse);
 			handleWarnings(ps);
+			success = true;
 			return result;
 		}
 		catch (SQLException ex) {
@@ -595,17 +697,20 @@ public class JdbcTemplate extends JdbcAccessor implements JdbcOperations {
 			}
 			String sql = getSql(psc);
 			psc = null;
-			JdbcUtils.closeStatement(ps);
+			closePreparedStatement(ps, statementCache, false);
 			ps = null;
 			DataSourceUtils.releaseConnection(con, getDataSource());
 			con = null;
 			throw getExceptionTranslator().translate("PreparedStatementCallback", sql, ex);
 		}
 		finally {
+			if (monitor != null && startTime != 0) {
+				monitor.statementExecuted(monitoredSql, System.nanoTime() - startTime, success);
+			}
 			if (psc instanceof ParameterDisposer) {
 				((ParameterDisposer) psc).cleanupParameters();
 			}
-			JdbcUtils.closeStatement(ps);
+			closePreparedStatement(ps, statementCache, true);
 			DataSourceUtils.releaseConnection(con, getDataSource());
 		}
 	}
@@ -627,7 +732,7 @@ public class JdbcTemplate extends JdbcAccessor implements JdbcOperations {
 	 * @throws DataAccessException if there is any problem
 	 */
 	public <T> T query(
-			PreparedStatementCreator psc, final PreparedStatementSetter pss, final ResultSetExtractor<T> rse)
+			final PreparedStatementCreator psc, final PreparedStatementSetter pss, final ResultSetExtractor<T> rse)
 			throws DataAccessException {
 
 		Assert.notNull(rse, "ResultSetExtractor must not be null");
@@ -641,11 +746,7 @@ public class JdbcTemplate extends JdbcAccessor implements JdbcOperations {
 						pss.setValues(ps);
 					}
 					rs = ps.executeQuery();
-					ResultSet rsToUse = rs;
-					if (nativeJdbcExtractor != null) {
-						rsToUse = nativeJdbcExtractor.getNativeResultSet(rs);
-					}
-					return rse.extractData(rsToUse);
+					return extractData(rs, rse, (operationMonitor != null ? getSql(psc) : null));
 				}
 				finally {
 					JdbcUtils.closeResultSet(rs);
@@ -804,6 +905,119 @@ public class JdbcTemplate extends JdbcAccessor implements JdbcOperations {
 		return query(sql, args, new SqlRowSetResultSetExtractor());
 	}
 
+	/**
+	 * Query using a prepared statement, allowing for a PreparedStatementCreator
+	 * and a PreparedStatementSetter, with the mapped rows read on demand through
+	 * the returned iterator. The other <code>queryForIterator</code> methods use
+	 * this method.
+	 * <p>In contrast to the <code>query</code> methods, the JDBC resources are
+	 * not released before this method returns but only once the returned
+	 * iterator is exhausted or closed.
+	 * @param psc Callback handler that can create a PreparedStatement given a
+	 * Connection
+	 * @param pss object that knows how to set values on the prepared statement.
+	 * If this is null, the SQL will be assumed to contain no bind parameters.
+	 * @param rowMapper object that will map one object per row
+	 * @return the iterator over the mapped rows, to be closed by the caller
+	 * @throws DataAccessException if there is any problem
+	 * @see CloseableRowIterator
+	 */
+	public <T> CloseableRowIterator<T> queryForIterator(
+			PreparedStatementCreator psc, PreparedStatementSetter pss, RowMapper<T> rowMapper)
+			throws DataAccessException {
+
+		Assert.notNull(psc, "PreparedStatementCreator must not be null");
+		Assert.notNull(rowMapper, "RowMapper must not be null");
+		if (logger.isDebugEnabled()) {
+			String sql = getSql(psc);
+			logger.debug("Executing prepared SQL query for iteration" + (sql != null ? " [" + sql + "]" : ""));
+		}
+
+		JdbcOperationMonitor monitor = this.operationMonitor;
+		String monitoredSql = (monitor != null ? getSql(psc) : null);
+		Connection con = obtainConnection();
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		long startTime = 0;
+		boolean success = false;
+		try {
+			Connection conToUse = con;
+			if (this.nativeJdbcExtractor != null &&
+					this.nativeJdbcExtractor.isNativeConnectionNecessaryForNativePreparedStatements()) {
+				conToUse = this.nativeJdbcExtractor.getNativeConnection(con);
+			}
+			if (monitor != null) {
+				long prepareStartTime = System.nanoTime();
+				ps = psc.createPreparedStatement(conToUse);
+				startTime = System.nanoTime();
+				monitor.statementPrepared(monitoredSql, startTime - prepareStartTime);
+			}
+			else {
+				ps = psc.createPreparedStatement(conToUse);
+			}
+			applyStatementSettings(ps);
+			PreparedStatement psToUse = ps;
+			if (this.nativeJdbcExtractor != null) {
+				psToUse = this.nativeJdbcExtractor.getNativePreparedStatement(ps);
+			}
+			if (pss != null) {
+				pss.setValues(psToUse);
+			}
+			rs = psToUse.executeQuery();
+			ResultSet rsToUse = rs;
+			if (this.nativeJdbcExtractor != null) {
+				rsToUse = this.nativeJdbcExtractor.getNativeResultSet(rs);
+			}
+			CloseableRowIterator<T> iterator = new ResultSetRowIterator<T>(
+					con, ps, rs, rsToUse, rowMapper, getSql(psc), monitor, startTime);
+			success = true;
+			return iterator;
+		}
+		catch (SQLException ex) {
+			String sql = getSql(psc);
+			JdbcUtils.closeResultSet(rs);
+			JdbcUtils.closeStatement(ps);
+			DataSourceUtils.releaseConnection(con, getDataSource());
+			throw getExceptionTranslator().translate("PreparedStatementCallback", sql, ex);
+		}
+		catch (RuntimeException ex) {
+			JdbcUtils.closeResultSet(rs);
+			JdbcUtils.closeStatement(ps);
+			DataSourceUtils.releaseConnection(con, getDataSource());
+			throw ex;
+		}
+		finally {
+			if (!success && monitor != null && startTime != 0) {
+				monitor.statementExecuted(monitoredSql, System.nanoTime() - startTime, false);
+			}
+			if (psc instanceof ParameterDisposer) {
+				((ParameterDisposer) psc).cleanupParameters();
+			}
+			if (pss instanceof ParameterDisposer) {
+				((ParameterDisposer) pss).cleanupParameters();
+			}
+		}
+	}
+
+	public <T> CloseableRowIterator<T> queryForIterator(PreparedStatementCreator psc, RowMapper<T> rowMapper)
+			throws DataAccessException {
+
+		return queryForIterator(psc, null, rowMapper);
+	}
+
+	public <T> CloseableRowIterator<T> queryForIterator(String sql, Object[] args, int[] argTypes, RowMapper<T> rowMapper)
+			throws DataAccessException {
+
+		return queryForIterator(new SimplePreparedStatementCreator(sql),
+				newArgTypePreparedStatementSetter(args, argTypes), rowMapper);
+	}
+
+	public <T> CloseableRowIterator<T> queryForIterator(String sql, RowMapper<T> rowMapper, Object... args)
+			throws DataAccessException {
+
+		return queryForIterator(new SimplePreparedStatementCreator(sql), newArgPreparedStatementSetter(args), rowMapper);
+	}
+
 	protected int update(final PreparedStatementCreator psc, final PreparedStatementSetter pss)
 			throws DataAccessException {
 
@@ -929,6 +1143,112 @@ public class JdbcTemplate extends JdbcAccessor implements JdbcOperations {
 	public int[] batchUpdate(String sql, List<Object[]> batchArgs, int[] argTypes) {
 		return BatchUpdateUtils.executeBatchUpdate(sql, batchArgs, argTypes, this);
 	}
+
+	public <T> int[][] batchUpdate(String sql, Collection<T> batchArgs, int batchSize,
+			ParameterizedPreparedStatementSetter<T> pss) throws DataAccessException {
+
+		return batchUpdate(sql, batchArgs.iterator(), batchSize, pss, null);
+	}
+
+	public <T> int[][] batchUpdate(String sql, final Iterator<T> batchArgs, final int batchSize,
+			final ParameterizedPreparedStatementSetter<T> pss, final BatchChunkCallback chunkCallback)
+			throws DataAccessException {
+
+		Assert.notNull(batchArgs, "Batch argument Iterator must not be null");
+		Assert.isTrue(batchSize > 0, "Batch size must be 1 or higher");
+		if (logger.isDebugEnabled()) {
+			logger.debug("Executing SQL batch update [" + sql + "] with a batch size of " + batchSize);
+		}
+
+		return execute(sql, new PreparedStatementCallback<int[][]>() {
+			public int[][] doInPreparedStatement(PreparedStatement ps) throws SQLException {
+				BatchChunkReader<T> reader = new BatchChunkReader<T>(batchArgs, batchSize);
+				AsyncTaskExecutor prefetchExecutor = getBatchPrefetchExecutor();
+				Future<List<T>> nextChunk = null;
+				List<int[]> rowsAffected = new ArrayList<int[]>();
+				try {
+					boolean batchSupported = JdbcUtils.supportsBatchUpdates(ps.getConnection());
+					List<T> chunk = reader.call();
+					while (!chunk.isEmpty()) {
+						if (prefetchExecutor != null && batchArgs.hasNext()) {
+							nextChunk = prefetchExecutor.submit(reader);
+						}
+						long startTime = System.nanoTime();
+						int[] updateCounts = new int[chunk.size()];
+						int i = 0;
+						for (T arg : chunk) {
+							pss.setValues(ps, arg);
+							if (batchSupported) {
+								ps.addBatch();
+							}
+							else {
+								updateCounts[i++] = ps.executeUpdate();
+							}
+						}
+						if (batchSupported) {
+							updateCounts = ps.executeBatch();
+						}
+						long executionTime = System.nanoTime() - startTime;
+						if (logger.isDebugEnabled()) {
+							logger.debug("Executed chunk " + rowsAffected.size() + " of SQL batch update with " +
+									chunk.size() + " statements in " + executionTime / 1000000 + " ms");
+						}
+						if (chunkCallback != null) {
+							chunkCallback.chunkExecuted(rowsAffected.size(), updateCounts, executionTime);
+						}
+						rowsAffected.add(updateCounts);
+						if (nextChunk != null) {
+							chunk = awaitBatchChunk(nextChunk);
+							nextChunk = null;
+						}
+						else {
+							chunk = reader.call();
+						}
+					}
+					return rowsAffected.toArray(new int[rowsAffected.size()][]);
+				}
+				finally {
+					if (nextChunk != null) {
+						// Do not return while the reader is still accessing the Iterator...
+						try {
+							nextChunk.get();
+						}
+						catch (Throwable ex) {
+							logger.debug("Prefetching of batch chunk failed after batch update error", ex);
+						}
+					}
+					if (pss instanceof ParameterDisposer) {
+						((ParameterDisposer) pss).cleanupParameters();
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Wait for the given chunk of batch arguments to be read.
+	 * @param nextChunk the Future for the chunk
+	 * @return the chunk of batch arguments
+	 */
+	private <T> List<T> awaitBatchChunk(Future<List<T>> nextChunk) {
+		try {
+			return nextChunk.get();
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for next batch chunk");
+		}
+		catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException("Failed to read next batch chunk", cause);
+		}
+	}
 	
 
 	//-------------------------------------------------------------------------
@@ -945,14 +1265,26 @@ public class JdbcTemplate extends JdbcAccessor implements JdbcOperations {
 			logger.debug("Calling stored procedure" + (sql != null ? " [" + sql  + "]" : ""));
 		}
 
-		Connection con = DataSourceUtils.getConnection(getDataSource());
+		JdbcOperationMonitor monitor = this.operationMonitor;
+		String monitoredSql = (monitor != null ? getSql(csc) : null);
+		Connection con = obtainConnection();
 		CallableStatement cs = null;
+		long startTime = 0;
+		boolean success = false;
 		try {
 			Connection conToUse = con;
 			if (this.nativeJdbcExtractor != null) {
 				conToUse = this.nativeJdbcExtractor.getNativeConnection(con);
 			}
-			cs = csc.createCallableStatement(conToUse);
+			if (monitor != null) {
+				long prepareStartTime = System.nanoTime();
+				cs = csc.createCallableStatement(conToUse);
+				startTime = System.nanoTime();
+				monitor.statementPrepared(monitoredSql, startTime - prepareStartTime);
+			}
+			else {
+				cs = csc.createCallableStatement(conToUse);
+			}
 			applyStatementSettings(cs);
 			CallableStatement csToUse = cs;
 			if (this.nativeJdbcExtractor != null) {
@@ -960,6 +1292,7 @@ public class JdbcTemplate extends JdbcAccessor implements JdbcOperations {
 			}
 			T result = action.doInCallableStatement(csToUse);
 			handleWarnings(cs);
+			success = true;
 			return result;
 		}
 		catch (SQLException ex) {
@@ -977,6 +1310,9 @@ public class JdbcTemplate extends JdbcAccessor implements JdbcOperations {
 			throw getExceptionTranslator().translate("CallableStatementCallback", sql, ex);
 		}
 		finally {
+			if (monitor != null && startTime != 0) {
+				monitor.statementExecuted(monitoredSql, System.nanoTime() - startTime, success);
+			}
 			if (csc instanceof ParameterDisposer) {
 				((ParameterDisposer) csc).cleanupParameters();
 			}
@@ -1286,6 +1622,83 @@ public class JdbcTemplate extends JdbcAccessor implements JdbcOperations {
 		}
 	}
 
+	/**
+	 * Obtain a JDBC Connection from this template's DataSource,
+	 * reporting the wait time to the operation monitor, if any.
+	 * @see DataSourceUtils#getConnection
+	 * @see JdbcOperationMonitor#connectionObtained
+	 */
+	private Connection obtainConnection() {
+		JdbcOperationMonitor monitor = this.operationMonitor;
+		if (monitor == null) {
+			return DataSourceUtils.getConnection(getDataSource());
+		}
+		long startTime = System.nanoTime();
+		Connection con = DataSourceUtils.getConnection(getDataSource());
+		monitor.connectionObtained(System.nanoTime() - startTime);
+		return con;
+	}
+
+	/**
+	 * Create a PreparedStatement through the given PreparedStatementCreator,
+	 * going through the transactional statement cache, if any.
+	 * @param psc the PreparedStatementCreator to call
+	 * @param con the Connection to prepare the statement on
+	 * @param statementCache the statement cache (may be <code>null</code>)
+	 * @return the PreparedStatement
+	 * @see #setStatementCacheLimit
+	 */
+	private PreparedStatement createPreparedStatement(PreparedStatementCreator psc, Connection con,
+			PreparedStatementCache statementCache) throws SQLException {
+
+		if (statementCache != null) {
+			return statementCache.createPreparedStatement(psc, this.statementCacheLimit);
+		}
+		return psc.createPreparedStatement(con);
+	}
+
+	/**
+	 * Close the given PreparedStatement, unless it is to be kept in the
+	 * transactional statement cache.
+	 * @param ps the PreparedStatement to close (may be <code>null</code>)
+	 * @param statementCache the statement cache (may be <code>null</code>)
+	 * @param reusable whether the statement may be reused for subsequent operations
+	 */
+	private void closePreparedStatement(PreparedStatement ps, PreparedStatementCache statementCache,
+			boolean reusable) {
+
+		if (statementCache == null || !statementCache.release(ps, reusable)) {
+			JdbcUtils.closeStatement(ps);
+		}
+	}
+
+	/**
+	 * Extract data from the given ResultSet, counting the rows fetched
+	 * for the operation monitor, if any.
+	 * @param rs the ResultSet to extract data from
+	 * @param rse the ResultSetExtractor to use
+	 * @param sql the SQL statement for reporting to the monitor
+	 * @return the result of the ResultSetExtractor
+	 * @see JdbcOperationMonitor#rowsFetched
+	 */
+	private <T> T extractData(ResultSet rs, ResultSetExtractor<T> rse, String sql) throws SQLException {
+		if (this.nativeJdbcExtractor != null) {
+			return rse.extractData(this.nativeJdbcExtractor.getNativeResultSet(rs));
+		}
+		JdbcOperationMonitor monitor = this.operationMonitor;
+		if (monitor == null) {
+			return rse.extractData(rs);
+		}
+		RowCountingInvocationHandler handler = new RowCountingInvocationHandler(rs);
+		try {
+			return rse.extractData((ResultSet) Proxy.newProxyInstance(
+					ResultSet.class.getClassLoader(), new Class[] {ResultSet.class}, handler));
+		}
+		finally {
+			monitor.rowsFetched(sql, handler.rowCount);
+		}
+	}
+
 	/**
 	 * Determine SQL from potential provider object.
 	 * @param sqlProvider object that's potentially a SqlProvider
@@ -1302,6 +1715,42 @@ public class JdbcTemplate extends JdbcAccessor implements JdbcOperations {
 	}
 
 
+	/**
+	 * Invocation handler that counts the rows fetched from a JDBC ResultSet.
+	 */
+	private static class RowCountingInvocationHandler implements InvocationHandler {
+
+		private final ResultSet target;
+
+		private int rowCount;
+
+		public RowCountingInvocationHandler(ResultSet target) {
+			this.target = target;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (method.getName().equals("equals")) {
+				// Only consider equal when proxies are identical.
+				return (proxy == args[0]);
+			}
+			else if (method.getName().equals("hashCode")) {
+				// Use hashCode of ResultSet proxy.
+				return System.identityHashCode(proxy);
+			}
+			try {
+				Object retVal = method.invoke(this.target, args);
+				if (method.getName().equals("next") && Boolean.TRUE.equals(retVal)) {
+					this.rowCount++;
+				}
+				return retVal;
+			}
+			catch (InvocationTargetException ex) {
+				throw ex.getTargetException();
+			}
+		}
+	}
+
+
 	/**
 	 * Invocation handler that suppresses close calls on JDBC Connections.
 	 * Also prepares returned Statement (Prepared/CallbackStatement) objects.
@@ -1411,6 +1860,165 @@ public class JdbcTemplate extends JdbcAccessor implements JdbcOperations {
 	}
 
 
+	/**
+	 * CloseableRowIterator implementation on top of an open ResultSet,
+	 * holding on to the Statement and Connection until closed.
+	 */
+	private class ResultSetRowIterator<T> implements CloseableRowIterator<T> {
+
+		private final Connection con;
+
+		private final Statement stmt;
+
+		private final ResultSet rs;
+
+		private final ResultSet rsToUse;
+
+		private final RowMapper<T> rowMapper;
+
+		private final String sql;
+
+		private final JdbcOperationMonitor monitor;
+
+		private final long startTime;
+
+		private int rowNum = 0;
+
+		private boolean rowAvailable = false;
+
+		private boolean closed = false;
+
+		public ResultSetRowIterator(Connection con, Statement stmt, ResultSet rs, ResultSet rsToUse,
+				RowMapper<T> rowMapper, String sql, JdbcOperationMonitor monitor, long startTime) {
+
+			this.con = con;
+			this.stmt = stmt;
+			this.rs = rs;
+			this.rsToUse = rsToUse;
+			this.rowMapper = rowMapper;
+			this.sql = sql;
+			this.monitor = monitor;
+			this.startTime = startTime;
+		}
+
+		public boolean hasNext() {
+			if (this.rowAvailable) {
+				return true;
+			}
+			if (this.closed) {
+				return false;
+			}
+			try {
+				this.rowAvailable = this.rsToUse.next();
+			}
+			catch (SQLException ex) {
+				throw translateAndClose(ex);
+			}
+			if (!this.rowAvailable) {
+				close();
+			}
+			return this.rowAvailable;
+		}
+
+		public T next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException("No more rows available");
+			}
+			this.rowAvailable = false;
+			try {
+				return this.rowMapper.mapRow(this.rsToUse, this.rowNum++);
+			}
+			catch (SQLException ex) {
+				throw translateAndClose(ex);
+			}
+			catch (RuntimeException ex) {
+				abort();
+				throw ex;
+			}
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException("Rows cannot be removed through a CloseableRowIterator");
+		}
+
+		public void close() {
+			if (this.closed) {
+				return;
+			}
+			this.closed = true;
+			this.rowAvailable = false;
+			SQLException warningsEx = null;
+			try {
+				handleWarnings(this.stmt);
+			}
+			catch (SQLException ex) {
+				warningsEx = ex;
+			}
+			finally {
+				releaseResources(warningsEx == null);
+			}
+			if (warningsEx != null) {
+				throw getExceptionTranslator().translate("ResultSetRowIterator", this.sql, warningsEx);
+			}
+		}
+
+		private DataAccessException translateAndClose(SQLException ex) {
+			// Release Connection early, to avoid potential connection pool deadlock
+			// in the case when the exception translator hasn't been initialized yet.
+			abort();
+			return getExceptionTranslator().translate("ResultSetRowIterator", this.sql, ex);
+		}
+
+		private void abort() {
+			if (!this.closed) {
+				this.closed = true;
+				this.rowAvailable = false;
+				releaseResources(false);
+			}
+		}
+
+		/**
+		 * Release the JDBC resources, reporting the execution of the query -
+		 * from its start until now, including the iteration - to the monitor.
+		 * @param success whether the iteration completed without an exception
+		 */
+		private void releaseResources(boolean success) {
+			if (this.monitor != null && this.startTime != 0) {
+				this.monitor.rowsFetched(this.sql, this.rowNum);
+				this.monitor.statementExecuted(this.sql, System.nanoTime() - this.startTime, success);
+			}
+			JdbcUtils.closeResultSet(this.rs);
+			JdbcUtils.closeStatement(this.stmt);
+			DataSourceUtils.releaseConnection(this.con, getDataSource());
+		}
+	}
+
+
+	/**
+	 * Reads the next chunk of arguments for a chunked batch update from the
+	 * argument Iterator, either in the calling thread or in a prefetch thread.
+	 */
+	private static class BatchChunkReader<T> implements Callable<List<T>> {
+
+		private final Iterator<T> batchArgs;
+
+		private final int batchSize;
+
+		public BatchChunkReader(Iterator<T> batchArgs, int batchSize) {
+			this.batchArgs = batchArgs;
+			this.batchSize = batchSize;
+		}
+
+		public List<T> call() {
+			List<T> chunk = new ArrayList<T>(this.batchSize);
+			while (chunk.size() < this.batchSize && this.batchArgs.hasNext()) {
+				chunk.add(this.batchArgs.next());
+			}
+			return chunk;
+		}
+	}
+
+
 	/**
 	 * Adapter to enable use of a RowCallbackHandler inside a ResultSetExtractor.
 	 * <p>Uses a regular ResultSet, so we have to be careful when using it:
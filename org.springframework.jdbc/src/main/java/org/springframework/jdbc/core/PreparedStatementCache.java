@@ -0,0 +1,362 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.jdbc.datasource.ConnectionHolder;
+import org.springframework.jdbc.datasource.ConnectionProxy;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Cache of PreparedStatements for a single transactional JDBC Connection,
+ * bound to the current transaction and closed on transaction completion.
+ * Used by {@link JdbcTemplate} if a statement cache limit has been specified.
+ *
+ * <p>Statements are keyed by the arguments of the <code>Connection.prepareStatement</code>
+ * call issued by the PreparedStatementCreator, i.e. by SQL String, generated keys mode,
+ * and result set type and concurrency. A cached statement is only handed out again once
+ * it has been released by the previous operation; nested operations for the same SQL
+ * will simply work with a fresh, non-cached statement.
+ *
+ * @since 3.1
+ * @see JdbcTemplate#setStatementCacheLimit
+ */
+final class PreparedStatementCache {
+
+	private static final Log logger = LogFactory.getLog(PreparedStatementCache.class);
+
+	private final Connection connection;
+
+	private final Connection connectionProxy;
+
+	private final Map<StatementKey, CachedStatement> statements = new HashMap<StatementKey, CachedStatement>();
+
+	private final Map<PreparedStatement, CachedStatement> statementsInUse =
+			new IdentityHashMap<PreparedStatement, CachedStatement>();
+
+	private int cacheLimit;
+
+	private PreparedStatement lastPrepared;
+
+
+	private PreparedStatementCache(Connection connection) {
+		this.connection = connection;
+		this.connectionProxy = (Connection) Proxy.newProxyInstance(
+				ConnectionProxy.class.getClassLoader(), new Class[] {ConnectionProxy.class},
+				new CachingInvocationHandler());
+	}
+
+
+	/**
+	 * Create a PreparedStatement through the given PreparedStatementCreator,
+	 * reusing a cached statement if possible.
+	 * @param psc the PreparedStatementCreator to call
+	 * @param cacheLimit the maximum number of statements to keep
+	 * @return the PreparedStatement, to be released through {@link #release}
+	 * @throws SQLException if thrown by the PreparedStatementCreator
+	 */
+	public PreparedStatement createPreparedStatement(PreparedStatementCreator psc, int cacheLimit)
+			throws SQLException {
+
+		this.cacheLimit = cacheLimit;
+		this.lastPrepared = null;
+		boolean success = false;
+		try {
+			PreparedStatement ps = psc.createPreparedStatement(this.connectionProxy);
+			success = true;
+			return ps;
+		}
+		finally {
+			if (!success && this.lastPrepared != null && !release(this.lastPrepared, false)) {
+				JdbcUtils.closeStatement(this.lastPrepared);
+			}
+			this.lastPrepared = null;
+		}
+	}
+
+	/**
+	 * Release the given PreparedStatement after use.
+	 * @param ps the PreparedStatement to release (may be <code>null</code>)
+	 * @param reusable whether the statement may be reused by subsequent operations
+	 * @return <code>true</code> if the statement has been kept in the cache,
+	 * or <code>false</code> if the caller is supposed to close it
+	 */
+	public boolean release(PreparedStatement ps, boolean reusable) {
+		CachedStatement cached = this.statementsInUse.remove(ps);
+		if (cached == null) {
+			return false;
+		}
+		cached.inUse = false;
+		if (reusable) {
+			try {
+				cached.reset();
+				return true;
+			}
+			catch (SQLException ex) {
+				logger.debug("Could not reset cached JDBC PreparedStatement - discarding it", ex);
+			}
+			catch (RuntimeException ex) {
+				logger.debug("Unexpected exception on resetting cached JDBC PreparedStatement - discarding it", ex);
+			}
+		}
+		this.statements.remove(cached.key);
+		return false;
+	}
+
+	/**
+	 * Return the number of statements currently held by this cache.
+	 */
+	public int size() {
+		return this.statements.size();
+	}
+
+	/**
+	 * Close all cached statements.
+	 */
+	public void close() {
+		for (CachedStatement cached : this.statements.values()) {
+			JdbcUtils.closeStatement(cached.statement);
+		}
+		this.statements.clear();
+		this.statementsInUse.clear();
+	}
+
+
+	/**
+	 * Obtain the statement cache for the given DataSource and Connection,
+	 * creating and binding a new cache if none is bound for the current
+	 * transaction yet.
+	 * @param dataSource the DataSource that the Connection has been obtained from
+	 * @param con the Connection to prepare statements on
+	 * @return the statement cache, or <code>null</code> if the Connection is not
+	 * the transactional Connection for the given DataSource
+	 */
+	public static PreparedStatementCache getTransactionalCache(DataSource dataSource, Connection con) {
+		if (dataSource == null || !TransactionSynchronizationManager.isSynchronizationActive()) {
+			return null;
+		}
+		Object conHolder = TransactionSynchronizationManager.getResource(dataSource);
+		if (!(conHolder instanceof ConnectionHolder) ||
+				!((ConnectionHolder) conHolder).isSynchronizedWithTransaction()) {
+			return null;
+		}
+		PreparedStatementCache cache = (PreparedStatementCache) TransactionSynchronizationManager.getResource(conHolder);
+		if (cache == null) {
+			cache = new PreparedStatementCache(con);
+			TransactionSynchronizationManager.bindResource(conHolder, cache);
+			TransactionSynchronizationManager.registerSynchronization(
+					new StatementCacheSynchronization(conHolder, cache));
+		}
+		return (cache.connection == con ? cache : null);
+	}
+
+
+	/**
+	 * Key for a cached statement: the arguments of the prepareStatement call.
+	 */
+	private static class StatementKey {
+
+		private final Object[] args;
+
+		private final int hashCode;
+
+		public StatementKey(Object[] args) {
+			this.args = args;
+			this.hashCode = Arrays.deepHashCode(args);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return (this == other || (other instanceof StatementKey &&
+					Arrays.deepEquals(this.args, ((StatementKey) other).args)));
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hashCode;
+		}
+	}
+
+
+	/**
+	 * Holder for a cached statement, remembering its initial settings
+	 * in order to restore them when the statement gets released.
+	 */
+	private static class CachedStatement {
+
+		private final StatementKey key;
+
+		private final PreparedStatement statement;
+
+		private final int fetchSize;
+
+		private final int maxRows;
+
+		private final int queryTimeout;
+
+		private boolean inUse = true;
+
+		public CachedStatement(StatementKey key, PreparedStatement statement) throws SQLException {
+			this.key = key;
+			this.statement = statement;
+			this.fetchSize = statement.getFetchSize();
+			this.maxRows = statement.getMaxRows();
+			this.queryTimeout = statement.getQueryTimeout();
+		}
+
+		public void reset() throws SQLException {
+			this.statement.clearParameters();
+			this.statement.clearWarnings();
+			if (this.statement.getFetchSize() != this.fetchSize) {
+				this.statement.setFetchSize(this.fetchSize);
+			}
+			if (this.statement.getMaxRows() != this.maxRows) {
+				this.statement.setMaxRows(this.maxRows);
+			}
+			if (this.statement.getQueryTimeout() != this.queryTimeout) {
+				this.statement.setQueryTimeout(this.queryTimeout);
+			}
+		}
+	}
+
+
+	/**
+	 * Invocation handler that serves prepareStatement calls from the cache
+	 * and delegates all other calls to the target Connection.
+	 */
+	private class CachingInvocationHandler implements InvocationHandler {
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			// Invocation on ConnectionProxy interface coming in...
+
+			if (method.getName().equals("equals")) {
+				return (proxy == args[0]);
+			}
+			else if (method.getName().equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			}
+			else if (method.getName().equals("getTargetConnection")) {
+				return connection;
+			}
+			else if (method.getName().equals("prepareStatement")) {
+				return prepareStatement(method, args);
+			}
+
+			try {
+				return method.invoke(connection, args);
+			}
+			catch (InvocationTargetException ex) {
+				throw ex.getTargetException();
+			}
+		}
+
+		private PreparedStatement prepareStatement(Method method, Object[] args) throws Throwable {
+			StatementKey key = new StatementKey(args);
+			CachedStatement cached = statements.get(key);
+			if (cached != null && !cached.inUse) {
+				cached.inUse = true;
+				statementsInUse.put(cached.statement, cached);
+				lastPrepared = cached.statement;
+				return cached.statement;
+			}
+			PreparedStatement ps;
+			try {
+				ps = (PreparedStatement) method.invoke(connection, args);
+			}
+			catch (InvocationTargetException ex) {
+				throw ex.getTargetException();
+			}
+			if (cached == null && statements.size() < cacheLimit) {
+				try {
+					cached = new CachedStatement(key, ps);
+				}
+				catch (SQLException ex) {
+					JdbcUtils.closeStatement(ps);
+					throw ex;
+				}
+				statements.put(key, cached);
+				statementsInUse.put(ps, cached);
+			}
+			lastPrepared = ps;
+			return ps;
+		}
+	}
+
+
+	/**
+	 * Callback for closing the cached statements at the end of the transaction,
+	 * before the transactional Connection gets released.
+	 */
+	private static class StatementCacheSynchronization extends TransactionSynchronizationAdapter {
+
+		private final Object connectionHolder;
+
+		private final PreparedStatementCache cache;
+
+		public StatementCacheSynchronization(Object connectionHolder, PreparedStatementCache cache) {
+			this.connectionHolder = connectionHolder;
+			this.cache = cache;
+		}
+
+		@Override
+		public int getOrder() {
+			return DataSourceUtils.CONNECTION_SYNCHRONIZATION_ORDER - 100;
+		}
+
+		@Override
+		public void suspend() {
+			// The transactional Connection might get released on suspend.
+			closeCache();
+		}
+
+		@Override
+		public void beforeCompletion() {
+			closeCache();
+		}
+
+		@Override
+		public void afterCompletion(int status) {
+			closeCache();
+		}
+
+		private void closeCache() {
+			if (TransactionSynchronizationManager.getResource(this.connectionHolder) == this.cache) {
+				TransactionSynchronizationManager.unbindResourceIfPossible(this.connectionHolder);
+			}
+			this.cache.close();
+		}
+	}
+
+}
@@ -2,16 +2,20 @@ package org.springframework.jdbc.core.namedparam;
 
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.Iterator;
 
+import org.springframework.jdbc.core.BatchChunkCallback;
 import org.springframework.jdbc.core.BatchUpdateUtils;
 import org.springframework.jdbc.core.JdbcOperations;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
 
 /**
  * Generic utility methods for working with JDBC batch statements using named parameters. Mainly for internal use
  * within the framework.
  *
  * @author Thomas Risberg
+ * @author Juergen Hoeller
  */
 public class NamedParameterBatchUpdateUtils extends BatchUpdateUtils {
 
@@ -37,4 +41,81 @@ public class NamedParameterBatchUpdateUtils extends BatchUpdateUtils {
 				});
 	}
 
+	public static int[][] executeBatchUpdateWithNamedParameters(ParsedSql parsedSql,
+			Iterator<? extends SqlParameterSource> batchArgs, int batchSize, BatchChunkCallback chunkCallback,
+			JdbcOperations jdbcOperations) {
+		if (!batchArgs.hasNext()) {
+			return new int[0][];
+		}
+		SqlParameterSource firstArgs = batchArgs.next();
+		String sqlToUse = NamedParameterUtils.substituteNamedParameters(parsedSql, firstArgs);
+		return jdbcOperations.batchUpdate(
+				sqlToUse,
+				new ParameterValuesIterator(parsedSql, firstArgs, batchArgs),
+				batchSize,
+				new ParameterizedPreparedStatementSetter<ParameterValues>() {
+
+					public void setValues(PreparedStatement ps, ParameterValues argument) throws SQLException {
+						setStatementParameters(argument.values, ps, argument.columnTypes);
+					}
+				},
+				chunkCallback);
+	}
+
+
+	/**
+	 * Values and SQL types for one statement in a batch, resolved from its SqlParameterSource.
+	 */
+	private static class ParameterValues {
+
+		private final Object[] values;
+
+		private final int[] columnTypes;
+
+		public ParameterValues(ParsedSql parsedSql, SqlParameterSource paramSource) {
+			this.values = NamedParameterUtils.buildValueArray(parsedSql, paramSource, null);
+			this.columnTypes = NamedParameterUtils.buildSqlTypeArray(parsedSql, paramSource);
+		}
+	}
+
+
+	/**
+	 * Iterator resolving each SqlParameterSource into ParameterValues when being
+	 * advanced, i.e. in whatever thread reads the next chunk of the batch.
+	 */
+	private static class ParameterValuesIterator implements Iterator<ParameterValues> {
+
+		private final ParsedSql parsedSql;
+
+		private SqlParameterSource firstArgs;
+
+		private final Iterator<? extends SqlParameterSource> remainingArgs;
+
+		public ParameterValuesIterator(ParsedSql parsedSql, SqlParameterSource firstArgs,
+				Iterator<? extends SqlParameterSource> remainingArgs) {
+			this.parsedSql = parsedSql;
+			this.firstArgs = firstArgs;
+			this.remainingArgs = remainingArgs;
+		}
+
+		public boolean hasNext() {
+			return (this.firstArgs != null || this.remainingArgs.hasNext());
+		}
+
+		public ParameterValues next() {
+			SqlParameterSource paramSource = this.firstArgs;
+			if (paramSource != null) {
+				this.firstArgs = null;
+			}
+			else {
+				paramSource = this.remainingArgs.next();
+			}
+			return new ParameterValues(this.parsedSql, paramSource);
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException("remove");
+		}
+	}
+
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2009 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,10 +16,12 @@
 
 package org.springframework.jdbc.core.namedparam;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.BatchChunkCallback;
 import org.springframework.jdbc.core.JdbcOperations;
 import org.springframework.jdbc.core.PreparedStatementCallback;
 import org.springframework.jdbc.core.ResultSetExtractor;
@@ -509,4 +511,22 @@ public interface NamedParameterJdbcOperations {
 	 */
 	public int[] batchUpdate(String sql, SqlParameterSource[] batchArgs);
 
+	/**
+	 * Execute multiple batches using the supplied SQL statement, pulling the arguments
+	 * from the given Iterator chunk by chunk, without holding all of them in memory.
+	 * <p>Note that the placeholders for the SQL statement will be derived from the
+	 * first {@link SqlParameterSource}: Any collection values to be expanded need to
+	 * have the same size across all arguments.
+	 * @param sql the SQL statement to execute
+	 * @param batchArgs the Iterator over {@link SqlParameterSource} arguments for the query
+	 * @param batchSize the number of statements per chunk
+	 * @param chunkCallback callback to notify after the execution of each chunk
+	 * (may be <code>null</code>)
+	 * @return an array containing for each chunk another array containing the numbers of
+	 * rows affected by each update in the chunk
+	 * @see org.springframework.jdbc.core.JdbcOperations#batchUpdate(String, java.util.Iterator, int, org.springframework.jdbc.core.ParameterizedPreparedStatementSetter, BatchChunkCallback)
+	 */
+	public int[][] batchUpdate(String sql, Iterator<? extends SqlParameterSource> batchArgs, int batchSize,
+			BatchChunkCallback chunkCallback);
+
 }
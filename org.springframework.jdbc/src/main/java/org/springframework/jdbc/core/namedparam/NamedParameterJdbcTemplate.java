@@ -16,13 +16,20 @@
 
 package org.springframework.jdbc.core.namedparam;
 
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import javax.sql.DataSource;
 
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.support.DataAccessUtils;
+import org.springframework.jdbc.core.BatchChunkCallback;
 import org.springframework.jdbc.core.ColumnMapRowMapper;
 import org.springframework.jdbc.core.JdbcOperations;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -63,20 +70,23 @@ public class NamedParameterJdbcTemplate implements NamedParameterJdbcOperations
 	/** Default maximum number of entries for this template's SQL cache: 256 */
 	public static final int DEFAULT_CACHE_LIMIT = 256;
 
+	/** Maximum number of collection elements to pad to a bucket size */
+	private static final int MAX_PADDED_COLLECTION_SIZE = 512;
+
 
 	/** The JdbcTemplate we are wrapping */
 	private final JdbcOperations classicJdbcTemplate;
 
 	private volatile int cacheLimit = DEFAULT_CACHE_LIMIT;
 
+	private volatile boolean collectionPadding = false;
+
 	/** Cache of original SQL String to ParsedSql representation */
-	private final Map<String, ParsedSql> parsedSqlCache =
-			new LinkedHashMap<String, ParsedSql>(DEFAULT_CACHE_LIMIT, 0.75f, true) {
-				@Override
-				protected boolean removeEldestEntry(Map.Entry<String, ParsedSql> eldest) {
-					return size() > getCacheLimit();
-				}
-			};
+	private final ConcurrentMap<String, ParsedSql> parsedSqlCache =
+			new ConcurrentHashMap<String, ParsedSql>(DEFAULT_CACHE_LIMIT);
+
+	/** Cached SQL Strings in the order of addition, for evicting the eldest entries */
+	private final Queue<String> parsedSqlCacheOrder = new ConcurrentLinkedQueue<String>();
 
 
 	/**
@@ -123,6 +133,28 @@ public class NamedParameterJdbcTemplate implements NamedParameterJdbcOperations
 		return this.cacheLimit;
 	}
 
+	/**
+	 * Specify whether to pad collection parameter values, as typically used for
+	 * <code>IN</code> lists, to a bucket size: the next power of two, by repeating
+	 * the last element. Default is "false".
+	 * <p>Switch this to "true" to reduce the number of distinct SQL statements
+	 * that the database has to parse and keep execution plans for: e.g. all lists
+	 * with 5 to 8 elements lead to the same statement with 8 placeholders.
+	 * This is only appropriate for SQL constructs where repeated values do not
+	 * change the result, such as <code>IN</code> lists. Collections with more
+	 * than 512 elements are never padded.
+	 */
+	public void setCollectionPadding(boolean collectionPadding) {
+		this.collectionPadding = collectionPadding;
+	}
+
+	/**
+	 * Return whether to pad collection parameter values to a bucket size.
+	 */
+	public boolean isCollectionPadding() {
+		return this.collectionPadding;
+	}
+
 
 	public <T> T execute(String sql, SqlParameterSource paramSource, PreparedStatementCallback<T> action)
 			throws DataAccessException {
@@ -274,6 +306,9 @@ public class NamedParameterJdbcTemplate implements NamedParameterJdbcOperations
 			String sql, SqlParameterSource paramSource, KeyHolder generatedKeyHolder, String[] keyColumnNames)
 			throws DataAccessException {
 
+		if (this.collectionPadding && paramSource != null) {
+			paramSource = new CollectionPaddingSqlParameterSource(paramSource);
+		}
 		ParsedSql parsedSql = getParsedSql(sql);
 		String sqlToUse = NamedParameterUtils.substituteNamedParameters(parsedSql, paramSource);
 		Object[] params = NamedParameterUtils.buildValueArray(parsedSql, paramSource, null);
@@ -303,6 +338,14 @@ public class NamedParameterJdbcTemplate implements NamedParameterJdbcOperations
 		return NamedParameterBatchUpdateUtils.executeBatchUpdateWithNamedParameters(parsedSql, batchArgs, getJdbcOperations());
 	}
 
+	public int[][] batchUpdate(String sql, Iterator<? extends SqlParameterSource> batchArgs, int batchSize,
+			BatchChunkCallback chunkCallback) {
+
+		ParsedSql parsedSql = getParsedSql(sql);
+		return NamedParameterBatchUpdateUtils.executeBatchUpdateWithNamedParameters(
+				parsedSql, batchArgs, batchSize, chunkCallback, getJdbcOperations());
+	}
+
 	/**
 	 * Build a PreparedStatementCreator based on the given SQL and named parameters.
 	 * <p>Note: Not used for the <code>update</code> variant with generated key handling.
@@ -311,6 +354,9 @@ public class NamedParameterJdbcTemplate implements NamedParameterJdbcOperations
 	 * @return the corresponding PreparedStatementCreator
 	 */
 	protected PreparedStatementCreator getPreparedStatementCreator(String sql, SqlParameterSource paramSource) {
+		if (this.collectionPadding && paramSource != null) {
+			paramSource = new CollectionPaddingSqlParameterSource(paramSource);
+		}
 		ParsedSql parsedSql = getParsedSql(sql);
 		String sqlToUse = NamedParameterUtils.substituteNamedParameters(parsedSql, paramSource);
 		Object[] params = NamedParameterUtils.buildValueArray(parsedSql, paramSource, null);
@@ -321,22 +367,85 @@ public class NamedParameterJdbcTemplate implements NamedParameterJdbcOperations
 
 	/**
 	 * Obtain a parsed representation of the given SQL statement.
-	 * <p>The default implementation uses an LRU cache with an upper limit
-	 * of 256 entries.
+	 * <p>The default implementation uses a concurrent cache with an upper limit
+	 * of 256 entries, evicting the eldest entries first. Cache hits do not
+	 * involve any locking.
 	 * @param sql the original SQL
 	 * @return a representation of the parsed SQL statement
+	 * @see #setCacheLimit
 	 */
 	protected ParsedSql getParsedSql(String sql) {
-		if (getCacheLimit() <= 0) {
+		int cacheLimit = getCacheLimit();
+		if (cacheLimit <= 0) {
 			return NamedParameterUtils.parseSqlStatement(sql);
 		}
-		synchronized (this.parsedSqlCache) {
-			ParsedSql parsedSql = this.parsedSqlCache.get(sql);
-			if (parsedSql == null) {
-				parsedSql = NamedParameterUtils.parseSqlStatement(sql);
-				this.parsedSqlCache.put(sql, parsedSql);
+		ParsedSql parsedSql = this.parsedSqlCache.get(sql);
+		if (parsedSql == null) {
+			parsedSql = NamedParameterUtils.parseSqlStatement(sql);
+			ParsedSql existing = this.parsedSqlCache.putIfAbsent(sql, parsedSql);
+			if (existing != null) {
+				return existing;
+			}
+			this.parsedSqlCacheOrder.offer(sql);
+			while (this.parsedSqlCache.size() > cacheLimit) {
+				String eldest = this.parsedSqlCacheOrder.poll();
+				if (eldest == null) {
+					break;
+				}
+				this.parsedSqlCache.remove(eldest);
+			}
+		}
+		return parsedSql;
+	}
+
+
+	/**
+	 * SqlParameterSource decorator which pads collection values to the next
+	 * power of two, repeating the last element.
+	 * @see #setCollectionPadding
+	 */
+	private static class CollectionPaddingSqlParameterSource implements SqlParameterSource {
+
+		private final SqlParameterSource target;
+
+		public CollectionPaddingSqlParameterSource(SqlParameterSource target) {
+			this.target = target;
+		}
+
+		public boolean hasValue(String paramName) {
+			return this.target.hasValue(paramName);
+		}
+
+		public Object getValue(String paramName) throws IllegalArgumentException {
+			Object value = this.target.getValue(paramName);
+			if (value instanceof Collection) {
+				Collection<?> collection = (Collection<?>) value;
+				int size = collection.size();
+				if (size > 0 && size <= MAX_PADDED_COLLECTION_SIZE) {
+					int paddedSize = Integer.highestOneBit(size);
+					if (paddedSize < size) {
+						paddedSize <<= 1;
+					}
+					if (paddedSize > size) {
+						List<Object> paddedList = new ArrayList<Object>(paddedSize);
+						paddedList.addAll(collection);
+						Object last = paddedList.get(size - 1);
+						while (paddedList.size() < paddedSize) {
+							paddedList.add(last);
+						}
+						return paddedList;
+					}
+				}
 			}
-			return parsedSql;
+			return value;
+		}
+
+		public int getSqlType(String paramName) {
+			return this.target.getSqlType(paramName);
+		}
+
+		public String getTypeName(String paramName) {
+			return this.target.getTypeName(paramName);
 		}
 	}
 
@@ -16,6 +16,7 @@
 
 package org.springframework.jdbc.core.namedparam;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -185,51 +186,91 @@ public abstract class NamedParameterUtils {
 	 * placeholder to be used for a select list. Select lists should be limited
 	 * to 100 or fewer elements. A larger number of elements is not guaramteed to
 	 * be supported by the database and is strictly vendor-dependent.
+	 * <p>The resulting SQL statement is cached in the given ParsedSql object
+	 * for every distinct number of select list elements, so that repeated calls
+	 * only need to determine the shape of the parameter values.
 	 * @param parsedSql the parsed represenation of the SQL statement
 	 * @param paramSource the source for named parameters
 	 * @return the SQL statement with substituted parameters
 	 * @see #parseSqlStatement
 	 */
 	public static String substituteNamedParameters(ParsedSql parsedSql, SqlParameterSource paramSource) {
+		List<String> paramNames = parsedSql.getParameterNames();
+		Object[] values = null;
+		for (int i = 0; i < paramNames.size(); i++) {
+			String paramName = paramNames.get(i);
+			if (paramSource != null && paramSource.hasValue(paramName)) {
+				Object value = paramSource.getValue(paramName);
+				if (value instanceof Collection) {
+					if (values == null) {
+						values = new Object[paramNames.size()];
+					}
+					values[i] = value;
+				}
+			}
+		}
+		if (values == null) {
+			// No collection values: one placeholder per parameter.
+			String sqlToUse = parsedSql.getSubstitutedSql(null);
+			if (sqlToUse == null) {
+				sqlToUse = buildSubstitutedSql(parsedSql, null);
+				parsedSql.addSubstitutedSql(null, sqlToUse);
+			}
+			return sqlToUse;
+		}
+		ExpansionKey key = ExpansionKey.forValues(values);
+		if (key == null) {
+			return buildSubstitutedSql(parsedSql, values);
+		}
+		String sqlToUse = parsedSql.getSubstitutedSql(key);
+		if (sqlToUse == null) {
+			sqlToUse = buildSubstitutedSql(parsedSql, values);
+			parsedSql.addSubstitutedSql(key, sqlToUse);
+		}
+		return sqlToUse;
+	}
+
+	/**
+	 * Build the SQL statement with JDBC placeholders for the given parsed statement,
+	 * expanding the given collection values to the required number of placeholders.
+	 * @param parsedSql the parsed represenation of the SQL statement
+	 * @param values the collection values per parameter position
+	 * (may be <code>null</code> or contain <code>null</code> for plain parameters)
+	 */
+	private static String buildSubstitutedSql(ParsedSql parsedSql, Object[] values) {
 		String originalSql = parsedSql.getOriginalSql();
 		StringBuilder actualSql = new StringBuilder();
-		List paramNames = parsedSql.getParameterNames();
+		List<String> paramNames = parsedSql.getParameterNames();
 		int lastIndex = 0;
 		for (int i = 0; i < paramNames.size(); i++) {
-			String paramName = (String) paramNames.get(i);
 			int[] indexes = parsedSql.getParameterIndexes(i);
 			int startIndex = indexes[0];
 			int endIndex = indexes[1];
-			actualSql.append(originalSql.substring(lastIndex, startIndex));
-			if (paramSource != null && paramSource.hasValue(paramName)) {
-				Object value = paramSource.getValue(paramName);
-				if (value instanceof Collection) {
-					Iterator entryIter = ((Collection) value).iterator();
-					int k = 0;
-					while (entryIter.hasNext()) {
-						if (k > 0) {
-							actualSql.append(", ");
-						}
-						k++;
-						Object entryItem = entryIter.next();
-						if (entryItem instanceof Object[]) {
-							Object[] expressionList = (Object[]) entryItem;
-							actualSql.append("(");
-							for (int m = 0; m < expressionList.length; m++) {
-								if (m > 0) {
-									actualSql.append(", ");
-								}
-								actualSql.append("?");
+			actualSql.append(originalSql, lastIndex, startIndex);
+			Object value = (values != null ? values[i] : null);
+			if (value instanceof Collection) {
+				Iterator entryIter = ((Collection) value).iterator();
+				int k = 0;
+				while (entryIter.hasNext()) {
+					if (k > 0) {
+						actualSql.append(", ");
+					}
+					k++;
+					Object entryItem = entryIter.next();
+					if (entryItem instanceof Object[]) {
+						Object[] expressionList = (Object[]) entryItem;
+						actualSql.append("(");
+						for (int m = 0; m < expressionList.length; m++) {
+							if (m > 0) {
+								actualSql.append(", ");
 							}
-							actualSql.append(")");
-						}
-						else {
 							actualSql.append("?");
 						}
+						actualSql.append(")");
+					}
+					else {
+						actualSql.append("?");
 					}
-				}
-				else {
-					actualSql.append("?");
 				}
 			}
 			else {
@@ -237,7 +278,7 @@ public abstract class NamedParameterUtils {
 			}
 			lastIndex = endIndex;
 		}
-		actualSql.append(originalSql.substring(lastIndex, originalSql.length()));
+		actualSql.append(originalSql, lastIndex, originalSql.length());
 		return actualSql.toString();
 	}
 
@@ -405,4 +446,63 @@ public abstract class NamedParameterUtils {
 		return buildValueArray(parsedSql, new MapSqlParameterSource(paramMap), null);
 	}
 
+
+	/**
+	 * Key for the substituted SQL of a particular parameter shape: the number of
+	 * elements in each collection value and, for collections of arrays, the number
+	 * of expressions per array.
+	 */
+	private static class ExpansionKey {
+
+		private final int[] shape;
+
+		private final int hashCode;
+
+		private ExpansionKey(int[] shape) {
+			this.shape = shape;
+			this.hashCode = Arrays.hashCode(shape);
+		}
+
+		/**
+		 * Determine the key for the given collection values.
+		 * @return the key, or <code>null</code> if the values have no uniform shape,
+		 * i.e. contain arrays of different lengths within the same collection
+		 */
+		public static ExpansionKey forValues(Object[] values) {
+			int[] shape = new int[values.length * 2];
+			for (int i = 0; i < values.length; i++) {
+				if (values[i] instanceof Collection) {
+					Collection<?> collection = (Collection<?>) values[i];
+					int width = -1;
+					for (Object entryItem : collection) {
+						int entryWidth = (entryItem instanceof Object[] ? ((Object[]) entryItem).length : 0);
+						if (width == -1) {
+							width = entryWidth;
+						}
+						else if (width != entryWidth) {
+							return null;
+						}
+					}
+					shape[i * 2] = collection.size();
+					shape[i * 2 + 1] = width;
+				}
+				else {
+					shape[i * 2] = -1;
+				}
+			}
+			return new ExpansionKey(shape);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return (this == other ||
+					(other instanceof ExpansionKey && Arrays.equals(this.shape, ((ExpansionKey) other).shape)));
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hashCode;
+		}
+	}
+
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2008 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,6 +18,8 @@ package org.springframework.jdbc.core.namedparam;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Holds information about a parsed SQL statement.
@@ -28,6 +30,10 @@ import java.util.List;
  */
 public class ParsedSql {
 
+	/** Maximum number of substituted SQL variants to cache per statement */
+	private static final int SUBSTITUTED_SQL_CACHE_LIMIT = 64;
+
+
 	private String originalSql;
 
 	private List<String> parameterNames = new ArrayList<String>();
@@ -40,6 +46,10 @@ public class ParsedSql {
 
 	private int totalParameterCount;
 
+	private volatile String substitutedSql;
+
+	private final ConcurrentMap<Object, String> substitutedSqlCache = new ConcurrentHashMap<Object, String>(4);
+
 
 	/**
 	 * Create a new instance of the {@link ParsedSql} class.
@@ -134,6 +144,33 @@ public class ParsedSql {
 	}
 
 
+	/**
+	 * Return the cached SQL statement with JDBC placeholders for the given key.
+	 * @param key the key identifying the shape of the parameter values,
+	 * or <code>null</code> for plain parameter values without collections
+	 * @return the substituted SQL, or <code>null</code> if not cached yet
+	 */
+	String getSubstitutedSql(Object key) {
+		return (key != null ? this.substitutedSqlCache.get(key) : this.substitutedSql);
+	}
+
+	/**
+	 * Cache the SQL statement with JDBC placeholders for the given key,
+	 * unless the maximum number of cached variants has been reached.
+	 * @param key the key identifying the shape of the parameter values,
+	 * or <code>null</code> for plain parameter values without collections
+	 * @param sql the substituted SQL
+	 */
+	void addSubstitutedSql(Object key, String sql) {
+		if (key == null) {
+			this.substitutedSql = sql;
+		}
+		else if (this.substitutedSqlCache.size() < SUBSTITUTED_SQL_CACHE_LIMIT) {
+			this.substitutedSqlCache.put(key, sql);
+		}
+	}
+
+
 	/**
 	 * Exposes the original SQL String.
 	 */
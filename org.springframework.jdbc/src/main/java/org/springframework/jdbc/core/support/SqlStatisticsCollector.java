@@ -0,0 +1,354 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.core.support;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.jdbc.core.JdbcOperationMonitor;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+import org.springframework.util.LatencyHistogram;
+
+/**
+ * {@link JdbcOperationMonitor} implementation which keeps execution statistics per
+ * SQL statement in memory: the number of executions and failures, the total and
+ * maximum execution time, the total preparation time, and the number of rows fetched.
+ * Also keeps a histogram of the time spent waiting for JDBC Connections.
+ *
+ * <p>Statements which take longer than the configured
+ * {@link #setSlowQueryThreshold "slowQueryThreshold"} are counted and logged at
+ * warn level. To protect against an unbounded number of distinct statements, e.g.
+ * with literal values inlined into the SQL, at most {@link #setMaxStatements
+ * "maxStatements"} statements are tracked individually; further statements are
+ * accumulated in a common entry named {@link #OTHER_STATEMENTS}.
+ *
+ * <p>Instances carry JMX metadata for export through
+ * {@link org.springframework.jmx.export.annotation.AnnotationMBeanExporter}.
+ *
+ * @since 3.1
+ * @see org.springframework.jdbc.core.JdbcTemplate#setOperationMonitor
+ */
+@ManagedResource(description = "JDBC statement statistics")
+public class SqlStatisticsCollector implements JdbcOperationMonitor {
+
+	/**
+	 * The key under which statements without SQL are being tracked.
+	 */
+	public static final String UNKNOWN_STATEMENT = "[unknown]";
+
+	/**
+	 * The key under which statements beyond the "maxStatements" limit are being tracked.
+	 */
+	public static final String OTHER_STATEMENTS = "[other]";
+
+
+	private static final Log logger = LogFactory.getLog(SqlStatisticsCollector.class);
+
+	private volatile long slowQueryThresholdNanos = 0;
+
+	private volatile int maxStatements = 1000;
+
+	private final ConcurrentMap<String, SqlStatistics> statistics = new ConcurrentHashMap<String, SqlStatistics>();
+
+	private final AtomicLong slowQueryCount = new AtomicLong();
+
+	private final LatencyHistogram connectionWaitHistogram = new LatencyHistogram();
+
+
+	/**
+	 * Set the execution time in milliseconds above which a statement is considered
+	 * slow, getting counted and logged at warn level. Default is 0: no detection.
+	 */
+	public void setSlowQueryThreshold(long slowQueryThreshold) {
+		this.slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowQueryThreshold);
+	}
+
+	/**
+	 * Return the execution time in milliseconds above which a statement is considered slow.
+	 */
+	public long getSlowQueryThreshold() {
+		return TimeUnit.NANOSECONDS.toMillis(this.slowQueryThresholdNanos);
+	}
+
+	/**
+	 * Set the maximum number of distinct SQL statements to track individually.
+	 * Default is 1000.
+	 */
+	public void setMaxStatements(int maxStatements) {
+		this.maxStatements = maxStatements;
+	}
+
+	/**
+	 * Return the maximum number of distinct SQL statements to track individually.
+	 */
+	public int getMaxStatements() {
+		return this.maxStatements;
+	}
+
+
+	public void connectionObtained(long waitTime) {
+		this.connectionWaitHistogram.record(waitTime);
+	}
+
+	public void statementPrepared(String sql, long prepareTime) {
+		getStatisticsFor(sql).prepareTime.addAndGet(prepareTime);
+	}
+
+	public void statementExecuted(String sql, long executionTime, boolean success) {
+		SqlStatistics stats = getStatisticsFor(sql);
+		stats.executionCount.incrementAndGet();
+		if (!success) {
+			stats.failureCount.incrementAndGet();
+		}
+		stats.executionTime.addAndGet(executionTime);
+		long max = stats.maxExecutionTime.get();
+		while (executionTime > max && !stats.maxExecutionTime.compareAndSet(max, executionTime)) {
+			max = stats.maxExecutionTime.get();
+		}
+		long threshold = this.slowQueryThresholdNanos;
+		if (threshold > 0 && executionTime > threshold) {
+			this.slowQueryCount.incrementAndGet();
+			if (logger.isWarnEnabled()) {
+				logger.warn("Slow SQL statement took " + TimeUnit.NANOSECONDS.toMillis(executionTime) +
+						" ms to execute: " + (sql != null ? sql : UNKNOWN_STATEMENT));
+			}
+		}
+	}
+
+	public void rowsFetched(String sql, int rowCount) {
+		getStatisticsFor(sql).rowCount.addAndGet(rowCount);
+	}
+
+	private SqlStatistics getStatisticsFor(String sql) {
+		String key = (sql != null ? sql : UNKNOWN_STATEMENT);
+		SqlStatistics stats = this.statistics.get(key);
+		if (stats == null) {
+			if (this.statistics.size() >= this.maxStatements) {
+				key = OTHER_STATEMENTS;
+				stats = this.statistics.get(key);
+				if (stats != null) {
+					return stats;
+				}
+			}
+			stats = new SqlStatistics(key);
+			SqlStatistics existing = this.statistics.putIfAbsent(key, stats);
+			if (existing != null) {
+				stats = existing;
+			}
+		}
+		return stats;
+	}
+
+
+	/**
+	 * Return the statistics for the given SQL statement.
+	 * @param sql the SQL statement
+	 * @return the statistics, or <code>null</code> if the statement has not been tracked
+	 */
+	public SqlStatistics getStatistics(String sql) {
+		return this.statistics.get(sql);
+	}
+
+	/**
+	 * Return the statistics for all statements tracked so far,
+	 * ordered by total execution time, highest first.
+	 */
+	public List<SqlStatistics> getStatistics() {
+		List<SqlStatistics> result = new ArrayList<SqlStatistics>(this.statistics.values());
+		Collections.sort(result, new Comparator<SqlStatistics>() {
+			public int compare(SqlStatistics stats1, SqlStatistics stats2) {
+				long time1 = stats1.executionTime.get();
+				long time2 = stats2.executionTime.get();
+				return (time1 < time2 ? 1 : (time1 > time2 ? -1 : 0));
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Return a summary of the given number of statements with the highest total
+	 * execution time, one line per statement.
+	 */
+	@ManagedOperation(description = "Summary of the statements with the highest total execution time")
+	public String[] getTopStatements(int count) {
+		List<SqlStatistics> stats = getStatistics();
+		String[] result = new String[Math.min(count, stats.size())];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = stats.get(i).toString();
+		}
+		return result;
+	}
+
+	/**
+	 * Return the number of statements which exceeded the slow query threshold.
+	 */
+	@ManagedMetric(metricType = MetricType.COUNTER, description = "Number of statements exceeding the slow query threshold")
+	public long getSlowQueryCount() {
+		return this.slowQueryCount.get();
+	}
+
+	/**
+	 * Return the number of distinct statements tracked.
+	 */
+	@ManagedMetric(description = "Number of distinct statements tracked")
+	public int getStatementCount() {
+		return this.statistics.size();
+	}
+
+	/**
+	 * Return the number of JDBC Connections obtained.
+	 */
+	@ManagedMetric(metricType = MetricType.COUNTER, description = "Number of JDBC Connections obtained")
+	public long getConnectionCount() {
+		return this.connectionWaitHistogram.getCount();
+	}
+
+	/**
+	 * Return the mean time in milliseconds spent waiting for a JDBC Connection.
+	 */
+	@ManagedMetric(unit = "ms", description = "Mean Connection wait time")
+	public double getMeanConnectionWaitTime() {
+		return this.connectionWaitHistogram.getMeanTime() / 1000000;
+	}
+
+	/**
+	 * Return the maximum time in milliseconds spent waiting for a JDBC Connection.
+	 */
+	@ManagedMetric(unit = "ms", description = "Maximum Connection wait time")
+	public long getMaxConnectionWaitTime() {
+		return TimeUnit.NANOSECONDS.toMillis(this.connectionWaitHistogram.getMaxTime());
+	}
+
+	/**
+	 * Return the histogram of times spent waiting for JDBC Connections.
+	 */
+	public LatencyHistogram getConnectionWaitHistogram() {
+		return this.connectionWaitHistogram;
+	}
+
+	/**
+	 * Discard all statistics collected so far.
+	 */
+	@ManagedOperation(description = "Discard all statistics collected so far")
+	public void reset() {
+		this.statistics.clear();
+		this.slowQueryCount.set(0);
+		this.connectionWaitHistogram.reset();
+	}
+
+
+	/**
+	 * Execution statistics for a single SQL statement.
+	 */
+	public static class SqlStatistics {
+
+		private final String sql;
+
+		private final AtomicLong executionCount = new AtomicLong();
+
+		private final AtomicLong failureCount = new AtomicLong();
+
+		private final AtomicLong executionTime = new AtomicLong();
+
+		private final AtomicLong maxExecutionTime = new AtomicLong();
+
+		private final AtomicLong prepareTime = new AtomicLong();
+
+		private final AtomicLong rowCount = new AtomicLong();
+
+		private SqlStatistics(String sql) {
+			this.sql = sql;
+		}
+
+		/**
+		 * Return the SQL statement that these statistics apply to.
+		 */
+		public String getSql() {
+			return this.sql;
+		}
+
+		/**
+		 * Return the number of executions.
+		 */
+		public long getExecutionCount() {
+			return this.executionCount.get();
+		}
+
+		/**
+		 * Return the number of executions which failed with an exception.
+		 */
+		public long getFailureCount() {
+			return this.failureCount.get();
+		}
+
+		/**
+		 * Return the total execution time in nanoseconds.
+		 */
+		public long getTotalExecutionTime() {
+			return this.executionTime.get();
+		}
+
+		/**
+		 * Return the maximum execution time in nanoseconds.
+		 */
+		public long getMaxExecutionTime() {
+			return this.maxExecutionTime.get();
+		}
+
+		/**
+		 * Return the mean execution time in nanoseconds.
+		 */
+		public double getMeanExecutionTime() {
+			long count = this.executionCount.get();
+			return (count > 0 ? (double) this.executionTime.get() / count : 0);
+		}
+
+		/**
+		 * Return the total time in nanoseconds spent preparing the statement.
+		 */
+		public long getTotalPrepareTime() {
+			return this.prepareTime.get();
+		}
+
+		/**
+		 * Return the total number of rows fetched.
+		 */
+		public long getRowCount() {
+			return this.rowCount.get();
+		}
+
+		@Override
+		public String toString() {
+			return this.sql + ": executions=" + getExecutionCount() + ", failures=" + getFailureCount() +
+					", total=" + TimeUnit.NANOSECONDS.toMillis(getTotalExecutionTime()) + " ms, max=" +
+					TimeUnit.NANOSECONDS.toMillis(getMaxExecutionTime()) + " ms, rows=" + getRowCount();
+		}
+	}
+
+}
@@ -0,0 +1,837 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.datasource;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.util.Assert;
+import org.springframework.util.LatencyHistogram;
+
+/**
+ * Simple, lightweight connection pool, keeping physical JDBC Connections obtained
+ * from a target DataSource - typically a {@link SimpleDriverDataSource} - for reuse.
+ *
+ * <p>Connection handles returned by {@link #getConnection()} go back to the pool on
+ * <code>close()</code>. Borrowing and returning a Connection is lock-free as long
+ * as the pool is not exhausted: idle Connections are kept in a non-blocking queue,
+ * with a semaphore enforcing the {@link #setMaxSize "maxSize"} limit. Any Connection
+ * state changed by the application - auto-commit, read-only, isolation level and
+ * catalog - is reset on return, rolling back any uncommitted work.
+ *
+ * <p>Idle Connections can be validated when being borrowed, either every time or
+ * only after having been idle for a given interval, using a validation query or
+ * JDBC 4's <code>Connection.isValid</code> method. Connections held longer than
+ * the {@link #setLeakDetectionThreshold "leakDetectionThreshold"} are reported
+ * at warn level, including the stack trace of the code that obtained them.
+ *
+ * <p>This pool is intended for tests, embedded databases and small standalone
+ * services; it is the default DataSource behind
+ * {@link org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder}.
+ * Applications with demanding requirements should consider a full-featured pool
+ * or their application server's DataSource. The pool and its statistics can be
+ * obtained from a wrapping DataSource through <code>unwrap(PoolingDataSource.class)</code>.
+ *
+ * @since 3.1
+ * @see #setTargetDataSource
+ * @see #setMaxSize
+ * @see #setValidateOnBorrow
+ * @see #setLeakDetectionThreshold
+ */
+public class PoolingDataSource extends DelegatingDataSource implements SmartDataSource, DisposableBean {
+
+	private static final Constructor<?> handleConstructor;
+
+	static {
+		try {
+			handleConstructor = Proxy.getProxyClass(ConnectionProxy.class.getClassLoader(), ConnectionProxy.class)
+					.getConstructor(InvocationHandler.class);
+		}
+		catch (NoSuchMethodException ex) {
+			throw new IllegalStateException("Could not determine Connection proxy constructor: " + ex);
+		}
+	}
+
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private int minSize = 0;
+
+	private int maxSize = 8;
+
+	private long maxWait = 30000;
+
+	private boolean validateOnBorrow = false;
+
+	private long validationInterval = 0;
+
+	private String validationQuery;
+
+	private int validationTimeout = 5;
+
+	private volatile boolean jdbc4ValidationSupported = true;
+
+	private long leakDetectionThreshold = 0;
+
+	private volatile Semaphore permits;
+
+	private final Object initializationMonitor = new Object();
+
+	private final ConcurrentLinkedQueue<PooledConnection> idleConnections = new ConcurrentLinkedQueue<PooledConnection>();
+
+	private final Map<PooledConnection, Boolean> activeConnections = new ConcurrentHashMap<PooledConnection, Boolean>();
+
+	private volatile boolean closed = false;
+
+	private final AtomicInteger totalCount = new AtomicInteger();
+
+	private final AtomicInteger idleCount = new AtomicInteger();
+
+	private final AtomicInteger activeCount = new AtomicInteger();
+
+	private final AtomicInteger peakActiveCount = new AtomicInteger();
+
+	private final AtomicLong createdCount = new AtomicLong();
+
+	private final AtomicLong borrowedCount = new AtomicLong();
+
+	private final AtomicLong timeoutCount = new AtomicLong();
+
+	private final AtomicLong validationFailureCount = new AtomicLong();
+
+	private final AtomicLong leakCount = new AtomicLong();
+
+	private final LatencyHistogram borrowTimeHistogram = new LatencyHistogram();
+
+
+	/**
+	 * Create a new PoolingDataSource for bean-style configuration.
+	 * @see #setTargetDataSource
+	 */
+	public PoolingDataSource() {
+	}
+
+	/**
+	 * Create a new PoolingDataSource for the given target DataSource.
+	 * <p>The pool will be initialized on first access, unless
+	 * {@link #afterPropertiesSet()} gets called explicitly before.
+	 * @param targetDataSource the target DataSource to obtain physical Connections from
+	 */
+	public PoolingDataSource(DataSource targetDataSource) {
+		super(targetDataSource);
+	}
+
+
+	/**
+	 * Set the minimum number of physical Connections to keep open.
+	 * These Connections are established when the pool is initialized and
+	 * replenished when broken Connections get discarded. Default is 0.
+	 */
+	public void setMinSize(int minSize) {
+		Assert.isTrue(minSize >= 0, "'minSize' must not be negative");
+		this.minSize = minSize;
+	}
+
+	/**
+	 * Return the minimum number of physical Connections to keep open.
+	 */
+	public int getMinSize() {
+		return this.minSize;
+	}
+
+	/**
+	 * Set the maximum number of Connections that can be in use at the same time,
+	 * i.e. the maximum number of physical Connections in this pool. Default is 8.
+	 * <p>Needs to be specified before the pool is initialized.
+	 */
+	public void setMaxSize(int maxSize) {
+		Assert.isTrue(maxSize > 0, "'maxSize' must be 1 or higher");
+		Assert.state(this.permits == null, "Cannot change 'maxSize' after pool initialization");
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Return the maximum number of Connections that can be in use at the same time.
+	 */
+	public int getMaxSize() {
+		return this.maxSize;
+	}
+
+	/**
+	 * Set the maximum time in milliseconds to wait for a Connection when the
+	 * pool is exhausted, before throwing a SQLException. Default is 30000.
+	 * A negative value indicates to wait indefinitely.
+	 */
+	public void setMaxWait(long maxWait) {
+		this.maxWait = maxWait;
+	}
+
+	/**
+	 * Return the maximum time in milliseconds to wait for a Connection.
+	 */
+	public long getMaxWait() {
+		return this.maxWait;
+	}
+
+	/**
+	 * Set whether to validate idle Connections before handing them out,
+	 * discarding invalid ones. Default is "false".
+	 * @see #setValidationInterval
+	 * @see #setValidationQuery
+	 */
+	public void setValidateOnBorrow(boolean validateOnBorrow) {
+		this.validateOnBorrow = validateOnBorrow;
+	}
+
+	/**
+	 * Return whether to validate idle Connections before handing them out.
+	 */
+	public boolean isValidateOnBorrow() {
+		return this.validateOnBorrow;
+	}
+
+	/**
+	 * Set the time in milliseconds that a Connection needs to have been idle
+	 * for validation on borrow to kick in. Default is 0: validating every time.
+	 * <p>Specify a value of a few seconds to avoid the validation round trip for
+	 * Connections which have just been used successfully.
+	 * @see #setValidateOnBorrow
+	 */
+	public void setValidationInterval(long validationInterval) {
+		this.validationInterval = validationInterval;
+	}
+
+	/**
+	 * Return the time in milliseconds after which idle Connections get validated.
+	 */
+	public long getValidationInterval() {
+		return this.validationInterval;
+	}
+
+	/**
+	 * Set the SQL query to validate Connections with, e.g. "SELECT 1".
+	 * <p>Default is none, using JDBC 4's <code>Connection.isValid</code> method.
+	 * A validation query is required for validating Connections from JDBC 3 drivers:
+	 * if the driver turns out not to implement <code>Connection.isValid</code>,
+	 * a warning gets logged and Connections will not get validated at all.
+	 * @see java.sql.Connection#isValid(int)
+	 */
+	public void setValidationQuery(String validationQuery) {
+		this.validationQuery = validationQuery;
+	}
+
+	/**
+	 * Return the SQL query to validate Connections with, if any.
+	 */
+	public String getValidationQuery() {
+		return this.validationQuery;
+	}
+
+	/**
+	 * Set the timeout in seconds for validating a Connection. Default is 5.
+	 */
+	public void setValidationTimeout(int validationTimeout) {
+		this.validationTimeout = validationTimeout;
+	}
+
+	/**
+	 * Return the timeout in seconds for validating a Connection.
+	 */
+	public int getValidationTimeout() {
+		return this.validationTimeout;
+	}
+
+	/**
+	 * Set the time in milliseconds after which a borrowed Connection is considered
+	 * leaked, i.e. not closed properly by the application. Leaked Connections are
+	 * reported at warn level, along with the stack trace of the code that obtained
+	 * them. Default is 0: no leak detection.
+	 * <p>Leaks are detected when the pool is exhausted, when a leaked Connection is
+	 * eventually returned, and on explicit {@link #detectLeaks()} calls. Note that
+	 * each borrow operation records a stack trace while leak detection is active.
+	 */
+	public void setLeakDetectionThreshold(long leakDetectionThreshold) {
+		this.leakDetectionThreshold = leakDetectionThreshold;
+	}
+
+	/**
+	 * Return the time in milliseconds after which a borrowed Connection is considered leaked.
+	 */
+	public long getLeakDetectionThreshold() {
+		return this.leakDetectionThreshold;
+	}
+
+
+	/**
+	 * Initialize the pool, establishing the configured minimum number of Connections.
+	 */
+	@Override
+	public void afterPropertiesSet() {
+		super.afterPropertiesSet();
+		initializePool();
+	}
+
+	private Semaphore initializePool() {
+		Semaphore permits = this.permits;
+		if (permits == null) {
+			synchronized (this.initializationMonitor) {
+				permits = this.permits;
+				if (permits == null) {
+					Assert.state(getTargetDataSource() != null, "Property 'targetDataSource' is required");
+					Assert.state(this.minSize <= this.maxSize, "'minSize' must not be greater than 'maxSize'");
+					permits = new Semaphore(this.maxSize);
+					this.permits = permits;
+					replenish();
+					if (logger.isInfoEnabled()) {
+						logger.info("Initialized JDBC Connection pool with maxSize=" + this.maxSize +
+								" for target DataSource [" + getTargetDataSource() + "]");
+					}
+				}
+			}
+		}
+		return permits;
+	}
+
+
+	/**
+	 * Obtain a Connection from the pool, waiting for a Connection to be returned
+	 * if the maximum number of Connections is in use.
+	 * @return a Connection handle which returns the Connection to the pool on close
+	 * @throws SQLException if no Connection became available within the
+	 * configured "maxWait" time, or if a new Connection could not be established
+	 */
+	@Override
+	public Connection getConnection() throws SQLException {
+		Semaphore permits = initializePool();
+		if (this.closed) {
+			throw new SQLException("PoolingDataSource has been closed");
+		}
+		long startTime = System.nanoTime();
+		if (!permits.tryAcquire()) {
+			detectLeaks();
+			try {
+				if (this.maxWait < 0) {
+					permits.acquire();
+				}
+				else if (!permits.tryAcquire(this.maxWait, TimeUnit.MILLISECONDS)) {
+					this.timeoutCount.incrementAndGet();
+					throw new SQLException("Timed out after " + this.maxWait +
+							" ms waiting for a JDBC Connection: " + this);
+				}
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted while waiting for a JDBC Connection");
+			}
+		}
+		try {
+			PooledConnection pooledConnection = borrowConnection();
+			this.borrowedCount.incrementAndGet();
+			int active = this.activeCount.incrementAndGet();
+			int peak = this.peakActiveCount.get();
+			while (active > peak && !this.peakActiveCount.compareAndSet(peak, active)) {
+				peak = this.peakActiveCount.get();
+			}
+			if (this.leakDetectionThreshold > 0) {
+				pooledConnection.borrowedAt = new Throwable("JDBC Connection obtained here");
+				this.activeConnections.put(pooledConnection, Boolean.TRUE);
+			}
+			pooledConnection.borrowTime = System.currentTimeMillis();
+			this.borrowTimeHistogram.recordSince(startTime);
+			return createConnectionHandle(pooledConnection);
+		}
+		catch (SQLException ex) {
+			permits.release();
+			throw ex;
+		}
+		catch (RuntimeException ex) {
+			permits.release();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Specifying a custom username and password doesn't make sense for a pool
+	 * of Connections obtained with the target DataSource's default credentials.
+	 * @throws SQLException always
+	 */
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		throw new SQLException("PoolingDataSource does not support custom username and password");
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this)) {
+			return (T) this;
+		}
+		return super.unwrap(iface);
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return (iface.isInstance(this) || super.isWrapperFor(iface));
+	}
+
+	/**
+	 * Connections from this pool are always to be closed, returning them to the pool.
+	 */
+	public boolean shouldClose(Connection con) {
+		return true;
+	}
+
+	/**
+	 * Close all idle Connections and shut down the pool.
+	 * Connections currently in use will be closed when being returned.
+	 */
+	public void destroy() {
+		this.closed = true;
+		closeIdleConnections();
+		if (logger.isInfoEnabled()) {
+			logger.info("Closed JDBC Connection pool: " + this);
+		}
+	}
+
+
+	private PooledConnection borrowConnection() throws SQLException {
+		PooledConnection pooledConnection;
+		while ((pooledConnection = this.idleConnections.poll()) != null) {
+			this.idleCount.decrementAndGet();
+			if (!this.validateOnBorrow ||
+					System.currentTimeMillis() - pooledConnection.returnTime < this.validationInterval ||
+					isValid(pooledConnection.target)) {
+				return pooledConnection;
+			}
+			this.validationFailureCount.incrementAndGet();
+			if (logger.isDebugEnabled()) {
+				logger.debug("Discarding invalid JDBC Connection [" + pooledConnection.target + "]");
+			}
+			discardConnection(pooledConnection);
+		}
+		return createPooledConnection();
+	}
+
+	private PooledConnection createPooledConnection() throws SQLException {
+		Connection target = getTargetDataSource().getConnection();
+		this.totalCount.incrementAndGet();
+		this.createdCount.incrementAndGet();
+		if (logger.isDebugEnabled()) {
+			logger.debug("Established pooled JDBC Connection [" + target + "]");
+		}
+		return new PooledConnection(target);
+	}
+
+	/**
+	 * Validate the given physical Connection.
+	 * <p>The default implementation executes the validation query, if specified,
+	 * or calls JDBC 4's <code>Connection.isValid</code> method otherwise -
+	 * considering all Connections as valid if the driver does not implement it.
+	 * @param con the Connection to validate
+	 * @return whether the Connection is still usable
+	 * @see #setValidationQuery
+	 * @see #setValidationTimeout
+	 */
+	protected boolean isValid(Connection con) {
+		try {
+			if (this.validationQuery != null) {
+				Statement stmt = con.createStatement();
+				try {
+					stmt.setQueryTimeout(this.validationTimeout);
+					stmt.execute(this.validationQuery);
+					return true;
+				}
+				finally {
+					JdbcUtils.closeStatement(stmt);
+				}
+			}
+			if (!this.jdbc4ValidationSupported) {
+				return true;
+			}
+			return con.isValid(this.validationTimeout);
+		}
+		catch (AbstractMethodError err) {
+			// JDBC 3 driver: do not discard every Connection as invalid.
+			this.jdbc4ValidationSupported = false;
+			logger.warn("JDBC driver does not support JDBC 4's Connection.isValid method - " +
+					"specify a 'validationQuery' for validating Connections; skipping validation for now", err);
+			return true;
+		}
+		catch (Throwable ex) {
+			logger.debug("JDBC Connection validation failed", ex);
+			return false;
+		}
+	}
+
+	/**
+	 * Return the given Connection to the pool, or close it if it cannot be reused.
+	 */
+	private void returnConnection(PooledConnection pooledConnection) {
+		this.activeCount.decrementAndGet();
+		if (this.leakDetectionThreshold > 0) {
+			this.activeConnections.remove(pooledConnection);
+			long heldTime = System.currentTimeMillis() - pooledConnection.borrowTime;
+			if (heldTime > this.leakDetectionThreshold && !pooledConnection.leakReported) {
+				this.leakCount.incrementAndGet();
+				logger.warn("JDBC Connection [" + pooledConnection.target + "] returned to pool after " +
+						heldTime + " ms, exceeding the leak detection threshold", pooledConnection.borrowedAt);
+			}
+			pooledConnection.borrowedAt = null;
+			pooledConnection.leakReported = false;
+		}
+		try {
+			if (!this.closed && pooledConnection.reset()) {
+				pooledConnection.returnTime = System.currentTimeMillis();
+				this.idleConnections.offer(pooledConnection);
+				this.idleCount.incrementAndGet();
+				if (this.closed) {
+					// Pool got closed concurrently: make sure we don't leave the Connection behind.
+					closeIdleConnections();
+				}
+			}
+			else {
+				discardConnection(pooledConnection);
+			}
+		}
+		finally {
+			this.permits.release();
+		}
+	}
+
+	private void discardConnection(PooledConnection pooledConnection) {
+		this.totalCount.decrementAndGet();
+		closePhysicalConnection(pooledConnection);
+		if (!this.closed) {
+			replenish();
+		}
+	}
+
+	/**
+	 * Establish idle Connections until the configured minimum size is reached.
+	 */
+	private void replenish() {
+		while (!this.closed && this.totalCount.get() < this.minSize) {
+			try {
+				PooledConnection pooledConnection = createPooledConnection();
+				pooledConnection.returnTime = System.currentTimeMillis();
+				this.idleConnections.offer(pooledConnection);
+				this.idleCount.incrementAndGet();
+			}
+			catch (SQLException ex) {
+				logger.warn("Could not establish JDBC Connection for minimum pool size", ex);
+				return;
+			}
+		}
+	}
+
+	private void closeIdleConnections() {
+		PooledConnection pooledConnection;
+		while ((pooledConnection = this.idleConnections.poll()) != null) {
+			this.idleCount.decrementAndGet();
+			this.totalCount.decrementAndGet();
+			closePhysicalConnection(pooledConnection);
+		}
+	}
+
+	private void closePhysicalConnection(PooledConnection pooledConnection) {
+		try {
+			pooledConnection.target.close();
+		}
+		catch (Throwable ex) {
+			logger.debug("Could not close pooled JDBC Connection", ex);
+		}
+	}
+
+	/**
+	 * Report all Connections that have been in use for longer than the leak
+	 * detection threshold and have not been reported before.
+	 * @return the number of newly detected leaks
+	 * @see #setLeakDetectionThreshold
+	 */
+	public int detectLeaks() {
+		if (this.leakDetectionThreshold <= 0) {
+			return 0;
+		}
+		int detected = 0;
+		long now = System.currentTimeMillis();
+		for (PooledConnection pooledConnection : this.activeConnections.keySet()) {
+			long heldTime = now - pooledConnection.borrowTime;
+			if (heldTime > this.leakDetectionThreshold && !pooledConnection.leakReported) {
+				pooledConnection.leakReported = true;
+				this.leakCount.incrementAndGet();
+				detected++;
+				logger.warn("Possible JDBC Connection leak: Connection [" + pooledConnection.target +
+						"] in use for " + heldTime + " ms", pooledConnection.borrowedAt);
+			}
+		}
+		return detected;
+	}
+
+	private Connection createConnectionHandle(PooledConnection pooledConnection) {
+		try {
+			return (Connection) handleConstructor.newInstance(new PooledConnectionInvocationHandler(pooledConnection));
+		}
+		catch (Exception ex) {
+			throw new IllegalStateException("Could not create JDBC Connection handle: " + ex);
+		}
+	}
+
+
+	/**
+	 * Return the number of physical Connections currently held by the pool.
+	 */
+	public int getTotalCount() {
+		return this.totalCount.get();
+	}
+
+	/**
+	 * Return the number of idle Connections.
+	 */
+	public int getIdleCount() {
+		return this.idleCount.get();
+	}
+
+	/**
+	 * Return the number of Connections currently in use.
+	 */
+	public int getActiveCount() {
+		return this.activeCount.get();
+	}
+
+	/**
+	 * Return the highest number of Connections in use at the same time so far.
+	 */
+	public int getPeakActiveCount() {
+		return this.peakActiveCount.get();
+	}
+
+	/**
+	 * Return the number of physical Connections established so far.
+	 */
+	public long getCreatedCount() {
+		return this.createdCount.get();
+	}
+
+	/**
+	 * Return the number of Connections handed out so far.
+	 */
+	public long getBorrowedCount() {
+		return this.borrowedCount.get();
+	}
+
+	/**
+	 * Return the number of requests which timed out waiting for a Connection.
+	 */
+	public long getTimeoutCount() {
+		return this.timeoutCount.get();
+	}
+
+	/**
+	 * Return the number of idle Connections discarded because of failed validation.
+	 */
+	public long getValidationFailureCount() {
+		return this.validationFailureCount.get();
+	}
+
+	/**
+	 * Return the number of leaked Connections detected so far.
+	 */
+	public long getLeakCount() {
+		return this.leakCount.get();
+	}
+
+	/**
+	 * Return the histogram of times spent in {@link #getConnection()},
+	 * including any waiting for a Connection to become available.
+	 */
+	public LatencyHistogram getBorrowTimeHistogram() {
+		return this.borrowTimeHistogram;
+	}
+
+	@Override
+	public String toString() {
+		return "PoolingDataSource: total=" + getTotalCount() + ", active=" + getActiveCount() +
+				", idle=" + getIdleCount() + ", maxSize=" + this.maxSize;
+	}
+
+
+	/**
+	 * Physical Connection held by the pool, along with its pool state.
+	 */
+	private static class PooledConnection {
+
+		private final Connection target;
+
+		private final boolean defaultAutoCommit;
+
+		private final boolean defaultReadOnly;
+
+		private final int defaultTransactionIsolation;
+
+		private final String defaultCatalog;
+
+		private boolean dirty;
+
+		private volatile long borrowTime;
+
+		private volatile long returnTime;
+
+		private volatile Throwable borrowedAt;
+
+		private volatile boolean leakReported;
+
+		public PooledConnection(Connection target) throws SQLException {
+			this.target = target;
+			this.defaultAutoCommit = target.getAutoCommit();
+			this.defaultReadOnly = target.isReadOnly();
+			this.defaultTransactionIsolation = target.getTransactionIsolation();
+			this.defaultCatalog = target.getCatalog();
+		}
+
+		/**
+		 * Reset the Connection to its initial state, rolling back uncommitted work.
+		 * @return whether the Connection can be reused
+		 */
+		public boolean reset() {
+			try {
+				if (this.target.isClosed()) {
+					return false;
+				}
+				if (!this.target.getAutoCommit()) {
+					this.target.rollback();
+				}
+				if (this.dirty) {
+					if (this.target.getAutoCommit() != this.defaultAutoCommit) {
+						this.target.setAutoCommit(this.defaultAutoCommit);
+					}
+					if (this.target.isReadOnly() != this.defaultReadOnly) {
+						this.target.setReadOnly(this.defaultReadOnly);
+					}
+					if (this.target.getTransactionIsolation() != this.defaultTransactionIsolation) {
+						this.target.setTransactionIsolation(this.defaultTransactionIsolation);
+					}
+					if (this.defaultCatalog != null && !this.defaultCatalog.equals(this.target.getCatalog())) {
+						this.target.setCatalog(this.defaultCatalog);
+					}
+					this.dirty = false;
+				}
+				this.target.clearWarnings();
+				return true;
+			}
+			catch (Throwable ex) {
+				LogFactory.getLog(PoolingDataSource.class).debug("Could not reset pooled JDBC Connection", ex);
+				return false;
+			}
+		}
+	}
+
+
+	/**
+	 * Invocation handler for Connection handles, returning the physical
+	 * Connection to the pool on close.
+	 */
+	private class PooledConnectionInvocationHandler implements InvocationHandler {
+
+		private final PooledConnection pooledConnection;
+
+		private volatile boolean closed = false;
+
+		public PooledConnectionInvocationHandler(PooledConnection pooledConnection) {
+			this.pooledConnection = pooledConnection;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			// Invocation on ConnectionProxy interface coming in...
+
+			String methodName = method.getName();
+			if (methodName.equals("equals")) {
+				// Only consider equal when proxies are identical.
+				return (proxy == args[0]);
+			}
+			else if (methodName.equals("hashCode")) {
+				// Use hashCode of Connection proxy.
+				return System.identityHashCode(proxy);
+			}
+			else if (methodName.equals("toString")) {
+				return "Pooled JDBC Connection handle for [" + this.pooledConnection.target + "]";
+			}
+			else if (methodName.equals("unwrap")) {
+				if (((Class) args[0]).isInstance(proxy)) {
+					return proxy;
+				}
+			}
+			else if (methodName.equals("isWrapperFor")) {
+				if (((Class) args[0]).isInstance(proxy)) {
+					return true;
+				}
+			}
+			else if (methodName.equals("close")) {
+				// Handle close method: return Connection to the pool.
+				if (!this.closed) {
+					this.closed = true;
+					returnConnection(this.pooledConnection);
+				}
+				return null;
+			}
+			else if (methodName.equals("isClosed")) {
+				if (this.closed) {
+					return true;
+				}
+			}
+
+			if (this.closed) {
+				throw new SQLException("Connection handle already closed");
+			}
+			if (methodName.equals("getTargetConnection")) {
+				// Handle getTargetConnection method: return underlying Connection.
+				return this.pooledConnection.target;
+			}
+			else if (methodName.equals("setAutoCommit") || methodName.equals("setReadOnly") ||
+					methodName.equals("setTransactionIsolation") || methodName.equals("setCatalog")) {
+				this.pooledConnection.dirty = true;
+			}
+
+			// Invoke method on target Connection.
+			try {
+				return method.invoke(this.pooledConnection.target, args);
+			}
+			catch (InvocationTargetException ex) {
+				throw ex.getTargetException();
+			}
+		}
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2009 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -83,6 +83,20 @@ public class EmbeddedDatabaseBuilder {
 		return this;
 	}
 
+	/**
+	 * Sets whether Connections to the embedded database should be pooled.
+	 * Defaults to <code>true</code>, using a
+	 * {@link org.springframework.jdbc.datasource.PoolingDataSource}.
+	 * Switch this to <code>false</code> for a new physical Connection per request.
+	 * @param pooled whether to pool Connections
+	 * @return this, for fluent call chaining
+	 */
+	public EmbeddedDatabaseBuilder setPooled(boolean pooled) {
+		this.databaseFactory.setDataSourceFactory(
+				pooled ? new PoolingDataSourceFactory() : new SimpleDriverDataSourceFactory());
+		return this;
+	}
+
 	/**
 	 * Adds a SQL script to execute to populate the database.
 	 * @param sqlResource the sql resource location
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -24,6 +24,7 @@ import javax.sql.DataSource;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.dao.DataAccessResourceFailureException;
 import org.springframework.jdbc.datasource.init.DatabasePopulator;
 import org.springframework.util.Assert;
@@ -50,7 +51,7 @@ public class EmbeddedDatabaseFactory {
 
 	private String databaseName = "testdb";
 
-	private DataSourceFactory dataSourceFactory = new SimpleDriverDataSourceFactory();
+	private DataSourceFactory dataSourceFactory = new PoolingDataSourceFactory();
 
 	private EmbeddedDatabaseConfigurer databaseConfigurer;
 
@@ -98,7 +99,8 @@ public class EmbeddedDatabaseFactory {
 
 	/**
 	 * Set the factory to use to create the DataSource instance that connects to the embedded database.
-	 * Defaults to {@link SimpleDriverDataSourceFactory}.
+	 * Defaults to {@link PoolingDataSourceFactory}, pooling Connections obtained
+	 * through a {@link org.springframework.jdbc.datasource.SimpleDriverDataSource}.
 	 * @param dataSourceFactory the data source factory
 	 */
 	public void setDataSourceFactory(DataSourceFactory dataSourceFactory) {
@@ -182,6 +184,14 @@ public class EmbeddedDatabaseFactory {
 	protected void shutdownDatabase() {
 		if (this.dataSource != null) {
 			this.databaseConfigurer.shutdown(this.dataSource, this.databaseName);
+			if (this.dataSource instanceof DisposableBean) {
+				try {
+					((DisposableBean) this.dataSource).destroy();
+				}
+				catch (Exception ex) {
+					logger.warn("Could not close DataSource for embedded database", ex);
+				}
+			}
 			this.dataSource = null;
 		}
 	}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.datasource.embedded;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.PoolingDataSource;
+
+/**
+ * Creates a {@link PoolingDataSource} on top of a
+ * {@link org.springframework.jdbc.datasource.SimpleDriverDataSource}.
+ *
+ * @since 3.1
+ */
+final class PoolingDataSourceFactory implements DataSourceFactory {
+
+	private final SimpleDriverDataSourceFactory targetFactory = new SimpleDriverDataSourceFactory();
+
+	public ConnectionProperties getConnectionProperties() {
+		return this.targetFactory.getConnectionProperties();
+	}
+
+	public DataSource getDataSource() {
+		PoolingDataSource dataSource = new PoolingDataSource(this.targetFactory.getDataSource());
+		dataSource.afterPropertiesSet();
+		return dataSource;
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,6 +18,8 @@ package org.springframework.jdbc.datasource.init;
 
 import java.io.IOException;
 import java.io.LineNumberReader;
+import java.io.Reader;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -31,6 +33,8 @@ import org.apache.commons.logging.LogFactory;
 
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.support.EncodedResource;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
 /**
@@ -39,6 +43,12 @@ import org.springframework.util.StringUtils;
  * <p>Call {@link #addScript(Resource)} to add a SQL script location.
  * Call {@link #setSqlScriptEncoding(String)} to set the encoding for all added scripts.
  *
+ * <p>Scripts are parsed in a streaming fashion, executing each statement as soon as
+ * it has been read, so that even very large scripts can be executed without holding
+ * them in memory. Consecutive DML statements (<code>INSERT</code>, <code>UPDATE</code>,
+ * <code>DELETE</code>, <code>MERGE</code>) are executed as JDBC batches if the driver
+ * supports batch updates; see {@link #setBatchSize}.
+ *
  * @author Keith Donald
  * @author Dave Syer
  * @author Juergen Hoeller
@@ -61,6 +71,12 @@ public class ResourceDatabasePopulator implements DatabasePopulator {
 
 	private boolean ignoreFailedDrops = false;
 
+	private int batchSize = 100;
+
+	private int progressInterval = 10000;
+
+	private ScriptExecutionListener scriptExecutionListener;
+
 
 	/**
 	 * Add a script to execute to populate the database.
@@ -115,6 +131,39 @@ public class ResourceDatabasePopulator implements DatabasePopulator {
 	}
 
 
+	/**
+	 * Set the maximum number of consecutive DML statements to execute as a single
+	 * JDBC batch. Default is 100.
+	 * <p>Specify 1 to execute every statement individually.
+	 * <p><b>NOTE:</b> Some JDBC drivers continue to process the remaining statements
+	 * of a batch after a statement failed. Without {@link #setContinueOnError
+	 * "continueOnError"}, the failure will still be reported for the failed statement,
+	 * but subsequent statements of the same batch may have been executed already.
+	 * Specify 1 if a script must stop at the very first failing statement.
+	 * @see java.sql.Statement#addBatch
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "'batchSize' must be 1 or higher");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Set the number of statements after which to report the progress of a script:
+	 * at info level as well as to the {@link #setScriptExecutionListener listener}, if any.
+	 * Default is 10000. Specify 0 to only report completed scripts.
+	 */
+	public void setProgressInterval(int progressInterval) {
+		this.progressInterval = progressInterval;
+	}
+
+	/**
+	 * Set a listener to notify of the progress and the timing of each script.
+	 */
+	public void setScriptExecutionListener(ScriptExecutionListener scriptExecutionListener) {
+		this.scriptExecutionListener = scriptExecutionListener;
+	}
+
+
 	public void populate(Connection connection) throws SQLException {
 		for (Resource script : this.scripts) {
 			executeSqlScript(connection, applyEncodingIfNecessary(script), this.continueOnError, this.ignoreFailedDrops);
@@ -132,8 +181,8 @@ public class ResourceDatabasePopulator implements DatabasePopulator {
 
 	/**
 	 * Execute the given SQL script.
-	 * <p>The script will normally be loaded by classpath. There should be one statement per line.
-	 * Any semicolons will be removed.
+	 * <p>The script will normally be loaded by classpath. Statements are delimited by semicolons
+	 * or, if the script does not contain any semicolons, by line breaks.
 	 * <p><b>Do not use this method to execute DDL if you expect rollback.</b>
 	 * @param connection the JDBC Connection with which to perform JDBC operations
 	 * @param resource the resource (potentially associated with a specific encoding) to load the SQL script from
@@ -147,43 +196,51 @@ public class ResourceDatabasePopulator implements DatabasePopulator {
 			logger.info("Executing SQL script from " + resource);
 		}
 		long startTime = System.currentTimeMillis();
-		List<String> statements = new LinkedList<String>();
-		String script;
+		ScriptStatementReader reader;
 		try {
-			script = readScript(resource);
+			reader = new ScriptStatementReader(resource.getReader(), ';', this.commentPrefix);
 		}
 		catch (IOException ex) {
 			throw new CannotReadScriptException(resource, ex);
 		}
-		char delimiter = ';';
-		if (!containsSqlScriptDelimiters(script, delimiter)) {
-			delimiter = '\n';
-		}
-		splitSqlScript(script, delimiter, statements);
-		int lineNumber = 0;
+		boolean batchSupported = (this.batchSize > 1 && JdbcUtils.supportsBatchUpdates(connection));
+		List<ScriptStatement> batch = new ArrayList<ScriptStatement>();
+		int statementCount = 0;
 		Statement stmt = connection.createStatement();
 		try {
-			for (String statement : statements) {
-				lineNumber++;
-				try {
-					int rowsAffected = stmt.executeUpdate(statement);
-					if (logger.isDebugEnabled()) {
-						logger.debug(rowsAffected + " rows affected by SQL: " + statement);
+			ScriptStatement statement;
+			while ((statement = reader.nextStatement()) != null) {
+				statementCount++;
+				if (batchSupported && isBatchable(statement.sql)) {
+					stmt.addBatch(statement.sql);
+					batch.add(statement);
+					if (batch.size() >= this.batchSize) {
+						executeBatch(stmt, batch, resource, continueOnError);
+					}
+				}
+				else {
+					if (!batch.isEmpty()) {
+						executeBatch(stmt, batch, resource, continueOnError);
 					}
+					executeStatement(stmt, statement, resource, continueOnError, ignoreFailedDrops);
 				}
-				catch (SQLException ex) {
-					boolean dropStatement = StringUtils.startsWithIgnoreCase(statement.trim(), "drop");
-					if (continueOnError || (dropStatement && ignoreFailedDrops)) {
-						if (logger.isDebugEnabled()) {
-							logger.debug("Failed to execute SQL script statement at line " + lineNumber +
-									" of resource " + resource + ": " + statement, ex);
-						}
+				if (this.progressInterval > 0 && statementCount % this.progressInterval == 0) {
+					long elapsedTime = System.currentTimeMillis() - startTime;
+					if (logger.isInfoEnabled()) {
+						logger.info("Executed " + statementCount + " statements from SQL script " + resource +
+								" in " + elapsedTime + " ms");
 					}
-					else {
-						throw new ScriptStatementFailedException(statement, lineNumber, resource, ex);
+					if (this.scriptExecutionListener != null) {
+						this.scriptExecutionListener.statementsExecuted(resource, statementCount, elapsedTime);
 					}
 				}
 			}
+			if (!batch.isEmpty()) {
+				executeBatch(stmt, batch, resource, continueOnError);
+			}
+		}
+		catch (IOException ex) {
+			throw new CannotReadScriptException(resource, ex);
 		}
 		finally {
 			try {
@@ -192,87 +249,247 @@ public class ResourceDatabasePopulator implements DatabasePopulator {
 			catch (Throwable ex) {
 				logger.debug("Could not close JDBC Statement", ex);
 			}
+			try {
+				reader.close();
+			}
+			catch (IOException ex) {
+				logger.debug("Could not close SQL script reader", ex);
+			}
 		}
 		long elapsedTime = System.currentTimeMillis() - startTime;
 		if (logger.isInfoEnabled()) {
-			logger.info("Done executing SQL script from " + resource + " in " + elapsedTime + " ms.");
+			logger.info("Done executing " + statementCount + " statements from SQL script " + resource +
+					" in " + elapsedTime + " ms.");
+		}
+		if (this.scriptExecutionListener != null) {
+			this.scriptExecutionListener.scriptExecuted(resource, statementCount, elapsedTime);
 		}
 	}
 
 	/**
-	 * Read a script from the given resource and build a String containing the lines.
-	 * @param resource the resource to be read
-	 * @return <code>String</code> containing the script lines
-	 * @throws IOException in case of I/O errors
+	 * Execute a single statement of the given script.
 	 */
-	private String readScript(EncodedResource resource) throws IOException {
-		LineNumberReader lnr = new LineNumberReader(resource.getReader());
-		String currentStatement = lnr.readLine();
-		StringBuilder scriptBuilder = new StringBuilder();
-		while (currentStatement != null) {
-			if (StringUtils.hasText(currentStatement) &&
-					(this.commentPrefix != null && !currentStatement.startsWith(this.commentPrefix))) {
-				if (scriptBuilder.length() > 0) {
-					scriptBuilder.append('\n');
+	private void executeStatement(Statement stmt, ScriptStatement statement, EncodedResource resource,
+			boolean continueOnError, boolean ignoreFailedDrops) {
+
+		try {
+			int rowsAffected = stmt.executeUpdate(statement.sql);
+			if (logger.isDebugEnabled()) {
+				logger.debug(rowsAffected + " rows affected by SQL: " + statement.sql);
+			}
+		}
+		catch (SQLException ex) {
+			boolean dropStatement = StringUtils.startsWithIgnoreCase(statement.sql.trim(), "drop");
+			if (continueOnError || (dropStatement && ignoreFailedDrops)) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Failed to execute SQL script statement at line " + statement.lineNumber +
+							" of resource " + resource + ": " + statement.sql, ex);
 				}
-				scriptBuilder.append(currentStatement);
 			}
-			currentStatement = lnr.readLine();
+			else {
+				throw new ScriptStatementFailedException(statement.sql, statement.lineNumber, resource, ex);
+			}
 		}
-		return scriptBuilder.toString();
 	}
 
 	/**
-	 * Does the provided SQL script contain the specified delimiter?
-	 * @param script the SQL script
-	 * @param delim character delimiting each statement - typically a ';' character
+	 * Execute the statements that have been added to the given JDBC Statement as a batch.
+	 * <p>If the batch fails, the failed statement is determined from the update counts
+	 * reported by the driver. When continuing on error, any statements that the driver
+	 * did not process after the failure get executed individually.
 	 */
-	private boolean containsSqlScriptDelimiters(String script, char delim) {
-		boolean inLiteral = false;
-		char[] content = script.toCharArray();
-		for (int i = 0; i < script.length(); i++) {
-			if (content[i] == '\'') {
-				inLiteral = !inLiteral;
+	private void executeBatch(Statement stmt, List<ScriptStatement> batch, EncodedResource resource,
+			boolean continueOnError) throws SQLException {
+
+		try {
+			int[] updateCounts = stmt.executeBatch();
+			if (logger.isDebugEnabled()) {
+				logger.debug("Executed batch of " + updateCounts.length + " SQL statements, starting at line " +
+						batch.get(0).lineNumber + " of resource " + resource);
 			}
-			if (content[i] == delim && !inLiteral) {
-				return true;
+		}
+		catch (BatchUpdateException ex) {
+			stmt.clearBatch();
+			int[] updateCounts = (ex.getUpdateCounts() != null ? ex.getUpdateCounts() : new int[0]);
+			boolean stoppedAtFailure = (updateCounts.length < batch.size());
+			for (int i = 0; i < batch.size(); i++) {
+				ScriptStatement statement = batch.get(i);
+				boolean failed = (stoppedAtFailure ? i == updateCounts.length :
+						updateCounts[i] == Statement.EXECUTE_FAILED);
+				if (failed) {
+					if (!continueOnError) {
+						throw new ScriptStatementFailedException(statement.sql, statement.lineNumber, resource, ex);
+					}
+					if (logger.isDebugEnabled()) {
+						logger.debug("Failed to execute SQL script statement at line " + statement.lineNumber +
+								" of resource " + resource + ": " + statement.sql, ex);
+					}
+				}
+				else if (stoppedAtFailure && i > updateCounts.length) {
+					executeStatement(stmt, statement, resource, true, false);
+				}
 			}
 		}
-		return false;
+		finally {
+			batch.clear();
+		}
 	}
 
 	/**
-	 * Split an SQL script into separate statements delimited with the provided delimiter character.
-	 * Each individual statement will be added to the provided <code>List</code>.
-	 * @param script the SQL script
-	 * @param delim character delimiting each statement (typically a ';' character)
-	 * @param statements the List that will contain the individual statements
+	 * Determine whether the given statement may be executed as part of a batch,
+	 * i.e. whether it is a DML statement.
 	 */
-	private void splitSqlScript(String script, char delim, List<String> statements) {
-		StringBuilder sb = new StringBuilder();
-		boolean inLiteral = false;
-		char[] content = script.toCharArray();
-		for (int i = 0; i < script.length(); i++) {
-			char c = content[i];
+	private boolean isBatchable(String statement) {
+		String sql = statement.trim();
+		return (StringUtils.startsWithIgnoreCase(sql, "insert") || StringUtils.startsWithIgnoreCase(sql, "update") ||
+				StringUtils.startsWithIgnoreCase(sql, "delete") || StringUtils.startsWithIgnoreCase(sql, "merge"));
+	}
+
+	/**
+	 * Determine whether the given line of a script contains SQL,
+	 * as opposed to being empty or a comment.
+	 */
+	private static boolean isScriptLine(String line, String commentPrefix) {
+		return (StringUtils.hasText(line) && (commentPrefix != null && !line.startsWith(commentPrefix)));
+	}
+
+
+	/**
+	 * A statement read from a SQL script, along with the line it starts at.
+	 */
+	private static class ScriptStatement {
+
+		private final String sql;
+
+		private final int lineNumber;
+
+		public ScriptStatement(String sql, int lineNumber) {
+			this.sql = sql;
+			this.lineNumber = lineNumber;
+		}
+	}
+
+
+	/**
+	 * Reads the statements of a SQL script one at a time, skipping comment lines
+	 * and splitting at the given delimiter character unless within a literal.
+	 * Line breaks and tabs outside of literals are replaced with spaces.
+	 * <p>If the script does not contain the delimiter at all, it gets split at
+	 * line breaks instead. To decide on this while reading the script only once,
+	 * the script lines preceding the first delimiter are retained until either
+	 * the delimiter occurs or the end of the script has been reached.
+	 */
+	private static class ScriptStatementReader {
+
+		private final LineNumberReader lineReader;
+
+		private char delimiter;
+
+		private final String commentPrefix;
+
+		private final LinkedList<ScriptStatement> statements = new LinkedList<ScriptStatement>();
+
+		/** Script lines read so far, as long as no delimiter has occurred */
+		private List<ScriptStatement> linesBeforeDelimiter = new ArrayList<ScriptStatement>();
+
+		private StringBuilder currentStatement = new StringBuilder();
+
+		private boolean currentHasText = false;
+
+		private int currentLineNumber;
+
+		private boolean inLiteral = false;
+
+		private boolean firstLine = true;
+
+		private boolean exhausted = false;
+
+		public ScriptStatementReader(Reader reader, char delimiter, String commentPrefix) {
+			this.lineReader = new LineNumberReader(reader);
+			this.delimiter = delimiter;
+			this.commentPrefix = commentPrefix;
+		}
+
+		/**
+		 * Return the next statement in the script, or <code>null</code> if none left.
+		 */
+		public ScriptStatement nextStatement() throws IOException {
+			while (this.statements.isEmpty() && !this.exhausted) {
+				String line = this.lineReader.readLine();
+				if (line == null) {
+					this.exhausted = true;
+					if (this.linesBeforeDelimiter != null) {
+						splitAtLineBreaks();
+					}
+					if (this.currentHasText) {
+						this.statements.add(new ScriptStatement(this.currentStatement.toString(), this.currentLineNumber));
+					}
+				}
+				else if (isScriptLine(line, this.commentPrefix)) {
+					int lineNumber = this.lineReader.getLineNumber();
+					if (this.linesBeforeDelimiter != null) {
+						this.linesBeforeDelimiter.add(new ScriptStatement(line, lineNumber));
+					}
+					appendLine(line, lineNumber);
+				}
+			}
+			return this.statements.poll();
+		}
+
+		/**
+		 * Parse the retained script lines once more, with line breaks as delimiter,
+		 * since the end of the script has been reached without any delimiter.
+		 */
+		private void splitAtLineBreaks() {
+			List<ScriptStatement> lines = this.linesBeforeDelimiter;
+			this.linesBeforeDelimiter = null;
+			this.delimiter = '\n';
+			this.currentStatement = new StringBuilder();
+			this.currentHasText = false;
+			this.inLiteral = false;
+			this.firstLine = true;
+			for (ScriptStatement line : lines) {
+				appendLine(line.sql, line.lineNumber);
+			}
+		}
+
+		private void appendLine(String line, int lineNumber) {
+			if (!this.firstLine) {
+				append('\n', lineNumber);
+			}
+			this.firstLine = false;
+			for (int i = 0; i < line.length(); i++) {
+				append(line.charAt(i), lineNumber);
+			}
+		}
+
+		private void append(char c, int lineNumber) {
 			if (c == '\'') {
-				inLiteral = !inLiteral;
+				this.inLiteral = !this.inLiteral;
 			}
-			if (!inLiteral) {
-				if (c == delim) {
-					if (sb.length() > 0) {
-						statements.add(sb.toString());
-						sb = new StringBuilder();
+			if (!this.inLiteral) {
+				if (c == this.delimiter) {
+					if (this.currentHasText) {
+						this.statements.add(new ScriptStatement(this.currentStatement.toString(), this.currentLineNumber));
 					}
-					continue;
+					this.currentStatement = new StringBuilder();
+					this.currentHasText = false;
+					this.linesBeforeDelimiter = null;
+					return;
 				}
 				else if (c == '\n' || c == '\t') {
 					c = ' ';
 				}
 			}
-			sb.append(c);
+			if (!this.currentHasText && !Character.isWhitespace(c)) {
+				this.currentHasText = true;
+				this.currentLineNumber = lineNumber;
+			}
+			this.currentStatement.append(c);
 		}
-		if (StringUtils.hasText(sb)) {
-			statements.add(sb.toString());
+
+		public void close() throws IOException {
+			this.lineReader.close();
 		}
 	}
 
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.datasource.init;
+
+import org.springframework.core.io.support.EncodedResource;
+
+/**
+ * Callback interface for monitoring the execution of SQL scripts
+ * by a {@link ResourceDatabasePopulator}.
+ *
+ * @since 3.1
+ * @see ResourceDatabasePopulator#setScriptExecutionListener
+ */
+public interface ScriptExecutionListener {
+
+	/**
+	 * Called periodically while a script is being executed,
+	 * according to the populator's progress interval.
+	 * @param resource the script being executed
+	 * @param statementCount the number of statements executed so far
+	 * @param elapsedTime the time elapsed since the start of the script, in milliseconds
+	 * @see ResourceDatabasePopulator#setProgressInterval
+	 */
+	void statementsExecuted(EncodedResource resource, int statementCount, long elapsedTime);
+
+	/**
+	 * Called after a script has been executed completely.
+	 * @param resource the script that has been executed
+	 * @param statementCount the total number of statements in the script
+	 * @param elapsedTime the total execution time for the script, in milliseconds
+	 */
+	void scriptExecuted(EncodedResource resource, int statementCount, long elapsedTime);
+
+}
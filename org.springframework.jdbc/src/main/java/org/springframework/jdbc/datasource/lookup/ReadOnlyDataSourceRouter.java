@@ -0,0 +1,556 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.datasource.lookup;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.ConnectionProxy;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * DataSource that routes connections for read-only transactions to a set of
+ * replica DataSources, and all other connections to a primary DataSource.
+ * The routing decision is based on the current transaction's read-only flag
+ * as exposed by {@link TransactionSynchronizationManager#isCurrentTransactionReadOnly()},
+ * i.e. as specified through <code>@Transactional(readOnly = true)</code>.
+ *
+ * <p>Since transaction managers such as
+ * {@link org.springframework.jdbc.datasource.DataSourceTransactionManager}
+ * obtain a Connection before exposing the transaction characteristics, this
+ * router fetches physical Connections lazily by default, in the style of a
+ * {@link LazyConnectionDataSourceProxy}: the routing decision is made on first
+ * actual use of a Connection, when the read-only flag is known. This DataSource
+ * can therefore be passed to the transaction manager and to data access code
+ * directly, without any further proxy in between.
+ *
+ * <p>Read-only Connections get balanced across the replicas, either in
+ * round-robin fashion (the default) or by picking the replica with the least
+ * Connections currently open through this router. A replica that fails to
+ * provide a Connection is considered unavailable for the configured
+ * {@link #setReplicaRetryInterval "replicaRetryInterval"}, with other replicas
+ * used in the meantime; {@link #checkReplicaHealth()} allows for actively
+ * checking replicas, e.g. through a periodically scheduled task. If no replica
+ * is available, read-only Connections fall back to the primary DataSource.
+ *
+ * @since 3.1
+ * @see #setPrimaryDataSource
+ * @see #setReplicaDataSources
+ * @see #setLoadBalancingPolicy
+ * @see IsolationLevelDataSourceRouter
+ * @see org.springframework.transaction.TransactionDefinition#isReadOnly()
+ */
+public class ReadOnlyDataSourceRouter extends AbstractDataSource implements InitializingBean {
+
+	/**
+	 * Strategies for balancing read-only Connections across replicas.
+	 */
+	public enum LoadBalancingPolicy {
+
+		/** Use each replica in turn */
+		ROUND_ROBIN,
+
+		/** Use the replica with the least Connections currently open through this router */
+		LEAST_CONNECTIONS
+	}
+
+
+	private DataSource primaryDataSource;
+
+	private List<DataSource> replicaDataSources;
+
+	private LoadBalancingPolicy loadBalancingPolicy = LoadBalancingPolicy.ROUND_ROBIN;
+
+	private long replicaRetryInterval = 30000;
+
+	private String validationQuery;
+
+	private int validationQueryTimeout = 5;
+
+	private boolean fallbackToPrimary = true;
+
+	private boolean lazyConnectionFetching = true;
+
+	private Replica[] replicas;
+
+	private DataSource connectionSource;
+
+	private final AtomicInteger nextReplicaIndex = new AtomicInteger();
+
+	private final AtomicLong primaryConnectionCount = new AtomicLong();
+
+	private final AtomicLong replicaConnectionCount = new AtomicLong();
+
+	private final AtomicLong fallbackCount = new AtomicLong();
+
+
+	/**
+	 * Set the primary DataSource, to be used for all Connections
+	 * except those for read-only transactions.
+	 */
+	public void setPrimaryDataSource(DataSource primaryDataSource) {
+		this.primaryDataSource = primaryDataSource;
+	}
+
+	/**
+	 * Return the primary DataSource.
+	 */
+	public DataSource getPrimaryDataSource() {
+		return this.primaryDataSource;
+	}
+
+	/**
+	 * Set the replica DataSources to be used for read-only transactions.
+	 * <p>If none specified, all Connections will be obtained from the primary.
+	 */
+	public void setReplicaDataSources(List<DataSource> replicaDataSources) {
+		this.replicaDataSources = replicaDataSources;
+	}
+
+	/**
+	 * Return the replica DataSources.
+	 */
+	public List<DataSource> getReplicaDataSources() {
+		return this.replicaDataSources;
+	}
+
+	/**
+	 * Set the policy for balancing read-only Connections across replicas.
+	 * Default is {@link LoadBalancingPolicy#ROUND_ROBIN}.
+	 * <p>Note that {@link LoadBalancingPolicy#LEAST_CONNECTIONS} requires each
+	 * replica Connection to be wrapped in a proxy for tracking its closing;
+	 * use {@link ConnectionProxy#getTargetConnection()} to obtain the native
+	 * Connection in such a scenario.
+	 */
+	public void setLoadBalancingPolicy(LoadBalancingPolicy loadBalancingPolicy) {
+		this.loadBalancingPolicy = loadBalancingPolicy;
+	}
+
+	/**
+	 * Return the policy for balancing read-only Connections across replicas.
+	 */
+	public LoadBalancingPolicy getLoadBalancingPolicy() {
+		return this.loadBalancingPolicy;
+	}
+
+	/**
+	 * Set the interval in milliseconds during which a replica is considered
+	 * unavailable after it failed to provide a Connection or failed a health check.
+	 * Default is 30000 (30 seconds).
+	 */
+	public void setReplicaRetryInterval(long replicaRetryInterval) {
+		this.replicaRetryInterval = replicaRetryInterval;
+	}
+
+	/**
+	 * Return the interval during which a failed replica is considered unavailable.
+	 */
+	public long getReplicaRetryInterval() {
+		return this.replicaRetryInterval;
+	}
+
+	/**
+	 * Set an SQL query to validate replica Connections with during a health check,
+	 * e.g. "SELECT 1". Default is none, considering a replica healthy as soon as
+	 * it provides a Connection.
+	 * @see #checkReplicaHealth()
+	 */
+	public void setValidationQuery(String validationQuery) {
+		this.validationQuery = validationQuery;
+	}
+
+	/**
+	 * Return the SQL query to validate replica Connections with, if any.
+	 */
+	public String getValidationQuery() {
+		return this.validationQuery;
+	}
+
+	/**
+	 * Set the timeout in seconds for the validation query. Default is 5.
+	 * @see #setValidationQuery
+	 * @see java.sql.Statement#setQueryTimeout
+	 */
+	public void setValidationQueryTimeout(int validationQueryTimeout) {
+		this.validationQueryTimeout = validationQueryTimeout;
+	}
+
+	/**
+	 * Return the timeout in seconds for the validation query.
+	 */
+	public int getValidationQueryTimeout() {
+		return this.validationQueryTimeout;
+	}
+
+	/**
+	 * Specify whether to fall back to the primary DataSource for read-only
+	 * transactions if no replica is available. Default is "true".
+	 * <p>Switch this to "false" in order to throw an SQLException instead.
+	 */
+	public void setFallbackToPrimary(boolean fallbackToPrimary) {
+		this.fallbackToPrimary = fallbackToPrimary;
+	}
+
+	/**
+	 * Return whether to fall back to the primary DataSource if no replica is available.
+	 */
+	public boolean isFallbackToPrimary() {
+		return this.fallbackToPrimary;
+	}
+
+	/**
+	 * Specify whether to fetch physical Connections lazily, deciding on the
+	 * target DataSource on first actual use of a Connection. Default is "true".
+	 * <p>Switch this to "false" if Connections are only ever obtained within
+	 * transactions whose read-only flag has already been exposed at that point,
+	 * e.g. with JtaTransactionManager or when working with transaction
+	 * synchronization only.
+	 * @see LazyConnectionDataSourceProxy
+	 */
+	public void setLazyConnectionFetching(boolean lazyConnectionFetching) {
+		this.lazyConnectionFetching = lazyConnectionFetching;
+	}
+
+	/**
+	 * Return whether to fetch physical Connections lazily.
+	 */
+	public boolean isLazyConnectionFetching() {
+		return this.lazyConnectionFetching;
+	}
+
+	public void afterPropertiesSet() {
+		if (this.primaryDataSource == null) {
+			throw new IllegalArgumentException("Property 'primaryDataSource' is required");
+		}
+		if (this.loadBalancingPolicy == null) {
+			throw new IllegalArgumentException("Property 'loadBalancingPolicy' is required");
+		}
+		int replicaCount = (this.replicaDataSources != null ? this.replicaDataSources.size() : 0);
+		this.replicas = new Replica[replicaCount];
+		for (int i = 0; i < replicaCount; i++) {
+			this.replicas[i] = new Replica(this.replicaDataSources.get(i));
+		}
+		DataSource routingDataSource = new RoutingDataSource();
+		this.connectionSource = (this.lazyConnectionFetching ?
+				new LazyConnectionDataSourceProxy(routingDataSource) : routingDataSource);
+	}
+
+
+	public Connection getConnection() throws SQLException {
+		return getConnectionSource().getConnection();
+	}
+
+	public Connection getConnection(String username, String password) throws SQLException {
+		return getConnectionSource().getConnection(username, password);
+	}
+
+	private DataSource getConnectionSource() {
+		if (this.connectionSource == null) {
+			throw new IllegalStateException("ReadOnlyDataSourceRouter not initialized - call afterPropertiesSet()");
+		}
+		return this.connectionSource;
+	}
+
+	/**
+	 * Determine whether the Connection to be fetched is meant for read-only use.
+	 * <p>The default implementation checks the read-only flag of the current transaction.
+	 * @see TransactionSynchronizationManager#isCurrentTransactionReadOnly()
+	 */
+	protected boolean isReadOnlyRequest() {
+		return TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+	}
+
+	/**
+	 * Obtain a physical Connection from the primary or from a replica,
+	 * according to the current routing decision.
+	 * @param username the per-Connection username, or <code>null</code> for the default
+	 * @param password the per-Connection password, or <code>null</code> for the default
+	 */
+	protected Connection doGetConnection(String username, String password) throws SQLException {
+		if (isReadOnlyRequest() && this.replicas.length > 0) {
+			Connection con = getReplicaConnection(username, password);
+			if (con != null) {
+				return con;
+			}
+			if (!this.fallbackToPrimary) {
+				throw new SQLException("No replica DataSource available for read-only Connection");
+			}
+			this.fallbackCount.incrementAndGet();
+			logger.debug("No replica DataSource available - falling back to primary DataSource");
+		}
+		this.primaryConnectionCount.incrementAndGet();
+		return getConnection(this.primaryDataSource, username, password);
+	}
+
+	/**
+	 * Obtain a Connection from an available replica, trying further replicas
+	 * if the selected one fails to provide a Connection.
+	 * @return the Connection, or <code>null</code> if no replica is available
+	 */
+	private Connection getReplicaConnection(String username, String password) {
+		for (int attempt = 0; attempt < this.replicas.length; attempt++) {
+			Replica replica = selectReplica(System.currentTimeMillis());
+			if (replica == null) {
+				return null;
+			}
+			try {
+				Connection con = getConnection(replica.dataSource, username, password);
+				replica.markAvailable();
+				this.replicaConnectionCount.incrementAndGet();
+				if (this.loadBalancingPolicy == LoadBalancingPolicy.LEAST_CONNECTIONS) {
+					replica.activeConnections.incrementAndGet();
+					return (Connection) Proxy.newProxyInstance(ConnectionProxy.class.getClassLoader(),
+							new Class[] {ConnectionProxy.class}, new TrackingInvocationHandler(con, replica));
+				}
+				return con;
+			}
+			catch (SQLException ex) {
+				markUnavailable(replica, ex);
+			}
+			catch (RuntimeException ex) {
+				markUnavailable(replica, ex);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Select an available replica according to the load balancing policy.
+	 * @return the replica, or <code>null</code> if none available
+	 */
+	private Replica selectReplica(long now) {
+		int count = this.replicas.length;
+		int start = (this.nextReplicaIndex.getAndIncrement() & Integer.MAX_VALUE) % count;
+		Replica selected = null;
+		for (int i = 0; i < count; i++) {
+			Replica candidate = this.replicas[(start + i) % count];
+			if (candidate.isAvailable(now)) {
+				if (this.loadBalancingPolicy == LoadBalancingPolicy.ROUND_ROBIN) {
+					return candidate;
+				}
+				if (selected == null || candidate.activeConnections.get() < selected.activeConnections.get()) {
+					selected = candidate;
+				}
+			}
+		}
+		return selected;
+	}
+
+	private void markUnavailable(Replica replica, Exception ex) {
+		replica.markUnavailable(System.currentTimeMillis() + this.replicaRetryInterval);
+		logger.warn("Replica DataSource [" + replica.dataSource + "] failed to provide a Connection - " +
+				"considering it unavailable for " + this.replicaRetryInterval + " ms", ex);
+	}
+
+	private Connection getConnection(DataSource dataSource, String username, String password)
+			throws SQLException {
+
+		return (username != null ? dataSource.getConnection(username, password) : dataSource.getConnection());
+	}
+
+
+	/**
+	 * Actively check all replicas, obtaining a Connection from each of them
+	 * and executing the {@link #setValidationQuery "validationQuery"}, if any.
+	 * Replicas that fail the check are considered unavailable for the
+	 * {@link #setReplicaRetryInterval "replicaRetryInterval"}; replicas that
+	 * pass it are considered available again immediately.
+	 * <p>May be invoked periodically, e.g. through a scheduled task.
+	 * @return the number of available replicas
+	 */
+	public int checkReplicaHealth() {
+		int available = 0;
+		for (Replica replica : this.replicas) {
+			try {
+				Connection con = replica.dataSource.getConnection();
+				try {
+					if (this.validationQuery != null) {
+						Statement stmt = con.createStatement();
+						try {
+							stmt.setQueryTimeout(this.validationQueryTimeout);
+							stmt.execute(this.validationQuery);
+						}
+						finally {
+							stmt.close();
+						}
+					}
+				}
+				finally {
+					con.close();
+				}
+				replica.markAvailable();
+				available++;
+			}
+			catch (SQLException ex) {
+				markUnavailable(replica, ex);
+			}
+			catch (RuntimeException ex) {
+				markUnavailable(replica, ex);
+			}
+		}
+		return available;
+	}
+
+	/**
+	 * Return the number of replicas currently considered available.
+	 */
+	public int getAvailableReplicaCount() {
+		long now = System.currentTimeMillis();
+		int available = 0;
+		for (Replica replica : this.replicas) {
+			if (replica.isAvailable(now)) {
+				available++;
+			}
+		}
+		return available;
+	}
+
+	/**
+	 * Return the number of physical Connections obtained from the primary DataSource.
+	 */
+	public long getPrimaryConnectionCount() {
+		return this.primaryConnectionCount.get();
+	}
+
+	/**
+	 * Return the number of physical Connections obtained from replica DataSources.
+	 */
+	public long getReplicaConnectionCount() {
+		return this.replicaConnectionCount.get();
+	}
+
+	/**
+	 * Return the number of read-only Connections that fell back to the primary
+	 * DataSource because no replica was available.
+	 */
+	public long getFallbackCount() {
+		return this.fallbackCount.get();
+	}
+
+
+	/**
+	 * DataSource that performs the actual routing, possibly behind a lazy Connection proxy.
+	 */
+	private class RoutingDataSource extends AbstractDataSource {
+
+		public Connection getConnection() throws SQLException {
+			return doGetConnection(null, null);
+		}
+
+		public Connection getConnection(String username, String password) throws SQLException {
+			return doGetConnection(username, password);
+		}
+
+		@Override
+		public String toString() {
+			return "ReadOnlyDataSourceRouter for primary DataSource [" + primaryDataSource + "]";
+		}
+	}
+
+
+	/**
+	 * Holder for a replica DataSource and its runtime state.
+	 */
+	private static class Replica {
+
+		private final DataSource dataSource;
+
+		private final AtomicInteger activeConnections = new AtomicInteger();
+
+		private volatile long unavailableUntil = 0;
+
+		public Replica(DataSource dataSource) {
+			this.dataSource = dataSource;
+		}
+
+		public boolean isAvailable(long now) {
+			return (this.unavailableUntil <= now);
+		}
+
+		public void markAvailable() {
+			if (this.unavailableUntil != 0) {
+				this.unavailableUntil = 0;
+			}
+		}
+
+		public void markUnavailable(long until) {
+			this.unavailableUntil = until;
+		}
+	}
+
+
+	/**
+	 * Invocation handler that tracks the closing of a replica Connection.
+	 */
+	private static class TrackingInvocationHandler implements InvocationHandler {
+
+		private final Connection target;
+
+		private final Replica replica;
+
+		private boolean closed = false;
+
+		public TrackingInvocationHandler(Connection target, Replica replica) {
+			this.target = target;
+			this.replica = replica;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			// Invocation on ConnectionProxy interface coming in...
+
+			if (method.getName().equals("equals")) {
+				// Only consider equal when proxies are identical.
+				return (proxy == args[0]);
+			}
+			else if (method.getName().equals("hashCode")) {
+				// Use hashCode of Connection proxy.
+				return System.identityHashCode(proxy);
+			}
+			else if (method.getName().equals("getTargetConnection")) {
+				// Handle getTargetConnection method: return underlying Connection.
+				return this.target;
+			}
+			else if (method.getName().equals("close")) {
+				if (!this.closed) {
+					this.closed = true;
+					this.replica.activeConnections.decrementAndGet();
+				}
+			}
+
+			// Invoke method on target Connection.
+			try {
+				return method.invoke(this.target, args);
+			}
+			catch (InvocationTargetException ex) {
+				throw ex.getTargetException();
+			}
+		}
+	}
+
+}
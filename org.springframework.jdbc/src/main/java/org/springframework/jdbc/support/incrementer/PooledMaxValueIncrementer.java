@@ -0,0 +1,381 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.support.incrementer;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+
+/**
+ * {@link DataFieldMaxValueIncrementer} decorator that allocates blocks of keys
+ * from a target incrementer, handing out the keys of the current block without
+ * hitting the database. Works with any target incrementer, e.g. a sequence-based
+ * {@link OracleSequenceMaxValueIncrementer} or a column-based {@link MySQLMaxValueIncrementer}.
+ *
+ * <p>Two allocation strategies are available:
+ * <ul>
+ * <li>"hi/lo" (the default): each target value <i>hi</i> stands for the block from
+ * <i>hi * blockSize</i> to <i>hi * blockSize + blockSize - 1</i>. Works with any
+ * plain sequence, but all parties inserting keys need to apply the same algorithm.
+ * <li>"sequence increment": the target sequence is defined with an increment
+ * matching the block size (e.g. <code>INCREMENT BY 50</code>), and each target value
+ * stands for the block from that value to <i>value + blockSize - 1</i>. Parties
+ * which use the sequence directly continue to get valid keys.
+ * </ul>
+ *
+ * <p>Keys are handed out through a lock-free fast path; only the switch to the next
+ * block is synchronized. If a {@link #setPrefetchExecutor "prefetchExecutor"} is
+ * specified, the next block will be fetched asynchronously once the current block
+ * runs low, avoiding a database round trip in the calling thread altogether.
+ *
+ * <p>Note that keys of a block which has not been used up completely are lost
+ * when the application shuts down, leaving gaps in the key sequence.
+ *
+ * @since 3.1
+ * @see #setTargetIncrementer
+ * @see #setBlockSize
+ */
+@ManagedResource(description = "Pooled key allocation")
+public class PooledMaxValueIncrementer implements DataFieldMaxValueIncrementer, InitializingBean {
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private DataFieldMaxValueIncrementer targetIncrementer;
+
+	private int blockSize = 50;
+
+	private boolean hiLo = true;
+
+	private AsyncTaskExecutor prefetchExecutor;
+
+	private int prefetchThreshold = -1;
+
+	private int paddingLength = 0;
+
+	private final AtomicReference<Block> currentBlock = new AtomicReference<Block>(new Block(0, 0));
+
+	private final AtomicReference<Future<Block>> prefetchedBlock = new AtomicReference<Future<Block>>();
+
+	private final Object blockMonitor = new Object();
+
+	private final AtomicLong keyCount = new AtomicLong();
+
+	private final AtomicLong fetchCount = new AtomicLong();
+
+	private final AtomicLong prefetchCount = new AtomicLong();
+
+
+	/**
+	 * Default constructor for bean property style usage.
+	 * @see #setTargetIncrementer
+	 */
+	public PooledMaxValueIncrementer() {
+	}
+
+	/**
+	 * Convenience constructor.
+	 * @param targetIncrementer the incrementer to allocate blocks of keys from
+	 * @param blockSize the number of keys per block
+	 */
+	public PooledMaxValueIncrementer(DataFieldMaxValueIncrementer targetIncrementer, int blockSize) {
+		this.targetIncrementer = targetIncrementer;
+		this.blockSize = blockSize;
+		afterPropertiesSet();
+	}
+
+
+	/**
+	 * Set the incrementer to allocate blocks of keys from.
+	 */
+	public void setTargetIncrementer(DataFieldMaxValueIncrementer targetIncrementer) {
+		this.targetIncrementer = targetIncrementer;
+	}
+
+	/**
+	 * Return the incrementer to allocate blocks of keys from.
+	 */
+	public DataFieldMaxValueIncrementer getTargetIncrementer() {
+		return this.targetIncrementer;
+	}
+
+	/**
+	 * Set the number of keys per block. Default is 50.
+	 * <p>With "hi/lo" allocation turned off, this needs to match
+	 * the increment of the target sequence.
+	 * @see #setHiLo
+	 */
+	public void setBlockSize(int blockSize) {
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * Return the number of keys per block.
+	 */
+	public int getBlockSize() {
+		return this.blockSize;
+	}
+
+	/**
+	 * Specify whether to apply the "hi/lo" algorithm to target values,
+	 * multiplying them by the block size. Default is "true".
+	 * <p>Switch this to "false" for target sequences which are defined with an
+	 * increment that matches the block size, using each target value as the
+	 * first key of a block.
+	 */
+	public void setHiLo(boolean hiLo) {
+		this.hiLo = hiLo;
+	}
+
+	/**
+	 * Return whether to apply the "hi/lo" algorithm to target values.
+	 */
+	public boolean isHiLo() {
+		return this.hiLo;
+	}
+
+	/**
+	 * Set an executor for fetching the next block of keys ahead of time,
+	 * once the number of remaining keys in the current block drops to the
+	 * {@link #setPrefetchThreshold "prefetchThreshold"}.
+	 * <p>Default is none, fetching the next block in the calling thread
+	 * once the current block is exhausted.
+	 */
+	public void setPrefetchExecutor(AsyncTaskExecutor prefetchExecutor) {
+		this.prefetchExecutor = prefetchExecutor;
+	}
+
+	/**
+	 * Return the executor for fetching the next block of keys ahead of time, if any.
+	 */
+	public AsyncTaskExecutor getPrefetchExecutor() {
+		return this.prefetchExecutor;
+	}
+
+	/**
+	 * Set the number of remaining keys in the current block at which the next
+	 * block is to be fetched asynchronously. Default is a quarter of the block size,
+	 * but at least 1.
+	 * @see #setPrefetchExecutor
+	 */
+	public void setPrefetchThreshold(int prefetchThreshold) {
+		this.prefetchThreshold = prefetchThreshold;
+	}
+
+	/**
+	 * Return the number of remaining keys at which the next block is to be fetched.
+	 */
+	public int getPrefetchThreshold() {
+		return (this.prefetchThreshold >= 0 ? this.prefetchThreshold : Math.max(this.blockSize / 4, 1));
+	}
+
+	/**
+	 * Set the padding length, i.e. the length to which a string result
+	 * should be pre-pended with zeroes.
+	 */
+	public void setPaddingLength(int paddingLength) {
+		this.paddingLength = paddingLength;
+	}
+
+	/**
+	 * Return the padding length for String values.
+	 */
+	public int getPaddingLength() {
+		return this.paddingLength;
+	}
+
+	public void afterPropertiesSet() {
+		if (this.targetIncrementer == null) {
+			throw new IllegalArgumentException("Property 'targetIncrementer' is required");
+		}
+		if (this.blockSize < 1) {
+			throw new IllegalArgumentException("Property 'blockSize' must be at least 1");
+		}
+	}
+
+
+	public int nextIntValue() throws DataAccessException {
+		return (int) getNextKey();
+	}
+
+	public long nextLongValue() throws DataAccessException {
+		return getNextKey();
+	}
+
+	public String nextStringValue() throws DataAccessException {
+		String s = Long.toString(getNextKey());
+		int len = s.length();
+		if (len < this.paddingLength) {
+			StringBuilder sb = new StringBuilder(this.paddingLength);
+			for (int i = 0; i < this.paddingLength - len; i++) {
+				sb.append('0');
+			}
+			sb.append(s);
+			s = sb.toString();
+		}
+		return s;
+	}
+
+	/**
+	 * Hand out the next key from the current block,
+	 * switching to the next block if necessary.
+	 */
+	protected long getNextKey() throws DataAccessException {
+		while (true) {
+			Block block = this.currentBlock.get();
+			long key = block.nextKey.getAndIncrement();
+			if (key < block.end) {
+				this.keyCount.incrementAndGet();
+				if (this.prefetchExecutor != null && block.end - key == getPrefetchThreshold()) {
+					prefetchBlock();
+				}
+				return key;
+			}
+			synchronized (this.blockMonitor) {
+				if (this.currentBlock.get() == block) {
+					this.currentBlock.set(obtainNextBlock());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Trigger asynchronous fetching of the next block, unless already in progress.
+	 */
+	private void prefetchBlock() {
+		if (this.prefetchedBlock.get() != null) {
+			return;
+		}
+		try {
+			Future<Block> future = this.prefetchExecutor.submit(new Callable<Block>() {
+				public Block call() {
+					prefetchCount.incrementAndGet();
+					return fetchBlock();
+				}
+			});
+			if (!this.prefetchedBlock.compareAndSet(null, future)) {
+				future.cancel(false);
+			}
+		}
+		catch (RuntimeException ex) {
+			logger.debug("Could not submit prefetch task for next block of keys", ex);
+		}
+	}
+
+	/**
+	 * Obtain the next block: the prefetched block if available,
+	 * or otherwise a freshly fetched block.
+	 */
+	private Block obtainNextBlock() {
+		Future<Block> future = this.prefetchedBlock.getAndSet(null);
+		if (future != null) {
+			try {
+				Block block = future.get();
+				if (block != null) {
+					return block;
+				}
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new DataAccessResourceFailureException("Interrupted while waiting for next block of keys", ex);
+			}
+			catch (ExecutionException ex) {
+				logger.debug("Prefetching of next block of keys failed - fetching synchronously", ex.getCause());
+			}
+			catch (RuntimeException ex) {
+				logger.debug("Prefetching of next block of keys cancelled - fetching synchronously", ex);
+			}
+		}
+		return fetchBlock();
+	}
+
+	/**
+	 * Fetch the next block from the target incrementer.
+	 */
+	private Block fetchBlock() {
+		long value = this.targetIncrementer.nextLongValue();
+		this.fetchCount.incrementAndGet();
+		long start = (this.hiLo ? value * this.blockSize : value);
+		if (logger.isDebugEnabled()) {
+			logger.debug("Allocated block of keys starting at " + start + " with size " + this.blockSize);
+		}
+		return new Block(start, start + this.blockSize);
+	}
+
+
+	/**
+	 * Return the number of keys handed out.
+	 */
+	@ManagedMetric(metricType = MetricType.COUNTER, description = "Number of keys handed out")
+	public long getKeyCount() {
+		return this.keyCount.get();
+	}
+
+	/**
+	 * Return the number of blocks fetched from the target incrementer.
+	 */
+	@ManagedMetric(metricType = MetricType.COUNTER, description = "Number of blocks fetched from the database")
+	public long getFetchCount() {
+		return this.fetchCount.get();
+	}
+
+	/**
+	 * Return the number of blocks fetched asynchronously.
+	 */
+	@ManagedMetric(metricType = MetricType.COUNTER, description = "Number of blocks fetched asynchronously")
+	public long getPrefetchCount() {
+		return this.prefetchCount.get();
+	}
+
+	/**
+	 * Return the average number of database fetches per key handed out.
+	 */
+	@ManagedMetric(description = "Database fetches per key")
+	public double getFetchesPerKey() {
+		long keys = this.keyCount.get();
+		return (keys > 0 ? (double) this.fetchCount.get() / keys : 0);
+	}
+
+
+	/**
+	 * A block of keys, handing out keys from start (inclusive) to end (exclusive).
+	 */
+	private static class Block {
+
+		private final long end;
+
+		private final AtomicLong nextKey;
+
+		public Block(long start, long end) {
+			this.end = end;
+			this.nextKey = new AtomicLong(start);
+		}
+	}
+
+}
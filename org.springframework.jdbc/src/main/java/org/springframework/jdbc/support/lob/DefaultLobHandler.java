@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,6 +17,7 @@
 package org.springframework.jdbc.support.lob;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
@@ -27,6 +28,8 @@ import java.sql.Clob;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.LinkedList;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -51,6 +54,11 @@ import org.apache.commons.logging.LogFactory;
  * argument directly. Consider switching the {@link #setStreamAsLob "streamAsLob"}
  * property to "true" when operating against a fully compliant JDBC 4.0 driver.
  *
+ * <p>Stream content of unknown length (passed in with a content length of -1)
+ * is handed to the driver as-is when using JDBC 4.0 streaming. Otherwise, it gets
+ * spooled first in order to determine its length: in memory up to the configured
+ * {@link #setSpoolThreshold "spoolThreshold"}, and in a temporary file beyond that.
+ *
  * <p>See the {@link LobHandler} javadoc for a summary of recommendations.
  *
  * @author Juergen Hoeller
@@ -75,6 +83,8 @@ public class DefaultLobHandler extends AbstractLobHandler {
 
 	private boolean streamAsLob = false;
 
+	private int spoolThreshold = 1024 * 1024;
+
 
 	/**
 	 * Specify whether to submit a byte array / String to the JDBC driver
@@ -112,6 +122,20 @@ public class DefaultLobHandler extends AbstractLobHandler {
 		this.streamAsLob = streamAsLob;
 	}
 
+	/**
+	 * Specify the maximum number of bytes (for binary content) or characters
+	 * (for character content) to buffer in memory when spooling stream content
+	 * of unknown length, spilling over into a temporary file beyond that.
+	 * <p>Default is 1 MB. Spooling only happens for streams passed in with a
+	 * content length of -1, and not at all in {@link #setStreamAsLob "streamAsLob"}
+	 * mode. Temporary files are deleted when the LobCreator gets closed.
+	 * @see LobCreator#setBlobAsBinaryStream
+	 * @see LobCreator#close()
+	 */
+	public void setSpoolThreshold(int spoolThreshold) {
+		this.spoolThreshold = spoolThreshold;
+	}
+
 
 	public byte[] getBlobAsBytes(ResultSet rs, int columnIndex) throws SQLException {
 		logger.debug("Returning BLOB as bytes");
@@ -179,6 +203,8 @@ public class DefaultLobHandler extends AbstractLobHandler {
 	 */
 	protected class DefaultLobCreator implements LobCreator {
 
+		private List<SpooledLobContent> spooledContents;
+
 		public void setBlobAsBytes(PreparedStatement ps, int paramIndex, byte[] content)
 				throws SQLException {
 
@@ -211,9 +237,19 @@ public class DefaultLobHandler extends AbstractLobHandler {
 				PreparedStatement ps, int paramIndex, InputStream binaryStream, int contentLength)
 				throws SQLException {
 
+			if (binaryStream != null && contentLength < 0 && !streamAsLob) {
+				SpooledLobContent spooled = spoolBinaryStream(binaryStream);
+				binaryStream = getBinaryStream(spooled);
+				contentLength = getContentLength(spooled);
+			}
 			if (streamAsLob) {
 				if (binaryStream != null) {
-					ps.setBlob(paramIndex, binaryStream, contentLength);
+					if (contentLength >= 0) {
+						ps.setBlob(paramIndex, binaryStream, contentLength);
+					}
+					else {
+						ps.setBlob(paramIndex, binaryStream);
+					}
 				}
 				else {
 					ps.setBlob(paramIndex, (Blob) null);
@@ -268,11 +304,22 @@ public class DefaultLobHandler extends AbstractLobHandler {
 				PreparedStatement ps, int paramIndex, InputStream asciiStream, int contentLength)
 				throws SQLException {
 
+			if (asciiStream != null && contentLength < 0 && !streamAsLob) {
+				SpooledLobContent spooled = spoolBinaryStream(asciiStream);
+				asciiStream = getBinaryStream(spooled);
+				contentLength = getContentLength(spooled);
+			}
 			if (streamAsLob || wrapAsLob) {
 				if (asciiStream != null) {
 					try {
 						if (streamAsLob) {
-							ps.setClob(paramIndex, new InputStreamReader(asciiStream, "US-ASCII"), contentLength);
+							Reader reader = new InputStreamReader(asciiStream, "US-ASCII");
+							if (contentLength >= 0) {
+								ps.setClob(paramIndex, reader, contentLength);
+							}
+							else {
+								ps.setClob(paramIndex, reader);
+							}
 						}
 						else {
 							ps.setClob(paramIndex, new PassThroughClob(asciiStream, contentLength));
@@ -299,9 +346,19 @@ public class DefaultLobHandler extends AbstractLobHandler {
 				PreparedStatement ps, int paramIndex, Reader characterStream, int contentLength)
 				throws SQLException {
 
+			if (characterStream != null && contentLength < 0 && !streamAsLob) {
+				SpooledLobContent spooled = spoolCharacterStream(characterStream);
+				characterStream = getCharacterStream(spooled);
+				contentLength = getContentLength(spooled);
+			}
 			if (streamAsLob) {
 				if (characterStream != null) {
-					ps.setClob(paramIndex, characterStream, contentLength);
+					if (contentLength >= 0) {
+						ps.setClob(paramIndex, characterStream, contentLength);
+					}
+					else {
+						ps.setClob(paramIndex, characterStream);
+					}
 				}
 				else {
 					ps.setClob(paramIndex, (Clob) null);
@@ -324,8 +381,78 @@ public class DefaultLobHandler extends AbstractLobHandler {
 			}
 		}
 
+		/**
+		 * Spool the given stream of unknown length, for determining its length.
+		 */
+		private SpooledLobContent spoolBinaryStream(InputStream binaryStream) throws SQLException {
+			try {
+				return registerSpooledContent(SpooledLobContent.spoolBinaryStream(binaryStream, spoolThreshold));
+			}
+			catch (IOException ex) {
+				throw new SQLException("Could not spool LOB content of unknown length: " + ex);
+			}
+		}
+
+		/**
+		 * Spool the given reader of unknown length, for determining its length.
+		 */
+		private SpooledLobContent spoolCharacterStream(Reader characterStream) throws SQLException {
+			try {
+				return registerSpooledContent(SpooledLobContent.spoolCharacterStream(characterStream, spoolThreshold));
+			}
+			catch (IOException ex) {
+				throw new SQLException("Could not spool CLOB content of unknown length: " + ex);
+			}
+		}
+
+		private SpooledLobContent registerSpooledContent(SpooledLobContent spooled) {
+			if (this.spooledContents == null) {
+				this.spooledContents = new LinkedList<SpooledLobContent>();
+			}
+			this.spooledContents.add(spooled);
+			if (logger.isDebugEnabled()) {
+				logger.debug("Spooled LOB content of unknown length: " + spooled.getLength() +
+						(spooled.isSpilled() ? " (spilled over into temporary file)" : " (in memory)"));
+			}
+			return spooled;
+		}
+
+		private InputStream getBinaryStream(SpooledLobContent spooled) throws SQLException {
+			try {
+				return spooled.getBinaryStream();
+			}
+			catch (IOException ex) {
+				throw new SQLException("Could not read spooled LOB content: " + ex);
+			}
+		}
+
+		private Reader getCharacterStream(SpooledLobContent spooled) throws SQLException {
+			try {
+				return spooled.getCharacterStream();
+			}
+			catch (IOException ex) {
+				throw new SQLException("Could not read spooled CLOB content: " + ex);
+			}
+		}
+
+		private int getContentLength(SpooledLobContent spooled) throws SQLException {
+			if (spooled.getLength() > Integer.MAX_VALUE) {
+				throw new SQLException("LOB content of length " + spooled.getLength() +
+						" exceeds the maximum length supported by the JDBC API - consider 'streamAsLob' mode");
+			}
+			return (int) spooled.getLength();
+		}
+
+		/**
+		 * Deletes temporary files for spooled content, if any.
+		 */
 		public void close() {
-			// nothing to do here
+			if (this.spooledContents != null) {
+				for (SpooledLobContent spooled : this.spooledContents) {
+					spooled.dispose();
+				}
+				this.spooledContents = null;
+			}
 		}
 	}
 
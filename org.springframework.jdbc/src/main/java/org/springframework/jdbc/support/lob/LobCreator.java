@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -33,6 +33,11 @@ import java.sql.SQLException;
  * <code>PreparedStatement.setBlob/setClob</code> with either a stream argument
  * (requires JDBC 4.0) or <code>java.sql.Blob/Clob</code> wrapper objects.
  *
+ * <p>Stream content may be passed in with a content length of -1 if the length
+ * is not known in advance. Implementations will then either stream the content
+ * to the driver without a length, or spool it first in order to determine its
+ * length, e.g. into a temporary file which gets deleted on {@link #close()}.
+ *
  * <p>A LobCreator represents a session for creating BLOBs: It is <i>not</i>
  * thread-safe and needs to be instantiated for each statement execution or for
  * each transaction. Each LobCreator needs to be closed after completion.
@@ -78,6 +83,7 @@ public interface LobCreator {
 	 * @param ps the PreparedStatement to the set the content on
 	 * @param paramIndex the parameter index to use
 	 * @param contentStream the content as binary stream, or <code>null</code> for SQL NULL
+	 * @param contentLength the content length in bytes, or -1 if not known in advance
 	 * @throws SQLException if thrown by JDBC methods
 	 * @see java.sql.PreparedStatement#setBinaryStream
 	 */
@@ -105,6 +111,7 @@ public interface LobCreator {
 	 * @param ps the PreparedStatement to the set the content on
 	 * @param paramIndex the parameter index to use
 	 * @param asciiStream the content as ASCII stream, or <code>null</code> for SQL NULL
+	 * @param contentLength the content length in bytes, or -1 if not known in advance
 	 * @throws SQLException if thrown by JDBC methods
 	 * @see java.sql.PreparedStatement#setAsciiStream
 	 */
@@ -119,6 +126,7 @@ public interface LobCreator {
 	 * @param ps the PreparedStatement to the set the content on
 	 * @param paramIndex the parameter index to use
 	 * @param characterStream the content as character stream, or <code>null</code> for SQL NULL
+	 * @param contentLength the content length in characters, or -1 if not known in advance
 	 * @throws SQLException if thrown by JDBC methods
 	 * @see java.sql.PreparedStatement#setCharacterStream
 	 */
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.support.lob;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.CharArrayReader;
+import java.io.CharArrayWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * LOB content of initially unknown length, read from a stream and spooled
+ * into memory up to a given threshold, spilling over into a temporary file
+ * beyond that threshold. Allows for passing the content to JDBC drivers that
+ * require the content length upfront, without holding large LOBs in memory.
+ *
+ * <p>The content can be re-read any number of times; the temporary file,
+ * if any, is deleted on {@link #dispose()}.
+ *
+ * @since 3.1
+ * @see DefaultLobHandler#setSpoolThreshold
+ */
+class SpooledLobContent {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private static final String CHARACTER_FILE_ENCODING = "UTF-8";
+
+	private static final Log logger = LogFactory.getLog(SpooledLobContent.class);
+
+
+	private final byte[] bytes;
+
+	private final char[] chars;
+
+	private final File file;
+
+	private final long length;
+
+	private final List<Closeable> openStreams = new ArrayList<Closeable>(1);
+
+
+	private SpooledLobContent(byte[] bytes, char[] chars, File file, long length) {
+		this.bytes = bytes;
+		this.chars = chars;
+		this.file = file;
+		this.length = length;
+	}
+
+
+	/**
+	 * Return the length of the content: in bytes for binary content,
+	 * in characters for character content.
+	 */
+	public long getLength() {
+		return this.length;
+	}
+
+	/**
+	 * Return whether the content has been spilled over into a temporary file.
+	 */
+	public boolean isSpilled() {
+		return (this.file != null);
+	}
+
+	/**
+	 * Return a fresh stream for reading binary content.
+	 */
+	public InputStream getBinaryStream() throws IOException {
+		if (this.file == null) {
+			return new ByteArrayInputStream(this.bytes);
+		}
+		InputStream is = new BufferedInputStream(new FileInputStream(this.file), BUFFER_SIZE);
+		this.openStreams.add(is);
+		return is;
+	}
+
+	/**
+	 * Return a fresh reader for reading character content.
+	 */
+	public Reader getCharacterStream() throws IOException {
+		if (this.file == null) {
+			return new CharArrayReader(this.chars);
+		}
+		Reader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(this.file), CHARACTER_FILE_ENCODING), BUFFER_SIZE);
+		this.openStreams.add(reader);
+		return reader;
+	}
+
+	/**
+	 * Close the streams handed out for the temporary file, if any,
+	 * and delete the temporary file.
+	 */
+	public void dispose() {
+		for (Closeable stream : this.openStreams) {
+			try {
+				stream.close();
+			}
+			catch (IOException ex) {
+				logger.debug("Could not close stream for spooled LOB content", ex);
+			}
+		}
+		this.openStreams.clear();
+		if (this.file != null && !this.file.delete()) {
+			logger.debug("Could not delete temporary file for spooled LOB content: " + this.file);
+		}
+	}
+
+
+	/**
+	 * Spool the given binary stream, which will be read until its end but not closed.
+	 * @param binaryStream the stream to read from
+	 * @param threshold the maximum number of bytes to keep in memory
+	 * @return the spooled content
+	 * @throws IOException in case of I/O errors
+	 */
+	public static SpooledLobContent spoolBinaryStream(InputStream binaryStream, int threshold) throws IOException {
+		ByteArrayOutputStream memory = new ByteArrayOutputStream(Math.min(threshold, BUFFER_SIZE));
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int bytesRead = fill(binaryStream, buffer, memory, threshold);
+		if (bytesRead == -1) {
+			return new SpooledLobContent(memory.toByteArray(), null, null, memory.size());
+		}
+		File file = File.createTempFile("spring-lob", ".tmp");
+		long length = memory.size();
+		OutputStream out = null;
+		try {
+			out = new FileOutputStream(file);
+			memory.writeTo(out);
+			memory = null;
+			do {
+				out.write(buffer, 0, bytesRead);
+				length += bytesRead;
+			}
+			while ((bytesRead = binaryStream.read(buffer)) != -1);
+			out.close();
+		}
+		catch (IOException ex) {
+			closeAndDelete(out, file);
+			throw ex;
+		}
+		return new SpooledLobContent(null, null, file, length);
+	}
+
+	/**
+	 * Spool the given character stream, which will be read until its end but not closed.
+	 * @param characterStream the reader to read from
+	 * @param threshold the maximum number of characters to keep in memory
+	 * @return the spooled content
+	 * @throws IOException in case of I/O errors
+	 */
+	public static SpooledLobContent spoolCharacterStream(Reader characterStream, int threshold) throws IOException {
+		CharArrayWriter memory = new CharArrayWriter(Math.min(threshold, BUFFER_SIZE));
+		char[] buffer = new char[BUFFER_SIZE];
+		int charsRead = fill(characterStream, buffer, memory, threshold);
+		if (charsRead == -1) {
+			return new SpooledLobContent(null, memory.toCharArray(), null, memory.size());
+		}
+		File file = File.createTempFile("spring-lob", ".tmp");
+		long length = memory.size();
+		Writer out = null;
+		try {
+			out = new BufferedWriter(
+					new OutputStreamWriter(new FileOutputStream(file), CHARACTER_FILE_ENCODING), BUFFER_SIZE);
+			memory.writeTo(out);
+			memory = null;
+			do {
+				out.write(buffer, 0, charsRead);
+				length += charsRead;
+			}
+			while ((charsRead = characterStream.read(buffer)) != -1);
+			out.close();
+		}
+		catch (IOException ex) {
+			closeAndDelete(out, file);
+			throw ex;
+		}
+		return new SpooledLobContent(null, null, file, length);
+	}
+
+	/**
+	 * Read from the given stream into memory until the end of the stream or
+	 * until the threshold would be exceeded by the next chunk.
+	 * @return -1 if the end of the stream has been reached, or otherwise the
+	 * number of bytes of the pending chunk in the given buffer
+	 */
+	private static int fill(InputStream in, byte[] buffer, ByteArrayOutputStream memory, int threshold)
+			throws IOException {
+
+		int bytesRead;
+		while ((bytesRead = in.read(buffer)) != -1) {
+			if (memory.size() + bytesRead > threshold) {
+				return bytesRead;
+			}
+			memory.write(buffer, 0, bytesRead);
+		}
+		return -1;
+	}
+
+	/**
+	 * Read from the given reader into memory until the end of the stream or
+	 * until the threshold would be exceeded by the next chunk.
+	 * @return -1 if the end of the stream has been reached, or otherwise the
+	 * number of characters of the pending chunk in the given buffer
+	 */
+	private static int fill(Reader in, char[] buffer, CharArrayWriter memory, int threshold)
+			throws IOException {
+
+		int charsRead;
+		while ((charsRead = in.read(buffer)) != -1) {
+			if (memory.size() + charsRead > threshold) {
+				return charsRead;
+			}
+			memory.write(buffer, 0, charsRead);
+		}
+		return -1;
+	}
+
+	private static void closeAndDelete(Closeable out, File file) {
+		if (out != null) {
+			try {
+				out.close();
+			}
+			catch (IOException ex) {
+				// ignore
+			}
+		}
+		file.delete();
+	}
+
+}
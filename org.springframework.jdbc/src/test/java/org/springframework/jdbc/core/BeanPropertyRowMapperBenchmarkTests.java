@@ -0,0 +1,125 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.core;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.jdbc.core.test.Person;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.util.StopWatch;
+
+/**
+ * Benchmarks for mapping rows to beans: a hand-written RowMapper versus
+ * {@link BeanPropertyRowMapper} versus {@link FastBeanPropertyRowMapper}.
+ *
+ * NOTE: No assertions!
+ *
+ * @since 3.1
+ */
+public final class BeanPropertyRowMapperBenchmarkTests {
+
+	/** Increase this if you want meaningful results! */
+	private static final int ROWS = 20000;
+
+	private static final int RUNS = 5;
+
+	private static final String QUERY = "select name, age, birth_date, balance from people";
+
+
+	private EmbeddedDatabase database;
+
+	private JdbcTemplate template;
+
+
+	@Before
+	public void setUp() {
+		this.database = new EmbeddedDatabaseBuilder().build();
+		this.template = new JdbcTemplate(this.database);
+		this.template.execute(
+				"create table people (name varchar(50), age integer, birth_date timestamp, balance decimal(10,2))");
+		Collection<Integer> ids = new ArrayList<Integer>();
+		for (int i = 0; i < ROWS; i++) {
+			ids.add(i);
+		}
+		this.template.batchUpdate("insert into people values (?, ?, ?, ?)", ids, 1000,
+				new ParameterizedPreparedStatementSetter<Integer>() {
+					public void setValues(PreparedStatement ps, Integer argument) throws SQLException {
+						ps.setString(1, "name" + argument);
+						ps.setInt(2, argument % 100);
+						ps.setTimestamp(3, new Timestamp(argument * 1000L));
+						ps.setBigDecimal(4, new BigDecimal(argument));
+					}
+				});
+	}
+
+	@After
+	public void tearDown() {
+		this.database.shutdown();
+	}
+
+
+	@Test
+	public void timeRowMapping() {
+		RowMapper<Person> handWritten = new RowMapper<Person>() {
+			public Person mapRow(ResultSet rs, int rowNum) throws SQLException {
+				Person person = new Person();
+				person.setName(rs.getString(1));
+				person.setAge(rs.getLong(2));
+				person.setBirth_date(rs.getTimestamp(3));
+				person.setBalance(rs.getBigDecimal(4));
+				return person;
+			}
+		};
+		RowMapper<Person> beanProperty = new BeanPropertyRowMapper<Person>(Person.class);
+		RowMapper<Person> fastBeanProperty = new FastBeanPropertyRowMapper<Person>(Person.class);
+
+		// warm-up
+		for (int i = 0; i < RUNS; i++) {
+			this.template.query(QUERY, handWritten);
+			this.template.query(QUERY, beanProperty);
+			this.template.query(QUERY, fastBeanProperty);
+		}
+
+		StopWatch sw = new StopWatch();
+		time(sw, "hand-written RowMapper", handWritten);
+		time(sw, "BeanPropertyRowMapper", beanProperty);
+		time(sw, "FastBeanPropertyRowMapper", fastBeanProperty);
+		System.out.println(sw.prettyPrint());
+	}
+
+	private void time(StopWatch sw, String name, RowMapper<Person> rowMapper) {
+		sw.start(RUNS + " x " + ROWS + " rows, " + name);
+		for (int i = 0; i < RUNS; i++) {
+			List<Person> result = this.template.query(QUERY, rowMapper);
+			result.clear();
+		}
+		sw.stop();
+	}
+
+}
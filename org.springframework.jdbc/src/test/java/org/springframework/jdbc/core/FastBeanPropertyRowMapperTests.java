@@ -0,0 +1,152 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.core;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.springframework.beans.TypeMismatchException;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.jdbc.core.test.ConcretePerson;
+import org.springframework.jdbc.core.test.ExtendedPerson;
+import org.springframework.jdbc.core.test.Person;
+import org.springframework.jdbc.core.test.SpacePerson;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+
+/**
+ */
+public class FastBeanPropertyRowMapperTests extends AbstractRowMapperTests {
+
+	public void testStaticQueryWithRowMapper() throws SQLException {
+		List<Person> result = jdbcTemplate.query("select name, age, birth_date, balance from people",
+				new FastBeanPropertyRowMapper<Person>(Person.class));
+		assertEquals(1, result.size());
+		verifyPerson(result.get(0));
+	}
+
+	public void testMappingWithInheritance() throws SQLException {
+		List<ConcretePerson> result = jdbcTemplate.query("select name, age, birth_date, balance from people",
+				FastBeanPropertyRowMapper.newInstance(ConcretePerson.class));
+		assertEquals(1, result.size());
+		verifyConcretePerson(result.get(0));
+	}
+
+	public void testMappingWithNoUnpopulatedFieldsFound() throws SQLException {
+		List<ConcretePerson> result = jdbcTemplate.query("select name, age, birth_date, balance from people",
+				new FastBeanPropertyRowMapper<ConcretePerson>(ConcretePerson.class, true));
+		assertEquals(1, result.size());
+		verifyConcretePerson(result.get(0));
+	}
+
+	public void testMappingWithUnpopulatedFieldsNotAccepted() throws SQLException {
+		try {
+			jdbcTemplate.query("select name, age, birth_date, balance from people",
+					new FastBeanPropertyRowMapper<ExtendedPerson>(ExtendedPerson.class, true));
+			fail("Should have thrown InvalidDataAccessApiUsageException because of missing field");
+		}
+		catch (InvalidDataAccessApiUsageException ex) {
+			// expected
+		}
+	}
+
+	public void testQueryWithSpaceInColumnName() throws SQLException {
+		List<SpacePerson> result = jdbcTemplate3.query(
+				"select last_name as \"Last Name\", age, birth_date, balance from people",
+				new FastBeanPropertyRowMapper<SpacePerson>(SpacePerson.class));
+		assertEquals(1, result.size());
+		verifySpacePerson(result.get(0));
+	}
+
+	public void testMappingAgainstEmbeddedDatabase() {
+		EmbeddedDatabase database = new EmbeddedDatabaseBuilder().build();
+		try {
+			JdbcTemplate template = createPeople(database);
+			FastBeanPropertyRowMapper<Person> mapper = new FastBeanPropertyRowMapper<Person>(Person.class);
+			List<Person> result = template.query(
+					"select name, age, birth_date, balance from people order by age", mapper);
+			assertEquals(3, result.size());
+			assertEquals("Bubba", result.get(0).getName());
+			assertEquals(22L, result.get(0).getAge());
+			assertEquals(new BigDecimal("1234.56"), result.get(0).getBalance());
+			assertEquals(new java.util.Date(1221222L), result.get(0).getBirth_date());
+			assertEquals("Zelda", result.get(2).getName());
+			assertEquals(50L, result.get(2).getAge());
+
+			// same mapper, different column order and subset of columns
+			result = template.query("select age, name from people order by age", mapper);
+			assertEquals(3, result.size());
+			assertEquals("Bubba", result.get(0).getName());
+			assertEquals(22L, result.get(0).getAge());
+			assertNull(result.get(0).getBalance());
+		}
+		finally {
+			database.shutdown();
+		}
+	}
+
+	public void testMappingNullValue() {
+		EmbeddedDatabase database = new EmbeddedDatabaseBuilder().build();
+		try {
+			JdbcTemplate template = createPeople(database);
+			FastBeanPropertyRowMapper<Person> mapper = new FastBeanPropertyRowMapper<Person>(Person.class);
+			try {
+				template.query("select name, null as age, birth_date, balance from people", mapper);
+				fail("Should have thrown TypeMismatchException because of null value");
+			}
+			catch (TypeMismatchException ex) {
+				// expected
+			}
+			mapper.setPrimitivesDefaultedForNullValue(true);
+			List<Person> result = template.query(
+					"select name, cast(null as integer) as age, birth_date, null as balance from people", mapper);
+			assertEquals(3, result.size());
+			assertEquals(0L, result.get(0).getAge());
+			assertNull(result.get(0).getBalance());
+		}
+		finally {
+			database.shutdown();
+		}
+	}
+
+	public void testMappingWithTypeConversion() {
+		EmbeddedDatabase database = new EmbeddedDatabaseBuilder().build();
+		try {
+			JdbcTemplate template = createPeople(database);
+			List<Person> result = template.query(
+					"select 'Bubba' as name, '33' as age from people", FastBeanPropertyRowMapper.newInstance(Person.class));
+			assertEquals(3, result.size());
+			assertEquals(33L, result.get(0).getAge());
+		}
+		finally {
+			database.shutdown();
+		}
+	}
+
+
+	private JdbcTemplate createPeople(EmbeddedDatabase database) {
+		JdbcTemplate template = new JdbcTemplate(database);
+		template.execute("create table people (name varchar(50), age integer, birth_date timestamp, balance decimal(10,2))");
+		template.update("insert into people values (?, ?, ?, ?)",
+				"Bubba", 22, new java.sql.Timestamp(1221222L), new BigDecimal("1234.56"));
+		template.update("insert into people values (?, ?, ?, ?)", "Alice", 30, null, null);
+		template.update("insert into people values (?, ?, ?, ?)", "Zelda", 50, null, BigDecimal.ZERO);
+		return template;
+	}
+
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.core;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for chunked batch updates against an embedded database.
+ */
+public class JdbcTemplateChunkedBatchTests {
+
+	private EmbeddedDatabase database;
+
+	private JdbcTemplate template;
+
+	private final ParameterizedPreparedStatementSetter<Integer> idSetter =
+			new ParameterizedPreparedStatementSetter<Integer>() {
+				public void setValues(PreparedStatement ps, Integer argument) throws SQLException {
+					ps.setInt(1, argument);
+					ps.setString(2, "name" + argument);
+				}
+			};
+
+
+	@Before
+	public void setUp() {
+		this.database = new EmbeddedDatabaseBuilder().build();
+		this.template = new JdbcTemplate(this.database);
+		this.template.execute("create table T_TEST (ID integer primary key, NAME varchar(50) not null)");
+	}
+
+	@After
+	public void tearDown() {
+		this.database.shutdown();
+	}
+
+
+	@Test
+	public void batchUpdateWithCollection() {
+		int[][] result = this.template.batchUpdate(
+				"insert into T_TEST (ID, NAME) values (?, ?)", ids(0, 25), 10, this.idSetter);
+		assertEquals(3, result.length);
+		assertEquals(10, result[0].length);
+		assertEquals(10, result[1].length);
+		assertEquals(5, result[2].length);
+		assertEquals(1, result[2][4]);
+		assertEquals(25, this.template.queryForInt("select count(*) from T_TEST"));
+	}
+
+	@Test
+	public void batchUpdateWithEmptyCollection() {
+		int[][] result = this.template.batchUpdate(
+				"insert into T_TEST (ID, NAME) values (?, ?)", Collections.<Integer>emptyList(), 10, this.idSetter);
+		assertEquals(0, result.length);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void batchUpdateWithInvalidBatchSize() {
+		this.template.batchUpdate("insert into T_TEST (ID, NAME) values (?, ?)", ids(0, 5), 0, this.idSetter);
+	}
+
+	@Test
+	public void batchUpdateWithIteratorAndCallback() {
+		RecordingChunkCallback callback = new RecordingChunkCallback();
+		CountingIterator args = new CountingIterator(ids(0, 1000).iterator());
+		int[][] result = this.template.batchUpdate(
+				"insert into T_TEST (ID, NAME) values (?, ?)", args, 300, this.idSetter, callback);
+		assertEquals(4, result.length);
+		assertEquals(1000, args.count);
+		assertEquals(4, callback.chunkIndexes.size());
+		assertEquals(Integer.valueOf(3), callback.chunkIndexes.get(3));
+		assertEquals(Integer.valueOf(300), callback.chunkSizes.get(0));
+		assertEquals(Integer.valueOf(100), callback.chunkSizes.get(3));
+		for (Long executionTime : callback.executionTimes) {
+			assertTrue(executionTime >= 0);
+		}
+		assertEquals(1000, this.template.queryForInt("select count(*) from T_TEST"));
+		assertEquals("name999", this.template.queryForObject("select NAME from T_TEST where ID = 999", String.class));
+	}
+
+	@Test
+	public void batchUpdateWithPrefetchExecutor() throws Exception {
+		this.template.setBatchPrefetchExecutor(new SimpleAsyncTaskExecutor());
+		final List<String> readerThreads = Collections.synchronizedList(new ArrayList<String>());
+		Iterator<Integer> args = new CountingIterator(ids(0, 1000).iterator()) {
+			@Override
+			public Integer next() {
+				readerThreads.add(Thread.currentThread().getName());
+				return super.next();
+			}
+		};
+		RecordingChunkCallback callback = new RecordingChunkCallback();
+		int[][] result = this.template.batchUpdate(
+				"insert into T_TEST (ID, NAME) values (?, ?)", args, 100, this.idSetter, callback);
+		assertEquals(10, result.length);
+		assertEquals(10, callback.chunkIndexes.size());
+		assertEquals(1000, readerThreads.size());
+		assertEquals(Thread.currentThread().getName(), readerThreads.get(0));
+		assertFalse(Thread.currentThread().getName().equals(readerThreads.get(999)));
+		assertEquals(1000, this.template.queryForInt("select count(*) from T_TEST"));
+	}
+
+	@Test
+	public void batchUpdateWithPrefetchExecutorAndReaderFailure() throws Exception {
+		this.template.setBatchPrefetchExecutor(new SimpleAsyncTaskExecutor());
+		Iterator<Integer> args = new CountingIterator(ids(0, 1000).iterator()) {
+			@Override
+			public Integer next() {
+				if (this.count == 150) {
+					throw new IllegalStateException("No more input");
+				}
+				return super.next();
+			}
+		};
+		try {
+			this.template.batchUpdate("insert into T_TEST (ID, NAME) values (?, ?)", args, 100, this.idSetter, null);
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			assertEquals("No more input", ex.getMessage());
+		}
+		assertEquals(100, this.template.queryForInt("select count(*) from T_TEST"));
+	}
+
+	@Test
+	public void batchUpdateWithConstraintViolation() {
+		List<Integer> args = ids(0, 50);
+		args.add(10);
+		RecordingChunkCallback callback = new RecordingChunkCallback();
+		try {
+			this.template.batchUpdate("insert into T_TEST (ID, NAME) values (?, ?)", args.iterator(), 20, this.idSetter, callback);
+			fail("Should have thrown DataAccessException");
+		}
+		catch (DataAccessException ex) {
+			// expected
+		}
+		assertEquals(2, callback.chunkIndexes.size());
+	}
+
+	@Test
+	public void namedParameterBatchUpdateWithIterator() {
+		NamedParameterJdbcTemplate namedTemplate = new NamedParameterJdbcTemplate(this.template);
+		List<SqlParameterSource> args = new ArrayList<SqlParameterSource>();
+		for (int i = 0; i < 55; i++) {
+			args.add(new MapSqlParameterSource("id", i).addValue("name", "name" + i));
+		}
+		RecordingChunkCallback callback = new RecordingChunkCallback();
+		int[][] result = namedTemplate.batchUpdate(
+				"insert into T_TEST (ID, NAME) values (:id, :name)", args.iterator(), 20, callback);
+		assertEquals(3, result.length);
+		assertEquals(Integer.valueOf(15), callback.chunkSizes.get(2));
+		assertEquals(55, this.template.queryForInt("select count(*) from T_TEST"));
+		assertEquals("name54", this.template.queryForObject("select NAME from T_TEST where ID = 54", String.class));
+	}
+
+	@Test
+	public void namedParameterBatchUpdateWithEmptyIterator() {
+		NamedParameterJdbcTemplate namedTemplate = new NamedParameterJdbcTemplate(this.template);
+		int[][] result = namedTemplate.batchUpdate("insert into T_TEST (ID, NAME) values (:id, :name)",
+				Collections.<SqlParameterSource>emptyList().iterator(), 20, null);
+		assertEquals(0, result.length);
+	}
+
+
+	private static List<Integer> ids(int from, int to) {
+		List<Integer> ids = new ArrayList<Integer>();
+		for (int i = from; i < to; i++) {
+			ids.add(i);
+		}
+		return ids;
+	}
+
+
+	private static class CountingIterator implements Iterator<Integer> {
+
+		private final Iterator<Integer> target;
+
+		protected int count;
+
+		public CountingIterator(Iterator<Integer> target) {
+			this.target = target;
+		}
+
+		public boolean hasNext() {
+			return this.target.hasNext();
+		}
+
+		public Integer next() {
+			this.count++;
+			return this.target.next();
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+
+	private static class RecordingChunkCallback implements BatchChunkCallback {
+
+		private final List<Integer> chunkIndexes = new ArrayList<Integer>();
+
+		private final List<Integer> chunkSizes = new ArrayList<Integer>();
+
+		private final List<Long> executionTimes = new ArrayList<Long>();
+
+		public void chunkExecuted(int chunkIndex, int[] updateCounts, long executionTime) {
+			this.chunkIndexes.add(chunkIndex);
+			this.chunkSizes.add(updateCounts.length);
+			this.executionTimes.add(executionTime);
+		}
+	}
+
+}
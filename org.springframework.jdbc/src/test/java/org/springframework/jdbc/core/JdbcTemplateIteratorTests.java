@@ -0,0 +1,254 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.NoSuchElementException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link JdbcTemplate#queryForIterator} against an embedded database.
+ */
+public class JdbcTemplateIteratorTests {
+
+	private EmbeddedDatabase database;
+
+	private CountingDataSource dataSource;
+
+	private JdbcTemplate template;
+
+	private final RowMapper<String> nameMapper = new RowMapper<String>() {
+		public String mapRow(ResultSet rs, int rowNum) throws SQLException {
+			return rs.getString(1);
+		}
+	};
+
+
+	@Before
+	public void setUp() {
+		this.database = new EmbeddedDatabaseBuilder().build();
+		this.dataSource = new CountingDataSource(this.database);
+		this.template = new JdbcTemplate(this.dataSource);
+		this.template.execute("create table T_TEST (ID integer not null, NAME varchar(50) not null)");
+		for (int i = 0; i < 100; i++) {
+			this.template.update("insert into T_TEST (ID, NAME) values (?, ?)", i, "name" + i);
+		}
+		this.dataSource.reset();
+	}
+
+	@After
+	public void tearDown() {
+		this.database.shutdown();
+	}
+
+
+	@Test
+	public void iterateAllRows() {
+		this.template.setFetchSize(10);
+		CloseableRowIterator<String> it = this.template.queryForIterator(
+				"select NAME from T_TEST where ID >= ? order by ID", this.nameMapper, 50);
+		int count = 0;
+		while (it.hasNext()) {
+			assertEquals(1, this.dataSource.openConnections);
+			assertEquals("name" + (50 + count), it.next());
+			count++;
+		}
+		assertEquals(50, count);
+		assertEquals("Exhausted iterator should have released its connection", 0, this.dataSource.openConnections);
+		assertFalse(it.hasNext());
+		it.close();
+		assertEquals(0, this.dataSource.openConnections);
+	}
+
+	@Test
+	public void rowNumbersArePassedToRowMapper() {
+		CloseableRowIterator<Integer> it = this.template.queryForIterator(
+				"select ID from T_TEST order by ID", new RowMapper<Integer>() {
+					public Integer mapRow(ResultSet rs, int rowNum) throws SQLException {
+						assertEquals(rs.getInt(1), rowNum);
+						return rowNum;
+					}
+				});
+		int count = 0;
+		while (it.hasNext()) {
+			it.next();
+			count++;
+		}
+		assertEquals(100, count);
+	}
+
+	@Test
+	public void nextWithoutHasNext() {
+		CloseableRowIterator<String> it = this.template.queryForIterator(
+				"select NAME from T_TEST where ID < ? order by ID", new Object[] {2},
+				new int[] {java.sql.Types.INTEGER}, this.nameMapper);
+		assertEquals("name0", it.next());
+		assertEquals("name1", it.next());
+		try {
+			it.next();
+			fail("Should have thrown NoSuchElementException");
+		}
+		catch (NoSuchElementException ex) {
+			// expected
+		}
+		assertEquals(0, this.dataSource.openConnections);
+	}
+
+	@Test
+	public void closeEarlyReleasesConnection() {
+		CloseableRowIterator<String> it = this.template.queryForIterator("select NAME from T_TEST", this.nameMapper);
+		assertTrue(it.hasNext());
+		it.next();
+		assertEquals(1, this.dataSource.openConnections);
+		it.close();
+		assertEquals(0, this.dataSource.openConnections);
+		assertFalse(it.hasNext());
+		it.close();
+		assertEquals(0, this.dataSource.openConnections);
+	}
+
+	@Test
+	public void removeNotSupported() {
+		CloseableRowIterator<String> it = this.template.queryForIterator("select NAME from T_TEST", this.nameMapper);
+		try {
+			it.next();
+			it.remove();
+			fail("Should have thrown UnsupportedOperationException");
+		}
+		catch (UnsupportedOperationException ex) {
+			// expected
+		}
+		finally {
+			it.close();
+		}
+	}
+
+	@Test
+	public void badSqlIsTranslated() {
+		try {
+			this.template.queryForIterator("select NAME from T_BOGUS", this.nameMapper);
+			fail("Should have thrown BadSqlGrammarException");
+		}
+		catch (BadSqlGrammarException ex) {
+			// expected
+		}
+		assertEquals(0, this.dataSource.openConnections);
+	}
+
+	@Test
+	public void rowMapperExceptionReleasesConnection() {
+		CloseableRowIterator<String> it = this.template.queryForIterator(
+				"select NAME from T_TEST order by ID", new RowMapper<String>() {
+					public String mapRow(ResultSet rs, int rowNum) throws SQLException {
+						if (rowNum == 3) {
+							throw new IllegalStateException("bad row");
+						}
+						return rs.getString(1);
+					}
+				});
+		try {
+			while (it.hasNext()) {
+				it.next();
+			}
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			assertEquals("bad row", ex.getMessage());
+		}
+		assertEquals(0, this.dataSource.openConnections);
+	}
+
+	@Test
+	public void transactionalConnectionIsReused() {
+		TransactionTemplate tt = new TransactionTemplate(new DataSourceTransactionManager(this.dataSource));
+		tt.execute(new TransactionCallback<Object>() {
+			public Object doInTransaction(TransactionStatus status) {
+				CloseableRowIterator<String> it1 = template.queryForIterator("select NAME from T_TEST", nameMapper);
+				CloseableRowIterator<String> it2 = template.queryForIterator("select NAME from T_TEST", nameMapper);
+				assertTrue(it1.hasNext());
+				assertTrue(it2.hasNext());
+				it1.close();
+				it2.close();
+				assertEquals(1, dataSource.obtainedConnections);
+				assertEquals("Transactional connection must not be closed", 1, dataSource.openConnections);
+				return null;
+			}
+		});
+		assertEquals(0, this.dataSource.openConnections);
+	}
+
+
+	private static class CountingDataSource extends DelegatingDataSource {
+
+		private int obtainedConnections;
+
+		private int openConnections;
+
+		public CountingDataSource(EmbeddedDatabase target) {
+			super(target);
+		}
+
+		public void reset() {
+			this.obtainedConnections = 0;
+			this.openConnections = 0;
+		}
+
+		@Override
+		public Connection getConnection() throws SQLException {
+			final Connection target = super.getConnection();
+			this.obtainedConnections++;
+			this.openConnections++;
+			return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] {Connection.class},
+					new InvocationHandler() {
+						private boolean closed;
+						public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+							if (method.getName().equals("close") && !this.closed) {
+								this.closed = true;
+								openConnections--;
+							}
+							try {
+								return method.invoke(target, args);
+							}
+							catch (InvocationTargetException ex) {
+								throw ex.getTargetException();
+							}
+						}
+					});
+		}
+	}
+
+}
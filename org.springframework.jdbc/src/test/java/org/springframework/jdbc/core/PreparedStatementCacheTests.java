@@ -0,0 +1,228 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.core;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for transaction-scoped PreparedStatement caching in {@link JdbcTemplate}.
+ */
+public class PreparedStatementCacheTests {
+
+	private static final String INSERT = "insert into T_TEST (ID) values (?)";
+
+
+	private EmbeddedDatabase database;
+
+	private JdbcTemplate template;
+
+	private TransactionTemplate transactionTemplate;
+
+
+	@Before
+	public void setUp() {
+		this.database = new EmbeddedDatabaseBuilder().build();
+		this.template = new JdbcTemplate(this.database);
+		this.template.setStatementCacheLimit(10);
+		this.template.execute("create table T_TEST (ID integer not null)");
+		this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(this.database));
+	}
+
+	@After
+	public void tearDown() {
+		this.database.shutdown();
+	}
+
+
+	@Test
+	public void statementIsReusedWithinTransaction() throws SQLException {
+		PreparedStatement[] statements = this.transactionTemplate.execute(new TransactionCallback<PreparedStatement[]>() {
+			public PreparedStatement[] doInTransaction(TransactionStatus status) {
+				PreparedStatement[] result = new PreparedStatement[3];
+				for (int i = 0; i < result.length; i++) {
+					result[i] = insert(template, i);
+				}
+				return result;
+			}
+		});
+		assertSame(statements[0], statements[1]);
+		assertSame(statements[0], statements[2]);
+		assertTrue("Statement should have been closed on commit", statements[0].isClosed());
+		assertEquals(3, this.template.queryForInt("select count(*) from T_TEST"));
+	}
+
+	@Test
+	public void statementIsClosedOutsideOfTransaction() throws SQLException {
+		PreparedStatement ps1 = insert(this.template, 1);
+		PreparedStatement ps2 = insert(this.template, 2);
+		assertNotSame(ps1, ps2);
+		assertTrue(ps1.isClosed());
+		assertTrue(ps2.isClosed());
+	}
+
+	@Test
+	public void statementIsClosedOnRollback() throws SQLException {
+		final PreparedStatement[] statement = new PreparedStatement[1];
+		this.transactionTemplate.execute(new TransactionCallback<Object>() {
+			public Object doInTransaction(TransactionStatus status) {
+				statement[0] = insert(template, 1);
+				status.setRollbackOnly();
+				return null;
+			}
+		});
+		assertTrue(statement[0].isClosed());
+		assertEquals(0, this.template.queryForInt("select count(*) from T_TEST"));
+	}
+
+	@Test
+	public void nestedOperationGetsFreshStatement() {
+		this.transactionTemplate.execute(new TransactionCallback<Object>() {
+			public Object doInTransaction(TransactionStatus status) {
+				PreparedStatement ps = insert(template, 1);
+				PreparedStatement nested = template.execute(INSERT, new PreparedStatementCallback<PreparedStatement>() {
+					public PreparedStatement doInPreparedStatement(PreparedStatement ps) throws SQLException {
+						ps.setInt(1, 2);
+						ps.executeUpdate();
+						return insert(template, 3);
+					}
+				});
+				assertNotSame(ps, nested);
+				assertSame(ps, insert(template, 4));
+				return null;
+			}
+		});
+		assertEquals(4, this.template.queryForInt("select count(*) from T_TEST"));
+	}
+
+	@Test
+	public void prepareStatementArgumentsArePartOfKey() {
+		this.transactionTemplate.execute(new TransactionCallback<Object>() {
+			public Object doInTransaction(TransactionStatus status) {
+				PreparedStatement ps = insert(template, 1);
+				PreparedStatement scrollable = template.execute(new PreparedStatementCreator() {
+					public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
+						PreparedStatement ps = con.prepareStatement(
+								INSERT, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+						ps.setInt(1, 2);
+						return ps;
+					}
+				}, new PreparedStatementCallback<PreparedStatement>() {
+					public PreparedStatement doInPreparedStatement(PreparedStatement ps) throws SQLException {
+						ps.executeUpdate();
+						return ps;
+					}
+				});
+				assertNotSame(ps, scrollable);
+				assertSame(ps, insert(template, 3));
+				return null;
+			}
+		});
+	}
+
+	@Test
+	public void cacheLimitIsRespected() {
+		this.template.setStatementCacheLimit(1);
+		this.transactionTemplate.execute(new TransactionCallback<Object>() {
+			public Object doInTransaction(TransactionStatus status) {
+				PreparedStatement ps = insert(template, 1);
+				assertNotSame(query(template, 0), query(template, 0));
+				assertSame(ps, insert(template, 2));
+				return null;
+			}
+		});
+	}
+
+	@Test
+	public void statementSettingsAreReset() {
+		final JdbcTemplate limitingTemplate = new JdbcTemplate(this.database);
+		limitingTemplate.setStatementCacheLimit(10);
+		limitingTemplate.setMaxRows(1);
+		this.transactionTemplate.execute(new TransactionCallback<Object>() {
+			public Object doInTransaction(TransactionStatus status) {
+				for (int i = 0; i < 3; i++) {
+					insert(template, i);
+				}
+				String sql = "select ID from T_TEST where ID >= ?";
+				assertEquals(1, limitingTemplate.queryForList(sql, Integer.class, 0).size());
+				assertEquals(3, template.queryForList(sql, Integer.class, 0).size());
+				return null;
+			}
+		});
+	}
+
+	@Test
+	public void failedStatementIsDiscarded() {
+		this.transactionTemplate.execute(new TransactionCallback<Object>() {
+			public Object doInTransaction(TransactionStatus status) {
+				final PreparedStatement ps = insert(template, 1);
+				try {
+					template.execute(INSERT, new PreparedStatementCallback<Object>() {
+						public Object doInPreparedStatement(PreparedStatement ps2) throws SQLException {
+							assertSame(ps, ps2);
+							return ps2.executeUpdate();
+						}
+					});
+					fail("Should have thrown DataAccessException");
+				}
+				catch (DataAccessException ex) {
+					// expected: parameter not set
+				}
+				assertNotSame(ps, insert(template, 2));
+				return null;
+			}
+		});
+	}
+
+
+	private static PreparedStatement insert(JdbcTemplate template, final int id) {
+		return template.execute(INSERT, new PreparedStatementCallback<PreparedStatement>() {
+			public PreparedStatement doInPreparedStatement(PreparedStatement ps) throws SQLException {
+				ps.setInt(1, id);
+				ps.executeUpdate();
+				return ps;
+			}
+		});
+	}
+
+	private static PreparedStatement query(JdbcTemplate template, final int id) {
+		return template.execute("select ID from T_TEST where ID = ?", new PreparedStatementCallback<PreparedStatement>() {
+			public PreparedStatement doInPreparedStatement(PreparedStatement ps) throws SQLException {
+				ps.setInt(1, id);
+				ps.executeQuery().close();
+				return ps;
+			}
+		});
+	}
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.core.namedparam;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.util.StopWatch;
+
+/**
+ * Benchmarks for concurrent SQL parsing and substitution in
+ * {@link NamedParameterJdbcTemplate}: the previous synchronized LinkedHashMap cache
+ * versus the concurrent ParsedSql cache with cached IN-list expansion.
+ *
+ * NOTE: No assertions!
+ *
+ * @since 3.1
+ */
+public final class NamedParameterJdbcTemplateBenchmarkTests {
+
+	/** Increase this if you want meaningful results! */
+	private static final int ITERATIONS = 200000;
+
+	private static final int THREADS = 8;
+
+	private static final int STATEMENTS = 50;
+
+
+	@Test
+	public void timeConcurrentParsing() throws Exception {
+		final NamedParameterJdbcTemplate synchronizedTemplate = new SynchronizedCacheJdbcTemplate();
+		final NamedParameterJdbcTemplate concurrentTemplate = new NamedParameterJdbcTemplate(new DriverManagerDataSource());
+
+		// warm-up
+		run(synchronizedTemplate);
+		run(concurrentTemplate);
+
+		StopWatch sw = new StopWatch();
+		sw.start(THREADS + " threads x " + ITERATIONS + " statements, synchronized LinkedHashMap");
+		run(synchronizedTemplate);
+		sw.stop();
+		sw.start(THREADS + " threads x " + ITERATIONS + " statements, concurrent ParsedSql cache");
+		run(concurrentTemplate);
+		sw.stop();
+		System.out.println(sw.prettyPrint());
+	}
+
+	private void run(final NamedParameterJdbcTemplate template) throws InterruptedException {
+		List<Thread> threads = new ArrayList<Thread>(THREADS);
+		for (int t = 0; t < THREADS; t++) {
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					MapSqlParameterSource params = new MapSqlParameterSource("name", "x");
+					List<Integer> ids = new ArrayList<Integer>();
+					for (int i = 0; i < 10; i++) {
+						ids.add(i);
+					}
+					params.addValue("ids", ids);
+					for (int i = 0; i < ITERATIONS; i++) {
+						ParsedSql parsedSql = template.getParsedSql(
+								"select * from t_" + (i % STATEMENTS) + " where name = :name and id in (:ids)");
+						NamedParameterUtils.substituteNamedParameters(parsedSql, params);
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+	}
+
+
+	/**
+	 * Reproduction of the previous cache: a LinkedHashMap in access order,
+	 * synchronized on every lookup.
+	 */
+	private static class SynchronizedCacheJdbcTemplate extends NamedParameterJdbcTemplate {
+
+		private final Map<String, ParsedSql> cache = new LinkedHashMap<String, ParsedSql>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, ParsedSql> eldest) {
+				return size() > getCacheLimit();
+			}
+		};
+
+		public SynchronizedCacheJdbcTemplate() {
+			super(new DriverManagerDataSource());
+		}
+
+		@Override
+		protected ParsedSql getParsedSql(String sql) {
+			synchronized (this.cache) {
+				ParsedSql parsedSql = this.cache.get(sql);
+				if (parsedSql == null) {
+					parsedSql = NamedParameterUtils.parseSqlStatement(sql);
+					this.cache.put(sql, parsedSql);
+				}
+				return parsedSql;
+			}
+		}
+	}
+
+}
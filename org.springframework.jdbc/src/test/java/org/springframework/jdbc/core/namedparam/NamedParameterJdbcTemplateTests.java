@@ -42,6 +42,7 @@ import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.SqlParameterValue;
+import org.springframework.jdbc.core.SqlProvider;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.BatchUpdateTestHelper;
 
@@ -526,4 +527,41 @@ public class NamedParameterJdbcTemplateTests extends AbstractJdbcTests {
 
 	}
 
+	public void testParsedSqlCache() {
+		NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(mockDataSource);
+		template.setCacheLimit(2);
+		ParsedSql parsedSql = template.getParsedSql(SELECT_NAMED_PARAMETERS);
+		assertSame(parsedSql, template.getParsedSql(SELECT_NAMED_PARAMETERS));
+		template.getParsedSql(UPDATE_NAMED_PARAMETERS);
+		assertSame(parsedSql, template.getParsedSql(SELECT_NAMED_PARAMETERS));
+		template.getParsedSql("select * from custmr where id = :id");
+		assertNotSame("Eldest entry should have been evicted",
+				parsedSql, template.getParsedSql(SELECT_NAMED_PARAMETERS));
+
+		template.setCacheLimit(0);
+		assertNotSame(template.getParsedSql(UPDATE_NAMED_PARAMETERS), template.getParsedSql(UPDATE_NAMED_PARAMETERS));
+	}
+
+	public void testCollectionPadding() {
+		NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(mockDataSource);
+		String sql = "select id from custmr where id in (:ids) and country = :country";
+		MapSqlParameterSource params = new MapSqlParameterSource("country", "UK");
+		params.addValue("ids", java.util.Arrays.asList(1, 2, 3));
+		assertEquals("select id from custmr where id in (?, ?, ?) and country = ?",
+				((SqlProvider) template.getPreparedStatementCreator(sql, params)).getSql());
+
+		template.setCollectionPadding(true);
+		assertEquals("select id from custmr where id in (?, ?, ?, ?) and country = ?",
+				((SqlProvider) template.getPreparedStatementCreator(sql, params)).getSql());
+		params.addValue("ids", java.util.Arrays.asList(1, 2, 3, 4));
+		assertEquals("select id from custmr where id in (?, ?, ?, ?) and country = ?",
+				((SqlProvider) template.getPreparedStatementCreator(sql, params)).getSql());
+		params.addValue("ids", java.util.Arrays.asList(1, 2, 3, 4, 5));
+		assertEquals("select id from custmr where id in (?, ?, ?, ?, ?, ?, ?, ?) and country = ?",
+				((SqlProvider) template.getPreparedStatementCreator(sql, params)).getSql());
+		params.addValue("ids", Collections.singletonList(1));
+		assertEquals("select id from custmr where id in (?) and country = ?",
+				((SqlProvider) template.getPreparedStatementCreator(sql, params)).getSql());
+	}
+
 }
@@ -16,6 +16,7 @@
 
 package org.springframework.jdbc.core.namedparam;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -67,6 +68,29 @@ public class NamedParameterUtilsTests {
 				NamedParameterUtils.substituteNamedParameters("xxx :a :b :c xx :a :a", namedParams));
 	}
 
+	@Test
+	public void substituteNamedParametersWithCollections() {
+		ParsedSql parsedSql = NamedParameterUtils.parseSqlStatement("xxx :a in (:b) yyy (:c)");
+		MapSqlParameterSource namedParams = new MapSqlParameterSource("a", "a").addValue("c", "c");
+		namedParams.addValue("b", Arrays.asList(1, 2, 3));
+		String sql = NamedParameterUtils.substituteNamedParameters(parsedSql, namedParams);
+		assertEquals("xxx ? in (?, ?, ?) yyy (?)", sql);
+		assertSame(sql, NamedParameterUtils.substituteNamedParameters(parsedSql, namedParams));
+
+		namedParams.addValue("b", Arrays.asList(1, 2));
+		assertEquals("xxx ? in (?, ?) yyy (?)", NamedParameterUtils.substituteNamedParameters(parsedSql, namedParams));
+		namedParams.addValue("b", Arrays.asList(new Object[] {1, 2}, new Object[] {3, 4}));
+		assertEquals("xxx ? in ((?, ?), (?, ?)) yyy (?)",
+				NamedParameterUtils.substituteNamedParameters(parsedSql, namedParams));
+		namedParams.addValue("b", Arrays.asList(new Object[] {1, 2}, new Object[] {3}));
+		assertEquals("xxx ? in ((?, ?), (?)) yyy (?)",
+				NamedParameterUtils.substituteNamedParameters(parsedSql, namedParams));
+		namedParams.addValue("b", 1);
+		sql = NamedParameterUtils.substituteNamedParameters(parsedSql, namedParams);
+		assertEquals("xxx ? in (?) yyy (?)", sql);
+		assertSame(sql, NamedParameterUtils.substituteNamedParameters(parsedSql, namedParams));
+	}
+
 	@Test
 	public void convertParamMapToArray() {
 		Map<String, String> paramMap = new HashMap<String, String>();
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.core.support;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.CallableStatementCallback;
+import org.springframework.jdbc.core.CallableStatementCreator;
+import org.springframework.jdbc.core.CloseableRowIterator;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.SingleColumnRowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.support.SqlStatisticsCollector.SqlStatistics;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link SqlStatisticsCollector} as operation monitor for a
+ * {@link JdbcTemplate} against an embedded database.
+ */
+public class SqlStatisticsCollectorTests {
+
+	private EmbeddedDatabase database;
+
+	private JdbcTemplate template;
+
+	private SqlStatisticsCollector collector;
+
+
+	@Before
+	public void setUp() {
+		this.database = new EmbeddedDatabaseBuilder().build();
+		this.template = new JdbcTemplate(this.database);
+		this.template.execute("create table T_TEST (ID integer not null, NAME varchar(50) not null)");
+		for (int i = 0; i < 10; i++) {
+			this.template.update("insert into T_TEST (ID, NAME) values (?, ?)", i, "name" + i);
+		}
+		this.collector = new SqlStatisticsCollector();
+		this.template.setOperationMonitor(this.collector);
+	}
+
+	@After
+	public void tearDown() {
+		this.database.shutdown();
+	}
+
+
+	@Test
+	public void preparedStatementQuery() {
+		String sql = "select NAME from T_TEST where ID < ?";
+		List<String> names = this.template.query(sql, new SingleColumnRowMapper<String>(String.class), 5);
+		assertEquals(5, names.size());
+		this.template.queryForInt(sql.replace("NAME", "count(*)"), 5);
+		this.template.query(sql, new SingleColumnRowMapper<String>(String.class), 3);
+
+		SqlStatistics stats = this.collector.getStatistics(sql);
+		assertEquals(2, stats.getExecutionCount());
+		assertEquals(0, stats.getFailureCount());
+		assertEquals(8, stats.getRowCount());
+		assertTrue(stats.getTotalExecutionTime() > 0);
+		assertTrue(stats.getMaxExecutionTime() <= stats.getTotalExecutionTime());
+		assertTrue(stats.getTotalPrepareTime() > 0);
+		assertEquals(2, this.collector.getStatementCount());
+		assertEquals(3, this.collector.getConnectionCount());
+	}
+
+	@Test
+	public void iteratorQuery() {
+		String sql = "select NAME from T_TEST where ID < ?";
+		CloseableRowIterator<String> it =
+				this.template.queryForIterator(sql, new SingleColumnRowMapper<String>(String.class), 4);
+		assertEquals(0, this.collector.getStatistics(sql).getExecutionCount());
+		int count = 0;
+		while (it.hasNext()) {
+			it.next();
+			count++;
+		}
+		assertEquals(4, count);
+
+		SqlStatistics stats = this.collector.getStatistics(sql);
+		assertEquals(1, stats.getExecutionCount());
+		assertEquals(0, stats.getFailureCount());
+		assertEquals(4, stats.getRowCount());
+		assertTrue(stats.getTotalPrepareTime() > 0);
+		assertEquals(1, this.collector.getConnectionCount());
+
+		it = this.template.queryForIterator(sql, new SingleColumnRowMapper<String>(String.class), 4);
+		it.close();
+		assertEquals(2, stats.getExecutionCount());
+		try {
+			this.template.queryForIterator("select NAME from T_BOGUS", new SingleColumnRowMapper<String>(String.class));
+			fail("Should have thrown DataAccessException");
+		}
+		catch (DataAccessException ex) {
+			// expected
+		}
+	}
+
+	@Test
+	public void staticStatementQuery() {
+		String sql = "select NAME from T_TEST";
+		this.template.queryForList(sql, String.class);
+		SqlStatistics stats = this.collector.getStatistics(sql);
+		assertEquals(1, stats.getExecutionCount());
+		assertEquals(10, stats.getRowCount());
+		assertEquals(0, stats.getTotalPrepareTime());
+	}
+
+	@Test
+	public void updateAndFailure() {
+		this.template.update("update T_TEST set NAME = ? where ID = ?", "x", 1);
+		try {
+			this.template.update("update T_BOGUS set NAME = ?", "x");
+			fail("Should have thrown DataAccessException");
+		}
+		catch (DataAccessException ex) {
+			// expected
+		}
+		try {
+			this.template.execute("drop table T_BOGUS");
+			fail("Should have thrown DataAccessException");
+		}
+		catch (DataAccessException ex) {
+			// expected
+		}
+		assertEquals(1, this.collector.getStatistics("update T_TEST set NAME = ? where ID = ?").getExecutionCount());
+		assertEquals(1, this.collector.getStatistics("drop table T_BOGUS").getFailureCount());
+		assertNull("Failed preparation is not an execution", this.collector.getStatistics("update T_BOGUS set NAME = ?"));
+	}
+
+	@Test
+	public void callableStatement() {
+		this.template.execute(new CallableStatementCreator() {
+			public CallableStatement createCallableStatement(Connection con) throws SQLException {
+				return con.prepareCall("call abs(-1)");
+			}
+		}, new CallableStatementCallback<Object>() {
+			public Object doInCallableStatement(CallableStatement cs) throws SQLException {
+				cs.execute();
+				return null;
+			}
+		});
+		SqlStatistics stats = this.collector.getStatistics(SqlStatisticsCollector.UNKNOWN_STATEMENT);
+		assertEquals(1, stats.getExecutionCount());
+		assertTrue(stats.getTotalPrepareTime() > 0);
+	}
+
+	@Test
+	public void namedParameterQuery() {
+		NamedParameterJdbcTemplate namedTemplate = new NamedParameterJdbcTemplate(this.template);
+		namedTemplate.queryForList("select NAME from T_TEST where ID < :id", new MapSqlParameterSource("id", 4), String.class);
+		SqlStatistics stats = this.collector.getStatistics("select NAME from T_TEST where ID < ?");
+		assertEquals(1, stats.getExecutionCount());
+		assertEquals(4, stats.getRowCount());
+	}
+
+	@Test
+	public void maxStatements() {
+		this.collector.setMaxStatements(2);
+		for (int i = 0; i < 5; i++) {
+			this.template.queryForInt("select count(*) from T_TEST where ID > " + i);
+		}
+		assertEquals(3, this.collector.getStatementCount());
+		assertEquals(3, this.collector.getStatistics(SqlStatisticsCollector.OTHER_STATEMENTS).getExecutionCount());
+		assertEquals(3, this.collector.getTopStatements(10).length);
+		assertEquals(1, this.collector.getTopStatements(1).length);
+	}
+
+	@Test
+	public void slowQueries() {
+		this.collector.setSlowQueryThreshold(1);
+		this.collector.statementExecuted("select 1", 5000000, true);
+		this.collector.statementExecuted("select 1", 500000, true);
+		assertEquals(1, this.collector.getSlowQueryCount());
+		this.collector.reset();
+		assertEquals(0, this.collector.getSlowQueryCount());
+		assertEquals(0, this.collector.getStatementCount());
+	}
+
+	@Test
+	public void noMonitor() {
+		this.template.setOperationMonitor(null);
+		assertEquals(10, this.template.queryForInt("select count(*) from T_TEST"));
+		assertEquals(0, this.collector.getStatementCount());
+		assertEquals(0, this.collector.getConnectionCount());
+	}
+
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.datasource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link PoolingDataSource} against an embedded database.
+ */
+public class PoolingDataSourceTests {
+
+	private EmbeddedDatabase database;
+
+	private PoolingDataSource dataSource;
+
+
+	@Before
+	public void setUp() {
+		this.database = new EmbeddedDatabaseBuilder().setPooled(false).build();
+		this.dataSource = new PoolingDataSource(this.database);
+	}
+
+	@After
+	public void tearDown() {
+		this.dataSource.destroy();
+		this.database.shutdown();
+	}
+
+
+	@Test
+	public void connectionIsReused() throws SQLException {
+		Connection con = this.dataSource.getConnection();
+		Connection target = ((ConnectionProxy) con).getTargetConnection();
+		assertEquals(1, this.dataSource.getActiveCount());
+		assertTrue(this.dataSource.shouldClose(con));
+		con.close();
+		assertTrue(con.isClosed());
+		assertFalse(target.isClosed());
+		assertEquals(0, this.dataSource.getActiveCount());
+		assertEquals(1, this.dataSource.getIdleCount());
+
+		Connection con2 = this.dataSource.getConnection();
+		assertNotSame(con, con2);
+		assertSame(target, ((ConnectionProxy) con2).getTargetConnection());
+		con2.close();
+		assertEquals(1, this.dataSource.getCreatedCount());
+		assertEquals(2, this.dataSource.getBorrowedCount());
+		assertEquals(2, this.dataSource.getBorrowTimeHistogram().getCount());
+	}
+
+	@Test
+	public void closedHandleCannotBeUsed() throws SQLException {
+		Connection con = this.dataSource.getConnection();
+		con.close();
+		con.close();
+		assertEquals(1, this.dataSource.getIdleCount());
+		try {
+			con.createStatement();
+			fail("Should have thrown SQLException");
+		}
+		catch (SQLException ex) {
+			// expected
+		}
+	}
+
+	@Test
+	public void minSizeIsEstablishedOnInitialization() {
+		this.dataSource.setMinSize(3);
+		this.dataSource.afterPropertiesSet();
+		assertEquals(3, this.dataSource.getTotalCount());
+		assertEquals(3, this.dataSource.getIdleCount());
+		this.dataSource.destroy();
+		assertEquals(0, this.dataSource.getTotalCount());
+		assertEquals(0, this.dataSource.getIdleCount());
+	}
+
+	@Test
+	public void maxSizeIsEnforced() throws SQLException {
+		this.dataSource.setMaxSize(2);
+		this.dataSource.setMaxWait(50);
+		Connection con1 = this.dataSource.getConnection();
+		Connection con2 = this.dataSource.getConnection();
+		try {
+			this.dataSource.getConnection();
+			fail("Should have thrown SQLException");
+		}
+		catch (SQLException ex) {
+			// expected
+		}
+		assertEquals(1, this.dataSource.getTimeoutCount());
+		assertEquals(2, this.dataSource.getPeakActiveCount());
+		con1.close();
+		Connection con3 = this.dataSource.getConnection();
+		con2.close();
+		con3.close();
+		assertEquals(2, this.dataSource.getTotalCount());
+		assertEquals(2, this.dataSource.getCreatedCount());
+	}
+
+	@Test
+	public void waitingRequestGetsReturnedConnection() throws Exception {
+		this.dataSource.setMaxSize(1);
+		final Connection con = this.dataSource.getConnection();
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(50);
+					con.close();
+				}
+				catch (Exception ex) {
+					throw new IllegalStateException(ex);
+				}
+			}
+		};
+		thread.start();
+		Connection con2 = this.dataSource.getConnection();
+		thread.join();
+		con2.close();
+		assertEquals(1, this.dataSource.getCreatedCount());
+		assertEquals(0, this.dataSource.getTimeoutCount());
+	}
+
+	@Test
+	public void connectionStateIsResetOnReturn() throws SQLException {
+		JdbcTemplate template = new JdbcTemplate(this.dataSource);
+		template.execute("create table T_TEST (ID integer not null)");
+		Connection con = this.dataSource.getConnection();
+		con.setAutoCommit(false);
+		con.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+		con.createStatement().executeUpdate("insert into T_TEST (ID) values (1)");
+		con.close();
+
+		Connection con2 = this.dataSource.getConnection();
+		assertTrue(con2.getAutoCommit());
+		assertEquals(Connection.TRANSACTION_READ_COMMITTED, con2.getTransactionIsolation());
+		con2.close();
+		assertEquals(0, template.queryForInt("select count(*) from T_TEST"));
+	}
+
+	@Test
+	public void invalidConnectionIsDiscardedOnBorrow() throws SQLException {
+		this.dataSource.setValidateOnBorrow(true);
+		this.dataSource.setValidationQuery("select count(*) from INFORMATION_SCHEMA.SYSTEM_USERS");
+		Connection con = this.dataSource.getConnection();
+		Connection target = ((ConnectionProxy) con).getTargetConnection();
+		con.close();
+		Connection con2 = this.dataSource.getConnection();
+		assertSame(target, ((ConnectionProxy) con2).getTargetConnection());
+		con2.close();
+
+		target.close();
+		Connection con3 = this.dataSource.getConnection();
+		assertNotSame(target, ((ConnectionProxy) con3).getTargetConnection());
+		con3.close();
+		assertEquals(1, this.dataSource.getValidationFailureCount());
+		assertEquals(1, this.dataSource.getTotalCount());
+	}
+
+	@Test
+	public void connectionsFromJdbc3DriverAreNotDiscarded() throws SQLException {
+		PoolingDataSource jdbc3DataSource = new PoolingDataSource(new DelegatingDataSource(this.database) {
+			@Override
+			public Connection getConnection() throws SQLException {
+				final Connection target = super.getConnection();
+				return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] {Connection.class},
+						new InvocationHandler() {
+							public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+								if (method.getName().equals("isValid")) {
+									throw new AbstractMethodError("isValid");
+								}
+								try {
+									return method.invoke(target, args);
+								}
+								catch (InvocationTargetException ex) {
+									throw ex.getTargetException();
+								}
+							}
+						});
+			}
+		});
+		jdbc3DataSource.setValidateOnBorrow(true);
+		try {
+			for (int i = 0; i < 3; i++) {
+				jdbc3DataSource.getConnection().close();
+			}
+			assertEquals(1, jdbc3DataSource.getCreatedCount());
+			assertEquals(0, jdbc3DataSource.getValidationFailureCount());
+		}
+		finally {
+			jdbc3DataSource.destroy();
+		}
+	}
+
+	@Test
+	public void validationIsSkippedWithinInterval() throws SQLException {
+		this.dataSource.setValidateOnBorrow(true);
+		this.dataSource.setValidationQuery("select bogus");
+		this.dataSource.setValidationInterval(60000);
+		this.dataSource.getConnection().close();
+		this.dataSource.getConnection().close();
+		assertEquals(0, this.dataSource.getValidationFailureCount());
+		assertEquals(1, this.dataSource.getCreatedCount());
+	}
+
+	@Test
+	public void leakIsDetected() throws Exception {
+		this.dataSource.setLeakDetectionThreshold(10);
+		Connection con = this.dataSource.getConnection();
+		assertEquals(0, this.dataSource.detectLeaks());
+		Thread.sleep(50);
+		assertEquals(1, this.dataSource.detectLeaks());
+		assertEquals(0, this.dataSource.detectLeaks());
+		con.close();
+		assertEquals(1, this.dataSource.getLeakCount());
+
+		con = this.dataSource.getConnection();
+		Thread.sleep(50);
+		con.close();
+		assertEquals(2, this.dataSource.getLeakCount());
+	}
+
+	@Test
+	public void connectionReturnedAfterDestroyIsClosed() throws SQLException {
+		Connection con = this.dataSource.getConnection();
+		Connection target = ((ConnectionProxy) con).getTargetConnection();
+		this.dataSource.destroy();
+		con.close();
+		assertTrue(target.isClosed());
+		assertEquals(0, this.dataSource.getTotalCount());
+		try {
+			this.dataSource.getConnection();
+			fail("Should have thrown SQLException");
+		}
+		catch (SQLException ex) {
+			// expected
+		}
+	}
+
+	@Test
+	public void embeddedDatabaseIsPooledByDefault() throws SQLException {
+		EmbeddedDatabase pooled = new EmbeddedDatabaseBuilder().setName("pooled").build();
+		try {
+			assertTrue(pooled.unwrap(PoolingDataSource.class) != null);
+			assertTrue(new JdbcTemplate(pooled).queryForInt("select count(*) from INFORMATION_SCHEMA.SYSTEM_USERS") > 0);
+		}
+		finally {
+			pooled.shutdown();
+		}
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,15 +17,23 @@
 package org.springframework.jdbc.datasource.init;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
 import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.sql.DataSource;
 
 import org.junit.After;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.ClassRelativeResourceLoader;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.support.EncodedResource;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
@@ -33,6 +41,7 @@ import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
 /**
  * @author Dave Syer
  * @author Sam Brannen
+ * @author Juergen Hoeller
  */
 public class DatabasePopulatorTests {
 
@@ -85,4 +94,134 @@ public class DatabasePopulatorTests {
 		assertUsersDatabaseCreated(db);
 	}
 
+	@Test
+	public void scriptWithManyInsertsIsBatched() throws Exception {
+		StringBuilder script = new StringBuilder("create table T_TEST (ID integer not null, NAME varchar(50) not null);\n");
+		for (int i = 0; i < 1000; i++) {
+			script.append("insert into T_TEST (ID, NAME) values (").append(i).append(", 'name;").append(i).append("');\n");
+		}
+		script.append("update T_TEST set NAME = 'last' where ID = 999;\n");
+		databasePopulator.addScript(new ByteArrayResource(script.toString().getBytes()));
+		databasePopulator.setBatchSize(64);
+		databasePopulator.setProgressInterval(250);
+		RecordingListener listener = new RecordingListener();
+		databasePopulator.setScriptExecutionListener(listener);
+		Connection connection = db.getConnection();
+		try {
+			databasePopulator.populate(connection);
+		} finally {
+			connection.close();
+		}
+
+		assertEquals(1000, jdbcTemplate.queryForInt("select count(*) from T_TEST"));
+		assertEquals("name;500", jdbcTemplate.queryForObject("select NAME from T_TEST where ID = 500", String.class));
+		assertEquals("last", jdbcTemplate.queryForObject("select NAME from T_TEST where ID = 999", String.class));
+		assertEquals(4, listener.progressCounts.size());
+		assertEquals(Integer.valueOf(1000), listener.progressCounts.get(3));
+		assertEquals(1002, listener.totalCount);
+	}
+
+	@Test
+	public void failedStatementInBatchIsReported() throws Exception {
+		String script = "create table T_TEST (ID integer primary key);\n" +
+				"insert into T_TEST (ID) values (1);\n" +
+				"insert into T_TEST (ID) values (2);\n" +
+				"insert into T_TEST (ID) values (1);\n" +
+				"insert into T_TEST (ID) values (3);\n";
+		databasePopulator.addScript(new ByteArrayResource(script.getBytes()));
+		Connection connection = db.getConnection();
+		try {
+			databasePopulator.populate(connection);
+			fail("Should have thrown ScriptStatementFailedException");
+		} catch (ScriptStatementFailedException ex) {
+			assertTrue(ex.getMessage().contains("at line 4 "));
+		} finally {
+			connection.close();
+		}
+	}
+
+	@Test
+	public void failedStatementInBatchWithContinueOnError() throws Exception {
+		String script = "create table T_TEST (ID integer primary key);\n" +
+				"insert into T_TEST (ID) values (1);\n" +
+				"insert into T_TEST (ID) values (1);\n" +
+				"insert into T_TEST (ID) values (2);\n" +
+				"insert into T_TEST (ID) values (3);\n";
+		databasePopulator.addScript(new ByteArrayResource(script.getBytes()));
+		databasePopulator.setContinueOnError(true);
+		Connection connection = db.getConnection();
+		try {
+			databasePopulator.populate(connection);
+		} finally {
+			connection.close();
+		}
+
+		assertEquals(3, jdbcTemplate.queryForInt("select count(*) from T_TEST"));
+	}
+
+	@Test
+	public void scriptWithStatementPerLine() throws Exception {
+		String script = "create table T_TEST (NAME varchar(50) not null)\n" +
+				"-- comment\n" +
+				"\n" +
+				"insert into T_TEST (NAME) values ('Keith')\n";
+		databasePopulator.addScript(new ByteArrayResource(script.getBytes()));
+		Connection connection = db.getConnection();
+		try {
+			databasePopulator.populate(connection);
+		} finally {
+			connection.close();
+		}
+
+		assertTestDatabaseCreated();
+	}
+
+	@Test
+	public void scriptFromInputStreamWithStatementPerLine() throws Exception {
+		String script = "create table T_TEST (NAME varchar(50) not null)\n" +
+				"insert into T_TEST (NAME) values ('Keith;')\n" +
+				"insert into T_TEST (NAME) values ('Juergen')\n";
+		databasePopulator.addScript(new InputStreamResource(new ByteArrayInputStream(script.getBytes())));
+		Connection connection = db.getConnection();
+		try {
+			databasePopulator.populate(connection);
+		} finally {
+			connection.close();
+		}
+
+		assertEquals(1, jdbcTemplate.queryForInt("select count(*) from T_TEST where NAME='Keith;'"));
+		assertEquals(2, jdbcTemplate.queryForInt("select count(*) from T_TEST"));
+	}
+
+	@Test
+	public void scriptFromInputStreamWithDelimiters() throws Exception {
+		String script = "create table T_TEST\n(NAME varchar(50) not null);\n" +
+				"insert into T_TEST (NAME)\nvalues ('Keith');";
+		databasePopulator.addScript(new InputStreamResource(new ByteArrayInputStream(script.getBytes())));
+		Connection connection = db.getConnection();
+		try {
+			databasePopulator.populate(connection);
+		} finally {
+			connection.close();
+		}
+
+		assertTestDatabaseCreated();
+	}
+
+
+	private static class RecordingListener implements ScriptExecutionListener {
+
+		private final List<Integer> progressCounts = new ArrayList<Integer>();
+
+		private int totalCount;
+
+		public void statementsExecuted(EncodedResource resource, int statementCount, long elapsedTime) {
+			this.progressCounts.add(statementCount);
+		}
+
+		public void scriptExecuted(EncodedResource resource, int statementCount, long elapsedTime) {
+			this.totalCount = statementCount;
+		}
+	}
+
 }
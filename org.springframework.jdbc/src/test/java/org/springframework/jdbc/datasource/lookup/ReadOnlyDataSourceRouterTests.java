@@ -0,0 +1,237 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.datasource.lookup;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.ConnectionProxy;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link ReadOnlyDataSourceRouter}.
+ */
+public class ReadOnlyDataSourceRouterTests {
+
+	private final List<EmbeddedDatabase> databases = new ArrayList<EmbeddedDatabase>();
+
+	private DataSource primary;
+
+	private FailingDataSource replica1;
+
+	private FailingDataSource replica2;
+
+
+	@Before
+	public void setUp() {
+		this.primary = createDatabase("primary");
+		this.replica1 = new FailingDataSource(createDatabase("replica1"));
+		this.replica2 = new FailingDataSource(createDatabase("replica2"));
+	}
+
+	@After
+	public void tearDown() {
+		for (EmbeddedDatabase database : this.databases) {
+			database.shutdown();
+		}
+	}
+
+	private DataSource createDatabase(String name) {
+		EmbeddedDatabase database = new EmbeddedDatabaseBuilder().setName(name + "Router").build();
+		this.databases.add(database);
+		JdbcTemplate template = new JdbcTemplate(database);
+		template.execute("create table db (name varchar(20))");
+		template.update("insert into db (name) values (?)", name);
+		return database;
+	}
+
+	private ReadOnlyDataSourceRouter createRouter(ReadOnlyDataSourceRouter.LoadBalancingPolicy policy) {
+		ReadOnlyDataSourceRouter router = new ReadOnlyDataSourceRouter();
+		router.setPrimaryDataSource(this.primary);
+		router.setReplicaDataSources(Arrays.<DataSource>asList(this.replica1, this.replica2));
+		router.setLoadBalancingPolicy(policy);
+		router.afterPropertiesSet();
+		return router;
+	}
+
+	private String queryDatabaseName(Connection con) throws SQLException {
+		Statement stmt = con.createStatement();
+		try {
+			ResultSet rs = stmt.executeQuery("select name from db");
+			rs.next();
+			return rs.getString(1);
+		}
+		finally {
+			stmt.close();
+		}
+	}
+
+	private String queryDatabaseName(DataSource router, boolean readOnly) {
+		TransactionTemplate tt = new TransactionTemplate(new DataSourceTransactionManager(router));
+		tt.setReadOnly(readOnly);
+		final JdbcTemplate template = new JdbcTemplate(router);
+		return tt.execute(new TransactionCallback<String>() {
+			public String doInTransaction(TransactionStatus status) {
+				return template.queryForObject("select name from db", String.class);
+			}
+		});
+	}
+
+
+	@Test
+	public void readWriteTransactionsGoToPrimary() {
+		ReadOnlyDataSourceRouter router = createRouter(ReadOnlyDataSourceRouter.LoadBalancingPolicy.ROUND_ROBIN);
+		assertEquals("primary", queryDatabaseName(router, false));
+		assertEquals("primary", queryDatabaseName(router, false));
+		assertEquals("primary", new JdbcTemplate(router).queryForObject("select name from db", String.class));
+		assertEquals(0, router.getReplicaConnectionCount());
+	}
+
+	@Test
+	public void readOnlyTransactionsRoundRobin() {
+		ReadOnlyDataSourceRouter router = createRouter(ReadOnlyDataSourceRouter.LoadBalancingPolicy.ROUND_ROBIN);
+		String first = queryDatabaseName(router, true);
+		String second = queryDatabaseName(router, true);
+		String third = queryDatabaseName(router, true);
+		assertTrue(first.startsWith("replica"));
+		assertTrue(second.startsWith("replica"));
+		assertFalse(first.equals(second));
+		assertEquals(first, third);
+		assertEquals(3, router.getReplicaConnectionCount());
+	}
+
+	@Test
+	public void readOnlyTransactionsLeastConnections() throws SQLException {
+		ReadOnlyDataSourceRouter router = createRouter(ReadOnlyDataSourceRouter.LoadBalancingPolicy.LEAST_CONNECTIONS);
+		ReadOnlyDataSourceRouter nonLazyRouter = new ReadOnlyDataSourceRouter() {
+			@Override
+			protected boolean isReadOnlyRequest() {
+				return true;
+			}
+		};
+		nonLazyRouter.setPrimaryDataSource(this.primary);
+		nonLazyRouter.setReplicaDataSources(Arrays.<DataSource>asList(this.replica1, this.replica2));
+		nonLazyRouter.setLoadBalancingPolicy(ReadOnlyDataSourceRouter.LoadBalancingPolicy.LEAST_CONNECTIONS);
+		nonLazyRouter.setLazyConnectionFetching(false);
+		nonLazyRouter.afterPropertiesSet();
+
+		// Keep a Connection to one replica open: all further Connections go to the other.
+		Connection held = nonLazyRouter.getConnection();
+		assertTrue(held instanceof ConnectionProxy);
+		String heldName = queryDatabaseName(held);
+		for (int i = 0; i < 4; i++) {
+			Connection con = nonLazyRouter.getConnection();
+			assertFalse(heldName.equals(queryDatabaseName(con)));
+			con.close();
+		}
+		held.close();
+
+		// Both replicas idle again: Connections get spread across both.
+		Connection con1 = nonLazyRouter.getConnection();
+		Connection con2 = nonLazyRouter.getConnection();
+		assertFalse(queryDatabaseName(con1).equals(queryDatabaseName(con2)));
+		con1.close();
+		con2.close();
+
+		assertTrue(queryDatabaseName(router, true).startsWith("replica"));
+	}
+
+	@Test
+	public void failedReplicaSkippedUntilHealthy() {
+		ReadOnlyDataSourceRouter router = createRouter(ReadOnlyDataSourceRouter.LoadBalancingPolicy.ROUND_ROBIN);
+		router.setValidationQuery("select count(*) from db");
+		this.replica1.failing = true;
+		for (int i = 0; i < 4; i++) {
+			assertEquals("replica2", queryDatabaseName(router, true));
+		}
+		assertEquals(1, router.getAvailableReplicaCount());
+		assertEquals(1, router.checkReplicaHealth());
+
+		this.replica1.failing = false;
+		assertEquals(2, router.checkReplicaHealth());
+		assertEquals(2, router.getAvailableReplicaCount());
+		assertFalse(queryDatabaseName(router, true).equals(queryDatabaseName(router, true)));
+	}
+
+	@Test
+	public void fallbackToPrimary() {
+		ReadOnlyDataSourceRouter router = createRouter(ReadOnlyDataSourceRouter.LoadBalancingPolicy.ROUND_ROBIN);
+		this.replica1.failing = true;
+		this.replica2.failing = true;
+		assertEquals("primary", queryDatabaseName(router, true));
+		assertEquals(1, router.getFallbackCount());
+		assertEquals(0, router.getAvailableReplicaCount());
+	}
+
+	@Test
+	public void noFallbackToPrimary() {
+		ReadOnlyDataSourceRouter router = createRouter(ReadOnlyDataSourceRouter.LoadBalancingPolicy.ROUND_ROBIN);
+		router.setFallbackToPrimary(false);
+		this.replica1.failing = true;
+		this.replica2.failing = true;
+		try {
+			queryDatabaseName(router, true);
+			fail("Should have thrown DataAccessException");
+		}
+		catch (DataAccessException ex) {
+			assertTrue(ex.getRootCause().getMessage().startsWith("No replica DataSource available"));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void primaryRequired() {
+		new ReadOnlyDataSourceRouter().afterPropertiesSet();
+	}
+
+
+	private static class FailingDataSource extends DelegatingDataSource {
+
+		private volatile boolean failing;
+
+		public FailingDataSource(DataSource targetDataSource) {
+			super(targetDataSource);
+		}
+
+		@Override
+		public Connection getConnection() throws SQLException {
+			if (this.failing) {
+				throw new SQLException("Replica down");
+			}
+			return super.getConnection();
+		}
+	}
+}
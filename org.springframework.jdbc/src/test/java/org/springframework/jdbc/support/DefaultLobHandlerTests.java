@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2005 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -26,11 +26,13 @@ import java.sql.SQLException;
 import java.sql.ResultSet;
 
 import junit.framework.TestCase;
+import org.easymock.AbstractMatcher;
 import org.easymock.MockControl;
 
 import org.springframework.jdbc.support.lob.DefaultLobHandler;
 import org.springframework.jdbc.support.lob.LobCreator;
 import org.springframework.jdbc.support.lob.LobHandler;
+import org.springframework.util.FileCopyUtils;
 
 /**
  * @author Juergen Hoeller
@@ -158,4 +160,68 @@ public class DefaultLobHandlerTests extends TestCase {
 		psControl.verify();
 	}
 
+	public void testSetBlobAsBinaryStreamWithUnknownLength() throws SQLException, IOException {
+		DefaultLobHandler lobHandler = new DefaultLobHandler();
+		lobHandler.setSpoolThreshold(4);
+		LobCreator lobCreator = lobHandler.getLobCreator();
+		StreamCapturingMatcher matcher = new StreamCapturingMatcher();
+
+		MockControl psControl = MockControl.createControl(PreparedStatement.class);
+		PreparedStatement ps = (PreparedStatement) psControl.getMock();
+		ps.setBinaryStream(1, null, 11);
+		psControl.setMatcher(matcher);
+		psControl.replay();
+
+		lobCreator.setBlobAsBinaryStream(ps, 1, new ByteArrayInputStream("testContent".getBytes()), -1);
+		psControl.verify();
+		assertEquals("testContent", new String(FileCopyUtils.copyToByteArray((InputStream) matcher.stream)));
+		lobCreator.close();
+	}
+
+	public void testSetClobAsCharacterStreamWithUnknownLength() throws SQLException, IOException {
+		LobCreator lobCreator = (new DefaultLobHandler()).getLobCreator();
+		StreamCapturingMatcher matcher = new StreamCapturingMatcher();
+
+		MockControl psControl = MockControl.createControl(PreparedStatement.class);
+		PreparedStatement ps = (PreparedStatement) psControl.getMock();
+		ps.setCharacterStream(1, null, 11);
+		psControl.setMatcher(matcher);
+		psControl.replay();
+
+		lobCreator.setClobAsCharacterStream(ps, 1, new StringReader("testContent"), -1);
+		psControl.verify();
+		assertEquals("testContent", FileCopyUtils.copyToString((Reader) matcher.stream));
+		lobCreator.close();
+	}
+
+	public void testSetBlobAsBinaryStreamWithUnknownLengthAndStreamAsLob() throws SQLException, IOException {
+		DefaultLobHandler lobHandler = new DefaultLobHandler();
+		lobHandler.setStreamAsLob(true);
+		LobCreator lobCreator = lobHandler.getLobCreator();
+		InputStream bis = new ByteArrayInputStream("testContent".getBytes());
+
+		MockControl psControl = MockControl.createControl(PreparedStatement.class);
+		PreparedStatement ps = (PreparedStatement) psControl.getMock();
+		ps.setBlob(1, bis);
+		psControl.replay();
+
+		lobCreator.setBlobAsBinaryStream(ps, 1, bis, -1);
+		psControl.verify();
+	}
+
+
+	/**
+	 * Matcher that checks parameter index and length, remembering the stream for inspection.
+	 */
+	private static class StreamCapturingMatcher extends AbstractMatcher {
+
+		public Object stream;
+
+		@Override
+		public boolean matches(Object[] expected, Object[] actual) {
+			this.stream = actual[1];
+			return (expected[0].equals(actual[0]) && expected[2].equals(actual[2]));
+		}
+	}
+
 }
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.support;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.support.incrementer.DataFieldMaxValueIncrementer;
+import org.springframework.jdbc.support.incrementer.HsqlSequenceMaxValueIncrementer;
+import org.springframework.jdbc.support.incrementer.PooledMaxValueIncrementer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link PooledMaxValueIncrementer}.
+ */
+public class PooledMaxValueIncrementerTests {
+
+	@Test
+	public void hiLoAllocation() {
+		CountingIncrementer target = new CountingIncrementer(1);
+		PooledMaxValueIncrementer incrementer = new PooledMaxValueIncrementer(target, 10);
+		for (long i = 10; i < 35; i++) {
+			assertEquals(i, incrementer.nextLongValue());
+		}
+		assertEquals(3, target.count.get());
+		assertEquals(25, incrementer.getKeyCount());
+		assertEquals(3, incrementer.getFetchCount());
+		assertEquals(3.0 / 25, incrementer.getFetchesPerKey(), 0.0001);
+	}
+
+	@Test
+	public void sequenceIncrementAllocation() {
+		CountingIncrementer target = new CountingIncrementer(10);
+		PooledMaxValueIncrementer incrementer = new PooledMaxValueIncrementer(target, 10);
+		incrementer.setHiLo(false);
+		for (long i = 10; i < 35; i++) {
+			assertEquals(i, incrementer.nextLongValue());
+		}
+		assertEquals(3, target.count.get());
+	}
+
+	@Test
+	public void stringAndIntValues() {
+		PooledMaxValueIncrementer incrementer = new PooledMaxValueIncrementer(new CountingIncrementer(1), 5);
+		incrementer.setPaddingLength(4);
+		assertEquals("0005", incrementer.nextStringValue());
+		assertEquals(6, incrementer.nextIntValue());
+	}
+
+	@Test
+	public void concurrentAllocation() throws InterruptedException {
+		CountingIncrementer target = new CountingIncrementer(1);
+		final PooledMaxValueIncrementer incrementer = new PooledMaxValueIncrementer(target, 7);
+		final Set<Long> keys = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 8; i++) {
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 1000; j++) {
+						keys.add(incrementer.nextLongValue());
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(8000, keys.size());
+		assertEquals(8000, incrementer.getKeyCount());
+		assertTrue(target.count.get() >= 8000 / 7);
+		assertTrue(target.count.get() <= 8000 / 7 + 8);
+	}
+
+	@Test
+	public void asynchronousPrefetch() throws InterruptedException {
+		CountingIncrementer target = new CountingIncrementer(1);
+		PooledMaxValueIncrementer incrementer = new PooledMaxValueIncrementer(target, 10);
+		incrementer.setPrefetchExecutor(new SimpleAsyncTaskExecutor());
+		incrementer.setPrefetchThreshold(3);
+		for (long i = 10; i < 18; i++) {
+			assertEquals(i, incrementer.nextLongValue());
+		}
+		for (int i = 0; i < 100 && target.count.get() < 2; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(1, incrementer.getPrefetchCount());
+		assertEquals(2, target.count.get());
+		for (long i = 18; i < 21; i++) {
+			assertEquals(i, incrementer.nextLongValue());
+		}
+		assertEquals(2, incrementer.getFetchCount());
+	}
+
+	@Test
+	public void failedPrefetchFallsBackToSynchronousFetch() {
+		CountingIncrementer target = new CountingIncrementer(1) {
+			@Override
+			public long nextLongValue() {
+				if (Thread.currentThread().getName().startsWith("prefetch")) {
+					throw new DataAccessResourceFailureException("prefetch failure");
+				}
+				return super.nextLongValue();
+			}
+		};
+		PooledMaxValueIncrementer incrementer = new PooledMaxValueIncrementer(target, 4);
+		incrementer.setPrefetchExecutor(new SimpleAsyncTaskExecutor("prefetch"));
+		for (long i = 4; i < 12; i++) {
+			assertEquals(i, incrementer.nextLongValue());
+		}
+		assertEquals(2, target.count.get());
+	}
+
+	@Test
+	public void withSequenceIncrementer() {
+		EmbeddedDatabase database = new EmbeddedDatabaseBuilder().build();
+		try {
+			new JdbcTemplate(database).execute("create sequence key_seq start with 1");
+			PooledMaxValueIncrementer incrementer = new PooledMaxValueIncrementer(
+					new HsqlSequenceMaxValueIncrementer(database, "key_seq"), 100);
+			assertEquals(100, incrementer.nextLongValue());
+			for (int i = 0; i < 150; i++) {
+				incrementer.nextLongValue();
+			}
+			assertEquals(251, incrementer.nextLongValue());
+			assertEquals(2, incrementer.getFetchCount());
+		}
+		finally {
+			database.shutdown();
+		}
+	}
+
+
+	private static class CountingIncrementer implements DataFieldMaxValueIncrementer {
+
+		private final int increment;
+
+		private final AtomicLong count = new AtomicLong();
+
+		public CountingIncrementer(int increment) {
+			this.increment = increment;
+		}
+
+		public int nextIntValue() throws DataAccessException {
+			return (int) nextLongValue();
+		}
+
+		public long nextLongValue() throws DataAccessException {
+			return this.count.incrementAndGet() * this.increment;
+		}
+
+		public String nextStringValue() throws DataAccessException {
+			return Long.toString(nextLongValue());
+		}
+	}
+
+}
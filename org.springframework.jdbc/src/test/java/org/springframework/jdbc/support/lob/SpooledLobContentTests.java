@@ -0,0 +1,92 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.support.lob;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import org.springframework.util.FileCopyUtils;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link SpooledLobContent}.
+ */
+public class SpooledLobContentTests {
+
+	@Test
+	public void binaryContentBelowThreshold() throws IOException {
+		byte[] content = "testContent".getBytes();
+		SpooledLobContent spooled = SpooledLobContent.spoolBinaryStream(new ByteArrayInputStream(content), 100);
+		assertFalse(spooled.isSpilled());
+		assertEquals(11, spooled.getLength());
+		assertTrue(Arrays.equals(content, FileCopyUtils.copyToByteArray(spooled.getBinaryStream())));
+		spooled.dispose();
+	}
+
+	@Test
+	public void binaryContentAboveThreshold() throws IOException {
+		byte[] content = new byte[100000];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) i;
+		}
+		SpooledLobContent spooled = SpooledLobContent.spoolBinaryStream(new ByteArrayInputStream(content), 10000);
+		assertTrue(spooled.isSpilled());
+		assertEquals(content.length, spooled.getLength());
+		assertTrue(Arrays.equals(content, FileCopyUtils.copyToByteArray(spooled.getBinaryStream())));
+		assertTrue("Content should be re-readable",
+				Arrays.equals(content, FileCopyUtils.copyToByteArray(spooled.getBinaryStream())));
+		spooled.dispose();
+	}
+
+	@Test
+	public void characterContentBelowThreshold() throws IOException {
+		SpooledLobContent spooled = SpooledLobContent.spoolCharacterStream(new StringReader("testContent"), 100);
+		assertFalse(spooled.isSpilled());
+		assertEquals(11, spooled.getLength());
+		assertEquals("testContent", FileCopyUtils.copyToString(spooled.getCharacterStream()));
+		spooled.dispose();
+	}
+
+	@Test
+	public void characterContentAboveThreshold() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			sb.append("content \u00e4\u00f6\u00fc\u20ac ");
+		}
+		String content = sb.toString();
+		SpooledLobContent spooled = SpooledLobContent.spoolCharacterStream(new StringReader(content), 1000);
+		assertTrue(spooled.isSpilled());
+		assertEquals(content.length(), spooled.getLength());
+		assertEquals(content, FileCopyUtils.copyToString(spooled.getCharacterStream()));
+		spooled.dispose();
+	}
+
+	@Test
+	public void contentExactlyAtThreshold() throws IOException {
+		byte[] content = new byte[8192];
+		SpooledLobContent spooled = SpooledLobContent.spoolBinaryStream(new ByteArrayInputStream(content), 8192);
+		assertFalse(spooled.isSpilled());
+		assertEquals(8192, spooled.getLength());
+		spooled.dispose();
+	}
+
+}
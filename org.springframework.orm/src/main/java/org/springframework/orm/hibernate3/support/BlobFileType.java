@@ -0,0 +1,154 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.orm.hibernate3.support;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import javax.transaction.TransactionManager;
+
+import org.springframework.jdbc.support.lob.LobCreator;
+import org.springframework.jdbc.support.lob.LobHandler;
+import org.springframework.util.FileCopyUtils;
+
+/**
+ * Hibernate UserType implementation for files whose content gets mapped to BLOBs.
+ * Streams the content in both directions, never holding the entire BLOB in memory:
+ * suitable for BLOBs that are too large for {@link BlobByteArrayType}.
+ *
+ * <p>On write, the content of the given file is passed to the LobCreator as binary
+ * stream, along with the file length; files larger than 2 GB are not supported.
+ * On read, the BLOB content is streamed into a newly created temporary file.
+ * The caller owns that file: it is responsible for deleting the file after use,
+ * or for moving it to a different location in order to keep the content.
+ * As a backstop, temporary files get deleted on normal termination of the JVM
+ * (see {@link File#deleteOnExit()}); files moved elsewhere are not affected.
+ *
+ * @since 3.1
+ * @see org.springframework.orm.hibernate3.SessionFactoryBuilder#setLobHandler
+ */
+public class BlobFileType extends AbstractLobType {
+
+	private static final String TEMP_FILE_PREFIX = "spring-blob";
+
+
+	/**
+	 * Constructor used by Hibernate: fetches config-time LobHandler and
+	 * config-time JTA TransactionManager from SessionFactoryBuilder.
+	 * @see org.springframework.orm.hibernate3.SessionFactoryBuilder#getConfigTimeLobHandler
+	 * @see org.springframework.orm.hibernate3.SessionFactoryBuilder#getConfigTimeTransactionManager
+	 */
+	public BlobFileType() {
+		super();
+	}
+
+	/**
+	 * Constructor used for testing: takes an explicit LobHandler
+	 * and an explicit JTA TransactionManager (can be <code>null</code>).
+	 */
+	protected BlobFileType(LobHandler lobHandler, TransactionManager jtaTransactionManager) {
+		super(lobHandler, jtaTransactionManager);
+	}
+
+	public int[] sqlTypes() {
+		return new int[] {Types.BLOB};
+	}
+
+	public Class<?> returnedClass() {
+		return File.class;
+	}
+
+	@Override
+	protected Object nullSafeGetInternal(
+			ResultSet rs, String[] names, Object owner, LobHandler lobHandler)
+			throws SQLException, IOException {
+
+		InputStream is = lobHandler.getBlobAsBinaryStream(rs, names[0]);
+		if (is == null) {
+			return null;
+		}
+		File file = File.createTempFile(TEMP_FILE_PREFIX, ".tmp");
+		file.deleteOnExit();
+		try {
+			FileCopyUtils.copy(is, new FileOutputStream(file));
+		}
+		catch (IOException ex) {
+			file.delete();
+			throw ex;
+		}
+		return file;
+	}
+
+	@Override
+	protected void nullSafeSetInternal(
+			PreparedStatement ps, int index, Object value, LobCreator lobCreator)
+			throws SQLException, IOException {
+
+		if (value != null) {
+			File file = (File) value;
+			long length = file.length();
+			if (length > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("File [" + file + "] too large for BLOB: " + length +
+						" bytes exceed maximum stream length of " + Integer.MAX_VALUE + " bytes");
+			}
+			lobCreator.setBlobAsBinaryStream(ps, index, new AutoClosingInputStream(new FileInputStream(file)),
+					(int) length);
+		}
+		else {
+			lobCreator.setBlobAsBinaryStream(ps, index, null, 0);
+		}
+	}
+
+
+	/**
+	 * InputStream decorator that closes the target stream once it has been
+	 * read completely, since the JDBC driver will consume the stream at some
+	 * point during statement execution without closing it.
+	 */
+	private static class AutoClosingInputStream extends FilterInputStream {
+
+		public AutoClosingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			return checkEnd(super.read());
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return checkEnd(super.read(b, off, len));
+		}
+
+		private int checkEnd(int result) throws IOException {
+			if (result == -1) {
+				close();
+			}
+			return result;
+		}
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2006 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,6 +18,9 @@ package org.springframework.orm.hibernate3.support;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.sql.PreparedStatement;
@@ -32,6 +35,7 @@ import javax.transaction.Synchronization;
 import javax.transaction.TransactionManager;
 
 import junit.framework.TestCase;
+import org.easymock.AbstractMatcher;
 import org.easymock.MockControl;
 import org.easymock.internal.ArrayMatcher;
 import org.hibernate.SessionFactory;
@@ -43,6 +47,7 @@ import org.springframework.orm.hibernate3.SessionFactoryUtils;
 import org.springframework.transaction.MockJtaTransaction;
 import org.springframework.transaction.support.TransactionSynchronization;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.FileCopyUtils;
 
 /**
  * @author Juergen Hoeller
@@ -441,6 +446,73 @@ public class LobTypeTests extends TestCase {
 		tmControl.verify();
 	}
 
+	public void testBlobFileType() throws Exception {
+		byte[] content = "content".getBytes();
+		lobHandler.getBlobAsBinaryStream(rs, "column");
+		lobHandlerControl.setReturnValue(new ByteArrayInputStream(content));
+		lobCreator.setBlobAsBinaryStream(ps, 1, null, 7);
+		lobCreatorControl.setMatcher(new AbstractMatcher() {
+			@Override
+			public boolean matches(Object[] expected, Object[] actual) {
+				try {
+					return (expected[0] == actual[0] && expected[1].equals(actual[1]) && expected[3].equals(actual[3]) &&
+							"content".equals(new String(FileCopyUtils.copyToByteArray((InputStream) actual[2]))));
+				}
+				catch (IOException ex) {
+					throw new IllegalStateException(ex);
+				}
+			}
+		});
+		lobCreatorControl.setVoidCallable(1);
+
+		lobHandlerControl.replay();
+		lobCreatorControl.replay();
+
+		BlobFileType type = new BlobFileType(lobHandler, null);
+		assertEquals(1, type.sqlTypes().length);
+		assertEquals(Types.BLOB, type.sqlTypes()[0]);
+		assertEquals(File.class, type.returnedClass());
+		assertFalse(type.isMutable());
+
+		File file = (File) type.nullSafeGet(rs, new String[] {"column"}, null);
+		try {
+			assertTrue(Arrays.equals(content, FileCopyUtils.copyToByteArray(file)));
+			TransactionSynchronizationManager.initSynchronization();
+			try {
+				type.nullSafeSet(ps, file, 1);
+				List synchs = TransactionSynchronizationManager.getSynchronizations();
+				assertEquals(1, synchs.size());
+				((TransactionSynchronization) synchs.get(0)).beforeCompletion();
+				((TransactionSynchronization) synchs.get(0)).afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+			}
+			finally {
+				TransactionSynchronizationManager.clearSynchronization();
+			}
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	public void testBlobFileTypeWithTooLargeFile() throws Exception {
+		lobHandlerControl.replay();
+
+		BlobFileType type = new BlobFileType(lobHandler, null);
+		File file = new File("large.bin") {
+			@Override
+			public long length() {
+				return Integer.MAX_VALUE + 1L;
+			}
+		};
+		try {
+			type.nullSafeSet(ps, file, 1);
+			fail("Should have thrown IllegalArgumentException");
+		}
+		catch (IllegalArgumentException ex) {
+			assertTrue(ex.getMessage().indexOf("large.bin") != -1);
+		}
+	}
+
 	public void testBlobSerializableType() throws Exception {
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
 		ObjectOutputStream oos = new ObjectOutputStream(baos);
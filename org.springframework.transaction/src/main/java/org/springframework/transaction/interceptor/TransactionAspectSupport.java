@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,7 +17,13 @@
 package org.springframework.transaction.interceptor;
 
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -32,6 +38,8 @@ import org.springframework.transaction.NoTransactionException;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.util.Assert;
 import org.springframework.util.ClassUtils;
 import org.springframework.util.StringUtils;
 
@@ -52,6 +60,10 @@ import org.springframework.util.StringUtils;
  * implementation will perform the actual transaction management, and a
  * <code>TransactionAttributeSource</code> is used for determining transaction definitions.
  *
+ * <p>Transaction attributes and names may be {@link #precomputeTransactionAttributes
+ * precomputed} for all methods of a target class, reducing the per-invocation lookup
+ * to a plain map access without any key or String allocation.
+ *
  * <p>A transaction aspect is serializable if its <code>PlatformTransactionManager</code>
  * and <code>TransactionAttributeSource</code> are serializable.
  *
@@ -124,6 +136,17 @@ public abstract class TransactionAspectSupport implements BeanFactoryAware, Init
 
 	private BeanFactory beanFactory;
 
+	private boolean precomputeTransactionAttributes = false;
+
+	/**
+	 * Transaction attributes precomputed per target class and method, as
+	 * copy-on-write map with the target class identity as key.
+	 */
+	private volatile Map<Class<?>, Map<Method, MethodTransactionAttribute>> precomputedAttributes =
+			new IdentityHashMap<Class<?>, Map<Method, MethodTransactionAttribute>>(0);
+
+	private final Object precomputationMonitor = new Object();
+
 
 	/**
 	 * Specify the name of the default transaction manager bean.
@@ -217,6 +240,88 @@ public abstract class TransactionAspectSupport implements BeanFactoryAware, Init
 		return this.beanFactory;
 	}
 
+	/**
+	 * Set whether to precompute the transaction attributes for all methods of
+	 * a target class on the first invocation with that target class, instead of
+	 * looking up the attribute for the invoked method on each invocation.
+	 * <p>Default is "false". Switch this to "true" for an aspect which is shared
+	 * between many proxies, e.g. through auto-proxying, when the transaction
+	 * attribute source is static.
+	 * @see #precomputeTransactionAttributes(Class)
+	 */
+	public void setPrecomputeTransactionAttributes(boolean precomputeTransactionAttributes) {
+		this.precomputeTransactionAttributes = precomputeTransactionAttributes;
+	}
+
+	/**
+	 * Return whether to precompute the transaction attributes for all methods
+	 * of a target class on the first invocation with that target class.
+	 */
+	public boolean isPrecomputeTransactionAttributes() {
+		return this.precomputeTransactionAttributes;
+	}
+
+	/**
+	 * Resolve the transaction attributes and transaction names for all public
+	 * methods of the given target class and its interfaces upfront, typically
+	 * when creating a proxy for the target. Invocations with that target class
+	 * will then use the precomputed attributes instead of consulting the
+	 * TransactionAttributeSource.
+	 * <p>The transaction attribute source needs to be static for this to be
+	 * appropriate: attributes registered after precomputation will not apply.
+	 * @param targetClass the target class to precompute attributes for
+	 * @see #getTransactionAttributeSource()
+	 * @see #methodIdentification(Method, Class)
+	 */
+	public void precomputeTransactionAttributes(Class<?> targetClass) {
+		doPrecomputeTransactionAttributes(targetClass);
+	}
+
+	private Map<Method, MethodTransactionAttribute> doPrecomputeTransactionAttributes(Class<?> targetClass) {
+		Assert.notNull(targetClass, "Target class must not be null");
+		Set<Method> methods = new LinkedHashSet<Method>(Arrays.asList(targetClass.getMethods()));
+		for (Class<?> ifc : ClassUtils.getAllInterfacesForClassAsSet(targetClass)) {
+			methods.addAll(Arrays.asList(ifc.getMethods()));
+		}
+		Map<Method, MethodTransactionAttribute> attributes =
+				new HashMap<Method, MethodTransactionAttribute>(methods.size() * 2);
+		TransactionAttributeSource tas = getTransactionAttributeSource();
+		for (Method method : methods) {
+			String joinpointIdentification = methodIdentification(method, targetClass);
+			TransactionAttribute txAttr = tas.getTransactionAttribute(method, targetClass);
+			attributes.put(method, new MethodTransactionAttribute(
+					txAttr, applyJoinpointName(txAttr, joinpointIdentification), joinpointIdentification));
+		}
+		synchronized (this.precomputationMonitor) {
+			Map<Class<?>, Map<Method, MethodTransactionAttribute>> newAttributes =
+					new IdentityHashMap<Class<?>, Map<Method, MethodTransactionAttribute>>(this.precomputedAttributes);
+			newAttributes.put(targetClass, attributes);
+			this.precomputedAttributes = newAttributes;
+		}
+		return attributes;
+	}
+
+	/**
+	 * Return the precomputed transaction attribute for the given method and target class.
+	 * @return the precomputed attribute holder, or <code>null</code> if the attribute
+	 * has not been precomputed and needs to be looked up through the
+	 * TransactionAttributeSource
+	 */
+	MethodTransactionAttribute getPrecomputedTransactionAttribute(Method method, Class<?> targetClass) {
+		Map<Class<?>, Map<Method, MethodTransactionAttribute>> precomputed = this.precomputedAttributes;
+		if (precomputed.isEmpty() && !this.precomputeTransactionAttributes) {
+			return null;
+		}
+		Map<Method, MethodTransactionAttribute> attributes = precomputed.get(targetClass);
+		if (attributes == null) {
+			if (!this.precomputeTransactionAttributes || targetClass == null) {
+				return null;
+			}
+			attributes = doPrecomputeTransactionAttributes(targetClass);
+		}
+		return attributes.get(method);
+	}
+
 	/**
 	 * Check that required properties were set.
 	 */
@@ -267,6 +372,12 @@ public abstract class TransactionAspectSupport implements BeanFactoryAware, Init
 	 * @see #getTransactionAttributeSource()
 	 */
 	protected TransactionInfo createTransactionIfNecessary(Method method, Class targetClass) {
+		MethodTransactionAttribute precomputed = getPrecomputedTransactionAttribute(method, targetClass);
+		if (precomputed != null) {
+			PlatformTransactionManager tm = determineTransactionManager(precomputed.transactionAttribute);
+			return createTransactionIfNecessary(
+					tm, precomputed.namedTransactionAttribute, precomputed.joinpointIdentification);
+		}
 		// If the transaction attribute is null, the method is non-transactional.
 		TransactionAttribute txAttr = getTransactionAttributeSource().getTransactionAttribute(method, targetClass);
 		PlatformTransactionManager tm = determineTransactionManager(txAttr);
@@ -320,14 +431,7 @@ public abstract class TransactionAspectSupport implements BeanFactoryAware, Init
 			PlatformTransactionManager tm, TransactionAttribute txAttr, final String joinpointIdentification) {
 
 		// If no name specified, apply method identification as transaction name.
-		if (txAttr != null && txAttr.getName() == null) {
-			txAttr = new DelegatingTransactionAttribute(txAttr) {
-				@Override
-				public String getName() {
-					return joinpointIdentification;
-				}
-			};
-		}
+		txAttr = applyJoinpointName(txAttr, joinpointIdentification);
 
 		TransactionStatus status = null;
 		if (txAttr != null) {
@@ -344,6 +448,24 @@ public abstract class TransactionAspectSupport implements BeanFactoryAware, Init
 		return prepareTransactionInfo(tm, txAttr, joinpointIdentification, status);
 	}
 
+	/**
+	 * Expose the given joinpoint identification as transaction name
+	 * if the given TransactionAttribute does not specify a name.
+	 */
+	private static TransactionAttribute applyJoinpointName(
+			TransactionAttribute txAttr, final String joinpointIdentification) {
+
+		if (txAttr != null && txAttr.getName() == null) {
+			return new DelegatingTransactionAttribute(txAttr) {
+				@Override
+				public String getName() {
+					return joinpointIdentification;
+				}
+			};
+		}
+		return txAttr;
+	}
+
 	/**
 	 * Prepare a TransactionInfo for the given attribute and status object.
 	 * @param txAttr the TransactionAttribute (may be <code>null</code>)
@@ -407,6 +529,9 @@ public abstract class TransactionAspectSupport implements BeanFactoryAware, Init
 						"] after exception: " + ex);
 			}
 			if (txInfo.transactionAttribute.rollbackOn(ex)) {
+				if (txInfo.getTransactionStatus() instanceof DefaultTransactionStatus) {
+					((DefaultTransactionStatus) txInfo.getTransactionStatus()).setRollbackCause(ex);
+				}
 				try {
 					txInfo.getTransactionManager().rollback(txInfo.getTransactionStatus());
 				}
@@ -533,4 +658,27 @@ public abstract class TransactionAspectSupport implements BeanFactoryAware, Init
 		}
 	}
 
+
+	/**
+	 * Holder for a precomputed transaction attribute, as returned by the
+	 * TransactionAttributeSource as well as with the joinpoint identification
+	 * exposed as default transaction name.
+	 */
+	static final class MethodTransactionAttribute {
+
+		final TransactionAttribute transactionAttribute;
+
+		final TransactionAttribute namedTransactionAttribute;
+
+		final String joinpointIdentification;
+
+		public MethodTransactionAttribute(TransactionAttribute transactionAttribute,
+				TransactionAttribute namedTransactionAttribute, String joinpointIdentification) {
+
+			this.transactionAttribute = transactionAttribute;
+			this.namedTransactionAttribute = namedTransactionAttribute;
+			this.joinpointIdentification = joinpointIdentification;
+		}
+	}
+
 }
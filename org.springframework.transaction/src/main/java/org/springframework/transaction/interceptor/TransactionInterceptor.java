@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -95,14 +95,25 @@ public class TransactionInterceptor extends TransactionAspectSupport implements
 		Class<?> targetClass = (invocation.getThis() != null ? AopUtils.getTargetClass(invocation.getThis()) : null);
 
 		// If the transaction attribute is null, the method is non-transactional.
-		final TransactionAttribute txAttr =
-				getTransactionAttributeSource().getTransactionAttribute(invocation.getMethod(), targetClass);
+		final TransactionAttribute txAttr;
+		final String joinpointIdentification;
+		TransactionAttribute namedTxAttr;
+		MethodTransactionAttribute precomputed = getPrecomputedTransactionAttribute(invocation.getMethod(), targetClass);
+		if (precomputed != null) {
+			txAttr = precomputed.transactionAttribute;
+			namedTxAttr = precomputed.namedTransactionAttribute;
+			joinpointIdentification = precomputed.joinpointIdentification;
+		}
+		else {
+			txAttr = getTransactionAttributeSource().getTransactionAttribute(invocation.getMethod(), targetClass);
+			namedTxAttr = txAttr;
+			joinpointIdentification = methodIdentification(invocation.getMethod(), targetClass);
+		}
 		final PlatformTransactionManager tm = determineTransactionManager(txAttr);
-		final String joinpointIdentification = methodIdentification(invocation.getMethod(), targetClass);
 
 		if (txAttr == null || !(tm instanceof CallbackPreferringPlatformTransactionManager)) {
 			// Standard transaction demarcation with getTransaction and commit/rollback calls.
-			TransactionInfo txInfo = createTransactionIfNecessary(tm, txAttr, joinpointIdentification);
+			TransactionInfo txInfo = createTransactionIfNecessary(tm, namedTxAttr, joinpointIdentification);
 			Object retVal = null;
 			try {
 				// This is an around advice: Invoke the next interceptor in the chain.
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2009 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,6 +19,7 @@ package org.springframework.transaction.interceptor;
 import java.util.Properties;
 
 import org.springframework.aop.Pointcut;
+import org.springframework.aop.TargetSource;
 import org.springframework.aop.framework.AbstractSingletonProxyFactoryBean;
 import org.springframework.aop.support.DefaultPointcutAdvisor;
 import org.springframework.beans.factory.BeanFactory;
@@ -162,6 +163,20 @@ public class TransactionProxyFactoryBean extends AbstractSingletonProxyFactoryBe
 		this.pointcut = pointcut;
 	}
 
+	/**
+	 * Set whether to resolve the transaction attributes and transaction names
+	 * for all methods of the target class once when creating the proxy, instead
+	 * of looking them up through the TransactionAttributeSource on each invocation.
+	 * <p>Default is "false". Only switch this to "true" for a static
+	 * transaction attribute source, such as "transactionAttributes" properties
+	 * or an AnnotationTransactionAttributeSource.
+	 * @see TransactionInterceptor#setPrecomputeTransactionAttributes
+	 * @see TransactionInterceptor#precomputeTransactionAttributes(Class)
+	 */
+	public void setPrecomputeTransactionAttributes(boolean precomputeTransactionAttributes) {
+		this.transactionInterceptor.setPrecomputeTransactionAttributes(precomputeTransactionAttributes);
+	}
+
 	/**
 	 * This callback is optional: If running in a BeanFactory and no transaction
 	 * manager has been set explicitly, a single matching bean of type
@@ -189,4 +204,18 @@ public class TransactionProxyFactoryBean extends AbstractSingletonProxyFactoryBe
 		}
 	}
 
+	/**
+	 * Precomputes the transaction attributes for the target class,
+	 * if demanded.
+	 * @see #setPrecomputeTransactionAttributes
+	 */
+	@Override
+	protected TargetSource createTargetSource(Object target) {
+		TargetSource targetSource = super.createTargetSource(target);
+		if (this.transactionInterceptor.isPrecomputeTransactionAttributes() && targetSource.getTargetClass() != null) {
+			this.transactionInterceptor.precomputeTransactionAttributes(targetSource.getTargetClass());
+		}
+		return targetSource;
+	}
+
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -125,6 +125,8 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 
 	private boolean rollbackOnCommitFailure = false;
 
+	private transient TransactionObserver transactionObserver;
+
 
 	/**
 	 * Set the transaction synchronization by the name of the corresponding constant
@@ -318,6 +320,25 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 		return this.rollbackOnCommitFailure;
 	}
 
+	/**
+	 * Set an observer to be notified of the lifecycle of transactions driven
+	 * by this transaction manager: begin, suspension and resumption, completion,
+	 * as well as the time spent in synchronization callbacks.
+	 * <p>Default is none. Note that the observer will not be serialized
+	 * along with this transaction manager.
+	 * @see TransactionStatistics
+	 */
+	public final void setTransactionObserver(TransactionObserver transactionObserver) {
+		this.transactionObserver = transactionObserver;
+	}
+
+	/**
+	 * Return the observer to be notified of the lifecycle of transactions, if any.
+	 */
+	public final TransactionObserver getTransactionObserver() {
+		return this.transactionObserver;
+	}
+
 
 	//---------------------------------------------------------------------
 	// Implementation of PlatformTransactionManager
@@ -370,6 +391,7 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 						definition, transaction, true, newSynchronization, debugEnabled, suspendedResources);
 				doBegin(transaction, definition);
 				prepareSynchronization(status, definition);
+				notifyTransactionBegun(status, definition);
 				return status;
 			}
 			catch (RuntimeException ex) {
@@ -422,6 +444,7 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 						definition, transaction, true, newSynchronization, debugEnabled, suspendedResources);
 				doBegin(transaction, definition);
 				prepareSynchronization(status, definition);
+				notifyTransactionBegun(status, definition);
 				return status;
 			}
 			catch (RuntimeException beginEx) {
@@ -461,6 +484,7 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 						definition, transaction, true, newSynchronization, debugEnabled, null);
 				doBegin(transaction, definition);
 				prepareSynchronization(status, definition);
+				notifyTransactionBegun(status, definition);
 				return status;
 			}
 		}
@@ -537,6 +561,16 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 		}
 	}
 
+	/**
+	 * Notify the transaction observer, if any, of the begin of a new transaction.
+	 */
+	private void notifyTransactionBegun(DefaultTransactionStatus status, TransactionDefinition definition) {
+		TransactionObserver observer = this.transactionObserver;
+		if (observer != null) {
+			observer.transactionBegun(status, definition);
+		}
+	}
+
 	/**
 	 * Determine the actual timeout to use for the given definition.
 	 * Will fall back to this manager's default timeout if the
@@ -580,6 +614,9 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 				TransactionSynchronizationManager.setCurrentTransactionIsolationLevel(null);
 				boolean wasActive = TransactionSynchronizationManager.isActualTransactionActive();
 				TransactionSynchronizationManager.setActualTransactionActive(false);
+				if (this.transactionObserver != null) {
+					this.transactionObserver.transactionSuspended();
+				}
 				return new SuspendedResourcesHolder(
 						suspendedResources, suspendedSynchronizations, name, readOnly, isolationLevel, wasActive);
 			}
@@ -597,6 +634,9 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 		else if (transaction != null) {
 			// Transaction active but no synchronization active.
 			Object suspendedResources = doSuspend(transaction);
+			if (this.transactionObserver != null) {
+				this.transactionObserver.transactionSuspended();
+			}
 			return new SuspendedResourcesHolder(suspendedResources);
 		}
 		else {
@@ -631,6 +671,9 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 				TransactionSynchronizationManager.setCurrentTransactionName(resourcesHolder.name);
 				doResumeSynchronization(suspendedSynchronizations);
 			}
+			if (this.transactionObserver != null) {
+				this.transactionObserver.transactionResumed();
+			}
 		}
 	}
 
@@ -767,6 +810,7 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 			}
 			catch (TransactionException ex) {
 				// can only be caused by doCommit
+				status.setRollbackCause(ex);
 				if (isRollbackOnCommitFailure()) {
 					doRollbackOnCommitException(status, ex);
 				}
@@ -887,6 +931,7 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 	 */
 	private void doRollbackOnCommitException(DefaultTransactionStatus status, Throwable ex)
 	    throws TransactionException {
+		status.setRollbackCause(ex);
 		try {
 			if (status.isNewTransaction()) {
 				if (status.isDebug()) {
@@ -924,7 +969,9 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 			if (status.isDebug()) {
 				logger.trace("Triggering beforeCommit synchronization");
 			}
+			long startTime = (this.transactionObserver != null ? System.nanoTime() : 0);
 			TransactionSynchronizationUtils.triggerBeforeCommit(status.isReadOnly());
+			notifySynchronizationCallbacksInvoked(TransactionObserver.BEFORE_COMMIT, startTime);
 		}
 	}
 
@@ -937,7 +984,9 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 			if (status.isDebug()) {
 				logger.trace("Triggering beforeCompletion synchronization");
 			}
+			long startTime = (this.transactionObserver != null ? System.nanoTime() : 0);
 			TransactionSynchronizationUtils.triggerBeforeCompletion();
+			notifySynchronizationCallbacksInvoked(TransactionObserver.BEFORE_COMPLETION, startTime);
 		}
 	}
 
@@ -950,7 +999,9 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 			if (status.isDebug()) {
 				logger.trace("Triggering afterCommit synchronization");
 			}
+			long startTime = (this.transactionObserver != null ? System.nanoTime() : 0);
 			TransactionSynchronizationUtils.triggerAfterCommit();
+			notifySynchronizationCallbacksInvoked(TransactionObserver.AFTER_COMMIT, startTime);
 		}
 	}
 
@@ -968,7 +1019,9 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 				}
 				// No transaction or new transaction for the current scope ->
 				// invoke the afterCompletion callbacks immediately
+				long startTime = (this.transactionObserver != null ? System.nanoTime() : 0);
 				invokeAfterCompletion(synchronizations, completionStatus);
+				notifySynchronizationCallbacksInvoked(TransactionObserver.AFTER_COMPLETION, startTime);
 			}
 			else if (!synchronizations.isEmpty()) {
 				// Existing transaction that we participate in, controlled outside
@@ -977,6 +1030,24 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 				registerAfterCompletionWithExistingTransaction(status.getTransaction(), synchronizations);
 			}
 		}
+		TransactionObserver observer = this.transactionObserver;
+		if (observer != null && status.isNewTransaction()) {
+			observer.transactionCompleted(status, completionStatus);
+		}
+	}
+
+	/**
+	 * Notify the transaction observer, if any, of the time spent
+	 * in the synchronization callbacks of the given phase.
+	 * @param phase the callback phase, as defined by TransactionObserver
+	 * @param startTime the <code>System.nanoTime()</code> value taken
+	 * before triggering the callbacks
+	 */
+	private void notifySynchronizationCallbacksInvoked(String phase, long startTime) {
+		TransactionObserver observer = this.transactionObserver;
+		if (observer != null) {
+			observer.synchronizationCallbacksInvoked(phase, System.nanoTime() - startTime);
+		}
 	}
 
 	/**
@@ -0,0 +1,358 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+import org.springframework.util.Assert;
+
+/**
+ * Dispatcher for actions to be performed after the commit of the current
+ * transaction, such as publishing events or invalidating caches.
+ *
+ * <p>In contrast to registering a {@link TransactionSynchronization} per action,
+ * all actions dispatched within a transaction are accumulated into a single
+ * batch, with a single synchronization registered per transaction. Actions are
+ * identified by a key: an action dispatched for a key that already has a
+ * pending action in the current batch replaces the earlier action. After
+ * commit, the batch is handed to the configured {@link TaskExecutor}, so that
+ * the committing thread does not have to wait for the actions to complete.
+ * After a rollback, the batch is discarded.
+ *
+ * <p>Actions for the same key are executed one after the other, in the order
+ * of the commits of their transactions; actions for different keys may run
+ * concurrently. An action failing with an exception gets logged and counted,
+ * without affecting other actions.
+ *
+ * <p>If no transaction synchronization is active, actions are dispatched
+ * immediately. Actions dispatched from within an <code>afterCommit</code> or
+ * <code>afterCompletion</code> callback of another synchronization are
+ * dispatched immediately as well, since the transaction has completed already
+ * (see {@link TransactionSynchronizationManager#isSynchronizationCompleting()}).
+ *
+ * <p>Instances carry JMX metadata for export through
+ * {@link org.springframework.jmx.export.annotation.AnnotationMBeanExporter}.
+ *
+ * @since 3.1
+ * @see #dispatchAfterCommit(Object, Runnable)
+ * @see #setTaskExecutor
+ */
+@ManagedResource(description = "After-commit action dispatcher")
+public class AfterCommitDispatcher implements InitializingBean {
+
+	private static final Log logger = LogFactory.getLog(AfterCommitDispatcher.class);
+
+	private TaskExecutor taskExecutor;
+
+	/** Pending actions per key, for keys with a drain task scheduled or running */
+	private final Map<Object, KeyQueue> keyQueues = new HashMap<Object, KeyQueue>();
+
+	private final AtomicLong pendingCount = new AtomicLong();
+
+	private final AtomicLong batchCount = new AtomicLong();
+
+	private final AtomicLong dispatchedCount = new AtomicLong();
+
+	private final AtomicLong deduplicatedCount = new AtomicLong();
+
+	private final AtomicLong discardedCount = new AtomicLong();
+
+	private final AtomicLong completedCount = new AtomicLong();
+
+	private final AtomicLong failedCount = new AtomicLong();
+
+
+	/**
+	 * Create a new AfterCommitDispatcher.
+	 * <p>The TaskExecutor still needs to be set.
+	 * @see #setTaskExecutor
+	 */
+	public AfterCommitDispatcher() {
+	}
+
+	/**
+	 * Create a new AfterCommitDispatcher for the given TaskExecutor.
+	 * @param taskExecutor the TaskExecutor to perform the actions with
+	 */
+	public AfterCommitDispatcher(TaskExecutor taskExecutor) {
+		this.taskExecutor = taskExecutor;
+		afterPropertiesSet();
+	}
+
+
+	/**
+	 * Set the TaskExecutor to perform the actions with after commit.
+	 * <p>If the executor rejects a task, the affected actions will be
+	 * performed in the dispatching thread instead.
+	 */
+	public void setTaskExecutor(TaskExecutor taskExecutor) {
+		this.taskExecutor = taskExecutor;
+	}
+
+	/**
+	 * Return the TaskExecutor to perform the actions with after commit.
+	 */
+	public TaskExecutor getTaskExecutor() {
+		return this.taskExecutor;
+	}
+
+	public void afterPropertiesSet() {
+		if (this.taskExecutor == null) {
+			throw new IllegalArgumentException("Property 'taskExecutor' is required");
+		}
+	}
+
+
+	/**
+	 * Dispatch the given action after the commit of the current transaction,
+	 * without deduplication.
+	 * @param action the action to perform
+	 * @see #dispatchAfterCommit(Object, Runnable)
+	 */
+	public void dispatchAfterCommit(Runnable action) {
+		dispatchAfterCommit(action, action);
+	}
+
+	/**
+	 * Dispatch the given action after the commit of the current transaction.
+	 * <p>If an action for the same key has already been dispatched within the
+	 * current transaction, the given action replaces that earlier action.
+	 * @param key the key identifying the action, e.g. an entity identifier
+	 * (must implement <code>equals</code> and <code>hashCode</code> accordingly)
+	 * @param action the action to perform
+	 */
+	public void dispatchAfterCommit(Object key, Runnable action) {
+		Assert.notNull(key, "Key must not be null");
+		Assert.notNull(action, "Action must not be null");
+		if (!TransactionSynchronizationManager.isSynchronizationActive() ||
+				TransactionSynchronizationManager.isSynchronizationCompleting()) {
+			Map<Object, Runnable> single = new LinkedHashMap<Object, Runnable>(1);
+			single.put(key, action);
+			dispatch(single);
+			return;
+		}
+		ActionBatch batch = (ActionBatch) TransactionSynchronizationManager.getResource(this);
+		if (batch == null) {
+			batch = new ActionBatch();
+			TransactionSynchronizationManager.bindResource(this, batch);
+			TransactionSynchronizationManager.registerSynchronization(batch);
+		}
+		batch.add(key, action);
+	}
+
+	/**
+	 * Hand the given actions over to the TaskExecutor, preserving the order
+	 * of actions per key.
+	 */
+	private void dispatch(Map<Object, Runnable> actions) {
+		this.dispatchedCount.addAndGet(actions.size());
+		this.pendingCount.addAndGet(actions.size());
+		List<KeyQueue> newQueues = new LinkedList<KeyQueue>();
+		synchronized (this.keyQueues) {
+			for (Map.Entry<Object, Runnable> entry : actions.entrySet()) {
+				KeyQueue queue = this.keyQueues.get(entry.getKey());
+				if (queue == null) {
+					// No actions pending for this key: a new drain task is needed.
+					queue = new KeyQueue(entry.getKey());
+					this.keyQueues.put(entry.getKey(), queue);
+					newQueues.add(queue);
+				}
+				queue.actions.add(entry.getValue());
+			}
+		}
+		for (KeyQueue queue : newQueues) {
+			try {
+				this.taskExecutor.execute(queue);
+			}
+			catch (RuntimeException ex) {
+				logger.warn("TaskExecutor rejected after-commit actions for key [" + queue.key +
+						"] - performing them in the current thread", ex);
+				queue.run();
+			}
+		}
+	}
+
+	private void perform(Runnable action) {
+		try {
+			action.run();
+			this.completedCount.incrementAndGet();
+		}
+		catch (Throwable ex) {
+			this.failedCount.incrementAndGet();
+			logger.error("After-commit action [" + action + "] failed", ex);
+		}
+		finally {
+			this.pendingCount.decrementAndGet();
+		}
+	}
+
+
+	/**
+	 * Return the number of actions dispatched after commit but not completed yet.
+	 */
+	@ManagedMetric(description = "Number of actions waiting for or in execution")
+	public long getQueueDepth() {
+		return this.pendingCount.get();
+	}
+
+	/**
+	 * Return the number of keys with actions waiting for or in execution.
+	 */
+	@ManagedMetric(description = "Number of keys with pending actions")
+	public int getPendingKeyCount() {
+		synchronized (this.keyQueues) {
+			return this.keyQueues.size();
+		}
+	}
+
+	/**
+	 * Return the number of batches handed to the TaskExecutor, that is,
+	 * the number of committed transactions with actions. Actions dispatched
+	 * immediately, outside of a transaction, are not counted as batch.
+	 */
+	@ManagedMetric(metricType = MetricType.COUNTER, description = "Number of batches dispatched")
+	public long getBatchCount() {
+		return this.batchCount.get();
+	}
+
+	/**
+	 * Return the number of actions handed to the TaskExecutor.
+	 */
+	@ManagedMetric(metricType = MetricType.COUNTER, description = "Number of actions dispatched")
+	public long getDispatchedActionCount() {
+		return this.dispatchedCount.get();
+	}
+
+	/**
+	 * Return the number of actions replaced by a later action for the same key
+	 * within the same transaction.
+	 */
+	@ManagedMetric(metricType = MetricType.COUNTER, description = "Number of actions deduplicated")
+	public long getDeduplicatedActionCount() {
+		return this.deduplicatedCount.get();
+	}
+
+	/**
+	 * Return the number of actions discarded because of a transaction rollback.
+	 */
+	@ManagedMetric(metricType = MetricType.COUNTER, description = "Number of actions discarded on rollback")
+	public long getDiscardedActionCount() {
+		return this.discardedCount.get();
+	}
+
+	/**
+	 * Return the number of actions completed normally.
+	 */
+	@ManagedMetric(metricType = MetricType.COUNTER, description = "Number of actions completed normally")
+	public long getCompletedActionCount() {
+		return this.completedCount.get();
+	}
+
+	/**
+	 * Return the number of actions that terminated with an exception.
+	 */
+	@ManagedMetric(metricType = MetricType.COUNTER, description = "Number of actions terminated with an exception")
+	public long getFailedActionCount() {
+		return this.failedCount.get();
+	}
+
+
+	/**
+	 * Batch of actions for a transaction, registered as synchronization.
+	 * Unbinds itself on suspension, so that actions dispatched within an
+	 * inner <code>REQUIRES_NEW</code> transaction go into a batch of their own.
+	 */
+	private class ActionBatch extends TransactionSynchronizationAdapter {
+
+		private final Map<Object, Runnable> actions = new LinkedHashMap<Object, Runnable>();
+
+		public void add(Object key, Runnable action) {
+			if (this.actions.put(key, action) != null) {
+				deduplicatedCount.incrementAndGet();
+			}
+		}
+
+		@Override
+		public void suspend() {
+			TransactionSynchronizationManager.unbindResource(AfterCommitDispatcher.this);
+		}
+
+		@Override
+		public void resume() {
+			TransactionSynchronizationManager.bindResource(AfterCommitDispatcher.this, this);
+		}
+
+		@Override
+		public void afterCommit() {
+			if (!this.actions.isEmpty()) {
+				batchCount.incrementAndGet();
+				dispatch(this.actions);
+			}
+		}
+
+		@Override
+		public void afterCompletion(int status) {
+			TransactionSynchronizationManager.unbindResourceIfPossible(AfterCommitDispatcher.this);
+			if (status != STATUS_COMMITTED) {
+				discardedCount.addAndGet(this.actions.size());
+			}
+		}
+	}
+
+
+	/**
+	 * Queue of pending actions for a key, drained by a single task at a time.
+	 */
+	private class KeyQueue implements Runnable {
+
+		private final Object key;
+
+		private final LinkedList<Runnable> actions = new LinkedList<Runnable>();
+
+		public KeyQueue(Object key) {
+			this.key = key;
+		}
+
+		public void run() {
+			while (true) {
+				Runnable action;
+				synchronized (keyQueues) {
+					action = this.actions.poll();
+					if (action == null) {
+						keyQueues.remove(this.key);
+						return;
+					}
+				}
+				perform(action);
+			}
+		}
+	}
+
+}
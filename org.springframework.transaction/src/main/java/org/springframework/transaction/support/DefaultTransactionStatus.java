@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2009 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -60,6 +60,8 @@ public class DefaultTransactionStatus extends AbstractTransactionStatus {
 
 	private final Object suspendedResources;
 
+	private Throwable rollbackCause;
+
 
 	/**
 	 * Create a new DefaultTransactionStatus instance.
@@ -139,6 +141,27 @@ public class DefaultTransactionStatus extends AbstractTransactionStatus {
 		return this.suspendedResources;
 	}
 
+	/**
+	 * Set the exception that caused this transaction to be rolled back,
+	 * for exposure to a {@link TransactionObserver}. Only the first cause
+	 * set will be retained.
+	 * <p>Called by transaction demarcation code which rolls back on an
+	 * application exception, e.g. {@link TransactionTemplate}, as well as
+	 * by {@link AbstractPlatformTransactionManager} on commit failure.
+	 */
+	public void setRollbackCause(Throwable rollbackCause) {
+		if (this.rollbackCause == null) {
+			this.rollbackCause = rollbackCause;
+		}
+	}
+
+	/**
+	 * Return the exception that caused this transaction to be rolled back, if known.
+	 */
+	public Throwable getRollbackCause() {
+		return this.rollbackCause;
+	}
+
 
 	//---------------------------------------------------------------------
 	// Enable functionality through underlying transaction object
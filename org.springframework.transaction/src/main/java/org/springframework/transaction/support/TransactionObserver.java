@@ -0,0 +1,96 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import org.springframework.transaction.TransactionDefinition;
+
+/**
+ * Callback interface for observing the lifecycle of transactions driven by an
+ * {@link AbstractPlatformTransactionManager}, e.g. for collecting statistics.
+ *
+ * <p>Only actual new transactions are reported as begun and completed:
+ * participation in an existing transaction, savepoint-based nested transactions
+ * and "empty" transactions without a backend transaction are not.
+ *
+ * <p>Callbacks are invoked on the thread that drives the transaction, as part
+ * of the transaction manager's regular processing. Implementations need to be
+ * thread-safe, should return quickly, and must not throw exceptions.
+ *
+ * @since 3.1
+ * @see AbstractPlatformTransactionManager#setTransactionObserver
+ * @see TransactionStatistics
+ */
+public interface TransactionObserver {
+
+	/** Name of the <code>beforeCommit</code> synchronization callback phase */
+	String BEFORE_COMMIT = "beforeCommit";
+
+	/** Name of the <code>beforeCompletion</code> synchronization callback phase */
+	String BEFORE_COMPLETION = "beforeCompletion";
+
+	/** Name of the <code>afterCommit</code> synchronization callback phase */
+	String AFTER_COMMIT = "afterCommit";
+
+	/** Name of the <code>afterCompletion</code> synchronization callback phase */
+	String AFTER_COMPLETION = "afterCompletion";
+
+
+	/**
+	 * Invoked when a new transaction has been begun.
+	 * @param status the status object representing the new transaction
+	 * @param definition the definition that the transaction has been begun with
+	 */
+	void transactionBegun(DefaultTransactionStatus status, TransactionDefinition definition);
+
+	/**
+	 * Invoked when a transaction has been completed, that is, committed or
+	 * rolled back (or failed to do so).
+	 * <p>The status object is the same instance as passed to
+	 * {@link #transactionBegun}. In case of a rollback, its
+	 * {@link DefaultTransactionStatus#getRollbackCause() rollback cause}
+	 * will be exposed if known.
+	 * @param status the status object representing the completed transaction
+	 * @param completionStatus the completion status according to the
+	 * constants in the {@link TransactionSynchronization} interface
+	 * @see TransactionSynchronization#STATUS_COMMITTED
+	 * @see TransactionSynchronization#STATUS_ROLLED_BACK
+	 * @see TransactionSynchronization#STATUS_UNKNOWN
+	 */
+	void transactionCompleted(DefaultTransactionStatus status, int completionStatus);
+
+	/**
+	 * Invoked when the current transaction and/or transaction synchronization
+	 * has been suspended, e.g. for beginning a <code>REQUIRES_NEW</code> transaction.
+	 */
+	void transactionSuspended();
+
+	/**
+	 * Invoked when a previously suspended transaction and/or transaction
+	 * synchronization has been resumed.
+	 */
+	void transactionResumed();
+
+	/**
+	 * Invoked after the registered {@link TransactionSynchronization} callbacks
+	 * of a given phase have been triggered.
+	 * @param phase the callback phase: {@link #BEFORE_COMMIT}, {@link #BEFORE_COMPLETION},
+	 * {@link #AFTER_COMMIT} or {@link #AFTER_COMPLETION}
+	 * @param nanos the time spent in the callbacks of the given phase, in nanoseconds
+	 */
+	void synchronizationCallbacksInvoked(String phase, long nanos);
+
+}
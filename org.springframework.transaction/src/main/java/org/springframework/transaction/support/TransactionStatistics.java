@@ -0,0 +1,403 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.util.LatencyHistogram;
+
+/**
+ * Default {@link TransactionObserver} implementation, collecting runtime
+ * statistics for the transactions driven by a transaction manager: the number
+ * of begun, committed and rolled back transactions, rollback counts per
+ * exception type, histograms for the duration of transactions from begin to
+ * commit or rollback, and histograms for the time spent in synchronization
+ * callbacks per callback phase.
+ *
+ * <p>Transactions running longer than the configured
+ * {@link #setLongRunningThreshold "longRunningThreshold"} are counted and
+ * logged at warn level on completion. Transactions still in progress beyond
+ * that threshold can be inspected through {@link #getLongRunningTransactions()}.
+ *
+ * <p>Instances carry JMX metadata for export through
+ * {@link org.springframework.jmx.export.annotation.AnnotationMBeanExporter},
+ * e.g. by registering the statistics object under an ObjectName of choice.
+ *
+ * @since 3.1
+ * @see AbstractPlatformTransactionManager#setTransactionObserver
+ */
+@ManagedResource(description = "Transaction statistics")
+public class TransactionStatistics implements TransactionObserver {
+
+	private static final String NO_ROLLBACK_CAUSE = "(none)";
+
+	private static final Log logger = LogFactory.getLog(TransactionStatistics.class);
+
+	private volatile long longRunningThresholdNanos = 0;
+
+	private final AtomicLong begunCount = new AtomicLong();
+
+	private final AtomicLong committedCount = new AtomicLong();
+
+	private final AtomicLong rolledBackCount = new AtomicLong();
+
+	private final AtomicLong unknownOutcomeCount = new AtomicLong();
+
+	private final AtomicLong suspensionCount = new AtomicLong();
+
+	private final AtomicLong longRunningCount = new AtomicLong();
+
+	/** Currently active transactions, keyed by status object */
+	private final Map<DefaultTransactionStatus, ActiveTransaction> activeTransactions =
+			new ConcurrentHashMap<DefaultTransactionStatus, ActiveTransaction>(64);
+
+	/** Rollback counters, keyed by exception class name */
+	private final Map<String, AtomicLong> rollbackCounts = new ConcurrentHashMap<String, AtomicLong>(16);
+
+	private final LatencyHistogram commitTimeHistogram = new LatencyHistogram();
+
+	private final LatencyHistogram rollbackTimeHistogram = new LatencyHistogram();
+
+	private final Map<String, LatencyHistogram> synchronizationTimeHistograms =
+			new ConcurrentHashMap<String, LatencyHistogram>(8);
+
+
+	public TransactionStatistics() {
+		this.synchronizationTimeHistograms.put(BEFORE_COMMIT, new LatencyHistogram());
+		this.synchronizationTimeHistograms.put(BEFORE_COMPLETION, new LatencyHistogram());
+		this.synchronizationTimeHistograms.put(AFTER_COMMIT, new LatencyHistogram());
+		this.synchronizationTimeHistograms.put(AFTER_COMPLETION, new LatencyHistogram());
+	}
+
+
+	/**
+	 * Set the duration in milliseconds above which a transaction is considered
+	 * long-running, getting counted and logged at warn level. Default is 0:
+	 * no detection.
+	 */
+	public void setLongRunningThreshold(long longRunningThreshold) {
+		this.longRunningThresholdNanos = TimeUnit.MILLISECONDS.toNanos(longRunningThreshold);
+	}
+
+	/**
+	 * Return the duration in milliseconds above which a transaction is considered
+	 * long-running.
+	 */
+	@ManagedAttribute(description = "Duration in ms above which a transaction is considered long-running")
+	public long getLongRunningThreshold() {
+		return TimeUnit.NANOSECONDS.toMillis(this.longRunningThresholdNanos);
+	}
+
+
+	public void transactionBegun(DefaultTransactionStatus status, TransactionDefinition definition) {
+		this.begunCount.incrementAndGet();
+		this.activeTransactions.put(status, new ActiveTransaction(definition.getName()));
+	}
+
+	public void transactionCompleted(DefaultTransactionStatus status, int completionStatus) {
+		ActiveTransaction transaction = this.activeTransactions.remove(status);
+		long duration = (transaction != null ? System.nanoTime() - transaction.startTime : 0);
+		if (completionStatus == TransactionSynchronization.STATUS_COMMITTED) {
+			this.committedCount.incrementAndGet();
+			this.commitTimeHistogram.record(duration);
+		}
+		else if (completionStatus == TransactionSynchronization.STATUS_ROLLED_BACK) {
+			this.rolledBackCount.incrementAndGet();
+			this.rollbackTimeHistogram.record(duration);
+			Throwable cause = status.getRollbackCause();
+			countRollback(cause != null ? cause.getClass().getName() : NO_ROLLBACK_CAUSE);
+		}
+		else {
+			this.unknownOutcomeCount.incrementAndGet();
+		}
+		long threshold = this.longRunningThresholdNanos;
+		if (threshold > 0 && duration > threshold) {
+			this.longRunningCount.incrementAndGet();
+			if (logger.isWarnEnabled()) {
+				logger.warn("Long-running transaction [" + (transaction != null ? transaction.name : null) +
+						"] took " + TimeUnit.NANOSECONDS.toMillis(duration) + " ms to complete");
+			}
+		}
+	}
+
+	private void countRollback(String causeType) {
+		AtomicLong counter = this.rollbackCounts.get(causeType);
+		if (counter == null) {
+			synchronized (this.rollbackCounts) {
+				counter = this.rollbackCounts.get(causeType);
+				if (counter == null) {
+					counter = new AtomicLong();
+					this.rollbackCounts.put(causeType, counter);
+				}
+			}
+		}
+		counter.incrementAndGet();
+	}
+
+	public void transactionSuspended() {
+		this.suspensionCount.incrementAndGet();
+	}
+
+	public void transactionResumed() {
+	}
+
+	public void synchronizationCallbacksInvoked(String phase, long nanos) {
+		LatencyHistogram histogram = this.synchronizationTimeHistograms.get(phase);
+		if (histogram != null) {
+			histogram.record(nanos);
+		}
+	}
+
+
+	/**
+	 * Return the number of transactions begun so far.
+	 */
+	@ManagedMetric(metricType = MetricType.COUNTER, description = "Number of transactions begun")
+	public long getBegunTransactionCount() {
+		return this.begunCount.get();
+	}
+
+	/**
+	 * Return the number of transactions currently in progress.
+	 */
+	@ManagedMetric(description = "Number of transactions in progress")
+	public int getActiveTransactionCount() {
+		return this.activeTransactions.size();
+	}
+
+	/**
+	 * Return the number of transactions committed.
+	 */
+	@ManagedMetric(metricType = MetricType.COUNTER, description = "Number of transactions committed")
+	public long getCommittedTransactionCount() {
+		return this.committedCount.get();
+	}
+
+	/**
+	 * Return the number of transactions rolled back.
+	 */
+	@ManagedMetric(metricType = MetricType.COUNTER, description = "Number of transactions rolled back")
+	public long getRolledBackTransactionCount() {
+		return this.rolledBackCount.get();
+	}
+
+	/**
+	 * Return the number of transactions with unknown outcome, e.g. due to a
+	 * commit failure without subsequent rollback.
+	 */
+	@ManagedMetric(metricType = MetricType.COUNTER, description = "Number of transactions with unknown outcome")
+	public long getUnknownOutcomeTransactionCount() {
+		return this.unknownOutcomeCount.get();
+	}
+
+	/**
+	 * Return the number of transaction suspensions.
+	 */
+	@ManagedMetric(metricType = MetricType.COUNTER, description = "Number of transaction suspensions")
+	public long getSuspensionCount() {
+		return this.suspensionCount.get();
+	}
+
+	/**
+	 * Return the number of completed transactions which exceeded the
+	 * long-running threshold.
+	 */
+	@ManagedMetric(metricType = MetricType.COUNTER,
+			description = "Number of transactions exceeding the long-running threshold")
+	public long getLongRunningTransactionCount() {
+		return this.longRunningCount.get();
+	}
+
+	/**
+	 * Return the number of rollbacks per exception type, in alphabetical order
+	 * of exception class names. Rollbacks without known cause, e.g. after
+	 * <code>setRollbackOnly()</code>, are reported as "(none)".
+	 */
+	@ManagedAttribute(description = "Number of rollbacks per exception type")
+	public String[] getRollbackCounts() {
+		Map<String, AtomicLong> sorted = new TreeMap<String, AtomicLong>(this.rollbackCounts);
+		List<String> result = new ArrayList<String>(sorted.size());
+		for (Map.Entry<String, AtomicLong> entry : sorted.entrySet()) {
+			result.add(entry.getKey() + "=" + entry.getValue().get());
+		}
+		return result.toArray(new String[result.size()]);
+	}
+
+	/**
+	 * Return the number of rollbacks caused by the given exception type.
+	 * @param exceptionType the exception class
+	 */
+	public long getRollbackCount(Class<? extends Throwable> exceptionType) {
+		AtomicLong counter = this.rollbackCounts.get(exceptionType.getName());
+		return (counter != null ? counter.get() : 0);
+	}
+
+	/**
+	 * Return the transactions in progress which have been running longer than
+	 * the long-running threshold, with their name, duration and thread.
+	 * @see #setLongRunningThreshold
+	 */
+	@ManagedAttribute(description = "Transactions in progress exceeding the long-running threshold")
+	public String[] getLongRunningTransactions() {
+		long threshold = this.longRunningThresholdNanos;
+		long now = System.nanoTime();
+		List<String> result = new ArrayList<String>();
+		if (threshold > 0) {
+			for (ActiveTransaction transaction : this.activeTransactions.values()) {
+				long duration = now - transaction.startTime;
+				if (duration > threshold) {
+					result.add("[" + transaction.name + "] running for " +
+							TimeUnit.NANOSECONDS.toMillis(duration) + " ms on thread [" + transaction.threadName + "]");
+				}
+			}
+		}
+		return result.toArray(new String[result.size()]);
+	}
+
+	/**
+	 * Return the mean duration of committed transactions in milliseconds.
+	 */
+	@ManagedMetric(unit = "ms", description = "Mean duration of committed transactions")
+	public double getMeanCommitTime() {
+		return this.commitTimeHistogram.getMeanTime() / 1000000;
+	}
+
+	/**
+	 * Return the 99th percentile of the duration of committed transactions in milliseconds.
+	 */
+	@ManagedMetric(unit = "ms", description = "99th percentile of the duration of committed transactions")
+	public long getCommitTime99thPercentile() {
+		return this.commitTimeHistogram.getPercentile(99, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Return the maximum duration of committed transactions in milliseconds.
+	 */
+	@ManagedMetric(unit = "ms", description = "Maximum duration of committed transactions")
+	public long getMaxCommitTime() {
+		return TimeUnit.NANOSECONDS.toMillis(this.commitTimeHistogram.getMaxTime());
+	}
+
+	/**
+	 * Return the mean duration of rolled back transactions in milliseconds.
+	 */
+	@ManagedMetric(unit = "ms", description = "Mean duration of rolled back transactions")
+	public double getMeanRollbackTime() {
+		return this.rollbackTimeHistogram.getMeanTime() / 1000000;
+	}
+
+	/**
+	 * Return the 99th percentile of the duration of rolled back transactions in milliseconds.
+	 */
+	@ManagedMetric(unit = "ms", description = "99th percentile of the duration of rolled back transactions")
+	public long getRollbackTime99thPercentile() {
+		return this.rollbackTimeHistogram.getPercentile(99, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Return the mean time in milliseconds spent in synchronization callbacks,
+	 * as the sum of the mean times of the individual callback phases.
+	 */
+	@ManagedMetric(unit = "ms", description = "Mean time spent in synchronization callbacks")
+	public double getMeanSynchronizationTime() {
+		double total = 0;
+		for (LatencyHistogram histogram : this.synchronizationTimeHistograms.values()) {
+			total += histogram.getMeanTime();
+		}
+		return total / 1000000;
+	}
+
+	/**
+	 * Return the histogram of the duration of committed transactions,
+	 * from begin to completion.
+	 */
+	public LatencyHistogram getCommitTimeHistogram() {
+		return this.commitTimeHistogram;
+	}
+
+	/**
+	 * Return the histogram of the duration of rolled back transactions,
+	 * from begin to completion.
+	 */
+	public LatencyHistogram getRollbackTimeHistogram() {
+		return this.rollbackTimeHistogram;
+	}
+
+	/**
+	 * Return the histogram of the time spent in synchronization callbacks
+	 * of the given phase.
+	 * @param phase the callback phase, as defined by {@link TransactionObserver}
+	 * @return the histogram, or <code>null</code> if the phase is unknown
+	 */
+	public LatencyHistogram getSynchronizationTimeHistogram(String phase) {
+		return this.synchronizationTimeHistograms.get(phase);
+	}
+
+	/**
+	 * Clear the duration and synchronization time histograms.
+	 * Transaction counters are not affected.
+	 */
+	@ManagedOperation(description = "Clear the latency histograms")
+	public void resetHistograms() {
+		this.commitTimeHistogram.reset();
+		this.rollbackTimeHistogram.reset();
+		for (LatencyHistogram histogram : this.synchronizationTimeHistograms.values()) {
+			histogram.reset();
+		}
+	}
+
+
+	@Override
+	public String toString() {
+		return "TransactionStatistics: active=" + getActiveTransactionCount() +
+				", committed=" + getCommittedTransactionCount() + ", rolledBack=" + getRolledBackTransactionCount() +
+				", unknown=" + getUnknownOutcomeTransactionCount() + ", longRunning=" + getLongRunningTransactionCount();
+	}
+
+
+	/**
+	 * Information about a transaction in progress.
+	 */
+	private static class ActiveTransaction {
+
+		private final String name;
+
+		private final String threadName = Thread.currentThread().getName();
+
+		private final long startTime = System.nanoTime();
+
+		public ActiveTransaction(String name) {
+			this.name = name;
+		}
+	}
+
+}
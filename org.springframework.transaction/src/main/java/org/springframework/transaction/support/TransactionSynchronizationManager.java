@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,7 +19,6 @@ package org.springframework.transaction.support;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -62,6 +61,11 @@ import org.springframework.util.Assert;
  * within a JTA transaction, e.g. a JDBC Connection or a Hibernate Session for
  * any given DataSource or SessionFactory, respectively.
  *
+ * <p>All state for the current thread is kept in a single thread-bound context
+ * object, which is released once the thread is not associated with any resources,
+ * synchronizations or transaction characteristics anymore. Checks for resources
+ * on a thread without such context return immediately.
+ *
  * @author Juergen Hoeller
  * @since 02.06.2003
  * @see #isSynchronizationActive
@@ -76,23 +80,32 @@ public abstract class TransactionSynchronizationManager {
 
 	private static final Log logger = LogFactory.getLog(TransactionSynchronizationManager.class);
 
-	private static final ThreadLocal<Map<Object, Object>> resources =
-			new NamedThreadLocal<Map<Object, Object>>("Transactional resources");
-
-	private static final ThreadLocal<List<TransactionSynchronization>> synchronizations =
-			new NamedThreadLocal<List<TransactionSynchronization>>("Transaction synchronizations");
+	private static final ThreadLocal<TransactionContext> transactionContext =
+			new NamedThreadLocal<TransactionContext>("Transaction context");
 
-	private static final ThreadLocal<String> currentTransactionName =
-			new NamedThreadLocal<String>("Current transaction name");
 
-	private static final ThreadLocal<Boolean> currentTransactionReadOnly =
-			new NamedThreadLocal<Boolean>("Current transaction read-only status");
-
-	private static final ThreadLocal<Integer> currentTransactionIsolationLevel =
-			new NamedThreadLocal<Integer>("Current transaction isolation level");
+	/**
+	 * Return the transaction context for the current thread.
+	 * @param create whether to create a new context if none bound
+	 * @return the context, or <code>null</code> if none bound and not to be created
+	 */
+	private static TransactionContext getContext(boolean create) {
+		TransactionContext context = transactionContext.get();
+		if (context == null && create) {
+			context = new TransactionContext();
+			transactionContext.set(context);
+		}
+		return context;
+	}
 
-	private static final ThreadLocal<Boolean> actualTransactionActive =
-			new NamedThreadLocal<Boolean>("Actual transaction active");
+	/**
+	 * Remove the given context from the current thread if it does not hold any state anymore.
+	 */
+	private static void releaseContextIfEmpty(TransactionContext context) {
+		if (context.isEmpty()) {
+			transactionContext.remove();
+		}
+	}
 
 
 	//-------------------------------------------------------------------------
@@ -109,8 +122,9 @@ public abstract class TransactionSynchronizationManager {
 	 * @see #hasResource
 	 */
 	public static Map<Object, Object> getResourceMap() {
-		Map<Object, Object> map = resources.get();
-		return (map != null ? Collections.unmodifiableMap(map) : Collections.emptyMap());
+		TransactionContext context = getContext(false);
+		return (context != null && context.resources != null ?
+				Collections.unmodifiableMap(context.resources) : Collections.emptyMap());
 	}
 
 	/**
@@ -120,6 +134,9 @@ public abstract class TransactionSynchronizationManager {
 	 * @see ResourceTransactionManager#getResourceFactory() 
 	 */
 	public static boolean hasResource(Object key) {
+		if (!hasResources()) {
+			return false;
+		}
 		Object actualKey = TransactionSynchronizationUtils.unwrapResourceIfNecessary(key);
 		Object value = doGetResource(actualKey);
 		return (value != null);
@@ -133,6 +150,9 @@ public abstract class TransactionSynchronizationManager {
 	 * @see ResourceTransactionManager#getResourceFactory()
 	 */
 	public static Object getResource(Object key) {
+		if (!hasResources()) {
+			return null;
+		}
 		Object actualKey = TransactionSynchronizationUtils.unwrapResourceIfNecessary(key);
 		Object value = doGetResource(actualKey);
 		if (value != null && logger.isTraceEnabled()) {
@@ -142,14 +162,24 @@ public abstract class TransactionSynchronizationManager {
 		return value;
 	}
 
+	/**
+	 * Check whether any resources are bound to the current thread, allowing for
+	 * skipping key unwrapping and map lookups if there are none.
+	 */
+	private static boolean hasResources() {
+		TransactionContext context = getContext(false);
+		return (context != null && context.resources != null && !context.resources.isEmpty());
+	}
+
 	/**
 	 * Actually check the value of the resource that is bound for the given key.
 	 */
 	private static Object doGetResource(Object actualKey) {
-		Map<Object, Object> map = resources.get();
-		if (map == null) {
+		TransactionContext context = getContext(false);
+		if (context == null || context.resources == null) {
 			return null;
 		}
+		Map<Object, Object> map = context.resources;
 		Object value = map.get(actualKey);
 		// Transparently remove ResourceHolder that was marked as void...
 		if (value instanceof ResourceHolder && ((ResourceHolder) value).isVoid()) {
@@ -169,12 +199,12 @@ public abstract class TransactionSynchronizationManager {
 	public static void bindResource(Object key, Object value) throws IllegalStateException {
 		Object actualKey = TransactionSynchronizationUtils.unwrapResourceIfNecessary(key);
 		Assert.notNull(value, "Value must not be null");
-		Map<Object, Object> map = resources.get();
-		// set ThreadLocal Map if none found
-		if (map == null) {
-			map = new HashMap<Object, Object>();
-			resources.set(map);
+		TransactionContext context = getContext(true);
+		// create resource Map if none found - to be reused for the lifetime of the context
+		if (context.resources == null) {
+			context.resources = new HashMap<Object, Object>();
 		}
+		Map<Object, Object> map = context.resources;
 		if (map.put(actualKey, value) != null) {
 			throw new IllegalStateException("Already value [" + map.get(actualKey) + "] for key [" +
 					actualKey + "] bound to thread [" + Thread.currentThread().getName() + "]");
@@ -216,15 +246,13 @@ public abstract class TransactionSynchronizationManager {
 	 * Actually remove the value of the resource that is bound for the given key.
 	 */
 	private static Object doUnbindResource(Object actualKey) {
-		Map<Object, Object> map = resources.get();
-		if (map == null) {
+		TransactionContext context = getContext(false);
+		if (context == null || context.resources == null) {
 			return null;
 		}
-		Object value = map.remove(actualKey);
+		Object value = context.resources.remove(actualKey);
 		// Remove entire ThreadLocal if empty...
-		if (map.isEmpty()) {
-			resources.remove();
-		}
+		releaseContextIfEmpty(context);
 		if (value != null && logger.isTraceEnabled()) {
 			logger.trace("Removed value [" + value + "] for key [" + actualKey + "] from thread [" +
 					Thread.currentThread().getName() + "]");
@@ -243,7 +271,8 @@ public abstract class TransactionSynchronizationManager {
 	 * @see #registerSynchronization
 	 */
 	public static boolean isSynchronizationActive() {
-		return (synchronizations.get() != null);
+		TransactionContext context = getContext(false);
+		return (context != null && context.synchronizationActive);
 	}
 
 	/**
@@ -256,7 +285,11 @@ public abstract class TransactionSynchronizationManager {
 			throw new IllegalStateException("Cannot activate transaction synchronization - already active");
 		}
 		logger.trace("Initializing transaction synchronization");
-		synchronizations.set(new LinkedList<TransactionSynchronization>());
+		TransactionContext context = getContext(true);
+		if (context.synchronizations == null) {
+			context.synchronizations = new ArrayList<TransactionSynchronization>(4);
+		}
+		context.synchronizationActive = true;
 	}
 
 	/**
@@ -273,10 +306,11 @@ public abstract class TransactionSynchronizationManager {
 	    throws IllegalStateException {
 
 		Assert.notNull(synchronization, "TransactionSynchronization must not be null");
-		if (!isSynchronizationActive()) {
+		TransactionContext context = getContext(false);
+		if (context == null || !context.synchronizationActive) {
 			throw new IllegalStateException("Transaction synchronization is not active");
 		}
-		synchronizations.get().add(synchronization);
+		context.synchronizations.add(synchronization);
 	}
 
 	/**
@@ -287,10 +321,11 @@ public abstract class TransactionSynchronizationManager {
 	 * @see TransactionSynchronization
 	 */
 	public static List<TransactionSynchronization> getSynchronizations() throws IllegalStateException {
-		List<TransactionSynchronization> synchs = synchronizations.get();
-		if (synchs == null) {
+		TransactionContext context = getContext(false);
+		if (context == null || !context.synchronizationActive) {
 			throw new IllegalStateException("Transaction synchronization is not active");
 		}
+		List<TransactionSynchronization> synchs = context.synchronizations;
 		// Return unmodifiable snapshot, to avoid ConcurrentModificationExceptions
 		// while iterating and invoking synchronization callbacks that in turn
 		// might register further synchronizations.
@@ -304,17 +339,43 @@ public abstract class TransactionSynchronizationManager {
 		}
 	}
 
+	/**
+	 * Return whether the registered synchronizations for the current thread are
+	 * being completed, that is, whether their <code>afterCommit</code> or
+	 * <code>afterCompletion</code> callbacks are being invoked. Synchronizations
+	 * registered at this point will not get invoked anymore.
+	 * @see TransactionSynchronizationUtils#invokeAfterCommit
+	 * @see TransactionSynchronizationUtils#invokeAfterCompletion
+	 */
+	public static boolean isSynchronizationCompleting() {
+		TransactionContext context = getContext(false);
+		return (context != null && context.synchronizationActive && context.synchronizationCompleting);
+	}
+
+	/**
+	 * Mark the registered synchronizations for the current thread as being completed,
+	 * if synchronization is active. Reset when synchronization gets deactivated.
+	 */
+	static void markSynchronizationCompleting() {
+		TransactionContext context = getContext(false);
+		if (context != null && context.synchronizationActive) {
+			context.synchronizationCompleting = true;
+		}
+	}
+
 	/**
 	 * Deactivate transaction synchronization for the current thread.
 	 * Called by the transaction manager on transaction cleanup.
 	 * @throws IllegalStateException if synchronization is not active
 	 */
 	public static void clearSynchronization() throws IllegalStateException {
-		if (!isSynchronizationActive()) {
+		TransactionContext context = getContext(false);
+		if (context == null || !context.synchronizationActive) {
 			throw new IllegalStateException("Cannot deactivate transaction synchronization - not active");
 		}
 		logger.trace("Clearing transaction synchronization");
-		synchronizations.remove();
+		context.clearSynchronization();
+		releaseContextIfEmpty(context);
 	}
 
 
@@ -329,7 +390,11 @@ public abstract class TransactionSynchronizationManager {
 	 * @see org.springframework.transaction.TransactionDefinition#getName()
 	 */
 	public static void setCurrentTransactionName(String name) {
-		currentTransactionName.set(name);
+		TransactionContext context = getContext(name != null);
+		if (context != null) {
+			context.name = name;
+			releaseContextIfEmpty(context);
+		}
 	}
 
 	/**
@@ -339,7 +404,8 @@ public abstract class TransactionSynchronizationManager {
 	 * @see org.springframework.transaction.TransactionDefinition#getName()
 	 */
 	public static String getCurrentTransactionName() {
-		return currentTransactionName.get();
+		TransactionContext context = getContext(false);
+		return (context != null ? context.name : null);
 	}
 
 	/**
@@ -350,7 +416,11 @@ public abstract class TransactionSynchronizationManager {
 	 * @see org.springframework.transaction.TransactionDefinition#isReadOnly()
 	 */
 	public static void setCurrentTransactionReadOnly(boolean readOnly) {
-		currentTransactionReadOnly.set(readOnly ? Boolean.TRUE : null);
+		TransactionContext context = getContext(readOnly);
+		if (context != null) {
+			context.readOnly = readOnly;
+			releaseContextIfEmpty(context);
+		}
 	}
 
 	/**
@@ -366,7 +436,8 @@ public abstract class TransactionSynchronizationManager {
 	 * @see TransactionSynchronization#beforeCommit(boolean)
 	 */
 	public static boolean isCurrentTransactionReadOnly() {
-		return (currentTransactionReadOnly.get() != null);
+		TransactionContext context = getContext(false);
+		return (context != null && context.readOnly);
 	}
 
 	/**
@@ -386,7 +457,11 @@ public abstract class TransactionSynchronizationManager {
 	 * @see org.springframework.transaction.TransactionDefinition#getIsolationLevel()
 	 */
 	public static void setCurrentTransactionIsolationLevel(Integer isolationLevel) {
-		currentTransactionIsolationLevel.set(isolationLevel);
+		TransactionContext context = getContext(isolationLevel != null);
+		if (context != null) {
+			context.isolationLevel = isolationLevel;
+			releaseContextIfEmpty(context);
+		}
 	}
 
 	/**
@@ -407,7 +482,8 @@ public abstract class TransactionSynchronizationManager {
 	 * @see org.springframework.transaction.TransactionDefinition#getIsolationLevel()
 	 */
 	public static Integer getCurrentTransactionIsolationLevel() {
-		return currentTransactionIsolationLevel.get();
+		TransactionContext context = getContext(false);
+		return (context != null ? context.isolationLevel : null);
 	}
 
 	/**
@@ -417,7 +493,11 @@ public abstract class TransactionSynchronizationManager {
 	 * with an actual transaction; <code>false</code> to reset that marker
 	 */
 	public static void setActualTransactionActive(boolean active) {
-		actualTransactionActive.set(active ? Boolean.TRUE : null);
+		TransactionContext context = getContext(active);
+		if (context != null) {
+			context.actualTransactionActive = active;
+			releaseContextIfEmpty(context);
+		}
 	}
 
 	/**
@@ -432,7 +512,8 @@ public abstract class TransactionSynchronizationManager {
 	 * @see #isSynchronizationActive()
 	 */
 	public static boolean isActualTransactionActive() {
-		return (actualTransactionActive.get() != null);
+		TransactionContext context = getContext(false);
+		return (context != null && context.actualTransactionActive);
 	}
 
 
@@ -447,10 +528,51 @@ public abstract class TransactionSynchronizationManager {
 	 */
 	public static void clear() {
 		clearSynchronization();
-		setCurrentTransactionName(null);
-		setCurrentTransactionReadOnly(false);
-		setCurrentTransactionIsolationLevel(null);
-		setActualTransactionActive(false);
+		TransactionContext context = getContext(false);
+		if (context != null) {
+			context.name = null;
+			context.readOnly = false;
+			context.isolationLevel = null;
+			context.actualTransactionActive = false;
+			releaseContextIfEmpty(context);
+		}
+	}
+
+
+	/**
+	 * Holder for all transaction state of a thread: bound resources, registered
+	 * synchronizations and the current transaction characteristics. The resource
+	 * map and the synchronization list are reused for the lifetime of the context.
+	 */
+	private static class TransactionContext {
+
+		private Map<Object, Object> resources;
+
+		private List<TransactionSynchronization> synchronizations;
+
+		private boolean synchronizationActive;
+
+		private boolean synchronizationCompleting;
+
+		private String name;
+
+		private boolean readOnly;
+
+		private Integer isolationLevel;
+
+		private boolean actualTransactionActive;
+
+		public void clearSynchronization() {
+			this.synchronizations.clear();
+			this.synchronizationActive = false;
+			this.synchronizationCompleting = false;
+		}
+
+		public boolean isEmpty() {
+			return ((this.resources == null || this.resources.isEmpty()) && !this.synchronizationActive &&
+					this.name == null && !this.readOnly && this.isolationLevel == null &&
+					!this.actualTransactionActive);
+		}
 	}
 
 }
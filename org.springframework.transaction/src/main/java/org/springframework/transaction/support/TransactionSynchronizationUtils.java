@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2009 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -124,12 +124,17 @@ public abstract class TransactionSynchronizationUtils {
 	/**
 	 * Actually invoke the <code>afterCommit</code> methods of the
 	 * given Spring TransactionSynchronization objects.
+	 * <p>Marks the synchronizations of the current thread as completing.
 	 * @param synchronizations List of TransactionSynchronization objects
 	 * @see TransactionSynchronization#afterCommit()
+	 * @see TransactionSynchronizationManager#isSynchronizationCompleting()
 	 */
 	public static void invokeAfterCommit(List<TransactionSynchronization> synchronizations) {
 		if (synchronizations != null) {
 			for (TransactionSynchronization synchronization : synchronizations) {
+				// Mark before each callback, since a previous callback may have resumed
+				// the synchronizations after running a transaction of its own.
+				TransactionSynchronizationManager.markSynchronizationCompleting();
 				synchronization.afterCommit();
 			}
 		}
@@ -153,6 +158,7 @@ public abstract class TransactionSynchronizationUtils {
 	/**
 	 * Actually invoke the <code>afterCompletion</code> methods of the
 	 * given Spring TransactionSynchronization objects.
+	 * <p>Marks the synchronizations of the current thread as completing.
 	 * @param synchronizations List of TransactionSynchronization objects
 	 * @param completionStatus the completion status according to the
 	 * constants in the TransactionSynchronization interface
@@ -160,10 +166,12 @@ public abstract class TransactionSynchronizationUtils {
 	 * @see TransactionSynchronization#STATUS_COMMITTED
 	 * @see TransactionSynchronization#STATUS_ROLLED_BACK
 	 * @see TransactionSynchronization#STATUS_UNKNOWN
+	 * @see TransactionSynchronizationManager#isSynchronizationCompleting()
 	 */
 	public static void invokeAfterCompletion(List<TransactionSynchronization> synchronizations, int completionStatus) {
 		if (synchronizations != null) {
 			for (TransactionSynchronization synchronization : synchronizations) {
+				TransactionSynchronizationManager.markSynchronizationCompleting();
 				try {
 					synchronization.afterCompletion(completionStatus);
 				}
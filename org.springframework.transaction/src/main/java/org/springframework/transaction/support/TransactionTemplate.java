@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2009 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -157,6 +157,9 @@ public class TransactionTemplate extends DefaultTransactionDefinition
 	 */
 	private void rollbackOnException(TransactionStatus status, Throwable ex) throws TransactionException {
 		logger.debug("Initiating transaction rollback on application exception", ex);
+		if (status instanceof DefaultTransactionStatus) {
+			((DefaultTransactionStatus) status).setRollbackCause(ex);
+		}
 		try {
 			this.transactionManager.rollback(status);
 		}
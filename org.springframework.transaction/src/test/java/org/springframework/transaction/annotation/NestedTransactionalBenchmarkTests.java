@@ -0,0 +1,201 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.annotation;
+
+import org.junit.Test;
+
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StopWatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark for nested <code>@Transactional</code> invocations, exercising the
+ * thread-bound state in {@link TransactionSynchronizationManager}: resource
+ * binding and lookup, synchronization registration, and suspension on
+ * <code>REQUIRES_NEW</code>.
+ *
+ * NOTE: No assertions on timing!
+ *
+ * @since 3.1
+ */
+public final class NestedTransactionalBenchmarkTests {
+
+	/** Increase this if you want meaningful results! */
+	private static final int INVOCATIONS = 20000;
+
+
+	@Test
+	public void timeNestedTransactionalInvocations() {
+		ResourceBindingTransactionManager tm = new ResourceBindingTransactionManager();
+		InnerService inner = createProxy(new DefaultInnerService(), tm);
+		OuterService outer = createProxy(new DefaultOuterService(inner), tm);
+
+		// Warm up before measuring.
+		for (int i = 0; i < INVOCATIONS; i++) {
+			outer.required();
+			outer.requiresNew();
+		}
+		assertFalse(TransactionSynchronizationManager.isSynchronizationActive());
+		assertTrue(TransactionSynchronizationManager.getResourceMap().isEmpty());
+
+		StopWatch sw = new StopWatch();
+		sw.start(INVOCATIONS + " outer transactions with 3 joining inner invocations");
+		for (int i = 0; i < INVOCATIONS; i++) {
+			outer.required();
+		}
+		sw.stop();
+		sw.start(INVOCATIONS + " outer transactions with 3 suspending inner invocations");
+		for (int i = 0; i < INVOCATIONS; i++) {
+			outer.requiresNew();
+		}
+		sw.stop();
+		System.out.println(sw.prettyPrint());
+
+		assertEquals(10 * INVOCATIONS, tm.begun);
+		assertEquals(tm.begun, tm.completed);
+		assertFalse(TransactionSynchronizationManager.isSynchronizationActive());
+		assertTrue(TransactionSynchronizationManager.getResourceMap().isEmpty());
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T createProxy(T target, ResourceBindingTransactionManager tm) {
+		ProxyFactory pf = new ProxyFactory(target);
+		pf.addAdvice(new TransactionInterceptor(tm, new AnnotationTransactionAttributeSource()));
+		return (T) pf.getProxy();
+	}
+
+
+	public interface OuterService {
+
+		void required();
+
+		void requiresNew();
+	}
+
+
+	public interface InnerService {
+
+		void required();
+
+		void requiresNew();
+	}
+
+
+	public static class DefaultOuterService implements OuterService {
+
+		private final InnerService inner;
+
+		public DefaultOuterService(InnerService inner) {
+			this.inner = inner;
+		}
+
+		@Transactional
+		public void required() {
+			for (int i = 0; i < 3; i++) {
+				this.inner.required();
+			}
+		}
+
+		@Transactional
+		public void requiresNew() {
+			for (int i = 0; i < 3; i++) {
+				this.inner.requiresNew();
+			}
+		}
+	}
+
+
+	public static class DefaultInnerService implements InnerService {
+
+		@Transactional
+		public void required() {
+			TransactionSynchronizationManager.getResource(ResourceBindingTransactionManager.KEY);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			});
+		}
+
+		@Transactional(propagation = Propagation.REQUIRES_NEW)
+		public void requiresNew() {
+			required();
+		}
+	}
+
+
+	/**
+	 * Transaction manager that binds a resource to the thread, like
+	 * DataSourceTransactionManager does, supporting suspension.
+	 */
+	private static class ResourceBindingTransactionManager extends AbstractPlatformTransactionManager {
+
+		private static final Object KEY = new Object();
+
+		private int begun;
+
+		private int completed;
+
+		@Override
+		protected Object doGetTransaction() {
+			return new Object[] {TransactionSynchronizationManager.getResource(KEY)};
+		}
+
+		@Override
+		protected boolean isExistingTransaction(Object transaction) {
+			return (((Object[]) transaction)[0] != null);
+		}
+
+		@Override
+		protected void doBegin(Object transaction, TransactionDefinition definition) {
+			Object resource = new Object();
+			((Object[]) transaction)[0] = resource;
+			TransactionSynchronizationManager.bindResource(KEY, resource);
+			this.begun++;
+		}
+
+		@Override
+		protected Object doSuspend(Object transaction) {
+			((Object[]) transaction)[0] = null;
+			return TransactionSynchronizationManager.unbindResource(KEY);
+		}
+
+		@Override
+		protected void doResume(Object transaction, Object suspendedResources) {
+			TransactionSynchronizationManager.bindResource(KEY, suspendedResources);
+		}
+
+		@Override
+		protected void doCommit(DefaultTransactionStatus status) {
+		}
+
+		@Override
+		protected void doRollback(DefaultTransactionStatus status) {
+		}
+
+		@Override
+		protected void doCleanupAfterCompletion(Object transaction) {
+			TransactionSynchronizationManager.unbindResource(KEY);
+			this.completed++;
+		}
+	}
+
+}
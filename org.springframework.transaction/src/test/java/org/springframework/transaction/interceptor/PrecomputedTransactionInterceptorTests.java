@@ -0,0 +1,109 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.interceptor;
+
+import java.lang.reflect.Method;
+import java.util.Properties;
+
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.ITestBean;
+import org.springframework.beans.TestBean;
+import org.springframework.transaction.CallCountingTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Runs the transaction aspect tests against a TransactionInterceptor
+ * with transaction attributes precomputed at proxy creation time.
+ */
+public class PrecomputedTransactionInterceptorTests extends AbstractTransactionAspectTests {
+
+	protected Object advised(Object target, PlatformTransactionManager ptm, TransactionAttributeSource tas) {
+		TransactionInterceptor ti = new TransactionInterceptor(ptm, tas);
+		ti.precomputeTransactionAttributes(target.getClass());
+		ProxyFactory pf = new ProxyFactory(target);
+		pf.addAdvice(0, ti);
+		return pf.getProxy();
+	}
+
+	public void testAttributeSourceNotConsultedPerInvocation() {
+		final int[] lookups = new int[1];
+		MapTransactionAttributeSource tas = new MapTransactionAttributeSource() {
+			@Override
+			public TransactionAttribute getTransactionAttribute(Method method, Class<?> targetClass) {
+				lookups[0]++;
+				return super.getTransactionAttribute(method, targetClass);
+			}
+		};
+		tas.register(getNameMethod, new DefaultTransactionAttribute());
+		CallCountingTransactionManager ptm = new CallCountingTransactionManager();
+
+		ITestBean itb = (ITestBean) advised(new TestBean(), ptm, tas);
+		int lookupsAfterCreation = lookups[0];
+		assertTrue(lookupsAfterCreation > 0);
+		itb.getName();
+		itb.getName();
+		itb.getAge();
+		assertEquals(lookupsAfterCreation, lookups[0]);
+		assertEquals(2, ptm.commits);
+		assertEquals(TestBean.class.getName() + ".getName", ptm.lastDefinition.getName());
+	}
+
+	public void testPrecomputeOnFirstInvocation() {
+		final int[] lookups = new int[1];
+		MapTransactionAttributeSource tas = new MapTransactionAttributeSource() {
+			@Override
+			public TransactionAttribute getTransactionAttribute(Method method, Class<?> targetClass) {
+				lookups[0]++;
+				return super.getTransactionAttribute(method, targetClass);
+			}
+		};
+		tas.register(getNameMethod, new DefaultTransactionAttribute());
+		CallCountingTransactionManager ptm = new CallCountingTransactionManager();
+		TransactionInterceptor ti = new TransactionInterceptor(ptm, tas);
+		ti.setPrecomputeTransactionAttributes(true);
+		ProxyFactory pf = new ProxyFactory(new TestBean());
+		pf.addAdvice(ti);
+		ITestBean itb = (ITestBean) pf.getProxy();
+
+		itb.getName();
+		int lookupsAfterFirstInvocation = lookups[0];
+		itb.getName();
+		itb.setName("name");
+		assertEquals(lookupsAfterFirstInvocation, lookups[0]);
+		assertEquals(2, ptm.commits);
+	}
+
+	public void testTransactionProxyFactoryBean() {
+		TransactionProxyFactoryBean pfb = new TransactionProxyFactoryBean();
+		CallCountingTransactionManager ptm = new CallCountingTransactionManager();
+		pfb.setTransactionManager(ptm);
+		Properties attributes = new Properties();
+		attributes.setProperty("get*", "PROPAGATION_REQUIRED,readOnly");
+		pfb.setTransactionAttributes(attributes);
+		pfb.setPrecomputeTransactionAttributes(true);
+		pfb.setTarget(new TestBean());
+		pfb.afterPropertiesSet();
+
+		ITestBean itb = (ITestBean) pfb.getObject();
+		itb.getAge();
+		itb.setAge(1);
+		assertEquals(1, ptm.commits);
+		assertTrue(ptm.lastDefinition.isReadOnly());
+		assertEquals(TestBean.class.getName() + ".getAge", ptm.lastDefinition.getName());
+	}
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.interceptor;
+
+import org.junit.Test;
+
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.transaction.CallCountingTransactionManager;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StopWatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark for <code>@Transactional</code> invocations through a
+ * {@link TransactionInterceptor}, comparing per-invocation attribute lookup
+ * against attributes precomputed at proxy creation time.
+ *
+ * NOTE: No assertions on timing!
+ *
+ * @since 3.1
+ */
+public final class TransactionInterceptorBenchmarkTests {
+
+	/** Increase this if you want meaningful results! */
+	private static final int INVOCATIONS = 100000;
+
+
+	@Test
+	public void timeTransactionalInvocations() {
+		CallCountingTransactionManager tm = new CallCountingTransactionManager();
+		Service lookupProxy = createProxy(tm, false);
+		Service precomputedProxy = createProxy(tm, true);
+
+		// Warm up before measuring.
+		for (int i = 0; i < INVOCATIONS; i++) {
+			lookupProxy.doWork();
+			precomputedProxy.doWork();
+		}
+
+		StopWatch sw = new StopWatch();
+		sw.start(INVOCATIONS + " invocations with attribute lookup");
+		for (int i = 0; i < INVOCATIONS; i++) {
+			lookupProxy.doWork();
+		}
+		sw.stop();
+		sw.start(INVOCATIONS + " invocations with precomputed attributes");
+		for (int i = 0; i < INVOCATIONS; i++) {
+			precomputedProxy.doWork();
+		}
+		sw.stop();
+		System.out.println(sw.prettyPrint());
+
+		assertEquals(4 * INVOCATIONS, tm.commits);
+		assertEquals(0, tm.inflight);
+	}
+
+	private Service createProxy(CallCountingTransactionManager tm, boolean precompute) {
+		TransactionInterceptor ti = new TransactionInterceptor(tm, new AnnotationTransactionAttributeSource());
+		if (precompute) {
+			ti.precomputeTransactionAttributes(DefaultService.class);
+		}
+		ProxyFactory pf = new ProxyFactory(new DefaultService());
+		pf.addAdvice(ti);
+		pf.setFrozen(true);
+		return (Service) pf.getProxy();
+	}
+
+
+	public interface Service {
+
+		void doWork();
+	}
+
+
+	public static class DefaultService implements Service {
+
+		@Transactional
+		public void doWork() {
+		}
+	}
+
+}
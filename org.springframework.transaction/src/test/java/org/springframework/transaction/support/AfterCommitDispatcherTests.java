@@ -0,0 +1,249 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.transaction.CallCountingTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link AfterCommitDispatcher}.
+ */
+public class AfterCommitDispatcherTests {
+
+	private final QueueingTaskExecutor executor = new QueueingTaskExecutor();
+
+	private final AfterCommitDispatcher dispatcher = new AfterCommitDispatcher(this.executor);
+
+	private final TransactionTemplate template = new TransactionTemplate(new CallCountingTransactionManager());
+
+	private final List<String> performed = Collections.synchronizedList(new ArrayList<String>());
+
+
+	@Test
+	public void actionsBatchedAndDeduplicated() {
+		this.template.execute(new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				dispatcher.dispatchAfterCommit("a", new RecordingAction("a1"));
+				dispatcher.dispatchAfterCommit("b", new RecordingAction("b1"));
+				dispatcher.dispatchAfterCommit("a", new RecordingAction("a2"));
+				assertEquals(1, TransactionSynchronizationManager.getSynchronizations().size());
+			}
+		});
+		assertTrue(this.performed.isEmpty());
+		assertEquals(2, this.executor.tasks.size());
+		assertEquals(2, this.dispatcher.getQueueDepth());
+		assertEquals(2, this.dispatcher.getPendingKeyCount());
+
+		this.executor.runAll();
+		assertEquals(Arrays.asList("a2", "b1"), this.performed);
+		assertEquals(1, this.dispatcher.getBatchCount());
+		assertEquals(2, this.dispatcher.getDispatchedActionCount());
+		assertEquals(1, this.dispatcher.getDeduplicatedActionCount());
+		assertEquals(2, this.dispatcher.getCompletedActionCount());
+		assertEquals(0, this.dispatcher.getQueueDepth());
+		assertEquals(0, this.dispatcher.getPendingKeyCount());
+		assertTrue(TransactionSynchronizationManager.getResourceMap().isEmpty());
+	}
+
+	@Test
+	public void actionsDiscardedOnRollback() {
+		this.template.execute(new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				dispatcher.dispatchAfterCommit("a", new RecordingAction("a1"));
+				status.setRollbackOnly();
+			}
+		});
+		assertTrue(this.executor.tasks.isEmpty());
+		assertEquals(1, this.dispatcher.getDiscardedActionCount());
+		assertEquals(0, this.dispatcher.getQueueDepth());
+		assertTrue(TransactionSynchronizationManager.getResourceMap().isEmpty());
+	}
+
+	@Test
+	public void actionsDispatchedImmediatelyWithoutTransaction() {
+		this.dispatcher.dispatchAfterCommit(new RecordingAction("x"));
+		assertEquals(1, this.executor.tasks.size());
+		this.executor.runAll();
+		assertEquals(Arrays.asList("x"), this.performed);
+		assertEquals(0, this.dispatcher.getBatchCount());
+		assertEquals(1, this.dispatcher.getDispatchedActionCount());
+	}
+
+	@Test
+	public void actionsDispatchedImmediatelyFromAfterCommitWithoutBatch() {
+		this.template.execute(new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+					@Override
+					public void afterCommit() {
+						assertTrue(TransactionSynchronizationManager.isSynchronizationCompleting());
+						dispatcher.dispatchAfterCommit("a", new RecordingAction("fromAfterCommit"));
+					}
+					@Override
+					public void afterCompletion(int status) {
+						dispatcher.dispatchAfterCommit("b", new RecordingAction("fromAfterCompletion"));
+					}
+				});
+				assertFalse(TransactionSynchronizationManager.isSynchronizationCompleting());
+			}
+		});
+		assertEquals(2, this.executor.tasks.size());
+		this.executor.runAll();
+		assertEquals(Arrays.asList("fromAfterCommit", "fromAfterCompletion"), this.performed);
+		assertEquals(0, this.dispatcher.getBatchCount());
+		assertEquals(0, this.dispatcher.getQueueDepth());
+		assertTrue(TransactionSynchronizationManager.getResourceMap().isEmpty());
+		assertFalse(TransactionSynchronizationManager.isSynchronizationCompleting());
+	}
+
+	@Test
+	public void actionsDispatchedFromAfterCommitOfOwnBatch() {
+		this.template.execute(new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				dispatcher.dispatchAfterCommit("a", new RecordingAction("a1"));
+				TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+					@Override
+					public void afterCommit() {
+						dispatcher.dispatchAfterCommit("a", new RecordingAction("a2"));
+					}
+				});
+			}
+		});
+		this.executor.runAll();
+		assertEquals(Arrays.asList("a1", "a2"), this.performed);
+		assertEquals(1, this.dispatcher.getBatchCount());
+		assertEquals(0, this.dispatcher.getDeduplicatedActionCount());
+	}
+
+	@Test
+	public void innerTransactionGetsOwnBatch() {
+		final TransactionTemplate requiresNew = new TransactionTemplate(this.template.getTransactionManager());
+		requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		this.template.execute(new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				dispatcher.dispatchAfterCommit("a", new RecordingAction("outer1"));
+				requiresNew.execute(new TransactionCallbackWithoutResult() {
+					protected void doInTransactionWithoutResult(TransactionStatus status) {
+						dispatcher.dispatchAfterCommit("a", new RecordingAction("inner"));
+					}
+				});
+				assertEquals(1, executor.tasks.size());
+				dispatcher.dispatchAfterCommit("a", new RecordingAction("outer2"));
+			}
+		});
+		this.executor.runAll();
+		assertEquals(Arrays.asList("inner", "outer2"), this.performed);
+		assertEquals(2, this.dispatcher.getBatchCount());
+	}
+
+	@Test
+	public void failingActionCounted() {
+		this.template.execute(new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				dispatcher.dispatchAfterCommit("a", new Runnable() {
+					public void run() {
+						throw new IllegalStateException("failed");
+					}
+				});
+				dispatcher.dispatchAfterCommit("b", new RecordingAction("b1"));
+			}
+		});
+		this.executor.runAll();
+		assertEquals(1, this.dispatcher.getFailedActionCount());
+		assertEquals(1, this.dispatcher.getCompletedActionCount());
+		assertEquals(Arrays.asList("b1"), this.performed);
+	}
+
+	@Test
+	public void orderingPreservedPerKey() throws InterruptedException {
+		AfterCommitDispatcher asyncDispatcher = new AfterCommitDispatcher(new SimpleAsyncTaskExecutor());
+		final List<Integer> keyA = Collections.synchronizedList(new ArrayList<Integer>());
+		final List<Integer> keyB = Collections.synchronizedList(new ArrayList<Integer>());
+		for (int i = 0; i < 200; i++) {
+			final int index = i;
+			asyncDispatcher.dispatchAfterCommit("a", new Runnable() {
+				public void run() {
+					keyA.add(index);
+				}
+			});
+			asyncDispatcher.dispatchAfterCommit("b", new Runnable() {
+				public void run() {
+					keyB.add(index);
+				}
+			});
+		}
+		for (int i = 0; i < 100 && asyncDispatcher.getQueueDepth() > 0; i++) {
+			Thread.sleep(50);
+		}
+		assertEquals(0, asyncDispatcher.getQueueDepth());
+		assertEquals(200, keyA.size());
+		assertEquals(200, keyB.size());
+		for (int i = 0; i < 200; i++) {
+			assertEquals(i, keyA.get(i).intValue());
+			assertEquals(i, keyB.get(i).intValue());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void taskExecutorRequired() {
+		new AfterCommitDispatcher().afterPropertiesSet();
+	}
+
+
+	private class RecordingAction implements Runnable {
+
+		private final String name;
+
+		public RecordingAction(String name) {
+			this.name = name;
+		}
+
+		public void run() {
+			performed.add(this.name);
+		}
+	}
+
+
+	private static class QueueingTaskExecutor implements TaskExecutor {
+
+		private final List<Runnable> tasks = new LinkedList<Runnable>();
+
+		public void execute(Runnable task) {
+			this.tasks.add(task);
+		}
+
+		public void runAll() {
+			while (!this.tasks.isEmpty()) {
+				this.tasks.remove(0).run();
+			}
+		}
+	}
+
+}
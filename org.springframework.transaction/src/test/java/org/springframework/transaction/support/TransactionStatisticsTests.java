@@ -0,0 +1,198 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link TransactionStatistics} as observer of an
+ * {@link AbstractPlatformTransactionManager}.
+ */
+public class TransactionStatisticsTests {
+
+	private final TransactionStatistics statistics = new TransactionStatistics();
+
+	private TransactionTemplate template;
+
+
+	@Before
+	public void setUp() {
+		ResourceBindingTransactionManager tm = new ResourceBindingTransactionManager();
+		tm.setTransactionObserver(this.statistics);
+		this.template = new TransactionTemplate(tm);
+		this.template.setName("test");
+	}
+
+
+	@Test
+	public void commitAndRollbackCounted() {
+		this.template.execute(new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				assertEquals(1, statistics.getActiveTransactionCount());
+			}
+		});
+		for (int i = 0; i < 2; i++) {
+			try {
+				this.template.execute(new TransactionCallbackWithoutResult() {
+					protected void doInTransactionWithoutResult(TransactionStatus status) {
+						throw new IllegalStateException();
+					}
+				});
+				fail("Should have thrown IllegalStateException");
+			}
+			catch (IllegalStateException ex) {
+				// expected
+			}
+		}
+		this.template.execute(new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				status.setRollbackOnly();
+			}
+		});
+
+		assertEquals(4, this.statistics.getBegunTransactionCount());
+		assertEquals(0, this.statistics.getActiveTransactionCount());
+		assertEquals(1, this.statistics.getCommittedTransactionCount());
+		assertEquals(3, this.statistics.getRolledBackTransactionCount());
+		assertEquals(2, this.statistics.getRollbackCount(IllegalStateException.class));
+		assertArrayEquals(new String[] {"(none)=1", IllegalStateException.class.getName() + "=2"},
+				this.statistics.getRollbackCounts());
+		assertEquals(1, this.statistics.getCommitTimeHistogram().getCount());
+		assertEquals(3, this.statistics.getRollbackTimeHistogram().getCount());
+	}
+
+	@Test
+	public void onlyNewTransactionsCounted() {
+		final TransactionTemplate requiresNew = new TransactionTemplate(this.template.getTransactionManager());
+		requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		this.template.execute(new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				template.execute(new TransactionCallbackWithoutResult() {
+					protected void doInTransactionWithoutResult(TransactionStatus status) {
+						assertFalse(status.isNewTransaction());
+					}
+				});
+				requiresNew.execute(new TransactionCallbackWithoutResult() {
+					protected void doInTransactionWithoutResult(TransactionStatus status) {
+						assertEquals(2, statistics.getActiveTransactionCount());
+					}
+				});
+			}
+		});
+		assertEquals(2, this.statistics.getBegunTransactionCount());
+		assertEquals(2, this.statistics.getCommittedTransactionCount());
+		assertEquals(1, this.statistics.getSuspensionCount());
+	}
+
+	@Test
+	public void synchronizationTimeRecorded() {
+		this.template.execute(new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				});
+			}
+		});
+		assertEquals(1, this.statistics.getSynchronizationTimeHistogram(TransactionObserver.BEFORE_COMMIT).getCount());
+		assertEquals(1, this.statistics.getSynchronizationTimeHistogram(TransactionObserver.BEFORE_COMPLETION).getCount());
+		assertEquals(1, this.statistics.getSynchronizationTimeHistogram(TransactionObserver.AFTER_COMMIT).getCount());
+		assertEquals(1, this.statistics.getSynchronizationTimeHistogram(TransactionObserver.AFTER_COMPLETION).getCount());
+
+		this.statistics.resetHistograms();
+		assertEquals(0, this.statistics.getSynchronizationTimeHistogram(TransactionObserver.AFTER_COMMIT).getCount());
+		assertEquals(0, this.statistics.getCommitTimeHistogram().getCount());
+		assertEquals(1, this.statistics.getCommittedTransactionCount());
+	}
+
+	@Test
+	public void longRunningTransactionsDetected() {
+		this.statistics.setLongRunningThreshold(1);
+		this.template.execute(new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				assertEquals(0, statistics.getLongRunningTransactions().length);
+				try {
+					Thread.sleep(20);
+				}
+				catch (InterruptedException ex) {
+					throw new IllegalStateException(ex);
+				}
+				String[] longRunning = statistics.getLongRunningTransactions();
+				assertEquals(1, longRunning.length);
+				assertTrue(longRunning[0].startsWith("[test] running for "));
+			}
+		});
+		assertEquals(1, this.statistics.getLongRunningTransactionCount());
+		assertEquals(0, this.statistics.getLongRunningTransactions().length);
+		assertTrue(this.statistics.getMaxCommitTime() >= 20);
+	}
+
+
+	/**
+	 * Transaction manager that binds a resource to the thread, supporting suspension.
+	 */
+	private static class ResourceBindingTransactionManager extends AbstractPlatformTransactionManager {
+
+		private static final Object KEY = new Object();
+
+		@Override
+		protected Object doGetTransaction() {
+			return new Object[] {TransactionSynchronizationManager.getResource(KEY)};
+		}
+
+		@Override
+		protected boolean isExistingTransaction(Object transaction) {
+			return (((Object[]) transaction)[0] != null);
+		}
+
+		@Override
+		protected void doBegin(Object transaction, TransactionDefinition definition) {
+			Object resource = new Object();
+			((Object[]) transaction)[0] = resource;
+			TransactionSynchronizationManager.bindResource(KEY, resource);
+		}
+
+		@Override
+		protected Object doSuspend(Object transaction) {
+			((Object[]) transaction)[0] = null;
+			return TransactionSynchronizationManager.unbindResource(KEY);
+		}
+
+		@Override
+		protected void doResume(Object transaction, Object suspendedResources) {
+			TransactionSynchronizationManager.bindResource(KEY, suspendedResources);
+		}
+
+		@Override
+		protected void doCommit(DefaultTransactionStatus status) {
+		}
+
+		@Override
+		protected void doRollback(DefaultTransactionStatus status) {
+		}
+
+		@Override
+		protected void doCleanupAfterCompletion(Object transaction) {
+			TransactionSynchronizationManager.unbindResource(KEY);
+		}
+	}
+
+}
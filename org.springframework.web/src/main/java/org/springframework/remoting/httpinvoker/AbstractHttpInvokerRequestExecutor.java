@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -28,6 +28,8 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.springframework.beans.factory.BeanClassLoaderAware;
+import org.springframework.core.serializer.Deserializer;
+import org.springframework.core.serializer.Serializer;
 import org.springframework.remoting.rmi.CodebaseAwareObjectInputStream;
 import org.springframework.remoting.support.RemoteInvocation;
 import org.springframework.remoting.support.RemoteInvocationResult;
@@ -37,11 +39,16 @@ import org.springframework.util.Assert;
  * Abstract base implementation of the HttpInvokerRequestExecutor interface.
  *
  * <p>Pre-implements serialization of RemoteInvocation objects and
- * deserialization of RemoteInvocationResults objects.
+ * deserialization of RemoteInvocationResults objects, through standard
+ * Java serialization by default or through a custom
+ * {@link org.springframework.core.serializer.Serializer} and
+ * {@link org.springframework.core.serializer.Deserializer} if specified.
  *
  * @author Juergen Hoeller
  * @since 1.1
  * @see #doExecuteRequest
+ * @see #setSerializer
+ * @see #setDeserializer
  */
 public abstract class AbstractHttpInvokerRequestExecutor
 		implements HttpInvokerRequestExecutor, BeanClassLoaderAware {
@@ -76,6 +83,10 @@ public abstract class AbstractHttpInvokerRequestExecutor
 
 	private boolean acceptGzipEncoding = true;
 
+	private Serializer<Object> serializer;
+
+	private Deserializer<Object> deserializer;
+
 	private ClassLoader beanClassLoader;
 
 
@@ -113,8 +124,51 @@ public abstract class AbstractHttpInvokerRequestExecutor
 		return this.acceptGzipEncoding;
 	}
 
+	/**
+	 * Specify a custom Serializer to use for writing remote invocations,
+	 * for example a {@link org.springframework.remoting.support.CompactRemoteInvocationSerializer}.
+	 * <p>Default is none, writing invocations through standard Java serialization
+	 * (see {@link #doWriteRemoteInvocation}). Note that the server side needs
+	 * to use a corresponding Deserializer.
+	 */
+	public void setSerializer(Serializer<Object> serializer) {
+		this.serializer = serializer;
+	}
+
+	/**
+	 * Return the custom Serializer to use for writing remote invocations, if any.
+	 */
+	public Serializer<Object> getSerializer() {
+		return this.serializer;
+	}
+
+	/**
+	 * Specify a custom Deserializer to use for reading remote invocation results,
+	 * for example a {@link org.springframework.remoting.support.CompactRemoteInvocationSerializer}.
+	 * <p>Default is none, reading results through standard Java serialization
+	 * (see {@link #createObjectInputStream} and {@link #doReadRemoteInvocationResult}).
+	 * A Deserializer that implements {@link BeanClassLoaderAware} will receive
+	 * this executor's bean ClassLoader.
+	 */
+	public void setDeserializer(Deserializer<Object> deserializer) {
+		this.deserializer = deserializer;
+		if (this.beanClassLoader != null && deserializer instanceof BeanClassLoaderAware) {
+			((BeanClassLoaderAware) deserializer).setBeanClassLoader(this.beanClassLoader);
+		}
+	}
+
+	/**
+	 * Return the custom Deserializer to use for reading remote invocation results, if any.
+	 */
+	public Deserializer<Object> getDeserializer() {
+		return this.deserializer;
+	}
+
 	public void setBeanClassLoader(ClassLoader classLoader) {
 		this.beanClassLoader = classLoader;
+		if (this.deserializer instanceof BeanClassLoaderAware) {
+			((BeanClassLoaderAware) this.deserializer).setBeanClassLoader(classLoader);
+		}
 	}
 
 	/**
@@ -152,17 +206,29 @@ public abstract class AbstractHttpInvokerRequestExecutor
 	 * Serialize the given RemoteInvocation to the given OutputStream.
 	 * <p>The default implementation gives <code>decorateOutputStream</code> a chance
 	 * to decorate the stream first (for example, for custom encryption or compression).
-	 * Creates an <code>ObjectOutputStream</code> for the final stream and calls
+	 * Delegates to the configured Serializer, if any; otherwise creates an
+	 * <code>ObjectOutputStream</code> for the final stream and calls
 	 * <code>doWriteRemoteInvocation</code> to actually write the object.
 	 * <p>Can be overridden for custom serialization of the invocation.
 	 * @param invocation the RemoteInvocation object
 	 * @param os the OutputStream to write to
 	 * @throws IOException if thrown by I/O methods
 	 * @see #decorateOutputStream
+	 * @see #setSerializer
 	 * @see #doWriteRemoteInvocation
 	 */
 	protected void writeRemoteInvocation(RemoteInvocation invocation, OutputStream os) throws IOException {
-		ObjectOutputStream oos = new ObjectOutputStream(decorateOutputStream(os));
+		OutputStream decoratedStream = decorateOutputStream(os);
+		if (this.serializer != null) {
+			try {
+				this.serializer.serialize(invocation, decoratedStream);
+			}
+			finally {
+				decoratedStream.close();
+			}
+			return;
+		}
+		ObjectOutputStream oos = new ObjectOutputStream(decoratedStream);
 		try {
 			doWriteRemoteInvocation(invocation, oos);
 		}
@@ -220,7 +286,8 @@ public abstract class AbstractHttpInvokerRequestExecutor
 	/**
 	 * Deserialize a RemoteInvocationResult object from the given InputStream.
 	 * <p>Gives <code>decorateInputStream</code> a chance to decorate the stream
-	 * first (for example, for custom encryption or compression). Creates an
+	 * first (for example, for custom encryption or compression). Delegates to the
+	 * configured Deserializer, if any; otherwise creates an
 	 * <code>ObjectInputStream</code> via <code>createObjectInputStream</code> and
 	 * calls <code>doReadRemoteInvocationResult</code> to actually read the object.
 	 * <p>Can be overridden for custom serialization of the invocation.
@@ -230,13 +297,28 @@ public abstract class AbstractHttpInvokerRequestExecutor
 	 * @throws IOException if thrown by I/O methods
 	 * @throws ClassNotFoundException if thrown during deserialization
 	 * @see #decorateInputStream
+	 * @see #setDeserializer
 	 * @see #createObjectInputStream
 	 * @see #doReadRemoteInvocationResult
 	 */
 	protected RemoteInvocationResult readRemoteInvocationResult(InputStream is, String codebaseUrl)
 			throws IOException, ClassNotFoundException {
 
-		ObjectInputStream ois = createObjectInputStream(decorateInputStream(is), codebaseUrl);
+		InputStream decoratedStream = decorateInputStream(is);
+		if (this.deserializer != null) {
+			try {
+				Object obj = this.deserializer.deserialize(decoratedStream);
+				if (!(obj instanceof RemoteInvocationResult)) {
+					throw new RemoteException("Deserialized object needs to be assignable to type [" +
+							RemoteInvocationResult.class.getName() + "]: " + obj);
+				}
+				return (RemoteInvocationResult) obj;
+			}
+			finally {
+				decoratedStream.close();
+			}
+		}
+		ObjectInputStream ois = createObjectInputStream(decoratedStream, codebaseUrl);
 		try {
 			return doReadRemoteInvocationResult(ois);
 		}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -98,8 +98,9 @@ public class HttpInvokerServiceExporter extends RemoteInvocationSerializingExpor
 	/**
 	 * Deserialize a RemoteInvocation object from the given InputStream.
 	 * <p>Gives {@link #decorateInputStream} a chance to decorate the stream
-	 * first (for example, for custom encryption or compression). Creates a
-	 * {@link org.springframework.remoting.rmi.CodebaseAwareObjectInputStream}
+	 * first (for example, for custom encryption or compression). Delegates to
+	 * the configured {@link #setDeserializer Deserializer}, if any; otherwise
+	 * creates a {@link org.springframework.remoting.rmi.CodebaseAwareObjectInputStream}
 	 * and calls {@link #doReadRemoteInvocation} to actually read the object.
 	 * <p>Can be overridden for custom serialization of the invocation.
 	 * @param request current HTTP request
@@ -111,7 +112,16 @@ public class HttpInvokerServiceExporter extends RemoteInvocationSerializingExpor
 	protected RemoteInvocation readRemoteInvocation(HttpServletRequest request, InputStream is)
 			throws IOException, ClassNotFoundException {
 
-		ObjectInputStream ois = createObjectInputStream(decorateInputStream(request, is));
+		InputStream decoratedStream = decorateInputStream(request, is);
+		if (getDeserializer() != null) {
+			try {
+				return deserializeRemoteInvocation(decoratedStream);
+			}
+			finally {
+				decoratedStream.close();
+			}
+		}
+		ObjectInputStream ois = createObjectInputStream(decoratedStream);
 		try {
 			return doReadRemoteInvocation(ois);
 		}
@@ -153,7 +163,8 @@ public class HttpInvokerServiceExporter extends RemoteInvocationSerializingExpor
 	 * Serialize the given RemoteInvocation to the given OutputStream.
 	 * <p>The default implementation gives {@link #decorateOutputStream} a chance
 	 * to decorate the stream first (for example, for custom encryption or compression).
-	 * Creates an {@link java.io.ObjectOutputStream} for the final stream and calls
+	 * Delegates to the configured {@link #setSerializer Serializer}, if any; otherwise
+	 * creates an {@link java.io.ObjectOutputStream} for the final stream and calls
 	 * {@link #doWriteRemoteInvocationResult} to actually write the object.
 	 * <p>Can be overridden for custom serialization of the invocation.
 	 * @param request current HTTP request
@@ -168,7 +179,17 @@ public class HttpInvokerServiceExporter extends RemoteInvocationSerializingExpor
 			HttpServletRequest request, HttpServletResponse response, RemoteInvocationResult result, OutputStream os)
 			throws IOException {
 
-		ObjectOutputStream oos = createObjectOutputStream(decorateOutputStream(request, response, os));
+		OutputStream decoratedStream = decorateOutputStream(request, response, os);
+		if (getSerializer() != null) {
+			try {
+				serializeRemoteInvocationResult(result, decoratedStream);
+			}
+			finally {
+				decoratedStream.close();
+			}
+			return;
+		}
+		ObjectOutputStream oos = createObjectOutputStream(decoratedStream);
 		try {
 			doWriteRemoteInvocationResult(result, oos);
 		}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2009 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -94,8 +94,9 @@ public class SimpleHttpInvokerServiceExporter extends RemoteInvocationSerializin
 	/**
 	 * Deserialize a RemoteInvocation object from the given InputStream.
 	 * <p>Gives {@link #decorateInputStream} a chance to decorate the stream
-	 * first (for example, for custom encryption or compression). Creates a
-	 * {@link org.springframework.remoting.rmi.CodebaseAwareObjectInputStream}
+	 * first (for example, for custom encryption or compression). Delegates to
+	 * the configured {@link #setDeserializer Deserializer}, if any; otherwise
+	 * creates a {@link org.springframework.remoting.rmi.CodebaseAwareObjectInputStream}
 	 * and calls {@link #doReadRemoteInvocation} to actually read the object.
 	 * <p>Can be overridden for custom serialization of the invocation.
 	 * @param exchange current HTTP request/response
@@ -107,7 +108,11 @@ public class SimpleHttpInvokerServiceExporter extends RemoteInvocationSerializin
 	protected RemoteInvocation readRemoteInvocation(HttpExchange exchange, InputStream is)
 			throws IOException, ClassNotFoundException {
 
-		ObjectInputStream ois = createObjectInputStream(decorateInputStream(exchange, is));
+		InputStream decoratedStream = decorateInputStream(exchange, is);
+		if (getDeserializer() != null) {
+			return deserializeRemoteInvocation(decoratedStream);
+		}
+		ObjectInputStream ois = createObjectInputStream(decoratedStream);
 		return doReadRemoteInvocation(ois);
 	}
 
@@ -143,7 +148,8 @@ public class SimpleHttpInvokerServiceExporter extends RemoteInvocationSerializin
 	 * Serialize the given RemoteInvocation to the given OutputStream.
 	 * <p>The default implementation gives {@link #decorateOutputStream} a chance
 	 * to decorate the stream first (for example, for custom encryption or compression).
-	 * Creates an {@link java.io.ObjectOutputStream} for the final stream and calls
+	 * Delegates to the configured {@link #setSerializer Serializer}, if any; otherwise
+	 * creates an {@link java.io.ObjectOutputStream} for the final stream and calls
 	 * {@link #doWriteRemoteInvocationResult} to actually write the object.
 	 * <p>Can be overridden for custom serialization of the invocation.
 	 * @param exchange current HTTP request/response
@@ -156,7 +162,13 @@ public class SimpleHttpInvokerServiceExporter extends RemoteInvocationSerializin
 	protected void writeRemoteInvocationResult(
 			HttpExchange exchange, RemoteInvocationResult result, OutputStream os) throws IOException {
 
-		ObjectOutputStream oos = createObjectOutputStream(decorateOutputStream(exchange, os));
+		OutputStream decoratedStream = decorateOutputStream(exchange, os);
+		if (getSerializer() != null) {
+			serializeRemoteInvocationResult(result, decoratedStream);
+			decoratedStream.flush();
+			return;
+		}
+		ObjectOutputStream oos = createObjectOutputStream(decoratedStream);
 		doWriteRemoteInvocationResult(result, oos);
 		oos.flush();
 	}
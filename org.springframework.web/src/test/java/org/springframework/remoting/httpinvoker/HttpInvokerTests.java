@@ -41,6 +41,7 @@ import org.springframework.beans.factory.BeanClassLoaderAware;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.remoting.RemoteAccessException;
+import org.springframework.remoting.support.CompactRemoteInvocationSerializer;
 import org.springframework.remoting.support.DefaultRemoteInvocationExecutor;
 import org.springframework.remoting.support.RemoteInvocation;
 import org.springframework.remoting.support.RemoteInvocationFactory;
@@ -125,6 +126,62 @@ public class HttpInvokerTests extends TestCase {
 		}
 	}
 
+	public void testHttpInvokerProxyFactoryBeanAndServiceExporterWithCompactSerialization() throws Throwable {
+		TestBean target = new TestBean("myname", 99);
+
+		final HttpInvokerServiceExporter exporter = new HttpInvokerServiceExporter();
+		exporter.setServiceInterface(ITestBean.class);
+		exporter.setService(target);
+		CompactRemoteInvocationSerializer serverCodec = new CompactRemoteInvocationSerializer();
+		exporter.setSerializer(serverCodec);
+		exporter.setDeserializer(serverCodec);
+		exporter.setContentType(CompactRemoteInvocationSerializer.CONTENT_TYPE_COMPACT_REMOTE_INVOCATION);
+		exporter.afterPropertiesSet();
+
+		HttpInvokerProxyFactoryBean pfb = new HttpInvokerProxyFactoryBean();
+		pfb.setServiceInterface(ITestBean.class);
+		pfb.setServiceUrl("http://myurl");
+
+		AbstractHttpInvokerRequestExecutor executor = new AbstractHttpInvokerRequestExecutor() {
+			protected RemoteInvocationResult doExecuteRequest(
+					HttpInvokerClientConfiguration config, ByteArrayOutputStream baos) throws Exception {
+				MockHttpServletRequest request = new MockHttpServletRequest();
+				MockHttpServletResponse response = new MockHttpServletResponse();
+				request.setContent(baos.toByteArray());
+				exporter.handleRequest(request, response);
+				assertEquals(CompactRemoteInvocationSerializer.CONTENT_TYPE_COMPACT_REMOTE_INVOCATION,
+						response.getContentType());
+				return readRemoteInvocationResult(
+						new ByteArrayInputStream(response.getContentAsByteArray()), config.getCodebaseUrl());
+			}
+		};
+		CompactRemoteInvocationSerializer clientCodec = new CompactRemoteInvocationSerializer();
+		executor.setSerializer(clientCodec);
+		executor.setDeserializer(clientCodec);
+		pfb.setHttpInvokerRequestExecutor(executor);
+
+		pfb.afterPropertiesSet();
+		ITestBean proxy = (ITestBean) pfb.getObject();
+		assertEquals("myname", proxy.getName());
+		assertEquals(99, proxy.getAge());
+		proxy.setAge(50);
+		assertEquals(50, proxy.getAge());
+		proxy.setStringArray(new String[] {"str1", "str2"});
+		assertTrue(Arrays.equals(new String[] {"str1", "str2"}, proxy.getStringArray()));
+		proxy.setNestedIntArray(new int[][] {{1, 2, 3}, {4, 5, 6}});
+		int[][] intArray = proxy.getNestedIntArray();
+		assertTrue(Arrays.equals(new int[] {1, 2, 3}, intArray[0]));
+		assertTrue(Arrays.equals(new int[] {4, 5, 6}, intArray[1]));
+
+		try {
+			proxy.exceptional(new IllegalStateException());
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			// expected
+		}
+	}
+
 	public void testHttpInvokerProxyFactoryBeanAndServiceExporterWithIOException() throws Exception {
 		TestBean target = new TestBean("myname", 99);
 